@@ -0,0 +1,123 @@
+package com.itmo.java.basics.index.impl;
+
+import com.itmo.java.basics.index.SegmentOffsetInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение {@link SegmentIndex} с прежним индексом сегмента на {@link MapBasedKvsIndex}.
+ * <p>
+ * lookup* - задержка поиска существующего ключа. build* - построение индекса из keyCount ключей:
+ * с профилировщиком {@code -prof gc} значение gc.alloc.rate.norm показывает, сколько байт на это выделено,
+ * то есть сколько памяти индекс занимает вместе с мусором от расширений. Строки ключей создаются заранее,
+ * поэтому у {@link MapBasedKvsIndex} в это число не попадают, хотя в памяти он держит их все.
+ * <p>
+ * Сегмент индекс у себя не держит: он живет, только пока сегмент инициализируется, а потом переносится
+ * в {@link com.itmo.java.basics.index.KeyDirectory}. Так что бенчмарк меряет цену открытия базы,
+ * а не память работающей таблицы.
+ * <pre>
+ * mvn -P jmh package
+ * java -jar target/benchmarks.jar SegmentIndexBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SegmentIndexBenchmark {
+    @Param({"10000", "1000000"})
+    private int keyCount;
+
+    private String[] keys;
+    private String[] lookups;
+    private byte[][] keyBytes;
+    private byte[][] lookupBytes;
+    private SegmentIndex segmentIndex;
+    private MapBasedKvsIndex<String, SegmentOffsetInfo> mapIndex;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = new String[keyCount];
+        keyBytes = new byte[keyCount][];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "user:" + i + ":profile";
+            keyBytes[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+        }
+
+        segmentIndex = buildSegmentIndex();
+        mapIndex = buildMapIndex();
+
+        // отдельные объекты строк, как при разборе запроса: hashCode у них еще не посчитан.
+        // Индекс сегмента ищет по байтам ключа, как они пришли в запросе
+        Random random = new Random(42);
+        lookups = new String[64 * 1024];
+        lookupBytes = new byte[lookups.length][];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = new String(keys[random.nextInt(keyCount)].toCharArray());
+            lookupBytes[i] = lookups[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long lookupSegmentIndex() {
+        byte[] key = lookupBytes[next];
+        next = (next + 1) & (lookupBytes.length - 1);
+        return segmentIndex.offsetOf(key);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long lookupMapIndex() {
+        return mapIndex.searchForKey(nextLookup()).map(SegmentOffsetInfo::getOffset).orElse(-1L);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public SegmentIndex buildSegmentIndex() {
+        SegmentIndex index = new SegmentIndex();
+        for (int i = 0; i < keys.length; i++) {
+            index.put(keyBytes[i], i * 64L);
+        }
+        return index;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public MapBasedKvsIndex<String, SegmentOffsetInfo> buildMapIndex() {
+        MapBasedKvsIndex<String, SegmentOffsetInfo> index = new MapBasedKvsIndex<>();
+        for (int i = 0; i < keys.length; i++) {
+            index.onIndexedEntityUpdated(keys[i], new SegmentOffsetInfoImpl(i * 64L));
+        }
+        return index;
+    }
+
+    private String nextLookup() {
+        String key = lookups[next];
+        next = (next + 1) & (lookups.length - 1);
+        return key;
+    }
+}
@@ -1,22 +1,34 @@
 package com.itmo.java.basics.config;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
 /**
  * Класс, отвечающий за подгрузку данных из конфигурационного файла формата .properties
  */
 public class ConfigLoader {
+    private static final String DEFAULT_CONFIG_NAME = "server.properties";
+    private static final String TABLE_SEGMENT_PREFIX = "kvs.segment.table.";
+
+    private final String name;
 
     /**
      * По умолчанию читает из server.properties
      */
     public ConfigLoader() {
-        //TODO implement
+        this(DEFAULT_CONFIG_NAME);
     }
 
     /**
      * @param name Имя конфикурационного файла, откуда читать
      */
     public ConfigLoader(String name) {
-        //TODO implement
+        this.name = name;
     }
 
     /**
@@ -24,10 +36,185 @@ public class ConfigLoader {
      * Если не удалось считать из заданного файла, или какого-то конкретно значения не оказалось,
      * то используют дефолтные значения из {@link DatabaseConfig} и {@link ServerConfig}
      * <br/>
-     * Читаются: "kvs.workingPath", "kvs.host", "kvs.port" (но в конфигурационном файле допустимы и другие проперти)
+     * Читаются: "kvs.workingPath", "kvs.host", "kvs.port", "kvs.segment.readMode",
+     * "kvs.fsync.policy", "kvs.fsync.intervalMillis", "kvs.fsync.bytes",
+     * "kvs.compaction.intervalMillis", "kvs.compaction.garbageRatio", "kvs.compaction.bytesPerSecond",
+     * "kvs.init.parallelism", "kvs.compression.tables", "kvs.compression.blockSize", "kvs.compression.level",
+     * "kvs.compression.blockCacheBytes", "kvs.blob.threshold", "kvs.blob.fileSize", "kvs.bloom.falsePositiveRate",
+     * "kvs.lsm.memtableBytes", "kvs.lsm.indexInterval", "kvs.lsm.mergeThreshold", "kvs.index.mode",
+     * "kvs.segment.maxBytes", "kvs.segment.maxRecords", "kvs.segment.maxAgeMillis", "kvs.segment.maxOpenReaders",
+     * "kvs.get.zeroCopyThreshold", "kvs.writeBuffer.tables", "kvs.writeBuffer.bytes", "kvs.writeBuffer.flushIntervalMillis",
+     * "kvs.scan.pageBytes", "kvs.orderedIndex.tables", "kvs.expiration.tables", "kvs.expiration.tickMillis",
+     * "kvs.expiration.wheelSlots", "kvs.snapshot.path"
+     * и их переопределения для отдельных таблиц вида "kvs.segment.table.база.таблица.maxBytes", в том числе окно
+     * времени и срок хранения таблицы, разбитой по времени ("...windowMillis", "...retentionMillis")
+     * (но в конфигурационном файле допустимы и другие проперти)
      */
     public DatabaseServerConfig readConfig() {
-        //TODO implement
-        return null;
+        Properties properties = loadProperties();
+
+        DatabaseConfig dbConfig = DatabaseConfig.builder()
+                .workingPath(properties.getProperty("kvs.workingPath"))
+                .segmentReadMode(readEnum(properties, "kvs.segment.readMode", SegmentReadMode.class))
+                .fsyncPolicy(readEnum(properties, "kvs.fsync.policy", FsyncPolicy.class))
+                .fsyncIntervalMillis(readLong(properties, "kvs.fsync.intervalMillis"))
+                .fsyncBytes(readLong(properties, "kvs.fsync.bytes"))
+                .compactionIntervalMillis(readLong(properties, "kvs.compaction.intervalMillis"))
+                .compactionGarbageRatio(readDouble(properties, "kvs.compaction.garbageRatio"))
+                .compactionBytesPerSecond(readLong(properties, "kvs.compaction.bytesPerSecond"))
+                .initParallelism(readInt(properties, "kvs.init.parallelism"))
+                .compressedTables(properties.getProperty("kvs.compression.tables"))
+                .compressionBlockSize(readInt(properties, "kvs.compression.blockSize"))
+                .compressionLevel(readInt(properties, "kvs.compression.level"))
+                .compressionBlockCacheBytes(readLong(properties, "kvs.compression.blockCacheBytes"))
+                .blobThreshold(readInt(properties, "kvs.blob.threshold"))
+                .blobFileSize(readLong(properties, "kvs.blob.fileSize"))
+                .bloomFalsePositiveRate(readDouble(properties, "kvs.bloom.falsePositiveRate"))
+                .lsmMemtableBytes(readLong(properties, "kvs.lsm.memtableBytes"))
+                .lsmIndexInterval(readInt(properties, "kvs.lsm.indexInterval"))
+                .lsmMergeThreshold(readInt(properties, "kvs.lsm.mergeThreshold"))
+                .indexMode(readEnum(properties, "kvs.index.mode", IndexMode.class))
+                .segmentMaxBytes(readLong(properties, "kvs.segment.maxBytes"))
+                .segmentMaxRecords(readLong(properties, "kvs.segment.maxRecords"))
+                .segmentMaxAgeMillis(readLong(properties, "kvs.segment.maxAgeMillis"))
+                .tableSegmentLimits(readTableSegmentLimits(properties))
+                .segmentMaxOpenReaders(readInt(properties, "kvs.segment.maxOpenReaders"))
+                .zeroCopyThreshold(readInt(properties, "kvs.get.zeroCopyThreshold"))
+                .writeBufferTables(properties.getProperty("kvs.writeBuffer.tables"))
+                .writeBufferBytes(readLong(properties, "kvs.writeBuffer.bytes"))
+                .writeBufferFlushIntervalMillis(readLong(properties, "kvs.writeBuffer.flushIntervalMillis"))
+                .scanPageBytes(readLong(properties, "kvs.scan.pageBytes"))
+                .orderedIndexTables(properties.getProperty("kvs.orderedIndex.tables"))
+                .expirationTables(properties.getProperty("kvs.expiration.tables"))
+                .expirationTickMillis(readLong(properties, "kvs.expiration.tickMillis"))
+                .expirationWheelSlots(readInt(properties, "kvs.expiration.wheelSlots"))
+                .snapshotPath(properties.getProperty("kvs.snapshot.path"))
+                .build();
+        ServerConfig serverConfig = new ServerConfig(
+                properties.getProperty("kvs.host", ServerConfig.DEFAULT_HOST),
+                readInt(properties, "kvs.port", ServerConfig.DEFAULT_PORT));
+
+        return DatabaseServerConfig.builder()
+                .dbConfig(dbConfig)
+                .serverConfig(serverConfig)
+                .build();
+    }
+
+    private Properties loadProperties() {
+        Properties properties = new Properties();
+
+        try (InputStream is = openConfig()) {
+            if (is != null) {
+                properties.load(is);
+            }
+        } catch (IOException e) {
+            // конфиг не прочитался - работаем на дефолтных значениях
+        }
+
+        return properties;
+    }
+
+    private InputStream openConfig() throws IOException {
+        Path path = Path.of(name);
+        if (Files.isRegularFile(path)) {
+            return Files.newInputStream(path);
+        }
+
+        return ConfigLoader.class.getClassLoader().getResourceAsStream(name);
+    }
+
+    /**
+     * @return пределы сегментов отдельных таблиц с ключами "база.таблица.предел", см
+     * {@link DatabaseConfig#getSegmentRollingPolicy(String, String)}. Нечисловые значения пропускаются
+     */
+    private static Map<String, Long> readTableSegmentLimits(Properties properties) {
+        Map<String, Long> limits = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(TABLE_SEGMENT_PREFIX)) {
+                continue;
+            }
+            Long value = readLong(properties, key);
+            if (value != null) {
+                limits.put(key.substring(TABLE_SEGMENT_PREFIX.length()), value);
+            }
+        }
+        return limits;
+    }
+
+    private static int readInt(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return число или {@code null}, если проперти нет или это не число
+     */
+    private static Integer readInt(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return число или {@code null}, если проперти нет или это не число
+     */
+    private static Long readLong(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return число или {@code null}, если проперти нет или это не число
+     */
+    private static Double readDouble(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return значение перечисления или {@code null}, если проперти нет или значение не распознано
+     */
+    private static <E extends Enum<E>> E readEnum(Properties properties, String key, Class<E> type) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 }
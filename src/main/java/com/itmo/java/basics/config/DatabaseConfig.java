@@ -1,14 +1,461 @@
 package com.itmo.java.basics.config;
 
+import lombok.Builder;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
 public class DatabaseConfig {
     public static final String DEFAULT_WORKING_PATH = "db_files";
+    public static final String DEFAULT_SNAPSHOT_PATH = "db_snapshots";
+    public static final SegmentReadMode DEFAULT_SEGMENT_READ_MODE = SegmentReadMode.CHANNEL;
+    public static final FsyncPolicy DEFAULT_FSYNC_POLICY = FsyncPolicy.NONE;
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 1000;
+    public static final long DEFAULT_FSYNC_BYTES = 1024 * 1024;
+    public static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = 60_000;
+    public static final double DEFAULT_COMPACTION_GARBAGE_RATIO = 0.5;
+    public static final long DEFAULT_COMPACTION_BYTES_PER_SECOND = 0;
+    public static final int DEFAULT_INIT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_COMPRESSION_BLOCK_SIZE = 16 * 1024;
+    public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+    public static final long DEFAULT_COMPRESSION_BLOCK_CACHE_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_BLOB_THRESHOLD = 16 * 1024;
+    public static final long DEFAULT_BLOB_FILE_SIZE = 64 * 1024 * 1024;
+    public static final double DEFAULT_BLOOM_FALSE_POSITIVE_RATE = 0.01;
+    public static final long DEFAULT_LSM_MEMTABLE_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_LSM_INDEX_INTERVAL = 4 * 1024;
+    public static final int DEFAULT_LSM_MERGE_THRESHOLD = 4;
+    public static final IndexMode DEFAULT_INDEX_MODE = IndexMode.KEYS;
+    public static final long DEFAULT_SEGMENT_MAX_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_SEGMENT_MAX_RECORDS = 0;
+    public static final long DEFAULT_SEGMENT_MAX_AGE_MILLIS = 0;
+    public static final int DEFAULT_SEGMENT_MAX_OPEN_READERS = 128;
+    public static final int DEFAULT_ZERO_COPY_THRESHOLD = 64 * 1024;
+    public static final long DEFAULT_WRITE_BUFFER_BYTES = 16 * 1024 * 1024;
+    public static final long DEFAULT_WRITE_BUFFER_FLUSH_INTERVAL_MILLIS = 1000;
+    public static final long DEFAULT_SCAN_PAGE_BYTES = 1024 * 1024;
+    public static final long DEFAULT_EXPIRATION_TICK_MILLIS = 1000;
+    public static final int DEFAULT_EXPIRATION_WHEEL_SLOTS = 512;
+    public static final String MAX_BYTES = "maxBytes";
+    public static final String MAX_RECORDS = "maxRecords";
+    public static final String MAX_AGE_MILLIS = "maxAgeMillis";
+    public static final String WINDOW_MILLIS = "windowMillis";
+    public static final String RETENTION_MILLIS = "retentionMillis";
+    private static final String ALL_TABLES = "*";
     private final String workingPath;
+    private final SegmentReadMode segmentReadMode;
+    private final FsyncPolicy fsyncPolicy;
+    private final Long fsyncIntervalMillis;
+    private final Long fsyncBytes;
+    private final Long compactionIntervalMillis;
+    private final Double compactionGarbageRatio;
+    private final Long compactionBytesPerSecond;
+    private final Integer initParallelism;
+    private final Set<String> compressedTables;
+    private final Integer compressionBlockSize;
+    private final Integer compressionLevel;
+    private final Long compressionBlockCacheBytes;
+    private final Integer blobThreshold;
+    private final Long blobFileSize;
+    private final Double bloomFalsePositiveRate;
+    private final Long lsmMemtableBytes;
+    private final Integer lsmIndexInterval;
+    private final Integer lsmMergeThreshold;
+    private final IndexMode indexMode;
+    private final Long segmentMaxBytes;
+    private final Long segmentMaxRecords;
+    private final Long segmentMaxAgeMillis;
+    private final Map<String, Long> tableSegmentLimits;
+    private final Integer segmentMaxOpenReaders;
+    private final Integer zeroCopyThreshold;
+    private final Set<String> writeBufferTables;
+    private final Long writeBufferBytes;
+    private final Long writeBufferFlushIntervalMillis;
+    private final Long scanPageBytes;
+    private final Set<String> orderedIndexTables;
+    private final Set<String> expirationTables;
+    private final Long expirationTickMillis;
+    private final Integer expirationWheelSlots;
+    private final String snapshotPath;
 
     public DatabaseConfig(String workingPath) {
+        this(builder().workingPath(workingPath).build());
+    }
+
+    /**
+     * Копирует разобранные настройки из другого экземпляра: так {@link #DatabaseConfig(String)} не перечисляет
+     * по порядку все параметры конструктора для builder
+     */
+    private DatabaseConfig(DatabaseConfig config) {
+        this.workingPath = config.workingPath;
+        this.segmentReadMode = config.segmentReadMode;
+        this.fsyncPolicy = config.fsyncPolicy;
+        this.fsyncIntervalMillis = config.fsyncIntervalMillis;
+        this.fsyncBytes = config.fsyncBytes;
+        this.compactionIntervalMillis = config.compactionIntervalMillis;
+        this.compactionGarbageRatio = config.compactionGarbageRatio;
+        this.compactionBytesPerSecond = config.compactionBytesPerSecond;
+        this.initParallelism = config.initParallelism;
+        this.compressedTables = config.compressedTables;
+        this.compressionBlockSize = config.compressionBlockSize;
+        this.compressionLevel = config.compressionLevel;
+        this.compressionBlockCacheBytes = config.compressionBlockCacheBytes;
+        this.blobThreshold = config.blobThreshold;
+        this.blobFileSize = config.blobFileSize;
+        this.bloomFalsePositiveRate = config.bloomFalsePositiveRate;
+        this.lsmMemtableBytes = config.lsmMemtableBytes;
+        this.lsmIndexInterval = config.lsmIndexInterval;
+        this.lsmMergeThreshold = config.lsmMergeThreshold;
+        this.indexMode = config.indexMode;
+        this.segmentMaxBytes = config.segmentMaxBytes;
+        this.segmentMaxRecords = config.segmentMaxRecords;
+        this.segmentMaxAgeMillis = config.segmentMaxAgeMillis;
+        this.tableSegmentLimits = config.tableSegmentLimits;
+        this.segmentMaxOpenReaders = config.segmentMaxOpenReaders;
+        this.zeroCopyThreshold = config.zeroCopyThreshold;
+        this.writeBufferTables = config.writeBufferTables;
+        this.writeBufferBytes = config.writeBufferBytes;
+        this.writeBufferFlushIntervalMillis = config.writeBufferFlushIntervalMillis;
+        this.scanPageBytes = config.scanPageBytes;
+        this.orderedIndexTables = config.orderedIndexTables;
+        this.expirationTables = config.expirationTables;
+        this.expirationTickMillis = config.expirationTickMillis;
+        this.expirationWheelSlots = config.expirationWheelSlots;
+        this.snapshotPath = config.snapshotPath;
+    }
+
+    @Builder
+    private DatabaseConfig(String workingPath, SegmentReadMode segmentReadMode, FsyncPolicy fsyncPolicy,
+                           Long fsyncIntervalMillis, Long fsyncBytes, Long compactionIntervalMillis,
+                           Double compactionGarbageRatio, Long compactionBytesPerSecond, Integer initParallelism,
+                           String compressedTables, Integer compressionBlockSize, Integer compressionLevel,
+                           Long compressionBlockCacheBytes, Integer blobThreshold, Long blobFileSize,
+                           Double bloomFalsePositiveRate, Long lsmMemtableBytes, Integer lsmIndexInterval,
+                           Integer lsmMergeThreshold, IndexMode indexMode, Long segmentMaxBytes,
+                           Long segmentMaxRecords, Long segmentMaxAgeMillis, Map<String, Long> tableSegmentLimits,
+                           Integer segmentMaxOpenReaders, Integer zeroCopyThreshold, String writeBufferTables,
+                           Long writeBufferBytes, Long writeBufferFlushIntervalMillis, Long scanPageBytes,
+                           String orderedIndexTables, String expirationTables, Long expirationTickMillis,
+                           Integer expirationWheelSlots, String snapshotPath) {
         this.workingPath = workingPath;
+        this.segmentReadMode = segmentReadMode;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.fsyncBytes = fsyncBytes;
+        this.compactionIntervalMillis = compactionIntervalMillis;
+        this.compactionGarbageRatio = compactionGarbageRatio;
+        this.compactionBytesPerSecond = compactionBytesPerSecond;
+        this.initParallelism = initParallelism;
+        this.compressedTables = parseTables(compressedTables);
+        this.compressionBlockSize = compressionBlockSize;
+        this.compressionLevel = compressionLevel;
+        this.compressionBlockCacheBytes = compressionBlockCacheBytes;
+        this.blobThreshold = blobThreshold;
+        this.blobFileSize = blobFileSize;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.lsmMemtableBytes = lsmMemtableBytes;
+        this.lsmIndexInterval = lsmIndexInterval;
+        this.lsmMergeThreshold = lsmMergeThreshold;
+        this.indexMode = indexMode;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.segmentMaxRecords = segmentMaxRecords;
+        this.segmentMaxAgeMillis = segmentMaxAgeMillis;
+        this.tableSegmentLimits = tableSegmentLimits == null ? Map.of() : Map.copyOf(tableSegmentLimits);
+        this.segmentMaxOpenReaders = segmentMaxOpenReaders;
+        this.zeroCopyThreshold = zeroCopyThreshold;
+        this.writeBufferTables = parseTables(writeBufferTables);
+        this.writeBufferBytes = writeBufferBytes;
+        this.writeBufferFlushIntervalMillis = writeBufferFlushIntervalMillis;
+        this.scanPageBytes = scanPageBytes;
+        this.orderedIndexTables = parseTables(orderedIndexTables);
+        this.expirationTables = parseTables(expirationTables);
+        this.expirationTickMillis = expirationTickMillis;
+        this.expirationWheelSlots = expirationWheelSlots;
+        this.snapshotPath = snapshotPath;
     }
 
     public String getWorkingPath() {
         return workingPath == null ? DEFAULT_WORKING_PATH : workingPath;
     }
+
+    /**
+     * @return папка, в которой создаются снимки баз (см {@link com.itmo.java.basics.logic.Database#snapshot}).
+     * Снимок - готовая рабочая папка: чтобы восстановиться из него, достаточно указать его как workingPath
+     */
+    public String getSnapshotPath() {
+        return snapshotPath == null ? DEFAULT_SNAPSHOT_PATH : snapshotPath;
+    }
+
+    public SegmentReadMode getSegmentReadMode() {
+        return segmentReadMode == null ? DEFAULT_SEGMENT_READ_MODE : segmentReadMode;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy == null ? DEFAULT_FSYNC_POLICY : fsyncPolicy;
+    }
+
+    public long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis == null ? DEFAULT_FSYNC_INTERVAL_MILLIS : fsyncIntervalMillis;
+    }
+
+    public long getFsyncBytes() {
+        return fsyncBytes == null ? DEFAULT_FSYNC_BYTES : fsyncBytes;
+    }
+
+    /**
+     * @return как часто запускается фоновое сжатие сегментов таблицы. 0 или меньше - сжатие выключено
+     */
+    public long getCompactionIntervalMillis() {
+        return compactionIntervalMillis == null ? DEFAULT_COMPACTION_INTERVAL_MILLIS : compactionIntervalMillis;
+    }
+
+    /**
+     * @return доля неактуальных записей, начиная с которой read-only сегмент попадает в сжатие
+     */
+    public double getCompactionGarbageRatio() {
+        return compactionGarbageRatio == null ? DEFAULT_COMPACTION_GARBAGE_RATIO : compactionGarbageRatio;
+    }
+
+    /**
+     * @return ограничение скорости записи при сжатии в байтах в секунду. 0 - без ограничения
+     */
+    public long getCompactionBytesPerSecond() {
+        return compactionBytesPerSecond == null ? DEFAULT_COMPACTION_BYTES_PER_SECOND : compactionBytesPerSecond;
+    }
+
+    /**
+     * @return сколько потоков читают базы, таблицы и сегменты при старте
+     */
+    public int getInitParallelism() {
+        return initParallelism == null || initParallelism <= 0 ? DEFAULT_INIT_PARALLELISM : initParallelism;
+    }
+
+    /**
+     * Сжимаются ли закрытые сегменты таблицы. Таблицы перечисляются в конфигурации через запятую
+     * в виде "база.таблица", "*" - сжимать все таблицы
+     */
+    public boolean isCompressionEnabled(String dbName, String tableName) {
+        return isListed(compressedTables, dbName, tableName);
+    }
+
+    /**
+     * @return размер несжатого блока сжатого сегмента
+     */
+    public int getCompressionBlockSize() {
+        return compressionBlockSize == null || compressionBlockSize <= 0
+                ? DEFAULT_COMPRESSION_BLOCK_SIZE : compressionBlockSize;
+    }
+
+    /**
+     * @return уровень сжатия {@link Deflater} от 0 до 9, -1 - уровень по умолчанию
+     */
+    public int getCompressionLevel() {
+        return compressionLevel == null ? DEFAULT_COMPRESSION_LEVEL : compressionLevel;
+    }
+
+    /**
+     * @return сколько байт распакованных блоков держит в памяти каждая таблица
+     */
+    public long getCompressionBlockCacheBytes() {
+        return compressionBlockCacheBytes == null ? DEFAULT_COMPRESSION_BLOCK_CACHE_BYTES : compressionBlockCacheBytes;
+    }
+
+    /**
+     * @return размер значения, начиная с которого оно пишется в blob-файл, а не в сегмент. 0 или меньше - всегда в сегмент
+     */
+    public int getBlobThreshold() {
+        return blobThreshold == null ? DEFAULT_BLOB_THRESHOLD : blobThreshold;
+    }
+
+    /**
+     * @return размер blob-файла, после которого значения пишутся в следующий
+     */
+    public long getBlobFileSize() {
+        return blobFileSize == null || blobFileSize <= 0 ? DEFAULT_BLOB_FILE_SIZE : blobFileSize;
+    }
+
+    /**
+     * @return допустимая доля ложноположительных ответов фильтра Блума закрытого сегмента.
+     * 0 или меньше (как и 1 или больше) - фильтры не строятся
+     */
+    public double getBloomFalsePositiveRate() {
+        return bloomFalsePositiveRate == null ? DEFAULT_BLOOM_FALSE_POSITIVE_RATE : bloomFalsePositiveRate;
+    }
+
+    /**
+     * @return размер memtable LSM-таблицы в байтах, после которого она сбрасывается в отсортированный файл
+     */
+    public long getLsmMemtableBytes() {
+        return lsmMemtableBytes == null || lsmMemtableBytes <= 0 ? DEFAULT_LSM_MEMTABLE_BYTES : lsmMemtableBytes;
+    }
+
+    /**
+     * @return через сколько байт записей отсортированного файла в его разреженный индекс попадает очередной ключ
+     */
+    public int getLsmIndexInterval() {
+        return lsmIndexInterval == null || lsmIndexInterval <= 0 ? DEFAULT_LSM_INDEX_INTERVAL : lsmIndexInterval;
+    }
+
+    /**
+     * @return при каком числе отсортированных файлов LSM-таблицы они сливаются в один
+     */
+    public int getLsmMergeThreshold() {
+        return lsmMergeThreshold == null || lsmMergeThreshold < 2 ? DEFAULT_LSM_MERGE_THRESHOLD : lsmMergeThreshold;
+    }
+
+    /**
+     * @return хранит ли каталог ключей таблицы ключи целиком или только их хеши
+     */
+    public IndexMode getIndexMode() {
+        return indexMode == null ? DEFAULT_INDEX_MODE : indexMode;
+    }
+
+    /**
+     * @return когда закрывается текущий сегмент таблицы без переопределенных пределов
+     */
+    public SegmentRollingPolicy getSegmentRollingPolicy() {
+        return new SegmentRollingPolicy(getSegmentMaxBytes(), getSegmentMaxRecords(), getSegmentMaxAgeMillis());
+    }
+
+    /**
+     * Когда закрывается текущий сегмент таблицы. Пределы задаются для всех таблиц и могут быть переопределены
+     * для отдельной таблицы: ключ "база.таблица.предел", где предел - {@link #MAX_BYTES}, {@link #MAX_RECORDS}
+     * или {@link #MAX_AGE_MILLIS}. Окно времени {@link #WINDOW_MILLIS} задается только для отдельной таблицы
+     */
+    public SegmentRollingPolicy getSegmentRollingPolicy(String dbName, String tableName) {
+        String table = dbName + "." + tableName + ".";
+        long maxBytes = tableSegmentLimits.getOrDefault(table + MAX_BYTES, getSegmentMaxBytes());
+        return new SegmentRollingPolicy(maxBytes <= 0 ? DEFAULT_SEGMENT_MAX_BYTES : maxBytes,
+                tableSegmentLimits.getOrDefault(table + MAX_RECORDS, getSegmentMaxRecords()),
+                tableSegmentLimits.getOrDefault(table + MAX_AGE_MILLIS, getSegmentMaxAgeMillis()),
+                tableSegmentLimits.getOrDefault(table + WINDOW_MILLIS, 0L));
+    }
+
+    /**
+     * Срок хранения записей таблицы, разбитой по времени: ключ "база.таблица.{@link #RETENTION_MILLIS}"
+     * в пределах сегментов отдельных таблиц. Сегменты, в которые не писали дольше срока, удаляются целиком
+     *
+     * @return срок хранения в миллисекундах, 0 или меньше - записи хранятся без срока
+     */
+    public long getRetentionMillis(String dbName, String tableName) {
+        return tableSegmentLimits.getOrDefault(dbName + "." + tableName + "." + RETENTION_MILLIS, 0L);
+    }
+
+    /**
+     * @return размер файла сегмента в байтах, после которого записи идут в новый сегмент
+     */
+    public long getSegmentMaxBytes() {
+        return segmentMaxBytes == null || segmentMaxBytes <= 0 ? DEFAULT_SEGMENT_MAX_BYTES : segmentMaxBytes;
+    }
+
+    /**
+     * @return число записей, после которого записи идут в новый сегмент. 0 или меньше - без ограничения
+     */
+    public long getSegmentMaxRecords() {
+        return segmentMaxRecords == null ? DEFAULT_SEGMENT_MAX_RECORDS : segmentMaxRecords;
+    }
+
+    /**
+     * @return возраст сегмента, после которого записи идут в новый сегмент. 0 или меньше - без ограничения
+     */
+    public long getSegmentMaxAgeMillis() {
+        return segmentMaxAgeMillis == null ? DEFAULT_SEGMENT_MAX_AGE_MILLIS : segmentMaxAgeMillis;
+    }
+
+    /**
+     * @return сколько сегментов одной таблицы могут одновременно держать открытый файл для чтения
+     */
+    public int getSegmentMaxOpenReaders() {
+        return segmentMaxOpenReaders == null || segmentMaxOpenReaders <= 0
+                ? DEFAULT_SEGMENT_MAX_OPEN_READERS : segmentMaxOpenReaders;
+    }
+
+    /**
+     * @return размер значения, начиная с которого GET отдает его клиенту прямо из файла, не читая в память
+     * (см {@link com.itmo.java.basics.logic.StoredValue}). 0 или меньше - всегда через память
+     */
+    public int getZeroCopyThreshold() {
+        return zeroCopyThreshold == null ? DEFAULT_ZERO_COPY_THRESHOLD : zeroCopyThreshold;
+    }
+
+    /**
+     * Пишутся ли записи таблицы через буфер в памяти (см {@link com.itmo.java.basics.logic.impl.WriteBufferedTable}).
+     * Таблицы перечисляются так же, как для {@link #isCompressionEnabled(String, String)}
+     */
+    public boolean isWriteBufferEnabled(String dbName, String tableName) {
+        return isListed(writeBufferTables, dbName, tableName);
+    }
+
+    /**
+     * @return сколько байт записей может держать буфер записи таблицы, прежде чем запись начнет ждать сброса
+     */
+    public long getWriteBufferBytes() {
+        return writeBufferBytes == null || writeBufferBytes <= 0 ? DEFAULT_WRITE_BUFFER_BYTES : writeBufferBytes;
+    }
+
+    /**
+     * @return как часто буфер записи сбрасывается в сегменты, даже если он не заполнился
+     */
+    public long getWriteBufferFlushIntervalMillis() {
+        return writeBufferFlushIntervalMillis == null || writeBufferFlushIntervalMillis <= 0
+                ? DEFAULT_WRITE_BUFFER_FLUSH_INTERVAL_MILLIS : writeBufferFlushIntervalMillis;
+    }
+
+    /**
+     * @return сколько байт ключей и значений SCAN набирает в одну страницу, сколько бы пар ни попросили
+     * (хотя бы одна пара попадает в страницу всегда)
+     */
+    public long getScanPageBytes() {
+        return scanPageBytes == null || scanPageBytes <= 0 ? DEFAULT_SCAN_PAGE_BYTES : scanPageBytes;
+    }
+
+    /**
+     * Держит ли таблица упорядоченный индекс ключей для запросов диапазонов и префиксов
+     * (см {@link com.itmo.java.basics.logic.Table#range}). LSM-таблицы хранят ключи упорядоченно и так.
+     * Таблицы перечисляются так же, как для {@link #isCompressionEnabled(String, String)}
+     */
+    public boolean isOrderedIndexEnabled(String dbName, String tableName) {
+        return isListed(orderedIndexTables, dbName, tableName);
+    }
+
+    /**
+     * Можно ли задавать ключам таблицы срок жизни (см {@link com.itmo.java.basics.logic.Table#expire}).
+     * Истекшие ключи таблица убирает сама в фоне, а читаются они как удаленные в любой таблице.
+     * LSM-таблицы сроков жизни не поддерживают. Таблицы перечисляются так же, как для
+     * {@link #isCompressionEnabled(String, String)}
+     */
+    public boolean isExpirationEnabled(String dbName, String tableName) {
+        return isListed(expirationTables, dbName, tableName);
+    }
+
+    /**
+     * @return как часто таблица ищет ключи с истекшим сроком: длина тика колеса сроков
+     * (см {@link com.itmo.java.basics.index.impl.ExpirationWheel})
+     */
+    public long getExpirationTickMillis() {
+        return expirationTickMillis == null || expirationTickMillis <= 0
+                ? DEFAULT_EXPIRATION_TICK_MILLIS : expirationTickMillis;
+    }
+
+    /**
+     * @return число ячеек колеса сроков: сроки в пределах одного оборота колеса не лежат в одной ячейке
+     */
+    public int getExpirationWheelSlots() {
+        return expirationWheelSlots == null || expirationWheelSlots <= 0
+                ? DEFAULT_EXPIRATION_WHEEL_SLOTS : expirationWheelSlots;
+    }
+
+    private static Set<String> parseTables(String tables) {
+        return tables == null ? Set.of() : Arrays.stream(tables.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static boolean isListed(Set<String> tables, String dbName, String tableName) {
+        return tables.contains(ALL_TABLES) || tables.contains(dbName + "." + tableName);
+    }
 }
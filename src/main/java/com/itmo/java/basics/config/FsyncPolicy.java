@@ -0,0 +1,26 @@
+package com.itmo.java.basics.config;
+
+/**
+ * Когда данные активного сегмента принудительно сбрасываются на диск (fsync)
+ */
+public enum FsyncPolicy {
+    /**
+     * Никогда, сброс остается на усмотрение операционной системы
+     */
+    NONE,
+
+    /**
+     * В фоне раз в {@link DatabaseConfig#getFsyncIntervalMillis()} миллисекунд
+     */
+    INTERVAL,
+
+    /**
+     * Как только с последнего сброса накопилось {@link DatabaseConfig#getFsyncBytes()} байт
+     */
+    BYTES,
+
+    /**
+     * Перед подтверждением каждой записи
+     */
+    ALWAYS
+}
@@ -0,0 +1,17 @@
+package com.itmo.java.basics.config;
+
+/**
+ * Что хранит каталог ключей таблицы (см {@link com.itmo.java.basics.index.KeyDirectory})
+ */
+public enum IndexMode {
+    /**
+     * Ключи целиком: поиск однозначен, но память растет с длиной ключей
+     */
+    KEYS,
+
+    /**
+     * Только 64-битные хеши ключей, около 16 байт на ключ независимо от его длины. Совпадения хешей разрешаются
+     * сверкой ключа записи на диске, поэтому перезапись существующего ключа дополнительно читает его прежнюю запись
+     */
+    HASHES
+}
@@ -0,0 +1,16 @@
+package com.itmo.java.basics.config;
+
+/**
+ * Способ чтения записей из сегментов, которые уже стали read-only
+ */
+public enum SegmentReadMode {
+    /**
+     * Позиционное чтение через файловый канал, как и для активного сегмента
+     */
+    CHANNEL,
+
+    /**
+     * Сегмент целиком отображается в память, записи декодируются прямо из отображения
+     */
+    MMAP
+}
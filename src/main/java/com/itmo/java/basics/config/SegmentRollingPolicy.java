@@ -0,0 +1,70 @@
+package com.itmo.java.basics.config;
+
+/**
+ * Когда текущий сегмент таблицы закрывается (становится read-only) и записи идут в новый.
+ * Сегмент закрывается, как только достигнут любой из заданных пределов
+ */
+public final class SegmentRollingPolicy {
+    private final long maxBytes;
+    private final long maxRecords;
+    private final long maxAgeMillis;
+    private final long windowMillis;
+
+    /**
+     * @param maxBytes     размер файла сегмента в байтах
+     * @param maxRecords   число записей в сегменте, 0 или меньше - без ограничения
+     * @param maxAgeMillis возраст сегмента с момента создания, 0 или меньше - без ограничения
+     */
+    public SegmentRollingPolicy(long maxBytes, long maxRecords, long maxAgeMillis) {
+        this(maxBytes, maxRecords, maxAgeMillis, 0);
+    }
+
+    /**
+     * @param maxBytes     размер файла сегмента в байтах
+     * @param maxRecords   число записей в сегменте, 0 или меньше - без ограничения
+     * @param maxAgeMillis возраст сегмента с момента создания, 0 или меньше - без ограничения
+     * @param windowMillis длина окна времени (от начала эпохи): сегмент закрывается, когда окно его создания
+     *                     прошло. 0 или меньше - без окон
+     */
+    public SegmentRollingPolicy(long maxBytes, long maxRecords, long maxAgeMillis, long windowMillis) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Max segment size must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.maxRecords = maxRecords;
+        this.maxAgeMillis = maxAgeMillis;
+        this.windowMillis = windowMillis;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxRecords() {
+        return maxRecords;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @return {@code true} - если сегмент с таким размером и числом записей пора закрыть
+     */
+    public boolean isFull(long size, long records) {
+        return size >= maxBytes || maxRecords > 0 && records >= maxRecords;
+    }
+
+    /**
+     * @return {@code true} - если сегмент, созданный в {@code createdMillis}, пора закрыть по возрасту
+     * или потому, что закончилось его окно времени
+     */
+    public boolean isExpired(long createdMillis, long nowMillis) {
+        return maxAgeMillis > 0 && nowMillis - createdMillis >= maxAgeMillis
+                || windowMillis > 0 && Math.floorDiv(nowMillis, windowMillis) != Math.floorDiv(createdMillis, windowMillis);
+    }
+}
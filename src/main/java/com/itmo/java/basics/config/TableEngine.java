@@ -0,0 +1,18 @@
+package com.itmo.java.basics.config;
+
+/**
+ * Способ хранения данных таблицы, выбирается при ее создании
+ */
+public enum TableEngine {
+    /**
+     * Сегменты в порядке записи и индекс всех ключей таблицы в памяти
+     * ({@link com.itmo.java.basics.logic.impl.TableImpl})
+     */
+    HASH,
+
+    /**
+     * Memtable в памяти и отсортированные по ключу неизменяемые файлы с разреженным индексом, которые сливаются в фоне
+     * ({@link com.itmo.java.basics.logic.impl.LsmTable}). Память зависит от числа и размера файлов, а не от числа ключей
+     */
+    LSM
+}
@@ -10,7 +10,17 @@ public enum DatabaseCommandArgPositions {
     DATABASE_NAME(2),
     TABLE_NAME(3),
     KEY(4),
-    VALUE(5);
+    TABLE_ENGINE(4),
+    CURSOR(4),
+    FROM_KEY(4),
+    PREFIX(4),
+    VALUE(5),
+    COUNT(5),
+    TO_KEY(5),
+    PREFIX_LIMIT(5),
+    SECONDS(5),
+    RANGE_LIMIT(6),
+    TTL(6);
 
     private final int positionIndex;
 
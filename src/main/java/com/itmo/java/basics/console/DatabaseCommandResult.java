@@ -1,9 +1,15 @@
 package com.itmo.java.basics.console;
 
 import com.itmo.java.basics.console.impl.FailedDatabaseCommandResult;
+import com.itmo.java.basics.console.impl.KeyValuesDatabaseCommandResult;
+import com.itmo.java.basics.console.impl.ScanDatabaseCommandResult;
+import com.itmo.java.basics.console.impl.StoredValueDatabaseCommandResult;
 import com.itmo.java.basics.console.impl.SuccessDatabaseCommandResult;
+import com.itmo.java.basics.logic.StoredValue;
 import com.itmo.java.protocol.model.RespObject;
 
+import java.util.List;
+
 public interface DatabaseCommandResult extends DatabaseApiSerializable {
 
     /**
@@ -17,6 +23,44 @@ public interface DatabaseCommandResult extends DatabaseApiSerializable {
         return new SuccessDatabaseCommandResult(result);
     }
 
+    /**
+     * Формирует успешный результат выполнения команды из прочитанного значения. Значение, которое лежит в файле,
+     * при сериализации передается клиенту прямо из файла (см {@link StoredValueDatabaseCommandResult}).
+     *
+     * @param result значение результата, {@code null} - если значения нет
+     * @return успешный результат выполнения команды, который был сформирован
+     */
+    static DatabaseCommandResult success(StoredValue result) {
+
+        if (result != null && result.isRegion()) {
+            return new StoredValueDatabaseCommandResult(result);
+        }
+        return new SuccessDatabaseCommandResult(result == null ? null : result.getBytes());
+    }
+
+    /**
+     * Формирует успешный результат обхода таблицы - одну страницу (см {@link ScanDatabaseCommandResult}).
+     *
+     * @param cursor        курсор, с которого продолжить обход
+     * @param keysAndValues ключи и значения страницы попеременно: ключ, его значение, следующий ключ...
+     * @return успешный результат выполнения команды, который был сформирован
+     */
+    static DatabaseCommandResult scanPage(String cursor, List<byte[]> keysAndValues) {
+
+        return new ScanDatabaseCommandResult(cursor, keysAndValues);
+    }
+
+    /**
+     * Формирует успешный результат из пар ключ-значение (см {@link KeyValuesDatabaseCommandResult}).
+     *
+     * @param keysAndValues ключи и значения попеременно: ключ, его значение, следующий ключ...
+     * @return успешный результат выполнения команды, который был сформирован
+     */
+    static DatabaseCommandResult keyValues(List<byte[]> keysAndValues) {
+
+        return new KeyValuesDatabaseCommandResult(keysAndValues);
+    }
+
     /**
      * Формирует зафейленный результат команды, при выполнении которой произошла ошибка.
      *
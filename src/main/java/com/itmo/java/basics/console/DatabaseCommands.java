@@ -20,7 +20,8 @@ public enum DatabaseCommands {
         @Override
         public DatabaseCommand getCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
 
-            return new CreateDatabaseCommand(env, DatabaseImpl::create, commandArgs);
+            return new CreateDatabaseCommand(env,
+                    (dbName, dbRoot) -> DatabaseImpl.create(dbName, dbRoot, env.getConfig()), commandArgs);
         }
     },
     CREATE_TABLE {
@@ -50,6 +51,48 @@ public enum DatabaseCommands {
 
             return new DeleteKeyCommand(env, commandArgs);
         }
+    },
+    GET_TABLE_STATS {
+        @Override
+        public DatabaseCommand getCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+            return new GetTableStatsCommand(env, commandArgs);
+        }
+    },
+    SCAN {
+        @Override
+        public DatabaseCommand getCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+            return new ScanCommand(env, commandArgs);
+        }
+    },
+    RANGE {
+        @Override
+        public DatabaseCommand getCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+            return new RangeCommand(env, commandArgs);
+        }
+    },
+    PREFIX {
+        @Override
+        public DatabaseCommand getCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+            return new PrefixCommand(env, commandArgs);
+        }
+    },
+    EXPIRE {
+        @Override
+        public DatabaseCommand getCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+            return new ExpireCommand(env, commandArgs);
+        }
+    },
+    SNAPSHOT {
+        @Override
+        public DatabaseCommand getCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+            return new SnapshotCommand(env, commandArgs);
+        }
     };
 
     /**
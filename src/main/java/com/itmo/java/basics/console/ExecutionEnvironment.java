@@ -1,5 +1,6 @@
 package com.itmo.java.basics.console;
 
+import com.itmo.java.basics.config.DatabaseConfig;
 import com.itmo.java.basics.index.impl.EnvironmentIndex;
 import com.itmo.java.basics.logic.Database;
 
@@ -12,6 +13,11 @@ public interface ExecutionEnvironment {
      */
     Path getWorkingPath();
 
+    /**
+     * @return конфигурация, с которой создаются и инициализируются базы данных
+     */
+    DatabaseConfig getConfig();
+
     /**
      * Возвращает {@code Optional<Database>} или {@code Optional#EMPTY}.
      *
@@ -1,5 +1,6 @@
 package com.itmo.java.basics.console.impl;
 
+import com.itmo.java.basics.config.TableEngine;
 import com.itmo.java.basics.console.DatabaseCommand;
 import com.itmo.java.basics.console.DatabaseCommandArgPositions;
 import com.itmo.java.basics.console.DatabaseCommandResult;
@@ -10,6 +11,7 @@ import com.itmo.java.protocol.model.RespObject;
 
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 /**
@@ -28,7 +30,8 @@ public class CreateTableCommand implements DatabaseCommand {
      *
      * @param env         env
      * @param commandArgs аргументы для создания (порядок - {@link DatabaseCommandArgPositions}.
-     *                    Id команды, имя команды, имя бд, имя таблицы
+     *                    Id команды, имя команды, имя бд, имя таблицы и, необязательно, способ хранения
+     *                    ({@link TableEngine}, по умолчанию {@link TableEngine#HASH})
      * @throws IllegalArgumentException если передано неправильное количество аргументов
      */
     public CreateTableCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
@@ -62,13 +65,22 @@ public class CreateTableCommand implements DatabaseCommand {
         try {
             String dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
             String tbName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
+            TableEngine engine = TableEngine.HASH;
+            if (commandArgs.size() > DatabaseCommandArgPositions.TABLE_ENGINE.getPositionIndex()) {
+                String engineName = commandArgs.get(DatabaseCommandArgPositions.TABLE_ENGINE.getPositionIndex()).asString();
+                try {
+                    engine = TableEngine.valueOf(engineName.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    return DatabaseCommandResult.error("Database Exception: unknown table engine " + engineName);
+                }
+            }
 
             Optional<Database> db = env.getDatabase(dbName);
             if (db.isEmpty()) {
                 return DatabaseCommandResult.error("Database Exception: database " + dbName + " is not exist");
             }
 
-            db.get().createTableIfNotExists(tbName);
+            db.get().createTableIfNotExists(tbName, engine);
 
             return DatabaseCommandResult.success(
                     ("Table " + tbName + " was created successfully").getBytes(StandardCharsets.UTF_8));
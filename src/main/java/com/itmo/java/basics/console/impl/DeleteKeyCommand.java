@@ -8,7 +8,6 @@ import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.logic.Database;
 import com.itmo.java.protocol.model.RespObject;
 
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 
@@ -62,7 +61,7 @@ public class DeleteKeyCommand implements DatabaseCommand {
         try {
             String dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
             String tbName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
-            String key = commandArgs.get(DatabaseCommandArgPositions.KEY.getPositionIndex()).asString();
+            byte[] key = commandArgs.get(DatabaseCommandArgPositions.KEY.getPositionIndex()).asBytes();
 
             Optional<Database> db = env.getDatabase(dbName);
             if (db.isEmpty()) {
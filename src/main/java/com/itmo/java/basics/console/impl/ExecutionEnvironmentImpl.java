@@ -30,4 +30,9 @@ public class ExecutionEnvironmentImpl implements ExecutionEnvironment {
     public Path getWorkingPath() {
         return Path.of(config.getWorkingPath());
     }
+
+    @Override
+    public DatabaseConfig getConfig() {
+        return config;
+    }
 }
\ No newline at end of file
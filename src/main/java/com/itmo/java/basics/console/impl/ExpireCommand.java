@@ -0,0 +1,108 @@
+package com.itmo.java.basics.console.impl;
+
+import com.itmo.java.basics.console.DatabaseCommand;
+import com.itmo.java.basics.console.DatabaseCommandArgPositions;
+import com.itmo.java.basics.console.DatabaseCommandResult;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.protocol.model.RespObject;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Команда для назначения срока жизни существующему ключу
+ */
+public class ExpireCommand implements DatabaseCommand {
+
+    private final ExecutionEnvironment env;
+    private final List<RespObject> commandArgs;
+    private static final int REQUIRED_ARGUMENTS = 6;
+
+    /**
+     * Создает команду.
+     * <br/>
+     * Обратите внимание, что в конструкторе нет логики проверки валидности данных. Не проверяется, можно ли исполнить команду. Только формальные признаки (например, количество переданных значений или ненуловость объектов
+     *
+     * @param env         env
+     * @param commandArgs аргументы для создания (порядок - {@link DatabaseCommandArgPositions}.
+     *                    Id команды, имя команды, имя бд, таблицы, ключ, срок жизни в секундах
+     * @throws IllegalArgumentException если передано неправильное количество аргументов
+     */
+    public ExpireCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+        if (commandArgs == null) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments is null");
+        }
+
+        if (commandArgs.size() < REQUIRED_ARGUMENTS) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments number is wrong");
+        }
+
+        for (RespObject commandArg : commandArgs) {
+            if (commandArg == null) {
+                throw new IllegalArgumentException("Illegal Argument Exception: one of command arguments is null");
+            }
+        }
+
+        this.env = env;
+        this.commandArgs = commandArgs;
+    }
+
+    /**
+     * Назначает ключу срок жизни: через столько секунд ключ перестает читаться
+     * (см {@link Database#expire(String, byte[], long)})
+     *
+     * @return {@link DatabaseCommandResult#success(byte[])} c текущим значением ключа или null, если ключа нет
+     * (тогда срок не назначается)
+     */
+    @Override
+    public DatabaseCommandResult execute() {
+
+        try {
+            String dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
+            String tbName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
+            byte[] key = commandArgs.get(DatabaseCommandArgPositions.KEY.getPositionIndex()).asBytes();
+            String requested = commandArgs.get(DatabaseCommandArgPositions.SECONDS.getPositionIndex()).asString();
+
+            long seconds = parseSeconds(requested);
+            if (seconds <= 0) {
+                return DatabaseCommandResult.error("Illegal Argument Exception: seconds " + requested + " is not a positive number");
+            }
+
+            Optional<Database> db = env.getDatabase(dbName);
+            if (db.isEmpty()) {
+                return DatabaseCommandResult.error("Database Exception: database " + dbName + " is not exist");
+            }
+
+            Optional<byte[]> value = db.get().expire(tbName, key, expiresAt(seconds));
+
+            return DatabaseCommandResult.success(value.isEmpty() ? null : value.get());
+        } catch (DatabaseException e) {
+            return DatabaseCommandResult.error(e);
+        }
+    }
+
+    /**
+     * @return число секунд из аргумента, 0 - если это не число
+     */
+    static long parseSeconds(String requested) {
+        try {
+            return Long.parseLong(requested);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return момент через {@code seconds} секунд от текущего, в миллисекундах от начала эпохи
+     * (слишком далекий срок - {@link Long#MAX_VALUE})
+     */
+    static long expiresAt(long seconds) {
+        long millis = TimeUnit.SECONDS.toMillis(seconds);
+        long now = System.currentTimeMillis();
+        return millis > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + millis;
+    }
+}
@@ -6,9 +6,9 @@ import com.itmo.java.basics.console.DatabaseCommandResult;
 import com.itmo.java.basics.console.ExecutionEnvironment;
 import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.StoredValue;
 import com.itmo.java.protocol.model.RespObject;
 
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 
@@ -54,6 +54,9 @@ public class GetKeyCommand implements DatabaseCommand {
     /**
      * Читает значение по ключу
      *
+     * Значения не меньше {@link com.itmo.java.basics.config.DatabaseConfig#getZeroCopyThreshold()} байт
+     * не читаются в память: результат передает их клиенту прямо из файла (см {@link DatabaseCommandResult#success(StoredValue)})
+     *
      * @return {@link DatabaseCommandResult#success(byte[])} с прочитанным значением. Например, "previous". Null, если такого нет
      */
     @Override
@@ -62,13 +65,20 @@ public class GetKeyCommand implements DatabaseCommand {
         try {
             String dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
             String tbName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
-            String key = commandArgs.get(DatabaseCommandArgPositions.KEY.getPositionIndex()).asString();
+            byte[] key = commandArgs.get(DatabaseCommandArgPositions.KEY.getPositionIndex()).asBytes();
 
             Optional<Database> db = env.getDatabase(dbName);
             if (db.isEmpty()) {
                 return DatabaseCommandResult.error("Database Exception: database " + dbName + " is not exist");
             }
 
+            int zeroCopyThreshold = env.getConfig().getZeroCopyThreshold();
+            if (zeroCopyThreshold > 0) {
+                Optional<StoredValue> value = db.get().readStored(tbName, key, zeroCopyThreshold);
+
+                return DatabaseCommandResult.success(value.orElse(null));
+            }
+
             Optional<byte[]> value = db.get().read(tbName, key);
 
             return DatabaseCommandResult.success(value.isEmpty() ? null : value.get());
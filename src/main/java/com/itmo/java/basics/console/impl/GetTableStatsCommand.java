@@ -0,0 +1,85 @@
+package com.itmo.java.basics.console.impl;
+
+import com.itmo.java.basics.console.DatabaseCommand;
+import com.itmo.java.basics.console.DatabaseCommandArgPositions;
+import com.itmo.java.basics.console.DatabaseCommandResult;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.protocol.model.RespObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Команда для получения статистики таблицы
+ */
+public class GetTableStatsCommand implements DatabaseCommand {
+
+    private final ExecutionEnvironment env;
+    private final List<RespObject> commandArgs;
+    private static final int REQUIRED_ARGUMENTS = 4;
+
+    /**
+     * Создает команду.
+     * <br/>
+     * Обратите внимание, что в конструкторе нет логики проверки валидности данных. Не проверяется, можно ли исполнить команду. Только формальные признаки (например, количество переданных значений или ненуловость объектов
+     *
+     * @param env         env
+     * @param commandArgs аргументы для создания (порядок - {@link DatabaseCommandArgPositions}.
+     *                    Id команды, имя команды, имя бд, таблицы
+     * @throws IllegalArgumentException если передано неправильное количество аргументов
+     */
+    public GetTableStatsCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+        if (commandArgs == null) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments is null");
+        }
+
+        if (commandArgs.size() < REQUIRED_ARGUMENTS) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments number is wrong");
+        }
+
+        for (RespObject commandArg : commandArgs) {
+            if (commandArg == null) {
+                throw new IllegalArgumentException("Illegal Argument Exception: one of command arguments is null");
+            }
+        }
+
+        this.env = env;
+        this.commandArgs = commandArgs;
+    }
+
+    /**
+     * Собирает статистику таблицы
+     *
+     * @return {@link DatabaseCommandResult#success(byte[])} со строками вида "показатель=значение". Например, "segments=3\nkeys=120"
+     */
+    @Override
+    public DatabaseCommandResult execute() {
+
+        try {
+            String dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
+            String tbName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
+
+            Optional<Database> db = env.getDatabase(dbName);
+            if (db.isEmpty()) {
+                return DatabaseCommandResult.error("Database Exception: database " + dbName + " is not exist");
+            }
+
+            StringBuilder stats = new StringBuilder();
+            for (Map.Entry<String, Long> stat : db.get().getTableStats(tbName).entrySet()) {
+                if (stats.length() > 0) {
+                    stats.append('\n');
+                }
+                stats.append(stat.getKey()).append('=').append(stat.getValue());
+            }
+
+            return DatabaseCommandResult.success(stats.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (DatabaseException e) {
+            return DatabaseCommandResult.error(e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.itmo.java.basics.console.impl;
+
+import com.itmo.java.basics.console.DatabaseCommandResult;
+import com.itmo.java.protocol.model.RespArray;
+import com.itmo.java.protocol.model.RespBulkString;
+import com.itmo.java.protocol.model.RespObject;
+
+import java.util.List;
+
+/**
+ * Результат успешного запроса диапазона ключей: пары ключ-значение по порядку ключей
+ */
+public class KeyValuesDatabaseCommandResult implements DatabaseCommandResult {
+
+    private final List<byte[]> keysAndValues;
+
+    public KeyValuesDatabaseCommandResult(List<byte[]> keysAndValues) {
+
+        this.keysAndValues = keysAndValues;
+    }
+
+    /**
+     * @return сколько пар в результате
+     */
+    @Override
+    public String getPayLoad() {
+
+        return String.valueOf(keysAndValues.size() / 2);
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return true;
+    }
+
+    /**
+     * Сериализуется в {@link RespArray}: ключ, его значение, следующий ключ и так далее
+     */
+    @Override
+    public RespObject serialize() {
+
+        RespObject[] objects = new RespObject[keysAndValues.size()];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = new RespBulkString(keysAndValues.get(i));
+        }
+        return new RespArray(objects);
+    }
+}
@@ -0,0 +1,64 @@
+package com.itmo.java.basics.console.impl;
+
+import com.itmo.java.basics.console.DatabaseCommand;
+import com.itmo.java.basics.console.DatabaseCommandArgPositions;
+import com.itmo.java.basics.console.DatabaseCommandResult;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.logic.Table;
+import com.itmo.java.protocol.model.RespObject;
+
+import java.util.List;
+
+/**
+ * Команда для получения пар с ключами, которые начинаются с префикса, по порядку ключей
+ */
+public class PrefixCommand implements DatabaseCommand {
+
+    private final ExecutionEnvironment env;
+    private final List<RespObject> commandArgs;
+    private static final int REQUIRED_ARGUMENTS = 5;
+
+    /**
+     * Создает команду.
+     * <br/>
+     * Обратите внимание, что в конструкторе нет логики проверки валидности данных. Не проверяется, можно ли исполнить команду. Только формальные признаки (например, количество переданных значений или ненуловость объектов
+     *
+     * @param env         env
+     * @param commandArgs аргументы для создания (порядок - {@link DatabaseCommandArgPositions}.
+     *                    Id команды, имя команды, имя бд, таблицы, префикс и, необязательно, сколько пар вернуть
+     * @throws IllegalArgumentException если передано неправильное количество аргументов
+     */
+    public PrefixCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+        if (commandArgs == null) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments is null");
+        }
+
+        if (commandArgs.size() < REQUIRED_ARGUMENTS) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments number is wrong");
+        }
+
+        for (RespObject commandArg : commandArgs) {
+            if (commandArg == null) {
+                throw new IllegalArgumentException("Illegal Argument Exception: one of command arguments is null");
+            }
+        }
+
+        this.env = env;
+        this.commandArgs = commandArgs;
+    }
+
+    /**
+     * Возвращает пары с ключами, которые начинаются с префикса, так же, как {@link RangeCommand}
+     * возвращает диапазон от префикса до {@link Table#prefixEnd(byte[])}
+     *
+     * @return {@link DatabaseCommandResult#keyValues(List)} с парами по порядку ключей
+     */
+    @Override
+    public DatabaseCommandResult execute() {
+
+        byte[] prefix = commandArgs.get(DatabaseCommandArgPositions.PREFIX.getPositionIndex()).asBytes();
+        return RangeCommand.readRange(env, commandArgs, prefix, Table.prefixEnd(prefix),
+                DatabaseCommandArgPositions.PREFIX_LIMIT.getPositionIndex());
+    }
+}
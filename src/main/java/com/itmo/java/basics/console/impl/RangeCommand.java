@@ -0,0 +1,120 @@
+package com.itmo.java.basics.console.impl;
+
+import com.itmo.java.basics.console.DatabaseCommand;
+import com.itmo.java.basics.console.DatabaseCommandArgPositions;
+import com.itmo.java.basics.console.DatabaseCommandResult;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.Table;
+import com.itmo.java.protocol.model.RespObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Команда для получения пар с ключами из диапазона по порядку ключей
+ */
+public class RangeCommand implements DatabaseCommand {
+
+    private final ExecutionEnvironment env;
+    private final List<RespObject> commandArgs;
+    private static final int REQUIRED_ARGUMENTS = 6;
+    private static final int DEFAULT_LIMIT = 100;
+
+    /**
+     * Создает команду.
+     * <br/>
+     * Обратите внимание, что в конструкторе нет логики проверки валидности данных. Не проверяется, можно ли исполнить команду. Только формальные признаки (например, количество переданных значений или ненуловость объектов
+     *
+     * @param env         env
+     * @param commandArgs аргументы для создания (порядок - {@link DatabaseCommandArgPositions}.
+     *                    Id команды, имя команды, имя бд, таблицы, первый ключ, ключ сразу за диапазоном
+     *                    (пустой - до конца таблицы) и, необязательно, сколько пар вернуть
+     * @throws IllegalArgumentException если передано неправильное количество аргументов
+     */
+    public RangeCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+        if (commandArgs == null) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments is null");
+        }
+
+        if (commandArgs.size() < REQUIRED_ARGUMENTS) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments number is wrong");
+        }
+
+        for (RespObject commandArg : commandArgs) {
+            if (commandArg == null) {
+                throw new IllegalArgumentException("Illegal Argument Exception: one of command arguments is null");
+            }
+        }
+
+        this.env = env;
+        this.commandArgs = commandArgs;
+    }
+
+    /**
+     * Возвращает пары с ключами из {@code [первый ключ, ключ за диапазоном)} по возрастанию ключей (как байты
+     * без знака): не больше запрошенного числа пар (по умолчанию 100) и не больше
+     * {@link com.itmo.java.basics.config.DatabaseConfig#getScanPageBytes()} байт. Чтобы получить следующие,
+     * нужно повторить запрос с ключа сразу за последним полученным (он же с добавленным нулевым байтом)
+     *
+     * @return {@link DatabaseCommandResult#keyValues(List)} с парами по порядку ключей
+     */
+    @Override
+    public DatabaseCommandResult execute() {
+
+        byte[] fromKey = commandArgs.get(DatabaseCommandArgPositions.FROM_KEY.getPositionIndex()).asBytes();
+        byte[] toKey = commandArgs.get(DatabaseCommandArgPositions.TO_KEY.getPositionIndex()).asBytes();
+        return readRange(env, commandArgs, fromKey, toKey.length == 0 ? null : toKey,
+                DatabaseCommandArgPositions.RANGE_LIMIT.getPositionIndex());
+    }
+
+    /**
+     * Читает диапазон из таблицы, указанной в аргументах команды (см {@link Table#range(byte[], byte[], Table.ScanConsumer)})
+     *
+     * @param limitPosition где в аргументах необязательное число пар
+     */
+    static DatabaseCommandResult readRange(ExecutionEnvironment env, List<RespObject> commandArgs, byte[] fromKey,
+                                           byte[] toKey, int limitPosition) {
+
+        try {
+            String dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
+            String tbName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
+
+            int limit = DEFAULT_LIMIT;
+            if (commandArgs.size() > limitPosition) {
+                String requested = commandArgs.get(limitPosition).asString();
+                try {
+                    limit = Integer.parseInt(requested);
+                } catch (NumberFormatException e) {
+                    limit = 0;
+                }
+                if (limit <= 0) {
+                    return DatabaseCommandResult.error("Illegal Argument Exception: limit " + requested + " is not a positive number");
+                }
+            }
+
+            Optional<Database> db = env.getDatabase(dbName);
+            if (db.isEmpty()) {
+                return DatabaseCommandResult.error("Database Exception: database " + dbName + " is not exist");
+            }
+
+            int pairsLimit = limit;
+            long bytesLimit = env.getConfig().getScanPageBytes();
+            List<byte[]> keysAndValues = new ArrayList<>();
+            long[] bytes = {0};
+            db.get().range(tbName, fromKey, toKey, (key, value) -> {
+                keysAndValues.add(key);
+                keysAndValues.add(value);
+                bytes[0] += key.length + value.length;
+                return keysAndValues.size() / 2 < pairsLimit && bytes[0] < bytesLimit;
+            });
+
+            return DatabaseCommandResult.keyValues(keysAndValues);
+        } catch (DatabaseException e) {
+            return DatabaseCommandResult.error(e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.itmo.java.basics.console.impl;
+
+import com.itmo.java.basics.console.DatabaseCommand;
+import com.itmo.java.basics.console.DatabaseCommandArgPositions;
+import com.itmo.java.basics.console.DatabaseCommandResult;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.Table;
+import com.itmo.java.protocol.model.RespObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Команда для постраничного обхода таблицы по курсору
+ */
+public class ScanCommand implements DatabaseCommand {
+
+    private final ExecutionEnvironment env;
+    private final List<RespObject> commandArgs;
+    private static final int REQUIRED_ARGUMENTS = 5;
+    private static final int DEFAULT_COUNT = 10;
+
+    /**
+     * Создает команду.
+     * <br/>
+     * Обратите внимание, что в конструкторе нет логики проверки валидности данных. Не проверяется, можно ли исполнить команду. Только формальные признаки (например, количество переданных значений или ненуловость объектов
+     *
+     * @param env         env
+     * @param commandArgs аргументы для создания (порядок - {@link DatabaseCommandArgPositions}.
+     *                    Id команды, имя команды, имя бд, таблицы, курсор и, необязательно, сколько пар вернуть
+     * @throws IllegalArgumentException если передано неправильное количество аргументов
+     */
+    public ScanCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+        if (commandArgs == null) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments is null");
+        }
+
+        if (commandArgs.size() < REQUIRED_ARGUMENTS) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments number is wrong");
+        }
+
+        for (RespObject commandArg : commandArgs) {
+            if (commandArg == null) {
+                throw new IllegalArgumentException("Illegal Argument Exception: one of command arguments is null");
+            }
+        }
+
+        this.env = env;
+        this.commandArgs = commandArgs;
+    }
+
+    /**
+     * Возвращает следующую страницу обхода: не больше запрошенного числа пар (по умолчанию 10) и не больше
+     * {@link com.itmo.java.basics.config.DatabaseConfig#getScanPageBytes()} байт. Обход начинается с курсора "0"
+     * и закончен, когда в ответе снова курсор "0" (см {@link Table#scan(String, Table.ScanConsumer)})
+     *
+     * @return {@link DatabaseCommandResult#scanPage(String, List)} с курсором и парами страницы
+     */
+    @Override
+    public DatabaseCommandResult execute() {
+
+        try {
+            String dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
+            String tbName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
+            String cursor = commandArgs.get(DatabaseCommandArgPositions.CURSOR.getPositionIndex()).asString();
+
+            int count = DEFAULT_COUNT;
+            int countPosition = DatabaseCommandArgPositions.COUNT.getPositionIndex();
+            if (commandArgs.size() > countPosition) {
+                String requested = commandArgs.get(countPosition).asString();
+                try {
+                    count = Integer.parseInt(requested);
+                } catch (NumberFormatException e) {
+                    count = 0;
+                }
+                if (count <= 0) {
+                    return DatabaseCommandResult.error("Illegal Argument Exception: count " + requested + " is not a positive number");
+                }
+            }
+
+            Optional<Database> db = env.getDatabase(dbName);
+            if (db.isEmpty()) {
+                return DatabaseCommandResult.error("Database Exception: database " + dbName + " is not exist");
+            }
+
+            int pageCount = count;
+            long pageBytes = env.getConfig().getScanPageBytes();
+            List<byte[]> keysAndValues = new ArrayList<>();
+            long[] bytes = {0};
+            String next = db.get().scan(tbName, cursor, (key, value) -> {
+                keysAndValues.add(key);
+                keysAndValues.add(value);
+                bytes[0] += key.length + value.length;
+                return keysAndValues.size() / 2 < pageCount && bytes[0] < pageBytes;
+            });
+
+            return DatabaseCommandResult.scanPage(next, keysAndValues);
+        } catch (DatabaseException e) {
+            return DatabaseCommandResult.error(e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.itmo.java.basics.console.impl;
+
+import com.itmo.java.basics.console.DatabaseCommandResult;
+import com.itmo.java.protocol.model.RespArray;
+import com.itmo.java.protocol.model.RespBulkString;
+import com.itmo.java.protocol.model.RespObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Результат успешного обхода таблицы: курсор для следующей страницы и пары ключ-значение этой страницы
+ */
+public class ScanDatabaseCommandResult implements DatabaseCommandResult {
+
+    private final String cursor;
+    private final List<byte[]> keysAndValues;
+
+    public ScanDatabaseCommandResult(String cursor, List<byte[]> keysAndValues) {
+
+        this.cursor = cursor;
+        this.keysAndValues = keysAndValues;
+    }
+
+    /**
+     * @return курсор, с которого продолжить обход
+     */
+    @Override
+    public String getPayLoad() {
+
+        return cursor;
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return true;
+    }
+
+    /**
+     * Сериализуется, как ответ SCAN в Redis, в {@link RespArray} из курсора и массива страницы:
+     * ключ, его значение, следующий ключ и так далее
+     */
+    @Override
+    public RespObject serialize() {
+
+        RespObject[] page = new RespObject[keysAndValues.size()];
+        for (int i = 0; i < page.length; i++) {
+            page[i] = new RespBulkString(keysAndValues.get(i));
+        }
+        return new RespArray(new RespBulkString(cursor.getBytes(StandardCharsets.UTF_8)), new RespArray(page));
+    }
+}
@@ -8,7 +8,6 @@ import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.logic.Database;
 import com.itmo.java.protocol.model.RespObject;
 
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,7 +28,8 @@ public class SetKeyCommand implements DatabaseCommand {
      *
      * @param env         env
      * @param commandArgs аргументы для создания (порядок - {@link DatabaseCommandArgPositions}.
-     *                    Id команды, имя команды, имя бд, таблицы, ключ, значение
+     *                    Id команды, имя команды, имя бд, таблицы, ключ, значение и, необязательно, срок жизни
+     *                    в секундах
      * @throws IllegalArgumentException если передано неправильное количество аргументов
      */
     public SetKeyCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
@@ -53,7 +53,8 @@ public class SetKeyCommand implements DatabaseCommand {
     }
 
     /**
-     * Записывает значение
+     * Записывает значение. Если передан срок жизни, ключ перестает читаться через столько секунд
+     * (см {@link Database#write(String, byte[], byte[], long)})
      *
      * @return {@link DatabaseCommandResult#success(byte[])} c предыдущим значением. Например, "previous" или null, если такого не было
      */
@@ -63,8 +64,17 @@ public class SetKeyCommand implements DatabaseCommand {
         try {
             String dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
             String tbName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
-            String key = commandArgs.get(DatabaseCommandArgPositions.KEY.getPositionIndex()).asString();
-            String value = commandArgs.get(DatabaseCommandArgPositions.VALUE.getPositionIndex()).asString();
+            byte[] key = commandArgs.get(DatabaseCommandArgPositions.KEY.getPositionIndex()).asBytes();
+            byte[] value = commandArgs.get(DatabaseCommandArgPositions.VALUE.getPositionIndex()).asBytes();
+
+            long ttlSeconds = 0;
+            if (commandArgs.size() > DatabaseCommandArgPositions.TTL.getPositionIndex()) {
+                String requested = commandArgs.get(DatabaseCommandArgPositions.TTL.getPositionIndex()).asString();
+                ttlSeconds = ExpireCommand.parseSeconds(requested);
+                if (ttlSeconds <= 0) {
+                    return DatabaseCommandResult.error("Illegal Argument Exception: ttl " + requested + " is not a positive number");
+                }
+            }
 
             Optional<Database> db = env.getDatabase(dbName);
             if (db.isEmpty()) {
@@ -72,7 +82,11 @@ public class SetKeyCommand implements DatabaseCommand {
             }
 
             Optional<byte[]> prev = db.get().read(tbName, key);
-            db.get().write(tbName, key, value.getBytes(StandardCharsets.UTF_8));
+            if (ttlSeconds > 0) {
+                db.get().write(tbName, key, value, ExpireCommand.expiresAt(ttlSeconds));
+            } else {
+                db.get().write(tbName, key, value);
+            }
 
             return DatabaseCommandResult.success(prev.isEmpty() ? null : prev.get());
         } catch (DatabaseException e) {
@@ -0,0 +1,108 @@
+package com.itmo.java.basics.console.impl;
+
+import com.itmo.java.basics.console.DatabaseCommand;
+import com.itmo.java.basics.console.DatabaseCommandArgPositions;
+import com.itmo.java.basics.console.DatabaseCommandResult;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.io.DatabaseSnapshot;
+import com.itmo.java.protocol.model.RespObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Команда для создания снимка базы или одной ее таблицы
+ */
+public class SnapshotCommand implements DatabaseCommand {
+
+    private final ExecutionEnvironment env;
+    private final List<RespObject> commandArgs;
+    private static final int REQUIRED_ARGUMENTS = 3;
+
+    /**
+     * Создает команду.
+     * <br/>
+     * Обратите внимание, что в конструкторе нет логики проверки валидности данных. Не проверяется, можно ли исполнить команду. Только формальные признаки (например, количество переданных значений или ненуловость объектов
+     *
+     * @param env         env
+     * @param commandArgs аргументы для создания (порядок - {@link DatabaseCommandArgPositions}.
+     *                    Id команды, имя команды, имя бд и, необязательно, имя таблицы
+     * @throws IllegalArgumentException если передано неправильное количество аргументов
+     */
+    public SnapshotCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
+
+        if (commandArgs == null) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments is null");
+        }
+
+        if (commandArgs.size() < REQUIRED_ARGUMENTS) {
+            throw new IllegalArgumentException("Illegal Argument Exception: command arguments number is wrong");
+        }
+
+        for (RespObject commandArg : commandArgs) {
+            if (commandArg == null) {
+                throw new IllegalArgumentException("Illegal Argument Exception: one of command arguments is null");
+            }
+        }
+
+        this.env = env;
+        this.commandArgs = commandArgs;
+    }
+
+    /**
+     * Создает в {@link com.itmo.java.basics.config.DatabaseConfig#getSnapshotPath()} папку нового снимка и снимает
+     * в нее базу или таблицу (см {@link Database#snapshot(Path)}). Чтобы восстановиться из снимка, сервер
+     * запускается с этой папкой в качестве рабочей
+     *
+     * @return {@link DatabaseCommandResult#success(byte[])} с путем до папки снимка
+     */
+    @Override
+    public DatabaseCommandResult execute() {
+
+        try {
+            String dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
+
+            Optional<Database> db = env.getDatabase(dbName);
+            if (db.isEmpty()) {
+                return DatabaseCommandResult.error("Database Exception: database " + dbName + " is not exist");
+            }
+
+            Path snapshotsRoot = Path.of(env.getConfig().getSnapshotPath());
+            Path snapshotPath;
+            try {
+                snapshotPath = DatabaseSnapshot.createDirectory(snapshotsRoot);
+            } catch (IOException e) {
+                return DatabaseCommandResult.error("IO exception when trying to create snapshot directory in " + snapshotsRoot);
+            }
+
+            try {
+                if (commandArgs.size() > DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()) {
+                    String tbName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
+                    db.get().snapshot(snapshotPath, tbName);
+                } else {
+                    db.get().snapshot(snapshotPath);
+                }
+            } catch (DatabaseException e) {
+                deleteQuietly(snapshotPath);
+                throw e;
+            }
+
+            return DatabaseCommandResult.success(snapshotPath.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (DatabaseException e) {
+            return DatabaseCommandResult.error(e);
+        }
+    }
+
+    private static void deleteQuietly(Path snapshotPath) {
+        try {
+            DatabaseSnapshot.delete(snapshotPath);
+        } catch (IOException e) {
+            // недоснятый снимок останется, но путь до него не возвращается
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.itmo.java.basics.console.impl;
+
+import com.itmo.java.basics.console.DatabaseCommandResult;
+import com.itmo.java.basics.logic.StoredValue;
+import com.itmo.java.protocol.model.RespObject;
+import com.itmo.java.protocol.model.RespStreamedBulkString;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Результат успешной команды, значение которого лежит в файле (см {@link StoredValue#isRegion()}).
+ * Участок файла возвращается ридеру, когда результат записан в канал или прочитан в память. Результат,
+ * который так и не понадобился, нужно закрыть: иначе ридер сегмента не освободит файл
+ */
+public class StoredValueDatabaseCommandResult implements DatabaseCommandResult, Closeable {
+
+    private final RespStreamedBulkString payload;
+
+    public StoredValueDatabaseCommandResult(StoredValue value) {
+
+        this.payload = new RespStreamedBulkString(value.length(), new RespStreamedBulkString.Content() {
+            @Override
+            public void transferTo(WritableByteChannel target) throws IOException {
+                value.transferTo(target);
+            }
+
+            @Override
+            public void close() throws IOException {
+                value.close();
+            }
+        });
+    }
+
+    /**
+     * Читает значение из файла в память
+     */
+    @Override
+    public String getPayLoad() {
+
+        return payload.asString();
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return true;
+    }
+
+    /**
+     * Сериализуется в {@link RespStreamedBulkString}: записанная в канал, она передает значение из файла
+     * без копирования в память, после чего закрывает файл
+     */
+    @Override
+    public RespObject serialize() {
+
+        return payload;
+    }
+
+    /**
+     * Возвращает участок файла, если значение так и не передали
+     */
+    @Override
+    public void close() throws IOException {
+
+        payload.close();
+    }
+}
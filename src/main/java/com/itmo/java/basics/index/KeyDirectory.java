@@ -0,0 +1,101 @@
+package com.itmo.java.basics.index;
+
+import com.itmo.java.basics.config.IndexMode;
+import com.itmo.java.basics.index.impl.HashKeyDirectory;
+import com.itmo.java.basics.index.impl.OffHeapKeyDirectory;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Каталог ключей таблицы: ключ (байты, как они лежат в записи) - где лежит его последняя запись ({@link RecordLocation}).
+ * Изменения атомарны по одному ключу, чтение идет без блокировок.
+ */
+public interface KeyDirectory {
+    /**
+     * Номер сегмента, которого нет
+     */
+    int NO_SEGMENT = -1;
+
+    /**
+     * Создает пустой каталог, который хранит ключи так, как указано в {@code mode}
+     */
+    static KeyDirectory create(IndexMode mode) {
+        return mode == IndexMode.HASHES ? new HashKeyDirectory() : new OffHeapKeyDirectory();
+    }
+
+    /**
+     * Ищет место последней записи по ключу. Если ключи в каталоге не хранятся, а хеш ключа совпал у нескольких
+     * записей, нужная находится сверкой через {@code verifier}. Единственное совпадение по хешу возвращается
+     * без сверки: ключ все равно сверяется при чтении записи.
+     *
+     * @param key      ключ
+     * @param verifier сверяет ключ записи на диске
+     * @return место записи
+     * @throws IOException если запись не удалось прочитать при сверке
+     */
+    Optional<RecordLocation> lookup(byte[] key, KeyVerifier verifier) throws IOException;
+
+    /**
+     * Запоминает, где лежит последняя запись по ключу.
+     *
+     * @param key      ключ
+     * @param location место новой записи
+     * @param verifier сверяет ключ записи на диске, если ключи в каталоге не хранятся
+     * @return где лежала предыдущая запись по ключу
+     * @throws IOException если запись не удалось прочитать при сверке
+     */
+    Optional<RecordLocation> update(byte[] key, RecordLocation location, KeyVerifier verifier) throws IOException;
+
+    /**
+     * @return {@code true} - если ключ сейчас указывает именно на эту запись. Сверка с диском не нужна:
+     * место однозначно определяет запись
+     */
+    boolean pointsTo(byte[] key, RecordLocation location);
+
+    /**
+     * Атомарно заменяет место записи по ключу, только если сейчас ключ указывает на {@code expected}.
+     *
+     * @return {@code true} - если место заменилось
+     */
+    boolean replace(byte[] key, RecordLocation expected, RecordLocation location);
+
+    /**
+     * Атомарно удаляет ключ, только если сейчас он указывает на {@code expected}.
+     *
+     * @return {@code true} - если ключ удалился
+     */
+    boolean remove(byte[] key, RecordLocation expected);
+
+    /**
+     * @return {@code true} - если ключи хранятся целиком и {@link #lookup} никогда не находит чужую запись
+     */
+    boolean storesKeys();
+
+    /**
+     * @return сколько ключей в каталоге
+     */
+    int size();
+
+    /**
+     * Обходит места всех записей каталога. Параллельные изменения могут быть как видны, так и нет.
+     */
+    void forEachLocation(Consumer<? super RecordLocation> action);
+
+    /**
+     * @return сколько байт занимает каталог
+     */
+    long sizeInBytes();
+
+    /**
+     * Сверяет ключ записи, лежащей по указанному месту
+     */
+    interface KeyVerifier {
+        /**
+         * @return {@code true} - если по этому месту лежит запись с этим ключом
+         * @throws IOException если запись не удалось прочитать
+         */
+        boolean hasKey(byte[] key, RecordLocation location) throws IOException;
+    }
+}
@@ -0,0 +1,55 @@
+package com.itmo.java.basics.index;
+
+/**
+ * Где лежит последняя запись по ключу: номер сегмента в таблице, сдвиг записи в нем и ее размер.
+ * <p>
+ * Запись однозначно определяется сегментом и сдвигом, поэтому только они участвуют в сравнении.
+ * Размер - подсказка для чтения (сколько байт читать сразу), 0 - если он неизвестен
+ * (например, индекс восстановлен из hint-файла или хранит только хеши ключей).
+ */
+public final class RecordLocation implements SegmentOffsetInfo {
+    private final int segmentId;
+    private final long offset;
+    private final int recordSize;
+
+    public RecordLocation(int segmentId, long offset, int recordSize) {
+        this.segmentId = segmentId;
+        this.offset = offset;
+        this.recordSize = recordSize;
+    }
+
+    public int getSegmentId() {
+        return segmentId;
+    }
+
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RecordLocation)) {
+            return false;
+        }
+        RecordLocation that = (RecordLocation) o;
+        return segmentId == that.segmentId && offset == that.offset;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * segmentId + Long.hashCode(offset);
+    }
+
+    @Override
+    public String toString() {
+        return segmentId + ":" + offset;
+    }
+}
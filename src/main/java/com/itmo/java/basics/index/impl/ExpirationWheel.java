@@ -0,0 +1,97 @@
+package com.itmo.java.basics.index.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ключи со сроком жизни на хешированном колесе таймеров: время делится на тики по {@code tickMillis},
+ * ключ попадает в ячейку первого тика не раньше своего срока (номер тика по модулю числа ячеек).
+ * Добавление - за константу, а продвижение колеса смотрит только ячейки прошедших тиков.
+ * Ключ со сроком больше одного оборота колеса лежит в своей ячейке, пока до него не дойдет очередь.
+ * <p>
+ * Колесо не следит за перезаписью ключей: по одному ключу может лежать несколько сроков, и получатель
+ * истекших ключей сам проверяет, истек ли срок у последней записи. Все методы синхронизированы.
+ */
+public class ExpirationWheel {
+    private final long tickMillis;
+    private final List<List<Entry>> slots;
+    /**
+     * Последний тик, ячейка которого уже разобрана
+     */
+    private long processedTick;
+    private int size;
+
+    /**
+     * @param tickMillis длина тика
+     * @param slotCount  число ячеек
+     * @param nowMillis  текущее время: с него колесо начинает отсчет
+     */
+    public ExpirationWheel(long tickMillis, int slotCount, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.processedTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Запоминает срок ключа. Уже истекший срок выдается при следующем продвижении колеса
+     */
+    public synchronized void add(byte[] key, long expiresAtMillis) {
+        long tick = Math.floorDiv(expiresAtMillis, tickMillis);
+        if (Math.floorMod(expiresAtMillis, tickMillis) != 0) {
+            tick++;
+        }
+        tick = Math.max(tick, processedTick + 1);
+        slots.get(slotOf(tick)).add(new Entry(key, tick));
+        size++;
+    }
+
+    /**
+     * Продвигает колесо до момента {@code nowMillis} и забирает из него ключи, срок которых к этому моменту истек.
+     * Если колесо отстало больше чем на оборот, каждая ячейка разбирается один раз
+     *
+     * @return ключи с истекшим сроком, в порядке ячеек
+     */
+    public synchronized List<byte[]> advance(long nowMillis) {
+        long nowTick = nowMillis / tickMillis;
+        List<byte[]> expired = new ArrayList<>();
+        for (long tick = Math.max(processedTick + 1, nowTick - slots.size() + 1); tick <= nowTick; tick++) {
+            slots.get(slotOf(tick)).removeIf(entry -> {
+                if (entry.tick > nowTick) {
+                    return false;
+                }
+                expired.add(entry.key);
+                return true;
+            });
+        }
+        processedTick = Math.max(processedTick, nowTick);
+        size -= expired.size();
+        return expired;
+    }
+
+    /**
+     * @return сколько сроков лежит в колесе, включая сроки уже перезаписанных ключей
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private int slotOf(long tick) {
+        return (int) Math.floorMod(tick, (long) slots.size());
+    }
+
+    private static final class Entry {
+        private final byte[] key;
+        /**
+         * Тик, начиная с которого срок истек
+         */
+        private final long tick;
+
+        private Entry(byte[] key, long tick) {
+            this.key = key;
+            this.tick = tick;
+        }
+    }
+}
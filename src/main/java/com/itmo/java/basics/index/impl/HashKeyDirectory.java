@@ -0,0 +1,356 @@
+package com.itmo.java.basics.index.impl;
+
+import com.itmo.java.basics.index.KeyDirectory;
+import com.itmo.java.basics.index.RecordLocation;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Каталог ключей таблицы, который хранит не ключи, а только их 64-битные хеши
+ * ({@link com.itmo.java.basics.config.IndexMode#HASHES}): {@value #SLOT_SIZE} байт на слот независимо от длины ключа.
+ * <p>
+ * Хеш-таблица с открытой адресацией (линейное пробирование) вне кучи, в кусках direct {@link ByteBuffer}.
+ * Слот - два long: хеш ключа (0 - пустой слот) и место записи, упакованное в одно слово: номер сегмента
+ * в старших {@value #SEGMENT_BITS} битах, сдвиг - в младших. Размер записи не хранится.
+ * <p>
+ * Записи с одинаковым хешем лежат в одной цепочке пробирования, а какая из них нужна, решает сверка ключа
+ * записи на диске ({@link KeyVerifier}). При поиске сверка нужна, только если совпадений несколько.
+ * При перезаписи каждое совпадение по хешу сверяется, чтобы не перетереть место чужого ключа.
+ * <p>
+ * Изменения синхронизированы, а чтение идет без блокировок: место записи меняется одной записью слова
+ * (с release-семантикой), а новый слот публикуется записью хеша после места. Удаленный ключ остается в слоте
+ * с местом {@link #REMOVED}, а выбрасывается при перестроении таблицы, которое копирует все в новое состояние.
+ */
+public class HashKeyDirectory implements KeyDirectory {
+    private static final int SLOT_SIZE = 16;
+    private static final int HASH = 0;
+    private static final int LOCATION = 8;
+
+    private static final int SEGMENT_BITS = 24;
+    private static final int OFFSET_BITS = Long.SIZE - SEGMENT_BITS;
+    private static final long MAX_OFFSET = (1L << OFFSET_BITS) - 1;
+    /**
+     * Место удаленного ключа. Номер сегмента из одних единиц поэтому не используется
+     */
+    private static final long REMOVED = -1L;
+    private static final int MAX_SEGMENT_ID = (1 << SEGMENT_BITS) - 2;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int SLOT_CHUNK_BITS = 16;
+    private static final int SLOTS_PER_CHUNK = 1 << SLOT_CHUNK_BITS;
+
+    private static final VarHandle SLOT_LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle KEY_LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private volatile State state = new State(INITIAL_CAPACITY);
+    private volatile int size;
+    /**
+     * Сколько слотов занято, включая удаленные ключи
+     */
+    private int usedSlots;
+
+    @Override
+    public Optional<RecordLocation> lookup(byte[] key, KeyVerifier verifier) throws IOException {
+        long hash = hash(key);
+        State current = state;
+        long first = REMOVED;
+        List<Long> others = null;
+        for (int slot = current.firstSlot(hash); ; slot = current.nextSlot(slot)) {
+            ByteBuffer chunk = current.slotChunk(slot);
+            int base = State.slotBase(slot);
+            long slotHash = (long) SLOT_LONG.getAcquire(chunk, base + HASH);
+            if (slotHash == 0) {
+                break;
+            }
+            if (slotHash != hash) {
+                continue;
+            }
+
+            long location = (long) SLOT_LONG.getAcquire(chunk, base + LOCATION);
+            if (location == REMOVED) {
+                continue;
+            }
+            if (first == REMOVED) {
+                first = location;
+            } else {
+                if (others == null) {
+                    others = new ArrayList<>();
+                }
+                others.add(location);
+            }
+        }
+
+        if (first == REMOVED) {
+            return Optional.empty();
+        }
+        if (others == null) {
+            return Optional.of(unpack(first));
+        }
+        if (verifier.hasKey(key, unpack(first))) {
+            return Optional.of(unpack(first));
+        }
+        for (long location : others) {
+            if (verifier.hasKey(key, unpack(location))) {
+                return Optional.of(unpack(location));
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized Optional<RecordLocation> update(byte[] key, RecordLocation location, KeyVerifier verifier)
+            throws IOException {
+        long packed = pack(location);
+        long hash = hash(key);
+        State current = state;
+        int removedSlot = -1;
+        int slot = current.firstSlot(hash);
+        for (; ; slot = current.nextSlot(slot)) {
+            ByteBuffer chunk = current.slotChunk(slot);
+            int base = State.slotBase(slot);
+            long slotHash = (long) SLOT_LONG.get(chunk, base + HASH);
+            if (slotHash == 0) {
+                break;
+            }
+            if (slotHash != hash) {
+                continue;
+            }
+
+            long previous = (long) SLOT_LONG.get(chunk, base + LOCATION);
+            if (previous == REMOVED) {
+                if (removedSlot < 0) {
+                    removedSlot = slot;
+                }
+            } else if (verifier.hasKey(key, unpack(previous))) {
+                SLOT_LONG.setRelease(chunk, base + LOCATION, packed);
+                return Optional.of(unpack(previous));
+            }
+        }
+
+        if (removedSlot >= 0) {
+            // слот удаленного ключа с тем же хешем: какой это был ключ, уже неважно
+            SLOT_LONG.setRelease(current.slotChunk(removedSlot), State.slotBase(removedSlot) + LOCATION, packed);
+            size++;
+            return Optional.empty();
+        }
+
+        if ((usedSlots + 1) * 3L > current.capacity * 2L) {
+            current = rebuild(current);
+            state = current;
+            slot = current.findEmptySlot(hash);
+        }
+        ByteBuffer chunk = current.slotChunk(slot);
+        int base = State.slotBase(slot);
+        SLOT_LONG.set(chunk, base + LOCATION, packed);
+        SLOT_LONG.setRelease(chunk, base + HASH, hash);
+        usedSlots++;
+        size++;
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean pointsTo(byte[] key, RecordLocation location) {
+        State current = state;
+        return current.findSlot(hash(key), pack(location)) >= 0;
+    }
+
+    @Override
+    public synchronized boolean replace(byte[] key, RecordLocation expected, RecordLocation location) {
+        State current = state;
+        int slot = current.findSlot(hash(key), pack(expected));
+        if (slot < 0) {
+            return false;
+        }
+        SLOT_LONG.setRelease(current.slotChunk(slot), State.slotBase(slot) + LOCATION, pack(location));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(byte[] key, RecordLocation expected) {
+        State current = state;
+        int slot = current.findSlot(hash(key), pack(expected));
+        if (slot < 0) {
+            return false;
+        }
+        SLOT_LONG.setRelease(current.slotChunk(slot), State.slotBase(slot) + LOCATION, REMOVED);
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean storesKeys() {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEachLocation(Consumer<? super RecordLocation> action) {
+        State current = state;
+        for (int slot = 0; slot < current.capacity; slot++) {
+            ByteBuffer chunk = current.slotChunk(slot);
+            int base = State.slotBase(slot);
+            if ((long) SLOT_LONG.getAcquire(chunk, base + HASH) == 0) {
+                continue;
+            }
+            long location = (long) SLOT_LONG.getAcquire(chunk, base + LOCATION);
+            if (location != REMOVED) {
+                action.accept(unpack(location));
+            }
+        }
+    }
+
+    /**
+     * @return сколько байт вне кучи занимают слоты каталога
+     */
+    @Override
+    public long sizeInBytes() {
+        return (long) state.capacity * SLOT_SIZE;
+    }
+
+    /**
+     * Копирует живые слоты в новое состояние, где хватает места еще на один ключ. Удаленные ключи выбрасываются
+     */
+    private State rebuild(State current) {
+        long capacity = INITIAL_CAPACITY;
+        while (capacity < (size + 1) * 2L) {
+            capacity *= 2;
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Key directory is full");
+        }
+
+        State rebuilt = new State((int) capacity);
+        for (int slot = 0; slot < current.capacity; slot++) {
+            ByteBuffer chunk = current.slotChunk(slot);
+            int base = State.slotBase(slot);
+            long hash = (long) SLOT_LONG.get(chunk, base + HASH);
+            long location = (long) SLOT_LONG.get(chunk, base + LOCATION);
+            if (hash == 0 || location == REMOVED) {
+                continue;
+            }
+
+            int target = rebuilt.findEmptySlot(hash);
+            SLOT_LONG.set(rebuilt.slotChunk(target), State.slotBase(target) + LOCATION, location);
+            SLOT_LONG.set(rebuilt.slotChunk(target), State.slotBase(target) + HASH, hash);
+        }
+        usedSlots = size;
+        return rebuilt;
+    }
+
+    private static long pack(RecordLocation location) {
+        if (location.getSegmentId() < 0 || location.getSegmentId() > MAX_SEGMENT_ID
+                || location.getOffset() < 0 || location.getOffset() > MAX_OFFSET) {
+            throw new IllegalArgumentException(String.format("Record location %s does not fit into a hash index slot",
+                    location));
+        }
+        return (long) location.getSegmentId() << OFFSET_BITS | location.getOffset();
+    }
+
+    private static RecordLocation unpack(long location) {
+        return new RecordLocation((int) (location >>> OFFSET_BITS), location & MAX_OFFSET, 0);
+    }
+
+    /**
+     * 64-битный хеш байт ключа: по восемь байт с перемешиванием в духе MurmurHash3 и его finalizer в конце.
+     * 0 зарезервирован под пустой слот
+     */
+    private static long hash(byte[] bytes) {
+        long hash = 0x9e3779b97f4a7c15L ^ bytes.length * 0xc2b2ae3d27d4eb4fL;
+        int i = 0;
+        for (; i + Long.BYTES <= bytes.length; i += Long.BYTES) {
+            hash = Long.rotateLeft(hash ^ mix((long) KEY_LONG.get(bytes, i)), 27) * 0x9e3779b97f4a7c15L + 0x52dce729;
+        }
+        long tail = 0;
+        for (int shift = 0; i < bytes.length; i++, shift += Byte.SIZE) {
+            tail |= (bytes[i] & 0xffL) << shift;
+        }
+        hash ^= mix(tail);
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long mix(long word) {
+        return Long.rotateLeft(word * 0x87c37b91114253d5L, 31) * 0x4cf5ad432745937fL;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        // выравнивание нужно для атомарного доступа к словам слотов через VarHandle
+        return ByteBuffer.allocateDirect(size + Long.BYTES - 1).alignedSlice(Long.BYTES);
+    }
+
+    /**
+     * Буферы каталога. Слоты не меняются после того, как состояние заменили новым
+     */
+    private static final class State {
+        private final int capacity;
+        private final ByteBuffer[] slotChunks;
+
+        private State(int capacity) {
+            this.capacity = capacity;
+            int slotsPerChunk = Math.min(capacity, SLOTS_PER_CHUNK);
+            this.slotChunks = new ByteBuffer[capacity / slotsPerChunk];
+            for (int i = 0; i < slotChunks.length; i++) {
+                slotChunks[i] = allocate(slotsPerChunk * SLOT_SIZE);
+            }
+        }
+
+        private int firstSlot(long hash) {
+            return (int) (hash ^ hash >>> 32) & (capacity - 1);
+        }
+
+        private int nextSlot(int slot) {
+            return (slot + 1) & (capacity - 1);
+        }
+
+        private ByteBuffer slotChunk(int slot) {
+            return slotChunks[slot >>> SLOT_CHUNK_BITS];
+        }
+
+        private static int slotBase(int slot) {
+            return (slot & (SLOTS_PER_CHUNK - 1)) * SLOT_SIZE;
+        }
+
+        /**
+         * @return слот с этим хешем и этим местом записи, -1 - если такого нет
+         */
+        private int findSlot(long hash, long location) {
+            for (int slot = firstSlot(hash); ; slot = nextSlot(slot)) {
+                ByteBuffer chunk = slotChunk(slot);
+                int base = slotBase(slot);
+                long slotHash = (long) SLOT_LONG.getAcquire(chunk, base + HASH);
+                if (slotHash == 0) {
+                    return -1;
+                }
+                if (slotHash == hash && (long) SLOT_LONG.getAcquire(chunk, base + LOCATION) == location) {
+                    return slot;
+                }
+            }
+        }
+
+        private int findEmptySlot(long hash) {
+            int slot = firstSlot(hash);
+            while ((long) SLOT_LONG.get(slotChunk(slot), slotBase(slot) + HASH) != 0) {
+                slot = nextSlot(slot);
+            }
+            return slot;
+        }
+    }
+}
@@ -2,12 +2,13 @@ package com.itmo.java.basics.index.impl;
 
 import com.itmo.java.basics.index.KvsIndex;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 public class MapBasedKvsIndex<K, V> implements KvsIndex<K, V> {
-    private final Map<K, V> index = new HashMap<>(200);
+    private final Map<K, V> index = new ConcurrentHashMap<>(200);
 
     @Override
     public void onIndexedEntityUpdated(K key, V value) {
@@ -18,4 +19,45 @@ public class MapBasedKvsIndex<K, V> implements KvsIndex<K, V> {
     public Optional<V> searchForKey(K key) {
         return Optional.ofNullable(index.get(key));
     }
+
+    /**
+     * Обновляет значение по ключу, как {@link #onIndexedEntityUpdated(Object, Object)}.
+     *
+     * @return предыдущее значение по ключу
+     */
+    public Optional<V> update(K key, V value) {
+        return Optional.ofNullable(index.put(key, value));
+    }
+
+    /**
+     * Атомарно заменяет значение по ключу, только если сейчас там лежит {@code expected}.
+     *
+     * @return {@code true} - если значение заменилось
+     */
+    public boolean replace(K key, V expected, V value) {
+        return index.replace(key, expected, value);
+    }
+
+    /**
+     * Атомарно удаляет ключ, только если сейчас по нему лежит {@code expected}.
+     *
+     * @return {@code true} - если ключ удалился
+     */
+    public boolean remove(K key, V expected) {
+        return index.remove(key, expected);
+    }
+
+    /**
+     * @return сколько ключей в индексе
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Обходит все пары индекса. Параллельные изменения могут быть как видны, так и нет.
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        index.forEach(action);
+    }
 }
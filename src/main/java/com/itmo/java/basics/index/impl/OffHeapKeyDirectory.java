@@ -0,0 +1,479 @@
+package com.itmo.java.basics.index.impl;
+
+import com.itmo.java.basics.index.KeyDirectory;
+import com.itmo.java.basics.index.KvsIndex;
+import com.itmo.java.basics.index.RecordLocation;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Каталог ключей таблицы, который хранит ключи целиком ({@link com.itmo.java.basics.config.IndexMode#KEYS}).
+ * Один на таблицу, так что чтение по ключу - это один поиск в хеш-таблице.
+ * <p>
+ * Все данные лежат вне кучи, в direct {@link ByteBuffer}: хеш-таблица с открытой адресацией (линейное пробирование)
+ * из слотов по {@value #SLOT_SIZE} байт и arena с байтами ключей (каждый с длиной в начале, varint).
+ * Обе части нарезаны на куски, поэтому размер каталога не ограничен размером одного буфера.
+ * Слот: хеш ключа вместе с позицией ключа в arena, сдвиг записи, номер сегмента, размер записи и версия.
+ * <p>
+ * Изменения синхронизированы, а чтение идет без блокировок. Новый слот публикуется записью хеша и позиции ключа
+ * (с release-семантикой) после всего остального. Место записи в существующем слоте меняется под версией
+ * (seqlock): на время изменения версия нечетная, и читатель повторяет чтение, если версия не совпала до и после.
+ * Удаленный ключ остается в слоте с номером сегмента {@link #NO_SEGMENT}, а выбрасывается при перестроении
+ * таблицы. При перестроении все копируется в новое состояние, а старое больше не меняется.
+ */
+public class OffHeapKeyDirectory implements KeyDirectory, KvsIndex<byte[], RecordLocation> {
+    private static final int SLOT_SIZE = 32;
+    private static final int META = 0;
+    private static final int OFFSET = 8;
+    private static final int SEGMENT = 16;
+    private static final int RECORD_SIZE = 20;
+    private static final int VERSION = 24;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int SLOT_CHUNK_BITS = 16;
+    private static final int SLOTS_PER_CHUNK = 1 << SLOT_CHUNK_BITS;
+
+    private static final int INITIAL_ARENA_SIZE = 1024;
+    private static final int ARENA_CHUNK_BITS = 24;
+    private static final int ARENA_CHUNK_SIZE = 1 << ARENA_CHUNK_BITS;
+    /**
+     * Позиция ключа в arena занимает младшие 40 бит слова meta, старшие 24 - старшие биты хеша
+     */
+    private static final int POSITION_BITS = 40;
+
+    private static final VarHandle SLOT_LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle SLOT_INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle KEY_LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private volatile State state = new State(INITIAL_CAPACITY);
+    private volatile int size;
+    /**
+     * Сколько слотов занято, включая удаленные ключи
+     */
+    private int usedSlots;
+
+    @Override
+    public void onIndexedEntityUpdated(byte[] key, RecordLocation value) {
+        update(key, value);
+    }
+
+    @Override
+    public Optional<RecordLocation> lookup(byte[] key, KeyVerifier verifier) {
+        return searchForKey(key);
+    }
+
+    @Override
+    public Optional<RecordLocation> update(byte[] key, RecordLocation location, KeyVerifier verifier) {
+        return update(key, location);
+    }
+
+    @Override
+    public boolean pointsTo(byte[] key, RecordLocation location) {
+        return searchForKey(key).map(location::equals).orElse(false);
+    }
+
+    @Override
+    public boolean storesKeys() {
+        return true;
+    }
+
+    @Override
+    public Optional<RecordLocation> searchForKey(byte[] key) {
+        int hash = hash(key);
+        State current = state;
+        for (int slot = current.firstSlot(hash); ; slot = current.nextSlot(slot)) {
+            ByteBuffer chunk = current.slotChunk(slot);
+            int base = State.slotBase(slot);
+            long meta = (long) SLOT_LONG.getAcquire(chunk, base + META);
+            if (meta == 0) {
+                return Optional.empty();
+            }
+            if (metaHash(meta) == hash >>> 8 && current.keyEquals(position(meta), key)) {
+                return Optional.ofNullable(readLocation(chunk, base));
+            }
+        }
+    }
+
+    /**
+     * Запоминает, где лежит последняя запись по ключу.
+     *
+     * @return где лежала предыдущая запись по ключу
+     */
+    public synchronized Optional<RecordLocation> update(byte[] key, RecordLocation location) {
+        int hash = hash(key);
+        State current = state;
+        int slot = current.findSlot(key, hash);
+        ByteBuffer chunk = current.slotChunk(slot);
+        int base = State.slotBase(slot);
+        if ((long) SLOT_LONG.get(chunk, base + META) != 0) {
+            RecordLocation previous = readLocation(chunk, base);
+            writeLocation(chunk, base, location);
+            if (previous == null) {
+                size++;
+            }
+            return Optional.ofNullable(previous);
+        }
+
+        if ((usedSlots + 1) * 3L > current.capacity * 2L) {
+            current = rebuild(current);
+            state = current;
+            slot = current.findSlot(key, hash);
+            chunk = current.slotChunk(slot);
+            base = State.slotBase(slot);
+        }
+        long position = current.appendKey(key);
+        SLOT_LONG.set(chunk, base + OFFSET, location.getOffset());
+        SLOT_INT.set(chunk, base + SEGMENT, location.getSegmentId());
+        SLOT_INT.set(chunk, base + RECORD_SIZE, location.getRecordSize());
+        SLOT_INT.set(chunk, base + VERSION, 0);
+        SLOT_LONG.setRelease(chunk, base + META, meta(hash, position));
+        usedSlots++;
+        size++;
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized boolean replace(byte[] key, RecordLocation expected, RecordLocation location) {
+        State current = state;
+        int slot = current.findSlot(key, hash(key));
+        ByteBuffer chunk = current.slotChunk(slot);
+        int base = State.slotBase(slot);
+        if ((long) SLOT_LONG.get(chunk, base + META) == 0 || !expected.equals(readLocation(chunk, base))) {
+            return false;
+        }
+        writeLocation(chunk, base, location);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(byte[] key, RecordLocation expected) {
+        State current = state;
+        int slot = current.findSlot(key, hash(key));
+        ByteBuffer chunk = current.slotChunk(slot);
+        int base = State.slotBase(slot);
+        if ((long) SLOT_LONG.get(chunk, base + META) == 0 || !expected.equals(readLocation(chunk, base))) {
+            return false;
+        }
+        writeLocation(chunk, base, new RecordLocation(NO_SEGMENT, 0, 0));
+        size--;
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEachLocation(Consumer<? super RecordLocation> action) {
+        State current = state;
+        for (int slot = 0; slot < current.capacity; slot++) {
+            ByteBuffer chunk = current.slotChunk(slot);
+            int base = State.slotBase(slot);
+            if ((long) SLOT_LONG.getAcquire(chunk, base + META) != 0) {
+                RecordLocation location = readLocation(chunk, base);
+                if (location != null) {
+                    action.accept(location);
+                }
+            }
+        }
+    }
+
+    /**
+     * Обходит все пары каталога. Параллельные изменения могут быть как видны, так и нет.
+     */
+    public void forEach(BiConsumer<? super byte[], ? super RecordLocation> action) {
+        State current = state;
+        for (int slot = 0; slot < current.capacity; slot++) {
+            ByteBuffer chunk = current.slotChunk(slot);
+            int base = State.slotBase(slot);
+            long meta = (long) SLOT_LONG.getAcquire(chunk, base + META);
+            if (meta == 0) {
+                continue;
+            }
+            RecordLocation location = readLocation(chunk, base);
+            if (location != null) {
+                action.accept(current.readKey(position(meta)), location);
+            }
+        }
+    }
+
+    /**
+     * @return сколько байт вне кучи занимают слоты и ключи каталога
+     */
+    @Override
+    public long sizeInBytes() {
+        State current = state;
+        long bytes = (long) current.capacity * SLOT_SIZE;
+        for (ByteBuffer chunk : current.arenaChunks) {
+            bytes += chunk.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Копирует живые ключи в новое состояние, где хватает места еще на один ключ. Удаленные ключи выбрасываются
+     */
+    private State rebuild(State current) {
+        long capacity = INITIAL_CAPACITY;
+        while (capacity < (size + 1) * 2L) {
+            capacity *= 2;
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Key directory is full");
+        }
+
+        State rebuilt = new State((int) capacity);
+        for (int slot = 0; slot < current.capacity; slot++) {
+            ByteBuffer chunk = current.slotChunk(slot);
+            int base = State.slotBase(slot);
+            long meta = (long) SLOT_LONG.get(chunk, base + META);
+            if (meta == 0 || (int) SLOT_INT.get(chunk, base + SEGMENT) == NO_SEGMENT) {
+                continue;
+            }
+
+            byte[] key = current.readKey(position(meta));
+            int target = rebuilt.firstSlot(hash(key));
+            while ((long) SLOT_LONG.get(rebuilt.slotChunk(target), State.slotBase(target) + META) != 0) {
+                target = rebuilt.nextSlot(target);
+            }
+            ByteBuffer targetChunk = rebuilt.slotChunk(target);
+            int targetBase = State.slotBase(target);
+            long position = rebuilt.appendKey(key);
+            SLOT_LONG.set(targetChunk, targetBase + OFFSET, (long) SLOT_LONG.get(chunk, base + OFFSET));
+            SLOT_INT.set(targetChunk, targetBase + SEGMENT, (int) SLOT_INT.get(chunk, base + SEGMENT));
+            SLOT_INT.set(targetChunk, targetBase + RECORD_SIZE, (int) SLOT_INT.get(chunk, base + RECORD_SIZE));
+            SLOT_LONG.set(targetChunk, targetBase + META, (long) metaHash(meta) << POSITION_BITS | (position + 1));
+        }
+        usedSlots = size;
+        return rebuilt;
+    }
+
+    /**
+     * Читает место записи из слота под версией
+     *
+     * @return место записи, {@code null} - если ключ удален
+     */
+    private static RecordLocation readLocation(ByteBuffer chunk, int base) {
+        while (true) {
+            int version = (int) SLOT_INT.getAcquire(chunk, base + VERSION);
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long offset = (long) SLOT_LONG.getOpaque(chunk, base + OFFSET);
+            int segmentId = (int) SLOT_INT.getOpaque(chunk, base + SEGMENT);
+            int recordSize = (int) SLOT_INT.getOpaque(chunk, base + RECORD_SIZE);
+            VarHandle.loadLoadFence();
+            if ((int) SLOT_INT.getOpaque(chunk, base + VERSION) == version) {
+                return segmentId == NO_SEGMENT ? null : new RecordLocation(segmentId, offset, recordSize);
+            }
+        }
+    }
+
+    /**
+     * Меняет место записи в занятом слоте. Вызывается только под монитором каталога
+     */
+    private static void writeLocation(ByteBuffer chunk, int base, RecordLocation location) {
+        int version = (int) SLOT_INT.get(chunk, base + VERSION);
+        SLOT_INT.setOpaque(chunk, base + VERSION, version + 1);
+        VarHandle.storeStoreFence();
+        SLOT_LONG.setOpaque(chunk, base + OFFSET, location.getOffset());
+        SLOT_INT.setOpaque(chunk, base + SEGMENT, location.getSegmentId());
+        SLOT_INT.setOpaque(chunk, base + RECORD_SIZE, location.getRecordSize());
+        SLOT_INT.setRelease(chunk, base + VERSION, version + 2);
+    }
+
+    /**
+     * Старшие 24 бита хеша в старших битах, позиция ключа в arena плюс один - в младших, так что у занятого слота
+     * это не 0
+     */
+    private static long meta(int hash, long position) {
+        return (long) (hash >>> 8) << POSITION_BITS | (position + 1);
+    }
+
+    private static int metaHash(long meta) {
+        return (int) (meta >>> POSITION_BITS);
+    }
+
+    private static long position(long meta) {
+        return (meta & ((1L << POSITION_BITS) - 1)) - 1;
+    }
+
+    private static int hash(byte[] key) {
+        int hash = Arrays.hashCode(key) * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static ByteBuffer allocate(int size) {
+        // выравнивание нужно для атомарного доступа к словам слотов через VarHandle
+        return ByteBuffer.allocateDirect(size + Long.BYTES - 1).alignedSlice(Long.BYTES);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Буферы каталога. Слоты и уже записанные ключи не меняются после того, как состояние заменили новым
+     */
+    private static final class State {
+        private final int capacity;
+        private final ByteBuffer[] slotChunks;
+        /**
+         * Последний кусок arena растет (копированием), пока не достигнет {@value #ARENA_CHUNK_SIZE} байт,
+         * затем добавляется следующий. Массив заменяется целиком, до публикации слота с новым ключом
+         */
+        private volatile ByteBuffer[] arenaChunks = {allocate(INITIAL_ARENA_SIZE)};
+        /**
+         * Сколько байт занято в последнем куске arena
+         */
+        private int arenaChunkUsed;
+
+        private State(int capacity) {
+            this.capacity = capacity;
+            int slotsPerChunk = Math.min(capacity, SLOTS_PER_CHUNK);
+            this.slotChunks = new ByteBuffer[capacity / slotsPerChunk];
+            for (int i = 0; i < slotChunks.length; i++) {
+                slotChunks[i] = allocate(slotsPerChunk * SLOT_SIZE);
+            }
+        }
+
+        private int firstSlot(int hash) {
+            return hash & (capacity - 1);
+        }
+
+        private int nextSlot(int slot) {
+            return (slot + 1) & (capacity - 1);
+        }
+
+        private ByteBuffer slotChunk(int slot) {
+            return slotChunks[slot >>> SLOT_CHUNK_BITS];
+        }
+
+        private static int slotBase(int slot) {
+            return (slot & (SLOTS_PER_CHUNK - 1)) * SLOT_SIZE;
+        }
+
+        /**
+         * @return слот с этим ключом (в том числе удаленным), а если ключа нет - пустой слот, куда его нужно положить
+         */
+        private int findSlot(byte[] key, int hash) {
+            for (int slot = firstSlot(hash); ; slot = nextSlot(slot)) {
+                long meta = (long) SLOT_LONG.get(slotChunk(slot), slotBase(slot) + META);
+                if (meta == 0 || metaHash(meta) == hash >>> 8 && keyEquals(position(meta), key)) {
+                    return slot;
+                }
+            }
+        }
+
+        /**
+         * Дописывает ключ в arena. Вызывается только под монитором каталога
+         *
+         * @return позиция ключа
+         */
+        private long appendKey(byte[] key) {
+            int length = varintSize(key.length) + key.length;
+            if (length > ARENA_CHUNK_SIZE) {
+                throw new IllegalArgumentException(String.format("Key of %d bytes is too long", key.length));
+            }
+
+            ByteBuffer[] chunks = arenaChunks;
+            int chunkIndex = chunks.length - 1;
+            ByteBuffer chunk = chunks[chunkIndex];
+            if (arenaChunkUsed + length > chunk.capacity()) {
+                ByteBuffer[] grown;
+                if (arenaChunkUsed + length <= ARENA_CHUNK_SIZE) {
+                    int chunkSize = chunk.capacity();
+                    while (chunkSize < arenaChunkUsed + length) {
+                        chunkSize *= 2;
+                    }
+                    ByteBuffer extended = allocate(Math.min(chunkSize, ARENA_CHUNK_SIZE));
+                    extended.put(chunk.duplicate().position(0).limit(arenaChunkUsed));
+                    grown = chunks.clone();
+                    grown[chunkIndex] = extended;
+                    chunk = extended;
+                } else {
+                    chunk = allocate(ARENA_CHUNK_SIZE);
+                    grown = Arrays.copyOf(chunks, chunks.length + 1);
+                    grown[++chunkIndex] = chunk;
+                    arenaChunkUsed = 0;
+                }
+                arenaChunks = grown;
+            }
+
+            int index = arenaChunkUsed;
+            int value = key.length;
+            while ((value & ~0x7f) != 0) {
+                chunk.put(index++, (byte) (value & 0x7f | 0x80));
+                value >>>= 7;
+            }
+            chunk.put(index++, (byte) value);
+            for (byte b : key) {
+                chunk.put(index++, b);
+            }
+
+            long position = (long) chunkIndex << ARENA_CHUNK_BITS | arenaChunkUsed;
+            arenaChunkUsed += length;
+            return position;
+        }
+
+        private boolean keyEquals(long position, byte[] key) {
+            ByteBuffer chunk = arenaChunks[(int) (position >>> ARENA_CHUNK_BITS)];
+            int index = (int) (position & (ARENA_CHUNK_SIZE - 1));
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = chunk.get(index++);
+                length |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (length != key.length) {
+                return false;
+            }
+
+            int i = 0;
+            for (; i + Long.BYTES <= length; i += Long.BYTES) {
+                if (chunk.getLong(index + i) != (long) KEY_LONG.get(key, i)) {
+                    return false;
+                }
+            }
+            for (; i < length; i++) {
+                if (chunk.get(index + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private byte[] readKey(long position) {
+            ByteBuffer chunk = arenaChunks[(int) (position >>> ARENA_CHUNK_BITS)];
+            int index = (int) (position & (ARENA_CHUNK_SIZE - 1));
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = chunk.get(index++);
+                length |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            byte[] key = new byte[length];
+            chunk.duplicate().position(index).get(key);
+            return key;
+        }
+    }
+}
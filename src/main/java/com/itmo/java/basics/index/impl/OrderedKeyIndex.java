@@ -0,0 +1,57 @@
+package com.itmo.java.basics.index.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Живые ключи таблицы по возрастанию (как байты без знака) на конкурентном skip list: начало диапазона
+ * находится за логарифм от числа ключей, дальше ключи идут по порядку. Чтение идет без блокировок,
+ * изменения атомарны по одному ключу. Где лежат записи, по-прежнему знает только каталог ключей таблицы.
+ */
+public class OrderedKeyIndex {
+    private final ConcurrentSkipListSet<byte[]> keys = new ConcurrentSkipListSet<>(Arrays::compareUnsigned);
+    private final AtomicLong keyBytes = new AtomicLong();
+
+    public void add(byte[] key) {
+        if (keys.add(key)) {
+            keyBytes.addAndGet(key.length);
+        }
+    }
+
+    public void remove(byte[] key) {
+        if (keys.remove(key)) {
+            keyBytes.addAndGet(-key.length);
+        }
+    }
+
+    /**
+     * Ключи из {@code [fromKey, toKey)} по возрастанию. Параллельные изменения могут быть как видны, так и нет.
+     *
+     * @param toKey ключ сразу за диапазоном, {@code null} - если диапазон до последнего ключа
+     */
+    public Iterable<byte[]> range(byte[] fromKey, byte[] toKey) {
+        if (toKey == null) {
+            return keys.tailSet(fromKey, true);
+        }
+        if (Arrays.compareUnsigned(fromKey, toKey) >= 0) {
+            return Collections.emptySet();
+        }
+        return keys.subSet(fromKey, true, toKey, false);
+    }
+
+    /**
+     * @return сколько ключей в индексе
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return сколько байт занимают сами ключи, без узлов списка
+     */
+    public long keyBytes() {
+        return keyBytes.get();
+    }
+}
@@ -1,9 +1,291 @@
 package com.itmo.java.basics.index.impl;
 
+import com.itmo.java.basics.index.KvsIndex;
 import com.itmo.java.basics.index.SegmentOffsetInfo;
-import com.itmo.java.basics.logic.Segment;
 
-import java.util.Map;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.BiConsumer;
 
-public class SegmentIndex extends MapBasedKvsIndex<String, SegmentOffsetInfo> {
+/**
+ * Индекс сегмента: ключ - сдвиг его последней записи в сегменте и то, удаление ли это. Сегмент его у себя не держит:
+ * индекс собирается при инициализации из hint-файла или файла сегмента и переносится в {@link KeyDirectory} таблицы.
+ * <p>
+ * Хеш-таблица с открытой адресацией (линейное пробирование) без объектов на каждый ключ. Байты ключей лежат подряд
+ * в одном массиве (arena), каждый с длиной в начале (varint). Слот таблицы - два соседних long
+ * в одном массиве: хеш ключа вместе с позицией ключа в arena и сдвиг записи, так что поиск обычно
+ * читает одну строку кэша таблицы и одну - arena. Ключи из индекса не удаляются.
+ * <p>
+ * Запись синхронизирована, а чтение идет без блокировок: слот публикуется записью хеша и позиции ключа
+ * (с release-семантикой) уже после того, как записаны ключ и сдвиг. При расширении все массивы копируются
+ * в новое состояние, а старое больше не меняется, поэтому читатель всегда видит согласованные массивы.
+ */
+public class SegmentIndex implements KvsIndex<byte[], SegmentOffsetInfo> {
+    /**
+     * Сдвиг, который {@link #offsetOf(byte[])} возвращает для отсутствующего ключа
+     */
+    public static final long NO_OFFSET = -1;
+    /**
+     * Старший бит сдвига в слоте: последняя запись ключа в сегменте - удаление. Сдвиги неотрицательны
+     */
+    private static final long TOMBSTONE_BIT = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_ARENA_SIZE = 256;
+    private static final int MAX_ARENA_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final VarHandle LONG_ARRAY = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private volatile State state = new State(INITIAL_CAPACITY, new byte[INITIAL_ARENA_SIZE]);
+    private volatile int size;
+    private int arenaSize;
+
+    /**
+     * Получатель записей индекса, см {@link #forEachEntry}
+     */
+    public interface EntryConsumer {
+        void accept(byte[] key, long offset, boolean tombstone);
+    }
+
+    @Override
+    public void onIndexedEntityUpdated(byte[] key, SegmentOffsetInfo value) {
+        put(key, value.getOffset());
+    }
+
+    @Override
+    public Optional<SegmentOffsetInfo> searchForKey(byte[] key) {
+        long offset = offsetOf(key);
+        return offset == NO_OFFSET ? Optional.empty() : Optional.of(new SegmentOffsetInfoImpl(offset));
+    }
+
+    /**
+     * Запоминает сдвиг последней записи по ключу
+     */
+    public void put(byte[] key, long offset) {
+        put(key, offset, false);
+    }
+
+    /**
+     * Запоминает сдвиг последней записи по ключу и то, удаление ли это
+     */
+    public synchronized void put(byte[] key, long offset, boolean tombstone) {
+        if (tombstone) {
+            offset |= TOMBSTONE_BIT;
+        }
+        State current = state;
+        int hash = hash(key);
+        int slot = findSlot(current, key, hash);
+        if (current.slots[slot] != 0) {
+            LONG_ARRAY.setRelease(current.slots, slot + 1, offset);
+            return;
+        }
+
+        int keySize = varintSize(key.length) + key.length;
+        if ((size + 1) * 3L > current.capacity() * 2L || arenaSize + keySize > current.arena.length) {
+            current = grow(current, keySize);
+            state = current;
+            slot = findSlot(current, key, hash);
+        }
+
+        int position = arenaSize;
+        int keyStart = writeVarint(current.arena, position, key.length);
+        System.arraycopy(key, 0, current.arena, keyStart, key.length);
+        arenaSize += keySize;
+
+        current.slots[slot + 1] = offset;
+        LONG_ARRAY.setRelease(current.slots, slot, meta(hash, position));
+        size++;
+    }
+
+    /**
+     * @return сдвиг последней записи по ключу, {@link #NO_OFFSET} - если ключа нет
+     */
+    public long offsetOf(byte[] key) {
+        State current = state;
+        int hash = hash(key);
+        for (int slot = current.firstSlot(hash); ; slot = current.nextSlot(slot)) {
+            long meta = (long) LONG_ARRAY.getAcquire(current.slots, slot);
+            if (meta == 0) {
+                return NO_OFFSET;
+            }
+            if ((int) (meta >>> 32) == hash && keyEquals(current.arena, position(meta), key)) {
+                return (long) LONG_ARRAY.getAcquire(current.slots, slot + 1) & ~TOMBSTONE_BIT;
+            }
+        }
+    }
+
+    /**
+     * @return сколько ключей в индексе
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Обходит все пары индекса. Ключи, добавленные во время обхода, могут быть как видны, так и нет.
+     */
+    public void forEach(BiConsumer<? super byte[], ? super SegmentOffsetInfo> action) {
+        forEachEntry((key, offset, tombstone) -> action.accept(key, new SegmentOffsetInfoImpl(offset)));
+    }
+
+    /**
+     * Обходит все записи индекса вместе с признаком удаления. Ключи, добавленные во время обхода,
+     * могут быть как видны, так и нет.
+     */
+    public void forEachEntry(EntryConsumer action) {
+        State current = state;
+        for (int slot = 0; slot < current.slots.length; slot += 2) {
+            long meta = (long) LONG_ARRAY.getAcquire(current.slots, slot);
+            if (meta != 0) {
+                long offset = (long) LONG_ARRAY.getAcquire(current.slots, slot + 1);
+                action.accept(readKey(current.arena, position(meta)), offset & ~TOMBSTONE_BIT,
+                        (offset & TOMBSTONE_BIT) != 0);
+            }
+        }
+    }
+
+    /**
+     * @return сколько байт занимают массивы индекса
+     */
+    public long sizeInBytes() {
+        State current = state;
+        return (long) current.slots.length * Long.BYTES + current.arena.length;
+    }
+
+    /**
+     * @return слот с этим ключом, а если ключа нет - пустой слот, куда его нужно положить
+     */
+    private static int findSlot(State current, byte[] key, int hash) {
+        for (int slot = current.firstSlot(hash); ; slot = current.nextSlot(slot)) {
+            long meta = current.slots[slot];
+            if (meta == 0 || (int) (meta >>> 32) == hash && keyEquals(current.arena, position(meta), key)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Копирует индекс в новое состояние, где хватает места еще на один ключ размером {@code keySize}
+     */
+    private State grow(State current, int keySize) {
+        int capacity = current.capacity();
+        if ((size + 1) * 3L > capacity * 2L) {
+            capacity *= 2;
+        }
+        long required = (long) arenaSize + keySize;
+        if (required > MAX_ARENA_SIZE) {
+            throw new IllegalStateException("Segment index keys do not fit into an array");
+        }
+        long arenaCapacity = current.arena.length;
+        while (arenaCapacity < required) {
+            arenaCapacity *= 2;
+        }
+
+        State grown = new State(capacity, Arrays.copyOf(current.arena, (int) Math.min(arenaCapacity, MAX_ARENA_SIZE)));
+        for (int slot = 0; slot < current.slots.length; slot += 2) {
+            long meta = current.slots[slot];
+            if (meta == 0) {
+                continue;
+            }
+            int target = grown.firstSlot((int) (meta >>> 32));
+            while (grown.slots[target] != 0) {
+                target = grown.nextSlot(target);
+            }
+            grown.slots[target] = meta;
+            grown.slots[target + 1] = current.slots[slot + 1];
+        }
+        return grown;
+    }
+
+    /**
+     * Хеш в старших 32 битах, позиция ключа в arena плюс один - в младших, так что у занятого слота это не 0
+     */
+    private static long meta(int hash, int position) {
+        return (long) hash << 32 | (position + 1);
+    }
+
+    private static int position(long meta) {
+        return (int) meta - 1;
+    }
+
+    private static int hash(byte[] key) {
+        int hash = Arrays.hashCode(key) * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean keyEquals(byte[] arena, int position, byte[] key) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = arena[position++];
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return length == key.length && Arrays.equals(arena, position, position + length, key, 0, length);
+    }
+
+    private static byte[] readKey(byte[] arena, int position) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = arena[position++];
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return Arrays.copyOfRange(arena, position, position + length);
+    }
+
+    /**
+     * @return позиция сразу после записанного числа
+     */
+    private static int writeVarint(byte[] arena, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            arena[position++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        arena[position++] = (byte) value;
+        return position;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Массивы индекса. После того как состояние заменили новым, оно больше не меняется
+     */
+    private static final class State {
+        /**
+         * Слот i занимает элементы 2i (см {@link #meta(int, int)}, 0 - пустой слот) и 2i + 1 (сдвиг записи)
+         */
+        private final long[] slots;
+        private final byte[] arena;
+        private final int mask;
+
+        private State(int capacity, byte[] arena) {
+            this.slots = new long[2 * capacity];
+            this.arena = arena;
+            this.mask = slots.length - 1;
+        }
+
+        private int capacity() {
+            return slots.length / 2;
+        }
+
+        private int firstSlot(int hash) {
+            return (hash << 1) & mask;
+        }
+
+        private int nextSlot(int slot) {
+            return (slot + 2) & mask;
+        }
+    }
 }
@@ -1,9 +0,0 @@
-package com.itmo.java.basics.index.impl;
-
-import com.itmo.java.basics.logic.Segment;
-import com.itmo.java.basics.logic.Table;
-
-import java.util.Map;
-
-public class TableIndex extends MapBasedKvsIndex<String, Segment> {
-}
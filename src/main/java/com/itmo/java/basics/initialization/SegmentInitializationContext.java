@@ -1,6 +1,7 @@
 package com.itmo.java.basics.initialization;
 
 import com.itmo.java.basics.index.impl.SegmentIndex;
+import com.itmo.java.basics.logic.io.SegmentFormat;
 
 import java.nio.file.Path;
 
@@ -32,4 +33,18 @@ public interface SegmentInitializationContext {
      * @return текущий размер инициализируемого сегмента
      */
     long getCurrentSize();
+
+    /**
+     * Возвращает количество записей в инициализируемом сегменте, включая перезаписанные и удаления.
+     *
+     * @return количество записей в инициализируемом сегменте
+     */
+    int getRecordCount();
+
+    /**
+     * Возвращает формат файла инициализируемого сегмента.
+     *
+     * @return формат файла инициализируемого сегмента
+     */
+    SegmentFormat getFormat();
 }
@@ -1,9 +1,10 @@
 package com.itmo.java.basics.initialization;
 
-import com.itmo.java.basics.index.impl.TableIndex;
+import com.itmo.java.basics.index.KeyDirectory;
 import com.itmo.java.basics.logic.Segment;
 
 import java.nio.file.Path;
+import java.util.List;
 
 public interface TableInitializationContext {
     /**
@@ -21,11 +22,12 @@ public interface TableInitializationContext {
     Path getTablePath();
 
     /**
-     * Возвращает индекс инициализируемой таблицы.
+     * Возвращает каталог ключей инициализируемой таблицы. Номер сегмента в нем - позиция сегмента
+     * в {@link #getSegments()}.
      *
-     * @return индекс инициализируемой таблицы
+     * @return каталог ключей инициализируемой таблицы
      */
-    TableIndex getTableIndex();
+    KeyDirectory getKeyDirectory();
 
     /**
      * Возвращает текущий активный сегмент для инициализируемой таблицы.
@@ -40,4 +42,11 @@ public interface TableInitializationContext {
      * @param segment новый сегмент
      */
     void updateCurrentSegment(Segment segment);
+
+    /**
+     * Возвращает все сегменты, которые побывали текущими, в порядке их инициализации.
+     *
+     * @return сегменты инициализируемой таблицы
+     */
+    List<Segment> getSegments();
 }
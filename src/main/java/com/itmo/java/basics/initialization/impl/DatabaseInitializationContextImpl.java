@@ -4,8 +4,8 @@ import com.itmo.java.basics.initialization.DatabaseInitializationContext;
 import com.itmo.java.basics.logic.Table;
 
 import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DatabaseInitializationContextImpl implements DatabaseInitializationContext {
     private final String dbName;
@@ -15,7 +15,7 @@ public class DatabaseInitializationContextImpl implements DatabaseInitialization
     public DatabaseInitializationContextImpl(String dbName, Path databaseRoot) {
         this.dbName = dbName;
         this.databaseRoot = databaseRoot;
-        tables = new HashMap<>();
+        tables = new ConcurrentHashMap<>();
     }
 
     @Override
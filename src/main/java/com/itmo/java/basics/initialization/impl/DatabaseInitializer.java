@@ -1,13 +1,15 @@
 package com.itmo.java.basics.initialization.impl;
 
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.index.impl.TableIndex;
+import com.itmo.java.basics.index.KeyDirectory;
 import com.itmo.java.basics.initialization.InitializationContext;
 import com.itmo.java.basics.initialization.Initializer;
 import com.itmo.java.basics.logic.impl.DatabaseImpl;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DatabaseInitializer implements Initializer {
     private final TableInitializer tableInitializer;
@@ -18,7 +20,7 @@ public class DatabaseInitializer implements Initializer {
 
     /**
      * Добавляет в контекст информацию об инициализируемой бд.
-     * Запускает инициализацию всех таблиц это базы
+     * Запускает инициализацию всех таблиц это базы (параллельно, если инициализация идет в пуле)
      *
      * @param initialContext контекст с информацией об инициализируемой бд и об окружении
      * @throws DatabaseException если в контексте лежит неправильный путь к базе, невозможно прочитать содержимого папки,
@@ -37,16 +39,23 @@ public class DatabaseInitializer implements Initializer {
         File workingDirectory = new File(path.toString());
         File[] tables = workingDirectory.listFiles();
 
+        List<InitializationTasks.Task<Void>> tasks = new ArrayList<>(tables.length);
         for (var table : tables) {
             InitializationContextImpl newContext = new InitializationContextImpl(initialContext.executionEnvironment(),
                     initialContext.currentDbContext(),
                     new TableInitializationContextImpl(table.getName(),
-                            initialContext.currentDbContext().getDatabasePath(), new TableIndex()),
+                            initialContext.currentDbContext().getDatabasePath(),
+                            KeyDirectory.create(initialContext.executionEnvironment().getConfig().getIndexMode())),
                     initialContext.currentSegmentContext());
-            tableInitializer.perform(newContext);
+            tasks.add(() -> {
+                tableInitializer.perform(newContext);
+                return null;
+            });
         }
+        InitializationTasks.invokeAll(tasks);
 
         initialContext.executionEnvironment().addDatabase(
-                DatabaseImpl.initializeFromContext(initialContext.currentDbContext()));
+                DatabaseImpl.initializeFromContext(initialContext.currentDbContext(),
+                        initialContext.executionEnvironment().getConfig()));
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.itmo.java.basics.initialization.impl;
 
+import com.itmo.java.basics.config.DatabaseConfig;
 import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.initialization.InitializationContext;
 import com.itmo.java.basics.initialization.Initializer;
@@ -8,6 +9,8 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DatabaseServerInitializer implements Initializer {
     private final DatabaseInitializer databaseInitializer;
@@ -18,7 +21,8 @@ public class DatabaseServerInitializer implements Initializer {
 
     /**
      * Если заданная в окружении директория не существует - создает ее
-     * Добавляет информацию о существующих в директории базах, нацинает их инициалиализацию
+     * Добавляет информацию о существующих в директории базах, нацинает их инициалиализацию.
+     * Базы, таблицы и сегменты читаются параллельно в пуле из {@link DatabaseConfig#getInitParallelism()} потоков
      *
      * @param context контекст, содержащий информацию об окружении
      * @throws DatabaseException если произошла ошибка при создании директории, ее обходе или ошибка инициализации бд
@@ -38,12 +42,18 @@ public class DatabaseServerInitializer implements Initializer {
         } else {
             File[] databases = workingDirectory.listFiles();
 
+            List<InitializationTasks.Task<Void>> tasks = new ArrayList<>(databases.length);
             for (var database : databases) {
                 InitializationContextImpl newContext = new InitializationContextImpl(context.executionEnvironment(),
                         new DatabaseInitializationContextImpl(database.getName(), path),
                         context.currentTableContext(), context.currentSegmentContext());
-                databaseInitializer.perform(newContext);
+                tasks.add(() -> {
+                    databaseInitializer.perform(newContext);
+                    return null;
+                });
             }
+            InitializationTasks.invoke(context.executionEnvironment().getConfig().getInitParallelism(),
+                    () -> InitializationTasks.invokeAll(tasks));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.itmo.java.basics.initialization.impl;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Запуск независимых шагов инициализации (баз, таблиц, сегментов) в общем fork-join пуле.
+ * Вне пула шаги выполняются последовательно в текущем потоке, поэтому инициализаторы можно звать и напрямую.
+ */
+final class InitializationTasks {
+    /**
+     * Шаг инициализации
+     */
+    interface Task<T> {
+        T call() throws DatabaseException;
+    }
+
+    private InitializationTasks() {
+    }
+
+    /**
+     * Выполняет задачу в отдельном пуле с заданным числом потоков и дожидается ее окончания
+     *
+     * @throws DatabaseException если задача или любая из ее подзадач упала
+     */
+    static <T> T invoke(int parallelism, Task<T> task) throws DatabaseException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new Step<>(task)).result();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Выполняет задачи параллельно (если вызвана из пула) и возвращает их результаты в том же порядке
+     *
+     * @throws DatabaseException первая по порядку ошибка, если какие-то задачи упали
+     */
+    static <T> List<T> invokeAll(List<Task<T>> tasks) throws DatabaseException {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (!ForkJoinTask.inForkJoinPool() || tasks.size() < 2) {
+            for (var task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+
+        List<Step<T>> steps = new ArrayList<>(tasks.size());
+        for (var task : tasks) {
+            steps.add(new Step<>(task));
+        }
+        ForkJoinTask.invokeAll(steps);
+        for (var step : steps) {
+            results.add(step.result());
+        }
+        return results;
+    }
+
+    /**
+     * Сохраняет проверяемое исключение задачи, чтобы отдать его вызывающему коду как есть
+     */
+    private static final class Step<T> extends RecursiveTask<Step<T>> {
+        private final Task<T> task;
+        private T result;
+        private DatabaseException exception;
+
+        private Step(Task<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        protected Step<T> compute() {
+            try {
+                result = task.call();
+            } catch (DatabaseException e) {
+                exception = e;
+            }
+            return this;
+        }
+
+        private T result() throws DatabaseException {
+            if (exception != null) {
+                throw exception;
+            }
+            return result;
+        }
+    }
+}
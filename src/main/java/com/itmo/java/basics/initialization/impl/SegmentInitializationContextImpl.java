@@ -2,6 +2,7 @@ package com.itmo.java.basics.initialization.impl;
 
 import com.itmo.java.basics.index.impl.SegmentIndex;
 import com.itmo.java.basics.initialization.SegmentInitializationContext;
+import com.itmo.java.basics.logic.io.SegmentFormat;
 
 import java.nio.file.Path;
 
@@ -10,12 +11,21 @@ public class SegmentInitializationContextImpl implements SegmentInitializationCo
     private final Path segmentPath;
     private final long currentSize;
     private final SegmentIndex index;
+    private final int recordCount;
+    private final SegmentFormat format;
 
     public SegmentInitializationContextImpl(String segmentName, Path segmentPath, int currentSize, SegmentIndex index) {
+        this(segmentName, segmentPath, currentSize, index, 0, SegmentFormat.CHECKSUMMED);
+    }
+
+    public SegmentInitializationContextImpl(String segmentName, Path segmentPath, long currentSize, SegmentIndex index,
+                                            int recordCount, SegmentFormat format) {
         this.segmentName = segmentName;
         this.segmentPath = segmentPath;
         this.currentSize = currentSize;
         this.index = index;
+        this.recordCount = recordCount;
+        this.format = format;
     }
 
     public SegmentInitializationContextImpl(String segmentName, Path tablePath, int currentSize) {
@@ -23,6 +33,8 @@ public class SegmentInitializationContextImpl implements SegmentInitializationCo
         this.segmentPath = tablePath.resolve(segmentName);
         this.currentSize = currentSize;
         index = new SegmentIndex();
+        recordCount = 0;
+        format = SegmentFormat.CHECKSUMMED;
     }
 
     @Override
@@ -44,4 +56,14 @@ public class SegmentInitializationContextImpl implements SegmentInitializationCo
     public long getCurrentSize() {
         return currentSize;
     }
+
+    @Override
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public SegmentFormat getFormat() {
+        return format;
+    }
 }
@@ -1,17 +1,26 @@
 package com.itmo.java.basics.initialization.impl;
 
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.index.impl.SegmentOffsetInfoImpl;
+import com.itmo.java.basics.index.impl.SegmentIndex;
+import com.itmo.java.basics.index.KeyDirectory;
+import com.itmo.java.basics.index.RecordLocation;
 import com.itmo.java.basics.initialization.InitializationContext;
+import com.itmo.java.basics.initialization.SegmentInitializationContext;
 import com.itmo.java.basics.initialization.Initializer;
-import com.itmo.java.basics.logic.DatabaseRecord;
 import com.itmo.java.basics.logic.Segment;
 import com.itmo.java.basics.logic.impl.SegmentImpl;
-import com.itmo.java.basics.logic.io.DatabaseInputStream;
+import com.itmo.java.basics.logic.io.DatabaseHintFile;
+import com.itmo.java.basics.logic.io.DatabaseSegmentFile;
+import com.itmo.java.basics.logic.io.DatabaseSegmentScanner;
+import com.itmo.java.basics.logic.io.DatabaseSnapshot;
+import com.itmo.java.basics.logic.io.SegmentFormat;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Optional;
 
 
@@ -19,8 +28,8 @@ public class SegmentInitializer implements Initializer {
 
     /**
      * Добавляет в контекст информацию об инициализируемом сегменте.
-     * Составляет индекс сегмента
-     * Обновляет инфу в индексе таблицы
+     * Составляет индекс сегмента: из hint-файла, если он есть и соответствует сегменту, иначе читая сегмент целиком
+     * Переносит индекс сегмента в каталог ключей таблицы
      *
      * @param context контекст с информацией об инициализируемой бд и об окружении
      * @throws DatabaseException если в контексте лежит неправильный путь к сегменту, невозможно прочитать содержимое. Ошибка в содержании
@@ -28,6 +37,21 @@ public class SegmentInitializer implements Initializer {
 
     @Override
     public void perform(InitializationContext context) throws DatabaseException {
+        apply(context, load(context, true));
+    }
+
+    /**
+     * Составляет индекс сегмента, ничего не меняя в контексте таблицы. Сегменты одной таблицы
+     * можно загружать параллельно, а затем применять по порядку через {@link #apply}
+     *
+     * @param context     контекст с информацией об инициализируемом сегменте
+     * @param lastSegment последний ли это сегмент таблицы: только в него дописывают, и только его конец
+     *                    может быть оборван при падении
+     * @return контекст сегмента с заполненным индексом, размером и числом записей
+     * @throws DatabaseException если в контексте лежит неправильный путь к сегменту, невозможно прочитать содержимое,
+     *                           формат сегмента неизвестен или закрытый сегмент поврежден
+     */
+    SegmentInitializationContext load(InitializationContext context, boolean lastSegment) throws DatabaseException {
         File segment = context.currentSegmentContext().getSegmentPath().toFile();
         if (!segment.exists() || !segment.isFile() || !segment.canRead()) {
             throw new DatabaseException(String.format("Something went wrong when trying to initialize segment %s",
@@ -36,39 +60,132 @@ public class SegmentInitializer implements Initializer {
 
         Path path = context.currentSegmentContext().getSegmentPath();
 
-        try (DatabaseInputStream dbis = new DatabaseInputStream(new FileInputStream(String.valueOf(path)))) {
-            Optional<DatabaseRecord> result;
-            ArrayList<String> keys = new ArrayList<>();
-            int size = 0;
-
-            while (dbis.available() > 0) {
-                result = dbis.readDbUnit();
-                context.currentSegmentContext().getIndex().onIndexedEntityUpdated(new String(result.get().getKey()),
-                        new SegmentOffsetInfoImpl(size));
-                size += result.get().size();
-                keys.add(new String(result.get().getKey()));
+        try {
+            SegmentFormat format = SegmentFormat.detect(path);
+            long size = DatabaseSegmentFile.size(path, format);
+            SegmentInitializationContext segmentContext = readHintFile(context.currentSegmentContext(), format, size);
+            if (segmentContext == null) {
+                segmentContext = scanSegment(context.currentSegmentContext(), format, size, lastSegment);
+                if (!lastSegment || format != SegmentFormat.CHECKSUMMED || DatabaseSnapshot.isShared(path)) {
+                    // сегмент откроется только для чтения (см SegmentImpl#initializeFromContext), а его закрыли
+                    // до появления hint-файлов или hint-файл был поврежден
+                    DatabaseHintFile.write(path, false);
+                }
             }
+            return segmentContext;
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to initialize segment %s",
+                    context.currentSegmentContext().getSegmentName()), e);
+        }
+    }
 
-            if (size > 0) {
-                context = new InitializationContextImpl(context.executionEnvironment(), context.currentDbContext(),
-                        context.currentTableContext(),
-                        new SegmentInitializationContextImpl(
-                                context.currentSegmentContext().getSegmentName(),
-                                context.currentSegmentContext().getSegmentPath(),
-                                size,
-                                context.currentSegmentContext().getIndex()));
-            }
+    /**
+     * Создает сегмент по загруженному контексту и добавляет его в таблицу: сегменты таблицы
+     * должны применяться в порядке создания, чтобы в каталоге ключей остались последние значения ключей.
+     * Номер сегмента в каталоге - его позиция среди сегментов таблицы. Размеры записей из hint-файла
+     * неизвестны, поэтому в каталог попадают без них. Удаление попадает в каталог, только если перекрывает
+     * запись ключа из более старого сегмента: иначе сжатие его просто выбросит
+     *
+     * @param context        контекст с информацией об инициализируемой таблице и об окружении
+     * @param segmentContext результат {@link #load}
+     * @throws DatabaseException если каталог хранит только хеши ключей и запись более старого сегмента
+     *                           не удалось прочитать для сверки ключа
+     */
+    void apply(InitializationContext context, SegmentInitializationContext segmentContext) throws DatabaseException {
+        Segment initializedSegment = SegmentImpl.initializeFromContext(segmentContext,
+                context.executionEnvironment().getConfig());
 
-            Segment initializedSegment = SegmentImpl.initializeFromContext(context.currentSegmentContext());
+        context.currentTableContext().updateCurrentSegment(initializedSegment);
+        List<Segment> segments = context.currentTableContext().getSegments();
+        int segmentId = segments.size() - 1;
+        KeyDirectory keyDirectory = context.currentTableContext().getKeyDirectory();
+        KeyDirectory.KeyVerifier verifier = (key, location) ->
+                ((SegmentImpl) segments.get(location.getSegmentId())).hasKeyAt(key, location);
+        try {
+            segmentContext.getIndex().forEachEntry((key, offset, tombstone) -> {
+                try {
+                    if (tombstone && keyDirectory.lookup(key, verifier).isEmpty()) {
+                        // в более старых сегментах ключа нет, и удалению нечего перекрывать
+                        return;
+                    }
+                    keyDirectory.update(key, new RecordLocation(segmentId, offset, 0), verifier);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to index segment %s",
+                    segmentContext.getSegmentName()), e.getCause());
+        }
+    }
 
-            context.currentTableContext().updateCurrentSegment(initializedSegment);
-            for (var key : keys) {
-                context.currentTableContext().getTableIndex().onIndexedEntityUpdated(key,
-                        initializedSegment);
+    /**
+     * Восстанавливает индекс сегмента из hint-файла, не читая значения
+     *
+     * @return контекст с индексом и размером сегмента. {@code null} - если hint-файла нет или ему нельзя доверять
+     */
+    private SegmentInitializationContext readHintFile(SegmentInitializationContext segmentContext,
+                                                      SegmentFormat format, long size) {
+        try {
+            Optional<DatabaseHintFile> hintFile = DatabaseHintFile.read(segmentContext.getSegmentPath(), size);
+            if (hintFile.isEmpty()) {
+                return null;
             }
+
+            SegmentIndex index = new SegmentIndex();
+            hintFile.get().forEach(index::put);
+            return new SegmentInitializationContextImpl(segmentContext.getSegmentName(),
+                    segmentContext.getSegmentPath(), hintFile.get().getDataSize(), index,
+                    hintFile.get().getRecordCount(), format);
         } catch (IOException e) {
-            throw new DatabaseException(String.format("IO exception when trying to initialize segment %s",
-                    context.currentSegmentContext().getSegmentName()), e);
+            return null;
+        }
+    }
+
+    /**
+     * Восстанавливает индекс сегмента, читая его целиком. Если файл заканчивается оборванной
+     * или поврежденной записью (например, недописанной при падении), он обрезается до последней корректной записи -
+     * но только если в сегмент могли дописывать в момент падения: это последний сегмент таблицы или результат
+     * сжатия, который не успели закрыть (у него нет hint-файла, а сжатые сегменты еще лежат рядом).
+     * Сжатый по блокам сегмент пишут целиком и атомарно подменяют, а общий со снимком файл обрезать нельзя.
+     * Поврежденный закрытый сегмент не обрезается: записи после повреждения пропали бы молча,
+     * и по их ключам вернулись бы старые значения
+     *
+     * @throws DatabaseException если сегмент поврежден, а обрезать его нельзя
+     */
+    private SegmentInitializationContext scanSegment(SegmentInitializationContext segmentContext,
+                                                     SegmentFormat format, long fileSize, boolean lastSegment)
+            throws IOException, DatabaseException {
+        Path path = segmentContext.getSegmentPath();
+        SegmentIndex index = segmentContext.getIndex();
+        int[] recordCount = {0};
+        long size = DatabaseSegmentScanner.scan(path, format, (key, offset, removed) -> {
+            index.put(key, offset, removed);
+            recordCount[0]++;
+        });
+
+        if (size < fileSize) {
+            if (!mayBeTorn(segmentContext, format, lastSegment)) {
+                throw new DatabaseException(String.format("Segment %s is corrupted at offset %d",
+                        segmentContext.getSegmentName(), size));
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(size);
+                channel.force(true);
+            }
+        }
+
+        return new SegmentInitializationContextImpl(segmentContext.getSegmentName(), path, size, index,
+                recordCount[0], format);
+    }
+
+    private boolean mayBeTorn(SegmentInitializationContext segmentContext, SegmentFormat format,
+                              boolean lastSegment) {
+        Path path = segmentContext.getSegmentPath();
+        if (format.isCompressed() || DatabaseSnapshot.isShared(path)) {
+            return false;
         }
+        return lastSegment || (SegmentImpl.isCompactionOutput(segmentContext.getSegmentName())
+                && !Files.exists(DatabaseHintFile.hintPath(path)));
     }
-}
\ No newline at end of file
+}
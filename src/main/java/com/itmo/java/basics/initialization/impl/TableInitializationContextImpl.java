@@ -1,21 +1,24 @@
 package com.itmo.java.basics.initialization.impl;
 
-import com.itmo.java.basics.index.impl.TableIndex;
+import com.itmo.java.basics.index.KeyDirectory;
 import com.itmo.java.basics.initialization.TableInitializationContext;
 import com.itmo.java.basics.logic.Segment;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class TableInitializationContextImpl implements TableInitializationContext {
     private final String tableName;
     private final Path databasePath;
-    private final TableIndex tableIndex;
+    private final KeyDirectory keyDirectory;
+    private final List<Segment> segments = new ArrayList<>();
     private Segment currentSegment;
 
-    public TableInitializationContextImpl(String tableName, Path databasePath, TableIndex tableIndex) {
+    public TableInitializationContextImpl(String tableName, Path databasePath, KeyDirectory keyDirectory) {
         this.tableName = tableName;
         this.databasePath = databasePath;
-        this.tableIndex = tableIndex;
+        this.keyDirectory = keyDirectory;
     }
 
     @Override
@@ -29,8 +32,8 @@ public class TableInitializationContextImpl implements TableInitializationContex
     }
 
     @Override
-    public TableIndex getTableIndex() {
-        return tableIndex;
+    public KeyDirectory getKeyDirectory() {
+        return keyDirectory;
     }
 
     @Override
@@ -41,5 +44,11 @@ public class TableInitializationContextImpl implements TableInitializationContex
     @Override
     public void updateCurrentSegment(Segment segment) {
         currentSegment = segment;
+        segments.add(segment);
+    }
+
+    @Override
+    public List<Segment> getSegments() {
+        return segments;
     }
 }
@@ -1,14 +1,27 @@
 package com.itmo.java.basics.initialization.impl;
 
+import com.itmo.java.basics.config.TableEngine;
 import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.initialization.InitializationContext;
 import com.itmo.java.basics.initialization.Initializer;
+import com.itmo.java.basics.initialization.SegmentInitializationContext;
 import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.impl.LsmTable;
+import com.itmo.java.basics.logic.impl.SegmentImpl;
 import com.itmo.java.basics.logic.impl.TableImpl;
+import com.itmo.java.basics.logic.impl.WriteBufferedTable;
+import com.itmo.java.basics.logic.io.DatabaseBlockFile;
+import com.itmo.java.basics.logic.io.DatabaseBloomFilter;
+import com.itmo.java.basics.logic.io.DatabaseHintFile;
+import com.itmo.java.basics.logic.io.DatabaseTableMetadata;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
 public class TableInitializer implements Initializer {
     private final SegmentInitializer segmentInitializer;
@@ -19,7 +32,10 @@ public class TableInitializer implements Initializer {
 
     /**
      * Добавляет в контекст информацию об инициализируемой таблице.
-     * Запускает инициализацию всех сегментов в порядке их создания (из имени)
+     * Запускает инициализацию всех сегментов: читаются они параллельно, а применяются к таблице
+     * в порядке их создания (из имени).
+     * Hint-файлы сегментов пропускаются, их читает {@link SegmentInitializer}.
+     * Таблицу с движком {@link TableEngine#LSM} целиком открывает {@link LsmTable#open}
      *
      * @param context контекст с информацией об инициализируемой бд, окружении, таблицы
      * @throws DatabaseException если в контексте лежит неправильный путь к таблице, невозможно прочитать содержимого папки,
@@ -35,20 +51,45 @@ public class TableInitializer implements Initializer {
         }
 
         Path path = context.currentTableContext().getTablePath();
+        TableEngine engine;
+        try {
+            engine = DatabaseTableMetadata.readEngine(path);
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("Cannot read metadata of table %s", table.getName()), e);
+        }
+        if (engine == TableEngine.LSM) {
+            context.currentDbContext().addTable(LsmTable.open(context.currentTableContext().getTableName(), path,
+                    context.executionEnvironment().getConfig()));
+            return;
+        }
+
         File workingDirectory = new File(path.toString());
-        File[] segments = workingDirectory.listFiles();
+        File[] segments = workingDirectory.listFiles(file -> file.isFile()
+                && !DatabaseHintFile.isHintFile(file.getName())
+                && !DatabaseBloomFilter.isBloomFilterFile(file.getName())
+                && !DatabaseBlockFile.isTempFile(file.getName())
+                && !DatabaseTableMetadata.isMetadataFile(file.getName())
+                && !WriteBufferedTable.isLogFile(file.getName()));
 
-        Arrays.sort(segments);
+        Arrays.sort(segments, Comparator.comparing(File::getName, SegmentImpl.NAME_ORDER));
 
-        for (var segment : segments) {
+        List<InitializationTasks.Task<SegmentInitializationContext>> loads = new ArrayList<>(segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            File segment = segments[i];
+            boolean lastSegment = i == segments.length - 1;
             InitializationContextImpl newContext = new InitializationContextImpl(context.executionEnvironment(),
                     context.currentDbContext(), context.currentTableContext(),
                     new SegmentInitializationContextImpl(segment.getName(),
                             context.currentTableContext().getTablePath(), 0));
-            segmentInitializer.perform(newContext);
+            loads.add(() -> segmentInitializer.load(newContext, lastSegment));
+        }
+
+        for (var segmentContext : InitializationTasks.invokeAll(loads)) {
+            segmentInitializer.apply(context, segmentContext);
         }
 
-        Table initializedTable = TableImpl.initializeFromContext(context.currentTableContext());
+        Table initializedTable = TableImpl.initializeFromContext(context.currentTableContext(),
+                context.executionEnvironment().getConfig());
         context.currentDbContext().addTable(initializedTable);
     }
 }
\ No newline at end of file
@@ -1,8 +1,12 @@
 package com.itmo.java.basics.logic;
 
+import com.itmo.java.basics.config.TableEngine;
 import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.index.impl.DatabaseIndex;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
 
 public interface Database {
@@ -21,6 +25,15 @@ public interface Database {
      */
     void createTableIfNotExists(String tableName) throws DatabaseException;
 
+    /**
+     * Создает таблицу с указанным именем и способом хранения, если это имя еще не занято.
+     *
+     * @param tableName имя таблицы
+     * @param engine    способ хранения данных таблицы
+     * @throws DatabaseException если таблица с данным именем уже существует или если произошла ошибка ввода-вывода
+     */
+    void createTableIfNotExists(String tableName, TableEngine engine) throws DatabaseException;
+
     /**
      * Записывает значение в указанную таблицу по переданному ключу.
      *
@@ -29,7 +42,43 @@ public interface Database {
      * @param objectValue значение, которое нужно записать
      * @throws DatabaseException если указанная таблица не была найдена или если произошла ошибка ввода-вывода
      */
-    void write(String tableName, String objectKey, byte[] objectValue) throws DatabaseException;
+    default void write(String tableName, String objectKey, byte[] objectValue) throws DatabaseException {
+        write(tableName, keyBytes(objectKey), objectValue);
+    }
+
+    /**
+     * Записывает значение в указанную таблицу по ключу, заданному байтами (см {@link Table#write(byte[], byte[])}).
+     *
+     * @param tableName таблица, в которую нужно записать значение
+     * @param objectKey байты ключа
+     * @param objectValue значение, которое нужно записать
+     * @throws DatabaseException если указанная таблица не была найдена или если произошла ошибка ввода-вывода
+     */
+    void write(String tableName, byte[] objectKey, byte[] objectValue) throws DatabaseException;
+
+    /**
+     * Записывает значение со сроком жизни в указанную таблицу (см {@link Table#write(byte[], byte[], long)}).
+     *
+     * @param tableName       таблица, в которую нужно записать значение
+     * @param objectKey       байты ключа
+     * @param objectValue     значение, которое нужно записать
+     * @param expiresAtMillis когда истекает срок, в миллисекундах от начала эпохи
+     * @throws DatabaseException если указанная таблица не была найдена, у нее нет сроков жизни
+     *                           или произошла ошибка ввода-вывода
+     */
+    void write(String tableName, byte[] objectKey, byte[] objectValue, long expiresAtMillis) throws DatabaseException;
+
+    /**
+     * Задает срок жизни ключу указанной таблицы (см {@link Table#expire(byte[], long)}).
+     *
+     * @param tableName       имя таблицы
+     * @param objectKey       байты ключа
+     * @param expiresAtMillis когда истекает срок, в миллисекундах от начала эпохи
+     * @return значение ключа, {@link Optional#empty()} - если ключа нет
+     * @throws DatabaseException если указанная таблица не была найдена, у нее нет сроков жизни
+     *                           или произошла ошибка ввода-вывода
+     */
+    Optional<byte[]> expire(String tableName, byte[] objectKey, long expiresAtMillis) throws DatabaseException;
 
     /**
      * Считывает значение из указанной таблицы по заданному ключу.
@@ -39,7 +88,93 @@ public interface Database {
      * @return значение, которое находится по ключу
      * @throws DatabaseException если не была найдена указанная таблица, или произошла ошибка ввода-вывода
      */
-    Optional<byte[]> read(String tableName, String objectKey) throws DatabaseException;
+    default Optional<byte[]> read(String tableName, String objectKey) throws DatabaseException {
+        return read(tableName, keyBytes(objectKey));
+    }
+
+    /**
+     * Считывает значение из указанной таблицы по ключу, заданному байтами.
+     *
+     * @param tableName таблица, из которой нужно считать значение
+     * @param objectKey байты ключа
+     * @return значение, которое находится по ключу
+     * @throws DatabaseException если не была найдена указанная таблица, или произошла ошибка ввода-вывода
+     */
+    Optional<byte[]> read(String tableName, byte[] objectKey) throws DatabaseException;
+
+    /**
+     * Считывает значение для отправки клиенту, большое - возможно участком файла
+     * (см {@link Table#readStored(byte[], int)}).
+     *
+     * @param tableName       таблица, из которой нужно считать значение
+     * @param objectKey       байты ключа
+     * @param regionThreshold размер значения, начиная с которого его можно вернуть участком файла
+     * @return значение, которое находится по ключу. Его нужно закрыть после отправки
+     * @throws DatabaseException если не была найдена указанная таблица, или произошла ошибка ввода-вывода
+     */
+    Optional<StoredValue> readStored(String tableName, byte[] objectKey, int regionThreshold) throws DatabaseException;
+
+    default void delete(String tableName, String objectKey) throws DatabaseException {
+        delete(tableName, keyBytes(objectKey));
+    }
+
+    void delete(String tableName, byte[] objectKey) throws DatabaseException;
+
+    /**
+     * Обходит живые пары ключ-значение указанной таблицы (см {@link Table#scan(String, Table.ScanConsumer)}).
+     *
+     * @param tableName имя таблицы
+     * @param cursor    {@link Table#SCAN_START} или курсор, который вернул прошлый вызов
+     * @param consumer  получатель пар
+     * @return курсор, с которого продолжить обход, {@link Table#SCAN_START} - если таблица пройдена до конца
+     * @throws DatabaseException если указанная таблица не была найдена, курсор к ней не подходит
+     *                           или произошла ошибка ввода-вывода
+     */
+    String scan(String tableName, String cursor, Table.ScanConsumer consumer) throws DatabaseException;
+
+    /**
+     * Передает живые пары указанной таблицы с ключами из диапазона по возрастанию ключей
+     * (см {@link Table#range(byte[], byte[], Table.ScanConsumer)}).
+     *
+     * @param tableName имя таблицы
+     * @param fromKey   первый ключ диапазона
+     * @param toKey     ключ сразу за диапазоном, {@code null} - если диапазон до конца таблицы
+     * @param consumer  получатель пар
+     * @throws DatabaseException если указанная таблица не была найдена, у нее нет упорядоченного индекса
+     *                           или произошла ошибка ввода-вывода
+     */
+    void range(String tableName, byte[] fromKey, byte[] toKey, Table.ScanConsumer consumer) throws DatabaseException;
 
-    void delete(String tableName, String objectKey) throws DatabaseException;
+    /**
+     * Возвращает статистику указанной таблицы (см {@link Table#getStats()}).
+     *
+     * @param tableName имя таблицы
+     * @throws DatabaseException если указанная таблица не была найдена
+     */
+    Map<String, Long> getTableStats(String tableName) throws DatabaseException;
+
+    /**
+     * Снимает снимок всех таблиц базы (см {@link Table#snapshot(Path)}). Таблицы снимаются по очереди,
+     * поэтому снимок согласован внутри каждой таблицы, но не между ними.
+     *
+     * @param snapshotPath папка снимка: в ней появится папка базы, и снимок можно использовать как рабочую папку
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    void snapshot(Path snapshotPath) throws DatabaseException;
+
+    /**
+     * Снимает снимок одной таблицы базы (см {@link Table#snapshot(Path)}).
+     *
+     * @param snapshotPath папка снимка: в ней появится папка базы с папкой таблицы
+     * @param tableName    имя таблицы
+     * @throws DatabaseException если указанная таблица не была найдена или произошла ошибка ввода-вывода
+     */
+    void snapshot(Path snapshotPath, String tableName) throws DatabaseException;
+
+    /**
+     * @return байты ключа в UTF-8, {@code null} - если ключа нет
+     */
+    private static byte[] keyBytes(String objectKey) {
+        return objectKey == null ? null : objectKey.getBytes(StandardCharsets.UTF_8);
+    }
 }
\ No newline at end of file
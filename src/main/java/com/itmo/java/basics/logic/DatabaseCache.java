@@ -1,9 +1,9 @@
 package com.itmo.java.basics.logic;
 
 public interface DatabaseCache {
-    byte[] get(String key);
+    byte[] get(byte[] key);
 
-    void set(String key, byte[] value);
+    void set(byte[] key, byte[] value);
 
-    void delete(String key);
+    void delete(byte[] key);
 }
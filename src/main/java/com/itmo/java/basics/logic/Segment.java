@@ -2,8 +2,9 @@ package com.itmo.java.basics.logic;
 
 import com.itmo.java.basics.index.impl.SegmentIndex;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.Optional;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Сегмент - append-only файл, хранящий пары ключ-значение, разделенные специальным символом.
@@ -11,8 +12,12 @@ import java.util.Optional;
  * - при превышении размера сегмента создается новый сегмент и дальнейшие операции записи производятся в него
  * - именование файла-сегмента должно позволять установить очередность их появления
  * - является неизменяемым после появления более нового сегмента
+ * <p>
+ * Читать и удалять по ключу сегмент не умеет: своего индекса у него нет, места записей знает каталог ключей
+ * таблицы ({@link com.itmo.java.basics.index.KeyDirectory}). Читает и удаляет таблица, см
+ * {@link com.itmo.java.basics.logic.impl.TableImpl}.
  */
-public interface Segment {
+public interface Segment extends Closeable {
     /**
      * Возвращает имя сегмента.
      *
@@ -28,16 +33,20 @@ public interface Segment {
      * @return {@code true} - если значение записалось, {@code false} - если нет
      * @throws IOException если произошла ошибка ввода-вывода.
      */
-    boolean write(String objectKey, byte[] objectValue) throws IOException;
+    default boolean write(String objectKey, byte[] objectValue) throws IOException {
+        return write(objectKey.getBytes(StandardCharsets.UTF_8), objectValue);
+    }
 
     /**
-     * Считывает значение из сегмента по переданному ключу.
+     * Записывает значение по ключу, заданному байтами: ключ попадает в файл как есть и может быть не UTF-8.
+     * Строковый ключ равен ключу из его байт в UTF-8.
      *
-     * @param objectKey ключ, по которому нужно получить значение
-     * @return значение, которое находится по ключу
-     * @throws IOException если произошла ошибка ввода-вывода
+     * @param objectKey байты ключа
+     * @param objectValue значение, которое нужно записать
+     * @return {@code true} - если значение записалось, {@code false} - если нет
+     * @throws IOException если произошла ошибка ввода-вывода.
      */
-    Optional<byte[]> read(String objectKey) throws IOException;
+    boolean write(byte[] objectKey, byte[] objectValue) throws IOException;
 
     /**
      * Возвращает {@code true} - если данный сегмент открыт только на чтение, {@code false} - если данный сегмент открыт на чтение и запись.
@@ -46,5 +55,20 @@ public interface Segment {
      */
     boolean isReadOnly();
 
-    boolean delete(String objectKey) throws IOException;
-}
\ No newline at end of file
+    /**
+     * Подтверждает записанные в сегмент данные согласно политике fsync: при необходимости дожидается,
+     * пока они окажутся на диске. {@link #write(byte[], byte[])} сам на диск не сбрасывает,
+     * чтобы один fsync мог подтвердить записи сразу нескольких потоков.
+     *
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    void flush() throws IOException;
+
+    /**
+     * Закрывает открытые сегментом файловые каналы.
+     *
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,154 @@
+package com.itmo.java.basics.logic;
+
+import com.itmo.java.basics.logic.io.DatabaseRecordReader;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Значение, прочитанное для отправки клиенту: либо байты в памяти, либо участок файла, где значение лежит на диске.
+ * <p>
+ * Участок файла не читается в кучу: {@link #transferTo(WritableByteChannel)} отдает его в канал через
+ * {@link FileChannel#transferTo}, и для сокета ядро копирует байты из page cache напрямую (sendfile),
+ * а участок отображенного в память файла пишется в канал прямо из отображения.
+ * <p>
+ * Участок одолжен у ридера сегмента или blob-файла (см {@link DatabaseRecordReader#pinRegion}) - его нужно
+ * вернуть через {@link #close()}. До этого ридер не освобождает файл, поэтому участок остается читаемым,
+ * даже если ридер тем временем вытеснили, а сегмент сжали или удалили при сжатии.
+ */
+public final class StoredValue implements Closeable {
+    private final byte[] bytes;
+    private final FileChannel channel;
+    private final ByteBuffer mapped;
+    private final long position;
+    private final int length;
+    /**
+     * Возвращает участок ридеру, {@code null} - если значение в памяти или уже закрыто
+     */
+    private Closeable release;
+
+    private StoredValue(byte[] bytes, FileChannel channel, ByteBuffer mapped, long position, int length,
+                        Closeable release) {
+        this.bytes = bytes;
+        this.channel = channel;
+        this.mapped = mapped;
+        this.position = position;
+        this.length = length;
+        this.release = release;
+    }
+
+    /**
+     * @param bytes значение в памяти
+     */
+    public static StoredValue of(byte[] bytes) {
+        return new StoredValue(bytes, null, null, 0, bytes.length, null);
+    }
+
+    /**
+     * @param channel  канал файла со значением, значение его не закрывает
+     * @param position где в файле начинается значение
+     * @param length   размер значения
+     * @param release  возвращает участок ридеру, вызывается один раз из {@link #close()}
+     */
+    public static StoredValue region(FileChannel channel, long position, int length, Closeable release) {
+        return new StoredValue(null, channel, null, position, length, release);
+    }
+
+    /**
+     * @param mapped  участок отображенного в память файла, ровно со значением
+     * @param release возвращает участок ридеру, вызывается один раз из {@link #close()}
+     */
+    public static StoredValue region(ByteBuffer mapped, Closeable release) {
+        return new StoredValue(null, null, mapped, 0, mapped.remaining(), release);
+    }
+
+    /**
+     * @return {@code true} - если значение лежит в файле, а не в памяти
+     */
+    public boolean isRegion() {
+        return bytes == null;
+    }
+
+    /**
+     * @return размер значения в байтах
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return значение в памяти, {@code null} - если значение лежит в файле
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Возвращает значение целиком. Участок файла при этом читается в память
+     *
+     * @throws IOException если участок не удалось прочитать
+     */
+    public byte[] toBytes() throws IOException {
+        if (!isRegion()) {
+            return bytes;
+        }
+        if (mapped != null) {
+            byte[] result = new byte[length];
+            mapped.duplicate().get(result);
+            return result;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException(String.format("Value region ends after %d of %d bytes",
+                        buffer.position(), length));
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Пишет значение в канал целиком. Участок файла передается через {@link FileChannel#transferTo},
+     * не проходя через кучу
+     *
+     * @throws IOException если запись не удалась или файл оказался короче участка
+     */
+    public void transferTo(WritableByteChannel target) throws IOException {
+        if (!isRegion() || mapped != null) {
+            ByteBuffer buffer = isRegion() ? mapped.duplicate() : ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            return;
+        }
+
+        long transferred = 0;
+        while (transferred < length) {
+            long sent = channel.transferTo(position + transferred, length - transferred, target);
+            if (sent <= 0 && position + transferred >= channel.size()) {
+                throw new EOFException(String.format("Value region ends after %d of %d bytes", transferred, length));
+            }
+            transferred += sent;
+        }
+    }
+
+    /**
+     * Возвращает участок ридеру. Повторный вызов ничего не делает
+     */
+    @Override
+    public void close() throws IOException {
+        Closeable current;
+        synchronized (this) {
+            current = release;
+            release = null;
+        }
+        if (current != null) {
+            current.close();
+        }
+    }
+}
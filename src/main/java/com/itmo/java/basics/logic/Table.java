@@ -1,9 +1,12 @@
 package com.itmo.java.basics.logic;
 
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.index.impl.TableIndex;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -16,6 +19,11 @@ import java.util.Optional;
  * и хранящую файлы-сегменты данной таблицы
  */
 public interface Table {
+    /**
+     * Курсор, с которого начинается обход таблицы. Он же возвращается, когда обход дошел до конца
+     */
+    String SCAN_START = "0";
+
     /**
      * Возвращает имя таблицы.
      *
@@ -30,7 +38,43 @@ public interface Table {
      * @param objectValue значение, которое нужно записать
      * @throws DatabaseException если произошла ошибка ввода-вывода
      */
-    void write(String objectKey, byte[] objectValue) throws DatabaseException;
+    default void write(String objectKey, byte[] objectValue) throws DatabaseException {
+        write(objectKey.getBytes(StandardCharsets.UTF_8), objectValue);
+    }
+
+    /**
+     * Записывает в таблицу значение по ключу, заданному байтами: ключ хранится как есть и может быть не UTF-8.
+     * Строковый ключ равен ключу из его байт в UTF-8.
+     *
+     * @param objectKey   байты ключа
+     * @param objectValue значение, которое нужно записать
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    void write(byte[] objectKey, byte[] objectValue) throws DatabaseException;
+
+    /**
+     * Записывает значение со сроком жизни: начиная с момента {@code expiresAtMillis} ключ читается как удаленный.
+     * Следующая запись по ключу без срока срок снимает.
+     *
+     * @param objectKey       байты ключа
+     * @param objectValue     значение, которое нужно записать
+     * @param expiresAtMillis когда истекает срок, в миллисекундах от начала эпохи
+     * @throws DatabaseException если у таблицы нет сроков жизни
+     *                           (см {@link com.itmo.java.basics.config.DatabaseConfig#isExpirationEnabled})
+     *                           или произошла ошибка ввода-вывода
+     */
+    void write(byte[] objectKey, byte[] objectValue, long expiresAtMillis) throws DatabaseException;
+
+    /**
+     * Задает срок жизни ключу, который уже есть в таблице: его текущее значение записывается заново со сроком
+     * (см {@link #write(byte[], byte[], long)}).
+     *
+     * @param objectKey       байты ключа
+     * @param expiresAtMillis когда истекает срок, в миллисекундах от начала эпохи
+     * @return значение ключа, {@link Optional#empty()} - если ключа нет: тогда ничего не записывается
+     * @throws DatabaseException если у таблицы нет сроков жизни или произошла ошибка ввода-вывода
+     */
+    Optional<byte[]> expire(byte[] objectKey, long expiresAtMillis) throws DatabaseException;
 
     /**
      * Считывает значение из таблицы по заданному ключу.
@@ -39,8 +83,115 @@ public interface Table {
      * @return значение, которое находится по ключу
      * @throws DatabaseException если произошла ошибка ввода-вывода
      */
-    Optional<byte[]> read(String objectKey) throws DatabaseException;
+    default Optional<byte[]> read(String objectKey) throws DatabaseException {
+        return read(objectKey.getBytes(StandardCharsets.UTF_8));
+    }
 
-    void delete(String objectKey) throws DatabaseException;
-}
+    /**
+     * Считывает значение из таблицы по ключу, заданному байтами.
+     *
+     * @param objectKey байты ключа
+     * @return значение, которое находится по ключу
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    Optional<byte[]> read(byte[] objectKey) throws DatabaseException;
+
+    /**
+     * Считывает значение для отправки клиенту. Значение не меньше {@code regionThreshold} байт таблица может
+     * вернуть участком файла, не читая его в память (см {@link StoredValue}). По умолчанию - {@link #read(byte[])}.
+     *
+     * @param objectKey       байты ключа
+     * @param regionThreshold размер значения, начиная с которого его можно вернуть участком файла
+     * @return значение, которое находится по ключу. Его нужно закрыть после отправки
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    default Optional<StoredValue> readStored(byte[] objectKey, int regionThreshold) throws DatabaseException {
+        return read(objectKey).map(StoredValue::of);
+    }
+
+    default void delete(String objectKey) throws DatabaseException {
+        delete(objectKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void delete(byte[] objectKey) throws DatabaseException;
+
+    /**
+     * Обходит живые пары ключ-значение таблицы с места, на котором остановился прошлый обход, и передает их
+     * получателю по одной, не собирая в памяти. Записи и чтения таблицы на время обхода не блокируются.
+     * <p>
+     * Ключ, который был в таблице и не менялся все время обхода (от {@link #SCAN_START} до возврата
+     * {@link #SCAN_START}), будет передан хотя бы раз, возможно - несколько раз (например, если его запись
+     * переместили при сжатии). Ключ, записанный или удаленный во время обхода, может как попасть в него, так и нет.
+     *
+     * @param cursor   {@link #SCAN_START} или курсор, который вернул прошлый вызов
+     * @param consumer получатель пар
+     * @return курсор, с которого продолжить обход, {@link #SCAN_START} - если таблица пройдена до конца
+     * @throws DatabaseException если курсор не подходит к таблице, произошла ошибка ввода-вывода
+     *                           или получатель бросил исключение
+     */
+    String scan(String cursor, ScanConsumer consumer) throws DatabaseException;
 
+    /**
+     * Передает получателю живые пары с ключами из {@code [fromKey, toKey)} по возрастанию ключей
+     * (как байты без знака), пока получатель их принимает. Время пропорционально числу переданных пар.
+     * Записи, сделанные во время вызова, могут как попасть в него, так и нет.
+     *
+     * @param fromKey  первый ключ диапазона
+     * @param toKey    ключ сразу за диапазоном, {@code null} - если диапазон до конца таблицы
+     * @param consumer получатель пар
+     * @throws DatabaseException если у таблицы нет упорядоченного индекса
+     *                           (см {@link com.itmo.java.basics.config.DatabaseConfig#isOrderedIndexEnabled}),
+     *                           произошла ошибка ввода-вывода или получатель бросил исключение
+     */
+    void range(byte[] fromKey, byte[] toKey, ScanConsumer consumer) throws DatabaseException;
+
+    /**
+     * Возвращает статистику таблицы: число сегментов, ключей, размеры вспомогательных структур.
+     *
+     * @return название показателя - значение, в постоянном порядке
+     */
+    Map<String, Long> getStats();
+
+    /**
+     * Снимает снимок таблицы: закрывает ее текущий файл для записи и кладет в папку снимка жесткие ссылки на все
+     * файлы, из которых таблица инициализируется (см {@link com.itmo.java.basics.logic.io.DatabaseSnapshot}).
+     * Записи, подтвержденные до начала снимка, в него попадают, более поздние - нет.
+     *
+     * @param snapshotTablePath папка таблицы в снимке, создается, если ее нет
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    void snapshot(Path snapshotTablePath) throws DatabaseException;
+
+    /**
+     * Конец диапазона ключей с префиксом для {@link #range(byte[], byte[], ScanConsumer)}: наименьший ключ
+     * больше всех ключей с этим префиксом.
+     *
+     * @return ключ сразу за ключами с префиксом, {@code null} - если такого нет (префикс пустой или из одних 0xFF)
+     */
+    static byte[] prefixEnd(byte[] prefix) {
+        int last = prefix.length - 1;
+        while (last >= 0 && prefix[last] == (byte) 0xFF) {
+            last--;
+        }
+        if (last < 0) {
+            return null;
+        }
+        byte[] end = Arrays.copyOf(prefix, last + 1);
+        end[last]++;
+        return end;
+    }
+
+    /**
+     * Получатель пар ключ-значение при обходе таблицы
+     */
+    @FunctionalInterface
+    interface ScanConsumer {
+        /**
+         * @param key   байты ключа
+         * @param value значение
+         * @return {@code false} - если следующие пары не нужны: обход остановится, и курсор укажет сразу за этой парой
+         * @throws IOException если пару не удалось принять
+         */
+        boolean accept(byte[] key, byte[] value) throws IOException;
+    }
+}
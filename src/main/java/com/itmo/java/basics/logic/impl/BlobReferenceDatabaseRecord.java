@@ -0,0 +1,93 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Запись, значение которой лежит не в сегменте, а в blob-файле таблицы (см {@link com.itmo.java.basics.logic.io.DatabaseBlobStore}).
+ * В сегменте на месте значения хранится ссылка blobFile(long)|offset(long)|length(int),
+ * а размер значения записан как {@link #VALUE_SIZE}.
+ * <p>
+ * {@link #getValue()} возвращает саму ссылку: сегмент подменяет ее значением при чтении,
+ * а компактор переносит ссылку в новый сегмент, не трогая значение.
+ */
+public class BlobReferenceDatabaseRecord implements WritableDatabaseRecord {
+    public static final int VALUE_SIZE = -2;
+    public static final int REFERENCE_SIZE = 2 * Long.BYTES + Integer.BYTES;
+
+    private final byte[] key;
+    private final long blobFile;
+    private final long offset;
+    private final int length;
+
+    public BlobReferenceDatabaseRecord(byte[] key, long blobFile, long offset, int length) {
+        this.key = key;
+        this.blobFile = blobFile;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Читает ссылку из буфера, не меняя его позицию
+     *
+     * @param key      ключ записи
+     * @param buffer   буфер с записью
+     * @param position где в буфере начинается ссылка
+     */
+    public static BlobReferenceDatabaseRecord read(byte[] key, ByteBuffer buffer, int position) {
+        return new BlobReferenceDatabaseRecord(key, buffer.getLong(position), buffer.getLong(position + Long.BYTES),
+                buffer.getInt(position + 2 * Long.BYTES));
+    }
+
+    @Override
+    public byte[] getKey() {
+        return key;
+    }
+
+    @Override
+    public byte[] getValue() {
+        return ByteBuffer.allocate(REFERENCE_SIZE).putLong(blobFile).putLong(offset).putInt(length).array();
+    }
+
+    @Override
+    public long size() {
+        return 8 + key.length + REFERENCE_SIZE;
+    }
+
+    @Override
+    public boolean isValuePresented() {
+        return true;
+    }
+
+    @Override
+    public int getKeySize() {
+        return key.length;
+    }
+
+    @Override
+    public int getValueSize() {
+        return VALUE_SIZE;
+    }
+
+    /**
+     * @return номер blob-файла
+     */
+    public long getBlobFile() {
+        return blobFile;
+    }
+
+    /**
+     * @return сдвиг записи со значением в blob-файле
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return размер значения
+     */
+    public int getLength() {
+        return length;
+    }
+}
@@ -1,17 +1,32 @@
 package com.itmo.java.basics.logic.impl;
 
 import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.StoredValue;
 import com.itmo.java.basics.logic.Table;
 
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
 
+/**
+ * Таблица с кэшем последних записанных значений. Запись в таблицу и обновление кэша по одному ключу идут
+ * под замком этого ключа (замки общие для групп ключей), иначе при параллельной записи в кэше могло бы
+ * остаться не последнее записанное значение. Чтение замков не берет: кэш заполняется только при записи
+ */
 public class CachingTable implements Table {
+    private static final int KEY_LOCKS = 64;
+
     private final DatabaseCacheImpl cache;
     private final Table table;
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
 
-    public CachingTable(TableImpl table) {
+    public CachingTable(Table table) {
         this.table = table;
         cache = new DatabaseCacheImpl();
+        for (int i = 0; i < KEY_LOCKS; i++) {
+            keyLocks[i] = new Object();
+        }
     }
 
     @Override
@@ -20,23 +35,88 @@ public class CachingTable implements Table {
     }
 
     @Override
-    public void write(String objectKey, byte[] objectValue) throws DatabaseException {
-        table.write(objectKey, objectValue);
-        cache.set(objectKey, objectValue);
+    public void write(byte[] objectKey, byte[] objectValue) throws DatabaseException {
+        synchronized (lockOf(objectKey)) {
+            table.write(objectKey, objectValue);
+            cache.set(objectKey, objectValue);
+        }
+    }
+
+    /**
+     * Значение со сроком в кэш не попадает: его срок кэш бы не заметил
+     */
+    @Override
+    public void write(byte[] objectKey, byte[] objectValue, long expiresAtMillis) throws DatabaseException {
+        synchronized (lockOf(objectKey)) {
+            table.write(objectKey, objectValue, expiresAtMillis);
+            cache.delete(objectKey);
+        }
+    }
+
+    @Override
+    public Optional<byte[]> expire(byte[] objectKey, long expiresAtMillis) throws DatabaseException {
+        synchronized (lockOf(objectKey)) {
+            Optional<byte[]> value = table.expire(objectKey, expiresAtMillis);
+            cache.delete(objectKey);
+            return value;
+        }
     }
 
     @Override
-    public Optional<byte[]> read(String objectKey) throws DatabaseException {
-        if (cache.get(objectKey) == null) {
+    public Optional<byte[]> read(byte[] objectKey) throws DatabaseException {
+        byte[] cached = cache.get(objectKey);
+        if (cached == null) {
             return table.read(objectKey);
         } else {
-            return Optional.of(cache.get(objectKey));
+            return Optional.of(cached);
+        }
+    }
+
+    /**
+     * Значение из кэша уже в памяти - его и отдаем
+     */
+    @Override
+    public Optional<StoredValue> readStored(byte[] objectKey, int regionThreshold) throws DatabaseException {
+        byte[] cached = cache.get(objectKey);
+        if (cached == null) {
+            return table.readStored(objectKey, regionThreshold);
+        } else {
+            return Optional.of(StoredValue.of(cached));
         }
     }
 
     @Override
-    public void delete(String objectKey) throws DatabaseException {
-        table.delete(objectKey);
-        cache.delete(objectKey);
+    public void delete(byte[] objectKey) throws DatabaseException {
+        synchronized (lockOf(objectKey)) {
+            table.delete(objectKey);
+            cache.delete(objectKey);
+        }
+    }
+
+    /**
+     * Кэш пишется вместе с таблицей, поэтому обход идет прямо по ней
+     */
+    @Override
+    public String scan(String cursor, ScanConsumer consumer) throws DatabaseException {
+        return table.scan(cursor, consumer);
+    }
+
+    @Override
+    public void range(byte[] fromKey, byte[] toKey, ScanConsumer consumer) throws DatabaseException {
+        table.range(fromKey, toKey, consumer);
+    }
+
+    @Override
+    public Map<String, Long> getStats() {
+        return table.getStats();
+    }
+
+    @Override
+    public void snapshot(Path snapshotTablePath) throws DatabaseException {
+        table.snapshot(snapshotTablePath);
+    }
+
+    private Object lockOf(byte[] objectKey) {
+        return keyLocks[Math.floorMod(Arrays.hashCode(objectKey), KEY_LOCKS)];
     }
 }
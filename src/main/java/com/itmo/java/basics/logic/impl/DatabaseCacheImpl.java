@@ -2,21 +2,25 @@ package com.itmo.java.basics.logic.impl;
 
 import com.itmo.java.basics.logic.DatabaseCache;
 
+import java.nio.ByteBuffer;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class DatabaseCacheImpl implements DatabaseCache {
     public static final int CACHE_SIZE = 5000;
-    private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>() {
+    /**
+     * Ключ - байты ключа, обернутые в {@link ByteBuffer}: он сравнивается по содержимому
+     */
+    private final LinkedHashMap<ByteBuffer, byte[]> cache = new LinkedHashMap<>() {
         @Override
-        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, byte[]> eldest) {
             return size() > CACHE_SIZE;
         }
     };
 
     @Override
-    public byte[] get(String key) {
-        byte[] value = cache.get(key);
+    public synchronized byte[] get(byte[] key) {
+        byte[] value = cache.get(ByteBuffer.wrap(key));
 
         if (value == null) {
             return null;
@@ -24,16 +28,16 @@ public class DatabaseCacheImpl implements DatabaseCache {
             this.delete(key);
             this.set(key, value);
         }
-        return cache.get(key);
+        return value;
     }
 
     @Override
-    public void set(String key, byte[] value) {
-        cache.put(key, value);
+    public synchronized void set(byte[] key, byte[] value) {
+        cache.put(ByteBuffer.wrap(key), value);
     }
 
     @Override
-    public void delete(String key) {
-        cache.remove(key);
+    public synchronized void delete(byte[] key) {
+        cache.remove(ByteBuffer.wrap(key));
     }
 }
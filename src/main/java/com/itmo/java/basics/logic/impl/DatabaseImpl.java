@@ -1,9 +1,12 @@
 package com.itmo.java.basics.logic.impl;
 
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.TableEngine;
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.index.impl.TableIndex;
+import com.itmo.java.basics.index.KeyDirectory;
 import com.itmo.java.basics.initialization.DatabaseInitializationContext;
 import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.StoredValue;
 import com.itmo.java.basics.logic.Table;
 
 import java.io.IOException;
@@ -16,21 +19,28 @@ import java.util.Optional;
 public class DatabaseImpl implements Database {
     private final String name;
     private final Path path;
+    private final DatabaseConfig config;
     private Map<String, Table> databaseIndex = new HashMap<>();
 
-    private DatabaseImpl(String name, Path path) {
+    private DatabaseImpl(String name, Path path, DatabaseConfig config) {
         this.name = name;
         this.path = path;
+        this.config = config;
     }
 
-    private DatabaseImpl(String name, Path path, Map<String, Table> databaseIndex) {
+    private DatabaseImpl(String name, Path path, Map<String, Table> databaseIndex, DatabaseConfig config) {
         this.name = name;
         this.path = path;
         this.databaseIndex = databaseIndex;
+        this.config = config;
     }
 
     public static Database create(String dbName, Path databaseRoot) throws DatabaseException {
-        var db = new DatabaseImpl(dbName, databaseRoot.resolve(dbName));
+        return create(dbName, databaseRoot, DatabaseConfig.builder().build());
+    }
+
+    public static Database create(String dbName, Path databaseRoot, DatabaseConfig config) throws DatabaseException {
+        var db = new DatabaseImpl(dbName, databaseRoot.resolve(dbName), config);
 
         try {
             Files.createDirectory(databaseRoot.resolve(dbName));
@@ -42,7 +52,11 @@ public class DatabaseImpl implements Database {
     }
 
     public static Database initializeFromContext(DatabaseInitializationContext context) {
-        return new DatabaseImpl(context.getDbName(), context.getDatabasePath(), context.getTables());
+        return initializeFromContext(context, DatabaseConfig.builder().build());
+    }
+
+    public static Database initializeFromContext(DatabaseInitializationContext context, DatabaseConfig config) {
+        return new DatabaseImpl(context.getDbName(), context.getDatabasePath(), context.getTables(), config);
     }
 
     @Override
@@ -52,15 +66,23 @@ public class DatabaseImpl implements Database {
 
     @Override
     public void createTableIfNotExists(String tableName) throws DatabaseException {
+        createTableIfNotExists(tableName, TableEngine.HASH);
+    }
+
+    @Override
+    public void createTableIfNotExists(String tableName, TableEngine engine) throws DatabaseException {
         if (databaseIndex.get(tableName) != null) {
             throw new DatabaseException(String.format("The table %s already exists", tableName));
         }
 
-        databaseIndex.put(tableName, TableImpl.create(tableName, path, new TableIndex()));
+        Table table = engine == TableEngine.LSM
+                ? LsmTable.create(tableName, path, config)
+                : TableImpl.create(tableName, path, KeyDirectory.create(config.getIndexMode()), config);
+        databaseIndex.put(tableName, table);
     }
 
     @Override
-    public void write(String tableName, String objectKey, byte[] objectValue) throws DatabaseException {
+    public void write(String tableName, byte[] objectKey, byte[] objectValue) throws DatabaseException {
         if (databaseIndex.get(tableName) == null) {
             throw new DatabaseException(String.format("There is no table %s", tableName));
         }
@@ -73,7 +95,34 @@ public class DatabaseImpl implements Database {
     }
 
     @Override
-    public Optional<byte[]> read(String tableName, String objectKey) throws DatabaseException {
+    public void write(String tableName, byte[] objectKey, byte[] objectValue, long expiresAtMillis)
+            throws DatabaseException {
+        if (databaseIndex.get(tableName) == null) {
+            throw new DatabaseException(String.format("There is no table %s", tableName));
+        }
+
+        if (objectKey == null) {
+            throw new DatabaseException("The key mustn't be null value");
+        }
+
+        databaseIndex.get(tableName).write(objectKey, objectValue, expiresAtMillis);
+    }
+
+    @Override
+    public Optional<byte[]> expire(String tableName, byte[] objectKey, long expiresAtMillis) throws DatabaseException {
+        if (databaseIndex.get(tableName) == null) {
+            throw new DatabaseException(String.format("There is no table %s", tableName));
+        }
+
+        if (objectKey == null) {
+            throw new DatabaseException("The key mustn't be null value");
+        }
+
+        return databaseIndex.get(tableName).expire(objectKey, expiresAtMillis);
+    }
+
+    @Override
+    public Optional<byte[]> read(String tableName, byte[] objectKey) throws DatabaseException {
         if (databaseIndex.get(tableName) == null || objectKey == null) {
             return Optional.empty();
         } else {
@@ -82,7 +131,17 @@ public class DatabaseImpl implements Database {
     }
 
     @Override
-    public void delete(String tableName, String objectKey) throws DatabaseException {
+    public Optional<StoredValue> readStored(String tableName, byte[] objectKey, int regionThreshold)
+            throws DatabaseException {
+        if (databaseIndex.get(tableName) == null || objectKey == null) {
+            return Optional.empty();
+        } else {
+            return databaseIndex.get(tableName).readStored(objectKey, regionThreshold);
+        }
+    }
+
+    @Override
+    public void delete(String tableName, byte[] objectKey) throws DatabaseException {
         if (databaseIndex.get(tableName) == null) {
             throw new DatabaseException(String.format("There is no table %s", tableName));
         }
@@ -93,4 +152,55 @@ public class DatabaseImpl implements Database {
 
         databaseIndex.get(tableName).delete(objectKey);
     }
+
+    @Override
+    public String scan(String tableName, String cursor, Table.ScanConsumer consumer) throws DatabaseException {
+        if (databaseIndex.get(tableName) == null) {
+            throw new DatabaseException(String.format("There is no table %s", tableName));
+        }
+
+        return databaseIndex.get(tableName).scan(cursor, consumer);
+    }
+
+    @Override
+    public void range(String tableName, byte[] fromKey, byte[] toKey, Table.ScanConsumer consumer)
+            throws DatabaseException {
+        if (databaseIndex.get(tableName) == null) {
+            throw new DatabaseException(String.format("There is no table %s", tableName));
+        }
+
+        databaseIndex.get(tableName).range(fromKey, toKey, consumer);
+    }
+
+    @Override
+    public Map<String, Long> getTableStats(String tableName) throws DatabaseException {
+        if (databaseIndex.get(tableName) == null) {
+            throw new DatabaseException(String.format("There is no table %s", tableName));
+        }
+
+        return databaseIndex.get(tableName).getStats();
+    }
+
+    @Override
+    public void snapshot(Path snapshotPath) throws DatabaseException {
+        Path databaseSnapshotPath = snapshotPath.resolve(name);
+        try {
+            Files.createDirectories(databaseSnapshotPath);
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to create snapshot of database %s", name), e);
+        }
+
+        for (var table : databaseIndex.entrySet()) {
+            table.getValue().snapshot(databaseSnapshotPath.resolve(table.getKey()));
+        }
+    }
+
+    @Override
+    public void snapshot(Path snapshotPath, String tableName) throws DatabaseException {
+        if (databaseIndex.get(tableName) == null) {
+            throw new DatabaseException(String.format("There is no table %s", tableName));
+        }
+
+        databaseIndex.get(tableName).snapshot(snapshotPath.resolve(name).resolve(tableName));
+    }
 }
@@ -0,0 +1,119 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Запись со сроком жизни: с момента {@link #getExpiresAtMillis()} ключ читается как удаленный.
+ * В сегменте на месте значения лежит expiresAtMillis(long)|value, а размер значения записан как
+ * {@link #VALUE_SIZE_BASE} минус длина значения - так полный размер записи по-прежнему известен из заголовка.
+ * <p>
+ * Значения со сроком всегда лежат в самом сегменте, даже большие: в blob-файл они не выносятся.
+ */
+public class ExpiringDatabaseRecord implements WritableDatabaseRecord {
+    /**
+     * Размер значения в заголовке записи с пустым значением, у более длинных - меньше на длину значения
+     */
+    public static final int VALUE_SIZE_BASE = -3;
+
+    private final byte[] key;
+    private final byte[] value;
+    private final long expiresAtMillis;
+
+    public ExpiringDatabaseRecord(byte[] key, byte[] value, long expiresAtMillis) {
+        this.key = key;
+        this.value = value;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    /**
+     * @param valueSize размер значения из заголовка записи
+     * @return {@code true} - если это запись со сроком жизни
+     */
+    public static boolean isExpiring(int valueSize) {
+        return valueSize <= VALUE_SIZE_BASE;
+    }
+
+    /**
+     * @param valueSize размер значения из заголовка записи со сроком жизни
+     * @return сколько байт в сегменте занимают срок и значение
+     */
+    public static long storedSize(int valueSize) {
+        return Long.BYTES + (long) VALUE_SIZE_BASE - valueSize;
+    }
+
+    /**
+     * @return {@code true} - если это запись со сроком жизни, и к моменту {@code nowMillis} срок уже истек
+     */
+    public static boolean isExpired(DatabaseRecord record, long nowMillis) {
+        return record instanceof ExpiringDatabaseRecord && ((ExpiringDatabaseRecord) record).isExpired(nowMillis);
+    }
+
+    /**
+     * Читает запись из буфера, не меняя его позицию
+     *
+     * @param key       ключ записи
+     * @param valueSize размер значения из заголовка
+     * @param buffer    буфер с записью
+     * @param position  где в буфере начинается срок
+     */
+    public static ExpiringDatabaseRecord read(byte[] key, int valueSize, ByteBuffer buffer, int position) {
+        byte[] value = new byte[VALUE_SIZE_BASE - valueSize];
+        buffer.duplicate().position(position + Long.BYTES).get(value);
+        return new ExpiringDatabaseRecord(key, value, buffer.getLong(position));
+    }
+
+    @Override
+    public byte[] getKey() {
+        return key;
+    }
+
+    @Override
+    public byte[] getValue() {
+        return value;
+    }
+
+    @Override
+    public long size() {
+        return 8 + key.length + Long.BYTES + value.length;
+    }
+
+    @Override
+    public boolean isValuePresented() {
+        return true;
+    }
+
+    @Override
+    public int getKeySize() {
+        return key.length;
+    }
+
+    @Override
+    public int getValueSize() {
+        return VALUE_SIZE_BASE - value.length;
+    }
+
+    /**
+     * @return когда истекает срок, в миллисекундах от начала эпохи
+     */
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    /**
+     * @return {@code true} - если к моменту {@code nowMillis} срок уже истек
+     */
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAtMillis;
+    }
+
+    /**
+     * @return та же запись с пустым значением: после истечения срока она нужна только затем, чтобы перекрывать
+     * более старые записи ключа
+     */
+    public ExpiringDatabaseRecord withoutValue() {
+        return new ExpiringDatabaseRecord(key, new byte[0], expiresAtMillis);
+    }
+}
@@ -0,0 +1,13 @@
+package com.itmo.java.basics.logic.impl;
+
+import java.io.IOException;
+
+/**
+ * По месту записи из каталога ключей лежит запись другого ключа: место устарело (номер сегмента отдали новому
+ * сегменту) или каталог хранит только хеши ключей и нашел запись с тем же хешем
+ */
+class KeyMismatchException extends IOException {
+    KeyMismatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,868 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.FsyncPolicy;
+import com.itmo.java.basics.config.TableEngine;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.io.DatabaseAppendChannel;
+import com.itmo.java.basics.logic.io.DatabaseChannelReader;
+import com.itmo.java.basics.logic.io.DatabaseSegmentScanner;
+import com.itmo.java.basics.logic.io.DatabaseSnapshot;
+import com.itmo.java.basics.logic.io.DatabaseSortedFile;
+import com.itmo.java.basics.logic.io.DatabaseTableMetadata;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Таблица с LSM-хранением ({@link TableEngine#LSM}).
+ * <p>
+ * Запись попадает в журнал wal_N (формат {@link SegmentFormat#CHECKSUMMED}) и в отсортированную memtable в памяти.
+ * Когда memtable набирает {@link DatabaseConfig#getLsmMemtableBytes()}, она под блокировкой таблицы заменяется
+ * пустой с новым журналом, а поток компакции сбрасывает ее в неизменяемый отсортированный файл sst_N_0
+ * ({@link DatabaseSortedFile}) и удаляет ее журнал. Если новая memtable заполнилась раньше, чем сбросилась
+ * прежняя, запись ждет. Чтение смотрит в memtable, затем в сбрасываемую memtable, затем в файлы от новых к старым.
+ * В файле ключ ищется по разреженному индексу, поэтому память таблицы зависит от числа и размера файлов,
+ * а не от числа ключей.
+ * <p>
+ * Слияние идет по ступеням размера: поток компакции ищет, начиная с новых файлов, подряд идущие файлы, размер
+ * каждого из которых отличается от среднего по ним не больше чем в {@link #TIER_SIZE_RATIO} раза, и, если таких
+ * набралось {@link DatabaseConfig#getLsmMergeThreshold()}, сливает их в один sst_N_G_M, где N и M - номера самого
+ * нового и самого старого из слитых, а G - на единицу больше их наибольшего поколения. Так каждая запись
+ * переписывается число раз, логарифмическое от размера таблицы, а не при каждом слиянии. Результат заменяет файлы
+ * с номерами от M до N и меньшим поколением: если процесс упал раньше, чем слитые файлы удалились, при открытии
+ * таблицы они просто удаляются. Удаления из результата выбрасываются, только если в слиянии участвовал
+ * самый старый файл таблицы: иначе они еще перекрывают записи в более старых файлах.
+ * Файлы sst_N_G без M остались от слияний всех файлов таблицы и заменяют все файлы с номером не больше N.
+ * <p>
+ * Ключи упорядочены как байты без знака. Таблица, созданная до ключей-байт, хранит файлы в строковом порядке
+ * ({@link DatabaseSortedFile.KeyOrder#STRINGS}) и продолжает писать в нем: слить можно только файлы одного порядка.
+ */
+public class LsmTable implements Table {
+    private static final String SORTED_FILE_PREFIX = "sst_";
+    private static final Pattern SORTED_FILE_NAME = Pattern.compile("sst_(\\d+)_(\\d+)(?:_(\\d+))?");
+    private static final Pattern WAL_FILE_NAME = Pattern.compile("wal_(\\d+)");
+    /**
+     * Значение удаленного ключа в memtable, сравнивается по ссылке
+     */
+    private static final byte[] TOMBSTONE = new byte[0];
+    /**
+     * Во сколько раз размер файла может отличаться от среднего по ступени слияния
+     */
+    private static final double TIER_SIZE_RATIO = 2;
+    private static final Comparator<SortedFile> NEWEST_FIRST = Comparator.comparingLong((SortedFile file) -> file.sequence)
+            .thenComparingInt(file -> file.generation)
+            .reversed();
+
+    private final String tableName;
+    private final Path path;
+    private final DatabaseConfig config;
+    private final boolean sync;
+    private final DatabaseSortedFile.KeyOrder keyOrder;
+    /**
+     * Файлы таблицы от новых к старым. Список неизменяемый и целиком заменяется под блокировкой таблицы,
+     * поэтому читатели обходят его без блокировок
+     */
+    private volatile List<SortedFile> files;
+    /**
+     * Сюда идут новые записи. Заменяется пустой под блокировкой таблицы, но только после того, как стала
+     * {@link #flushing}: читатель, не нашедший ключ в memtable, найдет его в сбрасываемой
+     */
+    private volatile ConcurrentSkipListMap<byte[], byte[]> memtable;
+    private volatile long memtableBytes;
+    /**
+     * Memtable, которую сейчас сбрасывает поток компакции, {@code null} - если сброса нет. Становится {@code null}
+     * только после того, как ее файл попал в {@link #files}
+     */
+    private volatile ConcurrentSkipListMap<byte[], byte[]> flushing;
+    private long flushingSequence;
+    private DatabaseAppendChannel flushingWal;
+    private boolean flushScheduled = false;
+    /**
+     * Почему не удался последний сброс, {@code null} - если он удался
+     */
+    private IOException flushFailure;
+    private long walSequence;
+    private DatabaseAppendChannel wal;
+
+    private LsmTable(String tableName, Path path, List<SortedFile> files, DatabaseConfig config) {
+        this.tableName = tableName;
+        this.path = path;
+        this.files = List.copyOf(files);
+        this.config = config;
+        this.sync = config.getFsyncPolicy() != FsyncPolicy.NONE;
+        this.keyOrder = files.stream().anyMatch(file -> file.file.getKeyOrder() == DatabaseSortedFile.KeyOrder.STRINGS)
+                ? DatabaseSortedFile.KeyOrder.STRINGS
+                : DatabaseSortedFile.KeyOrder.BYTES;
+        this.memtable = new ConcurrentSkipListMap<>(keyOrder);
+    }
+
+    public static Table create(String tableName, Path pathToDatabaseRoot, DatabaseConfig config) throws DatabaseException {
+        Path path = pathToDatabaseRoot.resolve(tableName);
+        try {
+            Files.createDirectory(path);
+            DatabaseTableMetadata.writeEngine(path, TableEngine.LSM);
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to create table %s in path %s", tableName, pathToDatabaseRoot.toString()), e);
+        }
+
+        LsmTable table = new LsmTable(tableName, path, List.of(), config);
+        TableCompactor.scheduleBackground(config, table::mergeQuietly);
+        return new CachingTable(table);
+    }
+
+    /**
+     * Открывает существующую таблицу: удаляет недописанные и уже слитые файлы, восстанавливает memtable
+     * из оставшихся журналов и сразу сбрасывает ее в файл
+     *
+     * @param tableName имя таблицы
+     * @param path      путь до папки таблицы
+     * @param config    конфигурация
+     * @throws DatabaseException если файлы таблицы не удалось прочитать
+     */
+    public static Table open(String tableName, Path path, DatabaseConfig config) throws DatabaseException {
+        LsmTable table;
+        try {
+            table = load(tableName, path, config);
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to open table %s in path %s", tableName, path.toString()), e);
+        }
+
+        TableCompactor.scheduleBackground(config, table::mergeQuietly);
+        return new CachingTable(table);
+    }
+
+    private static LsmTable load(String tableName, Path path, DatabaseConfig config) throws IOException {
+        List<SortedFile> candidates = new ArrayList<>();
+        TreeMap<Long, Path> wals = new TreeMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+            for (var entry : entries) {
+                String name = entry.getFileName().toString();
+                Matcher sortedName = SORTED_FILE_NAME.matcher(name);
+                Matcher walName = WAL_FILE_NAME.matcher(name);
+                if (name.startsWith(SORTED_FILE_PREFIX) && DatabaseSortedFile.isTempFile(name)) {
+                    Files.delete(entry);
+                } else if (sortedName.matches()) {
+                    long sequence = Long.parseLong(sortedName.group(1));
+                    int generation = Integer.parseInt(sortedName.group(2));
+                    long firstSequence = sortedName.group(3) != null ? Long.parseLong(sortedName.group(3))
+                            : generation == 0 ? sequence : 0;
+                    candidates.add(new SortedFile(sequence, generation, firstSequence, DatabaseSortedFile.open(entry)));
+                } else if (walName.matches()) {
+                    wals.put(Long.parseLong(walName.group(1)), entry);
+                }
+            }
+        }
+
+        candidates.sort(NEWEST_FIRST);
+        List<SortedFile> live = new ArrayList<>();
+        for (var candidate : candidates) {
+            if (live.stream().anyMatch(file -> file.covers(candidate))) {
+                candidate.file.close();
+                Files.delete(candidate.file.getPath());
+            } else {
+                live.add(candidate);
+            }
+        }
+
+        LsmTable table = new LsmTable(tableName, path, live, config);
+        long lastSequence = live.isEmpty() ? -1 : live.get(0).sequence;
+        List<Path> replayed = new ArrayList<>();
+        for (var wal : wals.entrySet()) {
+            if (wal.getKey() <= lastSequence) {
+                // memtable этого журнала уже успели сбросить в файл
+                Files.delete(wal.getValue());
+                continue;
+            }
+            table.replay(wal.getValue());
+            replayed.add(wal.getValue());
+            lastSequence = wal.getKey();
+        }
+
+        table.walSequence = replayed.isEmpty() ? lastSequence + 1 : lastSequence;
+        if (!replayed.isEmpty()) {
+            synchronized (table) {
+                table.rotateMemtable();
+            }
+            table.flushMemtable();
+            for (var wal : replayed) {
+                Files.deleteIfExists(wal);
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public String getName() {
+        return tableName;
+    }
+
+    @Override
+    public void write(byte[] objectKey, byte[] objectValue) throws DatabaseException {
+        try {
+            appendRecord(objectKey, objectValue);
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to write pair key-value %s-%s",
+                    new String(objectKey, StandardCharsets.UTF_8), new String(objectValue)), e);
+        }
+    }
+
+    /**
+     * В отсортированных файлах нет места для срока записи, поэтому сроков жизни у LSM-таблиц нет
+     */
+    @Override
+    public void write(byte[] objectKey, byte[] objectValue, long expiresAtMillis) throws DatabaseException {
+        throw new DatabaseException(String.format("LSM table %s does not support key expiration", tableName));
+    }
+
+    @Override
+    public Optional<byte[]> expire(byte[] objectKey, long expiresAtMillis) throws DatabaseException {
+        throw new DatabaseException(String.format("LSM table %s does not support key expiration", tableName));
+    }
+
+    /**
+     * Читает без блокировок. Если файлы успели слить и закрыть, пока мы из них читали, читаем заново
+     */
+    @Override
+    public Optional<byte[]> read(byte[] objectKey) throws DatabaseException {
+        while (true) {
+            byte[] value = memtable.get(objectKey);
+            ConcurrentSkipListMap<byte[], byte[]> inFlush = flushing;
+            if (value == null && inFlush != null) {
+                value = inFlush.get(objectKey);
+            }
+            if (value != null) {
+                return value == TOMBSTONE ? Optional.empty() : Optional.of(value);
+            }
+
+            List<SortedFile> current = files;
+            try {
+                for (var file : current) {
+                    Optional<WritableDatabaseRecord> record = file.file.find(objectKey);
+                    if (record.isPresent()) {
+                        return record.get().isValuePresented() ? Optional.of(record.get().getValue()) : Optional.empty();
+                    }
+                }
+                return Optional.empty();
+            } catch (IOException e) {
+                if (files == current) {
+                    throw new DatabaseException(String.format("IO exception when trying to read a value with key %s",
+                            new String(objectKey, StandardCharsets.UTF_8)), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Обходит ключи по возрастанию, сливая memtable и файлы так же, как при слиянии файлов: из одинаковых ключей
+     * берется самая новая запись, удаленные пропускаются. Курсор - последний переданный ключ в Base64, поэтому
+     * обход продолжается верно, даже если между вызовами файлы слили или memtable сбросили в файл. Если файлы
+     * слили и закрыли посреди вызова, обход продолжается с последнего переданного ключа уже по новым файлам
+     */
+    @Override
+    public String scan(String cursor, ScanConsumer consumer) throws DatabaseException {
+        byte[][] lastKey = {null};
+        if (!SCAN_START.equals(cursor)) {
+            try {
+                lastKey[0] = Base64.getUrlDecoder().decode(cursor);
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new DatabaseException(String.format("Invalid scan cursor %s for table %s", cursor, tableName));
+            }
+        }
+
+        while (true) {
+            // memtable берутся раньше файлов: сброшенная memtable попадает в файлы до того, как ее заменят
+            List<ConcurrentSkipListMap<byte[], byte[]>> currentMemtables = memtables();
+            List<SortedFile> current = files;
+            try {
+                boolean stopped = merge(currentMemtables, current, null, null, lastKey, consumer);
+                return stopped ? Base64.getUrlEncoder().withoutPadding().encodeToString(lastKey[0]) : SCAN_START;
+            } catch (IOException e) {
+                if (files == current) {
+                    throw new DatabaseException(String.format("IO exception when trying to scan table %s", tableName), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Сливает memtable и файлы так же, как обход, но только с ключа {@code fromKey} и до {@code toKey}.
+     * Ключи сравниваются в порядке таблицы: у файлов из старых версий это порядок строк
+     * (см {@link DatabaseSortedFile.KeyOrder})
+     */
+    @Override
+    public void range(byte[] fromKey, byte[] toKey, ScanConsumer consumer) throws DatabaseException {
+        byte[][] lastKey = {null};
+        while (true) {
+            List<ConcurrentSkipListMap<byte[], byte[]>> currentMemtables = memtables();
+            List<SortedFile> current = files;
+            try {
+                merge(currentMemtables, current, fromKey, toKey, lastKey, consumer);
+                return;
+            } catch (IOException e) {
+                if (files == current) {
+                    throw new DatabaseException(String.format("IO exception when trying to read a range of table %s",
+                            tableName), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Текущая и сбрасываемая memtable, от новой к старой. Текущая берется первой: memtable становится
+     * сбрасываемой раньше, чем ее заменят пустой
+     */
+    private List<ConcurrentSkipListMap<byte[], byte[]>> memtables() {
+        ConcurrentSkipListMap<byte[], byte[]> active = memtable;
+        ConcurrentSkipListMap<byte[], byte[]> inFlush = flushing;
+        return inFlush == null ? List.of(active) : List.of(active, inFlush);
+    }
+
+    /**
+     * Передает получателю пары с ключами из {@code [fromKey, toKey)}, а если уже что-то передано -
+     * с ключами после {@code lastKey}
+     *
+     * @param scannedMemtables memtable от новой к старой
+     * @param fromKey первый ключ, {@code null} - с начала таблицы
+     * @param toKey   ключ сразу за последним, {@code null} - до конца таблицы
+     * @param lastKey последний переданный ключ, обновляется по ходу обхода
+     * @return {@code true} - если получатель остановил обход
+     * @throws IOException       если файл не удалось прочитать
+     * @throws DatabaseException если получатель бросил исключение
+     */
+    private boolean merge(List<ConcurrentSkipListMap<byte[], byte[]>> scannedMemtables, List<SortedFile> scannedFiles,
+                          byte[] fromKey, byte[] toKey, byte[][] lastKey, ScanConsumer consumer)
+            throws IOException, DatabaseException {
+        byte[] start = lastKey[0] == null ? fromKey : lastKey[0];
+        boolean inclusive = lastKey[0] == null;
+        PriorityQueue<ScanSource> sources = new PriorityQueue<>();
+        for (int i = 0; i < scannedMemtables.size(); i++) {
+            ConcurrentSkipListMap<byte[], byte[]> scanned = scannedMemtables.get(i);
+            Map<byte[], byte[]> entries = start == null ? scanned : scanned.tailMap(start, inclusive);
+            advance(sources, new ScanSource(entries.entrySet().iterator(), null, i - scannedMemtables.size(),
+                    keyOrder));
+        }
+        for (int i = 0; i < scannedFiles.size(); i++) {
+            DatabaseSortedFile file = scannedFiles.get(i).file;
+            DatabaseSortedFile.Cursor cursor = start == null ? file.cursor()
+                    : inclusive ? file.cursorFrom(start) : file.cursorAfter(start);
+            advance(sources, new ScanSource(null, cursor, i, keyOrder));
+        }
+
+        while (!sources.isEmpty()) {
+            ScanSource source = sources.poll();
+            byte[] key = source.key;
+            byte[] value = source.value;
+            if (toKey != null && keyOrder.compare(key, toKey) >= 0) {
+                return false;
+            }
+            advance(sources, source);
+            // из одинаковых ключей первым выходит самый новый, остальные пропускаются
+            while (!sources.isEmpty() && Arrays.equals(sources.peek().key, key)) {
+                advance(sources, sources.poll());
+            }
+            if (value == TOMBSTONE) {
+                continue;
+            }
+
+            boolean more;
+            try {
+                more = consumer.accept(key, value);
+            } catch (IOException e) {
+                throw new DatabaseException(String.format("IO exception when trying to scan table %s", tableName), e);
+            }
+            lastKey[0] = key;
+            if (!more) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void advance(PriorityQueue<ScanSource> sources, ScanSource source) throws IOException {
+        if (source.next()) {
+            sources.add(source);
+        }
+    }
+
+    /**
+     * Удаление всегда пишется в журнал: проверять, есть ли ключ в файлах, дороже, чем записать лишний tombstone
+     */
+    @Override
+    public void delete(byte[] objectKey) throws DatabaseException {
+        try {
+            appendRecord(objectKey, null);
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to delete a value with key %s",
+                    new String(objectKey, StandardCharsets.UTF_8)), e);
+        }
+    }
+
+    /**
+     * Собирается без блокировки таблицы, поэтому во время записи может немного отставать
+     */
+    @Override
+    public Map<String, Long> getStats() {
+        List<SortedFile> current = files;
+        long sortedFileBytes = 0;
+        long records = 0;
+        long sparseIndexEntries = 0;
+        for (var file : current) {
+            sortedFileBytes += file.file.size();
+            records += file.file.getRecordCount();
+            sparseIndexEntries += file.file.getIndexSize();
+        }
+
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("sortedFiles", (long) current.size());
+        stats.put("sortedFileBytes", sortedFileBytes);
+        stats.put("sortedFileRecords", records);
+        stats.put("sparseIndexEntries", sparseIndexEntries);
+        stats.put("memtableKeys", (long) memtable.size());
+        stats.put("memtableBytes", memtableBytes);
+        return stats;
+    }
+
+    /**
+     * Дожидается, пока memtable сбросится в файл, чтобы журнал не пришлось копировать, и связывает все
+     * отсортированные файлы. Слияние заменяет файлы под блокировкой таблицы, а удаляет - уже после, поэтому
+     * под блокировкой все файлы из списка на месте
+     */
+    @Override
+    public synchronized void snapshot(Path snapshotTablePath) throws DatabaseException {
+        try {
+            awaitFlushed();
+            Files.createDirectories(snapshotTablePath);
+            for (var file : files) {
+                DatabaseSnapshot.link(file.file.getPath(), snapshotTablePath);
+            }
+            DatabaseSnapshot.link(path.resolve(DatabaseTableMetadata.METADATA_FILE_NAME), snapshotTablePath);
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to snapshot table %s", tableName), e);
+        }
+    }
+
+    /**
+     * Дописывает запись (или удаление, если значение {@code null}) в журнал и memtable.
+     * Подтверждение на диске - уже без блокировки таблицы, чтобы параллельные записи успели объединиться в один fsync.
+     * Заполненная memtable сбрасывается в файл потоком компакции, а запись ждет, только если заполнилась и следующая.
+     */
+    private void appendRecord(byte[] objectKey, byte[] objectValue) throws IOException {
+        DatabaseAppendChannel log;
+        synchronized (this) {
+            awaitSpace();
+            if (wal == null) {
+                openWal();
+            }
+            long recordSize = wal.write(objectKey, objectValue);
+            memtable.put(objectKey, objectValue == null ? TOMBSTONE : objectValue);
+            memtableBytes += recordSize;
+            log = wal;
+            if (memtableBytes >= config.getLsmMemtableBytes() && flushing == null) {
+                rotateMemtable();
+            }
+        }
+        // если журнал уже закрыт при сбросе memtable, запись подтверждена при его закрытии
+        log.flush();
+    }
+
+    private void openWal() throws IOException {
+        Path walPath = walPath(walSequence);
+        Files.write(walPath, SegmentFormat.CHECKSUMMED.header(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        wal = new DatabaseAppendChannel(walPath, SegmentFormat.CHECKSUMMED.getHeaderSize(), config);
+    }
+
+    /**
+     * Ждет, пока заполненная memtable не сможет стать сбрасываемой, и подменяет ее. Вызывается под блокировкой таблицы
+     */
+    private void awaitSpace() throws IOException {
+        while (memtableBytes >= config.getLsmMemtableBytes()) {
+            if (flushing == null) {
+                rotateMemtable();
+                return;
+            }
+            // при неудаче сброса повторяется в потоке компакции, а запись пока отказывает
+            scheduleFlush();
+            if (flushFailure != null) {
+                throw new IOException("Memtable is full and cannot be flushed", flushFailure);
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for memtable flush");
+            }
+        }
+    }
+
+    /**
+     * Ждет, пока записи, которые уже есть в memtable, не окажутся в файлах. Вызывается под блокировкой таблицы
+     */
+    private void awaitFlushed() throws IOException {
+        ConcurrentSkipListMap<byte[], byte[]> target = memtable.isEmpty() ? flushing : memtable;
+        while (target != null && (target == memtable || target == flushing)) {
+            if (target == memtable && flushing == null) {
+                rotateMemtable();
+                continue;
+            }
+            // при неудаче сброса повторяется в потоке компакции, а запись пока отказывает
+            scheduleFlush();
+            if (flushFailure != null) {
+                throw new IOException("Memtable cannot be flushed", flushFailure);
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for memtable flush");
+            }
+        }
+    }
+
+    /**
+     * Делает memtable сбрасываемой и начинает новую с новым журналом (он откроется при первой записи).
+     * Вызывается под блокировкой таблицы, когда сбрасываемой memtable нет
+     */
+    private void rotateMemtable() {
+        flushing = memtable;
+        flushingSequence = walSequence;
+        flushingWal = wal;
+        memtable = new ConcurrentSkipListMap<>(keyOrder);
+        memtableBytes = 0;
+        wal = null;
+        walSequence++;
+        scheduleFlush();
+    }
+
+    /**
+     * Вызывается под блокировкой таблицы
+     */
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            TableCompactor.executeBackground(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flushMemtable();
+        } catch (IOException e) {
+            // memtable остается сбрасываемой, следующий запуск попробует еще раз
+        }
+    }
+
+    /**
+     * Сбрасывает сбрасываемую memtable в новый файл и удаляет ее журнал. Выполняется в потоке компакции
+     * (при открытии таблицы - в открывающем потоке), запись в новую memtable при этом не блокируется
+     *
+     * @throws IOException если файл не удалось записать: memtable остается сбрасываемой до следующей попытки
+     */
+    private void flushMemtable() throws IOException {
+        ConcurrentSkipListMap<byte[], byte[]> entries;
+        long sequence;
+        DatabaseAppendChannel log;
+        synchronized (this) {
+            flushScheduled = false;
+            entries = flushing;
+            if (entries == null) {
+                return;
+            }
+            sequence = flushingSequence;
+            log = flushingWal;
+        }
+
+        try {
+            if (log != null) {
+                // новые записи идут уже в другой журнал, а при закрытии этот сбросится на диск
+                log.close();
+            }
+            DatabaseSortedFile flushed = null;
+            if (!entries.isEmpty()) {
+                try (DatabaseSortedFile.Writer writer = DatabaseSortedFile.writer(
+                        path.resolve(sortedFileName(sequence, 0, sequence)), config.getLsmIndexInterval(), sync,
+                        keyOrder)) {
+                    for (var entry : entries.entrySet()) {
+                        writer.append(entry.getValue() == TOMBSTONE ? new RemoveDatabaseRecord(entry.getKey())
+                                : new SetDatabaseRecord(entry.getKey(), entry.getValue()));
+                    }
+                    flushed = writer.finish();
+                }
+            }
+
+            synchronized (this) {
+                if (flushed != null) {
+                    List<SortedFile> updated = new ArrayList<>(files.size() + 1);
+                    updated.add(new SortedFile(sequence, 0, sequence, flushed));
+                    updated.addAll(files);
+                    files = List.copyOf(updated);
+                }
+                flushing = null;
+                flushingWal = null;
+                flushFailure = null;
+                notifyAll();
+            }
+            Files.deleteIfExists(walPath(sequence));
+        } catch (IOException e) {
+            synchronized (this) {
+                flushFailure = e;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Восстанавливает memtable из журнала. Оборванный при падении хвост журнала отбрасывается
+     */
+    private void replay(Path walPath) throws IOException {
+        SegmentFormat format = SegmentFormat.detect(walPath);
+        try (DatabaseChannelReader reader = new DatabaseChannelReader(
+                FileChannel.open(walPath, StandardOpenOption.READ), format)) {
+            DatabaseSegmentScanner.scan(walPath, format, (key, offset, removed) -> {
+                Optional<DatabaseRecord> record = reader.readDbUnit(offset);
+                if (record.isPresent()) {
+                    memtable.put(key, record.get().isValuePresented() ? record.get().getValue() : TOMBSTONE);
+                    memtableBytes += record.get().size();
+                }
+            });
+        }
+    }
+
+    /**
+     * Сливает в один файл ступень файлов похожего размера (см {@link #tier(List)}), если она набралась.
+     * Выполняется в потоке компакции, запись и чтение при этом не блокируются
+     *
+     * @return {@code true} - если файлы были слиты
+     */
+    boolean merge() throws IOException {
+        List<SortedFile> current = files;
+        List<SortedFile> inputs = tier(current);
+        if (inputs.isEmpty()) {
+            return false;
+        }
+
+        // файлы добавляет и убирает только поток компакции, так что самый старый файл за время слияния не сменится
+        boolean withOldest = inputs.get(inputs.size() - 1) == current.get(current.size() - 1);
+        long sequence = inputs.get(0).sequence;
+        long firstSequence = inputs.get(inputs.size() - 1).firstSequence;
+        int generation = inputs.stream().mapToInt(file -> file.generation).max().orElse(0) + 1;
+        PriorityQueue<MergeSource> sources = new PriorityQueue<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            DatabaseSortedFile.Cursor cursor = inputs.get(i).file.cursor();
+            if (cursor.next()) {
+                sources.add(new MergeSource(cursor, i, keyOrder));
+            }
+        }
+
+        DatabaseSortedFile merged;
+        try (DatabaseSortedFile.Writer writer = DatabaseSortedFile.writer(
+                path.resolve(sortedFileName(sequence, generation, firstSequence)), config.getLsmIndexInterval(),
+                sync, keyOrder)) {
+            byte[] lastKey = null;
+            while (!sources.isEmpty()) {
+                MergeSource source = sources.poll();
+                // из одинаковых ключей первым выходит самый новый, остальные пропускаются
+                if (!Arrays.equals(source.cursor.key(), lastKey)) {
+                    lastKey = source.cursor.key();
+                    if (source.cursor.record().isValuePresented() || !withOldest) {
+                        writer.append(source.cursor.record());
+                    }
+                }
+                if (source.cursor.next()) {
+                    sources.add(source);
+                }
+            }
+            merged = writer.finish();
+        }
+
+        synchronized (this) {
+            List<SortedFile> updated = new ArrayList<>(files);
+            updated.removeAll(inputs);
+            updated.add(new SortedFile(sequence, generation, firstSequence, merged));
+            updated.sort(NEWEST_FIRST);
+            files = List.copyOf(updated);
+        }
+
+        for (var input : inputs) {
+            input.file.close();
+            Files.deleteIfExists(input.file.getPath());
+        }
+        return true;
+    }
+
+    /**
+     * Ищет, начиная с новых файлов, первую ступень: подряд идущие файлы, размер каждого из которых отличается
+     * от среднего по предыдущим файлам ступени не больше чем в {@link #TIER_SIZE_RATIO} раза
+     *
+     * @param current файлы от новых к старым
+     * @return файлы ступени от новых к старым, пустой список - если ни одна ступень не набрала
+     * {@link DatabaseConfig#getLsmMergeThreshold()} файлов
+     */
+    private List<SortedFile> tier(List<SortedFile> current) {
+        int threshold = config.getLsmMergeThreshold();
+        int start = 0;
+        long tierBytes = 0;
+        for (int i = 0; i < current.size(); i++) {
+            long size = current.get(i).file.size();
+            int count = i - start;
+            double average = count == 0 ? size : (double) tierBytes / count;
+            if (size > average * TIER_SIZE_RATIO || size < average / TIER_SIZE_RATIO) {
+                if (count >= threshold) {
+                    return current.subList(start, i);
+                }
+                start = i;
+                tierBytes = 0;
+            }
+            tierBytes += size;
+        }
+        return current.size() - start >= threshold ? current.subList(start, current.size()) : List.of();
+    }
+
+    /**
+     * Сбрасывает заполненную memtable, если прошлый сброс не удался, и сливает файлы
+     */
+    private void mergeQuietly() {
+        try {
+            flushMemtable();
+            merge();
+        } catch (IOException e) {
+            // файлы остались в согласованном состоянии, следующий запуск попробует еще раз
+        }
+    }
+
+    private Path walPath(long sequence) {
+        return path.resolve("wal_" + sequence);
+    }
+
+    /**
+     * Сброшенная memtable - sst_N_0, результат слияния - sst_N_G_M
+     */
+    private static String sortedFileName(long sequence, int generation, long firstSequence) {
+        return generation == 0
+                ? String.format("%s%010d_%03d", SORTED_FILE_PREFIX, sequence, generation)
+                : String.format("%s%010d_%03d_%010d", SORTED_FILE_PREFIX, sequence, generation, firstSequence);
+    }
+
+    /**
+     * Отсортированный файл таблицы с номером memtable, из которой он получен (у результата слияния - номерами
+     * самой новой и самой старой из слитых), и поколением слияния
+     */
+    private static final class SortedFile {
+        private final long sequence;
+        private final int generation;
+        private final long firstSequence;
+        private final DatabaseSortedFile file;
+
+        private SortedFile(long sequence, int generation, long firstSequence, DatabaseSortedFile file) {
+            this.sequence = sequence;
+            this.generation = generation;
+            this.firstSequence = firstSequence;
+            this.file = file;
+        }
+
+        /**
+         * @return {@code true} - если этот файл получен слиянием, в котором участвовал {@code other}
+         */
+        private boolean covers(SortedFile other) {
+            return generation > other.generation && other.sequence >= firstSequence && other.sequence <= sequence;
+        }
+    }
+
+    /**
+     * Курсор файла при слиянии. При равных ключах раньше идет более новый файл (с меньшим номером в списке)
+     */
+    private static final class MergeSource implements Comparable<MergeSource> {
+        private final DatabaseSortedFile.Cursor cursor;
+        private final int age;
+        private final DatabaseSortedFile.KeyOrder keyOrder;
+
+        private MergeSource(DatabaseSortedFile.Cursor cursor, int age, DatabaseSortedFile.KeyOrder keyOrder) {
+            this.cursor = cursor;
+            this.age = age;
+            this.keyOrder = keyOrder;
+        }
+
+        @Override
+        public int compareTo(MergeSource other) {
+            int compared = keyOrder.compare(cursor.key(), other.cursor.key());
+            return compared != 0 ? compared : Integer.compare(age, other.age);
+        }
+    }
+
+    /**
+     * Источник пар при обходе таблицы: memtable или курсор файла. При равных ключах раньше идет более новый
+     * (memtable, сбрасываемая memtable, затем файлы в порядке списка)
+     */
+    private static final class ScanSource implements Comparable<ScanSource> {
+        private final Iterator<Map.Entry<byte[], byte[]>> entries;
+        private final DatabaseSortedFile.Cursor cursor;
+        private final int age;
+        private final DatabaseSortedFile.KeyOrder keyOrder;
+        private byte[] key;
+        /**
+         * Значение текущего ключа, {@link #TOMBSTONE} - если ключ удален
+         */
+        private byte[] value;
+
+        private ScanSource(Iterator<Map.Entry<byte[], byte[]>> entries, DatabaseSortedFile.Cursor cursor, int age,
+                           DatabaseSortedFile.KeyOrder keyOrder) {
+            this.entries = entries;
+            this.cursor = cursor;
+            this.age = age;
+            this.keyOrder = keyOrder;
+        }
+
+        /**
+         * @return {@code false} - если пары закончились
+         */
+        private boolean next() throws IOException {
+            if (entries != null) {
+                if (!entries.hasNext()) {
+                    return false;
+                }
+                Map.Entry<byte[], byte[]> entry = entries.next();
+                key = entry.getKey();
+                value = entry.getValue();
+                return true;
+            }
+
+            if (!cursor.next()) {
+                return false;
+            }
+            key = cursor.key();
+            value = cursor.record().isValuePresented() ? cursor.record().getValue() : TOMBSTONE;
+            return true;
+        }
+
+        @Override
+        public int compareTo(ScanSource other) {
+            int compared = keyOrder.compare(key, other.key);
+            return compared != 0 ? compared : Integer.compare(age, other.age);
+        }
+    }
+}
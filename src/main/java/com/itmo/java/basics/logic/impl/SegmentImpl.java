@@ -1,50 +1,162 @@
 package com.itmo.java.basics.logic.impl;
 
-import com.itmo.java.basics.index.impl.SegmentIndex;
-import com.itmo.java.basics.index.impl.SegmentOffsetInfoImpl;
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.FsyncPolicy;
+import com.itmo.java.basics.config.SegmentRollingPolicy;
+import com.itmo.java.basics.config.SegmentReadMode;
+import com.itmo.java.basics.index.KeyDirectory;
+import com.itmo.java.basics.index.RecordLocation;
 import com.itmo.java.basics.initialization.SegmentInitializationContext;
+import com.itmo.java.basics.logic.DatabaseRecord;
 import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.StoredValue;
 import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.logic.WritableDatabaseRecord;
-import com.itmo.java.basics.logic.io.DatabaseInputStream;
-import com.itmo.java.basics.logic.io.DatabaseOutputStream;
+import com.itmo.java.basics.logic.io.DatabaseAppendChannel;
+import com.itmo.java.basics.logic.io.DatabaseBlobStore;
+import com.itmo.java.basics.logic.io.DatabaseBlockCache;
+import com.itmo.java.basics.logic.io.DatabaseBlockFile;
+import com.itmo.java.basics.logic.io.DatabaseBloomFilter;
+import com.itmo.java.basics.logic.io.DatabaseChannelReader;
+import com.itmo.java.basics.logic.io.DatabaseHintFile;
+import com.itmo.java.basics.logic.io.DatabaseMappedReader;
+import com.itmo.java.basics.logic.io.DatabaseRecordHeader;
+import com.itmo.java.basics.logic.io.DatabaseRecordReader;
+import com.itmo.java.basics.logic.io.DatabaseSegmentFile;
+import com.itmo.java.basics.logic.io.DatabaseSegmentScanner;
+import com.itmo.java.basics.logic.io.DatabaseSnapshot;
+import com.itmo.java.basics.logic.io.SegmentFormat;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class SegmentImpl implements Segment {
+    private static final AtomicIntegerFieldUpdater<SegmentImpl> RECORD_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(SegmentImpl.class, "recordCount");
+    private static final AtomicIntegerFieldUpdater<SegmentImpl> LIVE_RECORDS =
+            AtomicIntegerFieldUpdater.newUpdater(SegmentImpl.class, "liveRecords");
+    /**
+     * Ширина номера в имени сегмента: номера дополняются нулями, чтобы файлы в каталоге шли по порядку
+     */
+    private static final int SEGMENT_SEQUENCE_WIDTH = 13;
+    /**
+     * Порядок создания сегментов таблицы по их именам (он же порядок применения при инициализации): по номеру
+     * в имени, а при равных номерах результат сжатия идет после сжатого сегмента. Имена из прежних версий,
+     * где номером было время создания в миллисекундах, упорядочиваются так же
+     */
+    public static final Comparator<String> NAME_ORDER = Comparator.comparingLong(SegmentImpl::segmentSequence)
+            .thenComparing(Comparator.naturalOrder());
+
     private final String segmentName;
     private final Path tableRootPath;
-    private long size = 0;
-    private boolean isReadOnly = false;
-    private SegmentIndex segmentIndex = new SegmentIndex();
-    public static final int MAX_SEGMENT_SIZE = 100000;
+    private final DatabaseConfig config;
+    private final SegmentReadMode readMode;
+    /**
+     * Меняется только с {@link SegmentFormat#CHECKSUMMED} на {@link SegmentFormat#COMPRESSED} при сжатии, под write lock
+     */
+    private volatile SegmentFormat format;
+    private volatile DatabaseBlockCache blockCache;
+    private volatile DatabaseBlobStore blobStore;
+    /**
+     * Общий для сегментов таблицы учет открытых ридеров, {@code null} - если сегмент не в таблице
+     */
+    private volatile SegmentReaderPool readerPool;
+    private volatile SegmentRollingPolicy rollingPolicy;
+    private final long createdMillis;
+    /**
+     * Когда из сегмента последний раз читали, по нему выбираются ридеры для закрытия (см {@link SegmentReaderPool})
+     */
+    private volatile long lastReadNanos;
+    /**
+     * Фильтр Блума по ключам, есть только у read-only сегментов (и только если фильтры включены)
+     */
+    private volatile DatabaseBloomFilter bloomFilter;
+    /**
+     * Наименьший номер сегмента (см {@link #segmentSequence(String)}), записи из которого могли попасть в этот
+     * при сжатии. У несжатого сегмента - его собственный номер. Не сохраняется: после перезапуска берется из имени
+     */
+    private volatile long sourceSequence;
+    private volatile long size = 0;
+    private volatile boolean isReadOnly = false;
+    /**
+     * Номер сегмента в каталоге ключей таблицы (см {@link KeyDirectory}), задается таблицей
+     */
+    private volatile int id = KeyDirectory.NO_SEGMENT;
+    /**
+     * Ридер создается при первом чтении и может быть закрыт, если у таблицы слишком много открытых ридеров. Пока сегмент активный - это позиционное чтение из канала,
+     * после перехода в read-only в режиме {@link SegmentReadMode#MMAP} - чтение из отображения файла,
+     * а после сжатия - чтение распакованных блоков.
+     * Замена и закрытие ридера происходят под write lock, чтобы не освободить отображение посреди чтения.
+     * Участки, одолженные ридером для передачи значений (см {@link #readStoredValue}), держат его файл открытым
+     * и после закрытия ридера.
+     */
+    private volatile DatabaseRecordReader reader;
+    private final ReadWriteLock readerLock = new ReentrantReadWriteLock();
+    /**
+     * Отдельный монитор для ленивого открытия ридера: монитор сегмента держат при дозаписи, и закрытие сегмента
+     * под ним ждет write lock, так что брать монитор сегмента под read lock нельзя
+     */
+    private final Object readerOpenLock = new Object();
+    /**
+     * Канал на дозапись открывается при первой записи и закрывается, когда сегмент становится read-only
+     */
+    private volatile DatabaseAppendChannel appendChannel;
+    private volatile boolean closed = false;
+    /**
+     * Сколько всего записей в файле и сколько из них актуальны (на них указывает индекс таблицы).
+     * По их отношению компактор выбирает сегменты для сжатия
+     */
+    private volatile int recordCount;
+    private volatile int liveRecords;
 
-    private SegmentImpl(String segmentName, Path tableRootPath) {
+    private SegmentImpl(String segmentName, Path tableRootPath, DatabaseConfig config) {
         this.segmentName = segmentName;
         this.tableRootPath = tableRootPath;
+        this.config = config;
+        this.readMode = config.getSegmentReadMode();
+        this.rollingPolicy = config.getSegmentRollingPolicy();
+        this.createdMillis = System.currentTimeMillis();
+        this.sourceSequence = segmentSequence(segmentName);
+        this.format = SegmentFormat.CHECKSUMMED;
+        this.size = format.getHeaderSize();
     }
 
-    private SegmentImpl(String segmentName, Path tableRootPath, long size, SegmentIndex index, boolean isReadOnly) {
+    private SegmentImpl(String segmentName, Path tableRootPath, long size, boolean isReadOnly,
+                        int recordCount, SegmentFormat format, DatabaseConfig config) {
         this.segmentName = segmentName;
         this.tableRootPath = tableRootPath;
         this.size = size;
-        this.segmentIndex = index;
         this.isReadOnly = isReadOnly;
+        this.recordCount = recordCount;
+        this.format = format;
+        this.config = config;
+        this.readMode = config.getSegmentReadMode();
+        this.rollingPolicy = config.getSegmentRollingPolicy();
+        this.createdMillis = creationTime(tableRootPath);
+        this.sourceSequence = segmentSequence(segmentName);
     }
 
     public static Segment create(String segmentName, Path tableRootPath) throws DatabaseException {
+        return create(segmentName, tableRootPath, DatabaseConfig.builder().build());
+    }
+
+    public static Segment create(String segmentName, Path tableRootPath, DatabaseConfig config) throws DatabaseException {
         tableRootPath = tableRootPath.resolve(Paths.get(segmentName));
-        Segment segment = new SegmentImpl(segmentName, tableRootPath);
+        Segment segment = new SegmentImpl(segmentName, tableRootPath, config);
         try {
-            Files.createFile(tableRootPath);
+            Files.write(tableRootPath, SegmentFormat.CHECKSUMMED.header(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
         } catch (IOException e) {
             throw new DatabaseException(e);
         }
@@ -53,13 +165,55 @@ public class SegmentImpl implements Segment {
     }
 
     public static Segment initializeFromContext(SegmentInitializationContext context) {
-        return new SegmentImpl(context.getSegmentName(), context.getSegmentPath(),
-                context.getCurrentSize(), context.getIndex(),
-                context.getCurrentSize() >= SegmentImpl.MAX_SEGMENT_SIZE);
+        return initializeFromContext(context, DatabaseConfig.builder().build());
+    }
+
+    /**
+     * Сегменты старого формата и сжатые сегменты только читаются: новые записи в них не дописываются.
+     * Как и сегменты, файл которых общий со снимком (см {@link DatabaseSnapshot#isShared(Path)}): дописанное
+     * попало бы и в снимок. Заполненный сегмент закроется при первой записи в него, когда таблица задаст
+     * ему свои пределы. Индекс из контекста сегмент у себя не держит: его переносят в каталог ключей таблицы
+     */
+    public static Segment initializeFromContext(SegmentInitializationContext context, DatabaseConfig config) {
+        boolean isReadOnly = context.getFormat() != SegmentFormat.CHECKSUMMED
+                || DatabaseSnapshot.isShared(context.getSegmentPath());
+        SegmentImpl segment = new SegmentImpl(context.getSegmentName(), context.getSegmentPath(),
+                context.getCurrentSize(), isReadOnly,
+                context.getRecordCount(), context.getFormat(), config);
+        if (isReadOnly) {
+            segment.loadBloomFilter();
+        }
+        return segment;
+    }
+
+    /**
+     * @param sequence номер сегмента в таблице, номера растут в порядке создания сегментов
+     */
+    static String createSegmentName(String tableName, long sequence) {
+        return String.format("%s_%0" + SEGMENT_SEQUENCE_WIDTH + "d", tableName, sequence);
     }
 
-    static String createSegmentName(String tableName) {
-        return tableName + "_" + System.currentTimeMillis();
+    /**
+     * @return {@code true} - если сегмент - результат сжатия других сегментов таблицы (см {@link TableCompactor})
+     */
+    public static boolean isCompactionOutput(String segmentName) {
+        return TableCompactor.isCompactedName(segmentName);
+    }
+
+    /**
+     * @return номер сегмента из его имени (у результата сжатия - номер самого нового из сжатых сегментов),
+     * -1 - если имя не похоже на имя сегмента
+     */
+    static long segmentSequence(String segmentName) {
+        int start = segmentName.lastIndexOf('_') + 1;
+        int end = start;
+        while (end < segmentName.length() && Character.isDigit(segmentName.charAt(end))) {
+            end++;
+        }
+        if (start == 0 || end == start || end - start > 18) {
+            return -1;
+        }
+        return Long.parseLong(segmentName.substring(start, end));
     }
 
     @Override
@@ -68,36 +222,143 @@ public class SegmentImpl implements Segment {
     }
 
     @Override
-    public boolean write(String objectKey, byte[] objectValue) throws IOException {
+    public boolean write(byte[] objectKey, byte[] objectValue) throws IOException {
         if (isReadOnly()) {
             return false;
         }
-        if (objectValue == null) {
-            RemoveDatabaseRecord rdbr = new RemoveDatabaseRecord(objectKey.getBytes(StandardCharsets.UTF_8));
-            return appendToFile(objectKey, rdbr);
+        return appendToFile(objectKey, objectValue).isPresent();
+    }
+
+    /**
+     * Читает значение по месту записи из каталога ключей таблицы.
+     *
+     * @return значение. {@link Optional#empty()} - если по ключу лежит удаление или запись с истекшим сроком
+     * @throws KeyMismatchException если по этому месту лежит запись другого ключа
+     * @throws IOException          если произошла ошибка ввода-вывода
+     */
+    Optional<byte[]> readValue(byte[] objectKey, RecordLocation location) throws IOException {
+        return readValue(objectKey, location, readRecord(location.getOffset(), location.getRecordSize()));
+    }
+
+    private Optional<byte[]> readValue(byte[] objectKey, RecordLocation location, Optional<DatabaseRecord> result)
+            throws IOException {
+        if (result.isEmpty()) {
+            throw new IOException(String.format("No record at offset %d of segment %s",
+                    location.getOffset(), segmentName));
+        }
+        if (!Arrays.equals(objectKey, result.get().getKey())) {
+            throw new KeyMismatchException(String.format("Record at offset %d of segment %s belongs to another key",
+                    location.getOffset(), segmentName));
+        }
+
+        if (ExpiringDatabaseRecord.isExpired(result.get(), System.currentTimeMillis())) {
+            return Optional.empty();
+        }
+        if (result.get().isValuePresented()) {
+            if (result.get() instanceof BlobReferenceDatabaseRecord) {
+                return Optional.of(readBlob((BlobReferenceDatabaseRecord) result.get()));
+            }
+            return Optional.of(result.get().getValue());
         } else {
-            SetDatabaseRecord sdbr = new SetDatabaseRecord(objectKey.getBytes(StandardCharsets.UTF_8), objectValue);
-            return this.appendToFile(objectKey, sdbr);
+            return Optional.empty();
         }
     }
 
-    @Override
-    public Optional<byte[]> read(String objectKey) throws IOException {
-        if (segmentIndex.searchForKey(objectKey).isEmpty()) {
-            return Optional.empty();
+    /**
+     * Читает значение по месту записи так же, как {@link #readValue}, но значение не меньше {@code regionThreshold}
+     * байт возвращает участком файла сегмента или blob-файла (см {@link StoredValue}): с диска читается только
+     * заголовок записи, а контрольная сумма значения не проверяется. Участок одалживается у ридера сегмента,
+     * новый файл не открывается. Сжатые сегменты всегда читаются в память
+     *
+     * @param regionThreshold размер значения, начиная с которого оно возвращается участком файла,
+     *                        0 или меньше - всегда в памяти
+     * @return значение. {@link Optional#empty()} - если по ключу лежит удаление
+     * @throws KeyMismatchException если по этому месту лежит запись другого ключа
+     * @throws IOException          если произошла ошибка ввода-вывода
+     */
+    Optional<StoredValue> readStoredValue(byte[] objectKey, RecordLocation location, int regionThreshold)
+            throws IOException {
+        if (regionThreshold <= 0) {
+            return readValue(objectKey, location).map(StoredValue::of);
+        }
+        if (location.getRecordSize() > 0 && location.getRecordSize() < regionThreshold) {
+            // значение в сегменте заведомо меньше порога, а ссылка на blob разрешится ниже
+            return readSmallStoredValue(objectKey, location, regionThreshold);
         }
 
-        try (DatabaseInputStream dbis = new DatabaseInputStream(new FileInputStream(String.valueOf(tableRootPath)))) {
-            dbis.skip(segmentIndex.searchForKey(objectKey).orElseThrow(() -> new IllegalArgumentException("The key wasn't found")).getOffset());
-            var result = dbis.readDbUnit();
-            if (result.isPresent() && result.get().isValuePresented()) {
-                if (!Arrays.equals(objectKey.getBytes(StandardCharsets.UTF_8), result.get().getKey())) {
-                    throw new IOException("The file is probably damaged");
+        lastReadNanos = System.nanoTime();
+        readerLock.readLock().lock();
+        try {
+            DatabaseRecordReader current = format.isCompressed() ? null : reader();
+            Optional<DatabaseRecordHeader> header = current == null
+                    ? Optional.empty() : current.readHeader(location.getOffset());
+            if (header.isPresent() && !Arrays.equals(objectKey, header.get().getKey())) {
+                throw new KeyMismatchException(String.format(
+                        "Record at offset %d of segment %s belongs to another key", location.getOffset(), segmentName));
+            }
+            if (header.isPresent() && header.get().getValueSize() >= regionThreshold) {
+                // участок одалживается под read lock: ридер не закроют, пока мы его не одолжили,
+                // а после - ридер не освободит файл, пока участок не вернут
+                Optional<StoredValue> region = current.pinRegion(header.get().valueOffset(location.getOffset()),
+                        header.get().getValueSize());
+                if (region.isPresent()) {
+                    return region;
                 }
-                return Optional.of(result.get().getValue());
-            } else {
-                return Optional.empty();
             }
+        } finally {
+            readerLock.readLock().unlock();
+        }
+        return readSmallStoredValue(objectKey, location, regionThreshold);
+    }
+
+    /**
+     * Читает запись целиком: значение в ней меньше порога, но может оказаться ссылкой на большое значение в blob-файле
+     */
+    private Optional<StoredValue> readSmallStoredValue(byte[] objectKey, RecordLocation location, int regionThreshold)
+            throws IOException {
+        Optional<DatabaseRecord> result = readRecord(location.getOffset(), location.getRecordSize());
+        if (result.isPresent() && result.get() instanceof BlobReferenceDatabaseRecord
+                && Arrays.equals(objectKey, result.get().getKey())) {
+            return Optional.of(blobStore().readStored((BlobReferenceDatabaseRecord) result.get(), regionThreshold));
+        }
+        return readValue(objectKey, location, result).map(StoredValue::of);
+    }
+
+    /**
+     * Сверяет ключ записи по месту из каталога ключей, который хранит только хеши ключей
+     *
+     * @return {@code true} - если по этому месту лежит запись с этим ключом
+     * @throws IOException если запись не удалось прочитать
+     */
+    public boolean hasKeyAt(byte[] objectKey, RecordLocation location) throws IOException {
+        Optional<DatabaseRecord> record = readRecord(location.getOffset(), location.getRecordSize());
+        return record.isPresent() && Arrays.equals(objectKey, record.get().getKey());
+    }
+
+    /**
+     * Проходит по записям сегмента начиная с записи по сдвигу {@code fromOffset}, см
+     * {@link DatabaseSegmentScanner#scan(DatabaseSegmentFile, SegmentFormat, long, DatabaseSegmentScanner.RecordVisitor)}.
+     * Файл открывается под read lock, чтобы сжатие не подменило его между выбором формата и открытием.
+     * Дальше проход идет по открытому файлу, даже если сегмент тем временем сожмут или удалят
+     *
+     * @throws ClosedChannelException если сегмент уже закрыт
+     */
+    long scanRecords(long fromOffset, DatabaseSegmentScanner.RecordVisitor visitor) throws IOException {
+        DatabaseSegmentFile file;
+        SegmentFormat fileFormat;
+        readerLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            fileFormat = format;
+            file = DatabaseSegmentFile.open(tableRootPath, fileFormat, null);
+        } finally {
+            readerLock.readLock().unlock();
+        }
+
+        try (file) {
+            return DatabaseSegmentScanner.scan(file, fileFormat, fromOffset, visitor);
         }
     }
 
@@ -107,25 +368,478 @@ public class SegmentImpl implements Segment {
     }
 
     @Override
-    public boolean delete(String objectKey) throws IOException {
-        if (objectKey == null || segmentIndex.searchForKey(objectKey).isEmpty()) {
+    public void flush() throws IOException {
+        DatabaseAppendChannel channel = appendChannel;
+        if (channel != null) {
+            channel.flush();
+        }
+    }
+
+    /**
+     * Закрывает сегмент насовсем: последующие чтения падают с {@link ClosedChannelException}.
+     * Так таблица понимает, что сегмент заменили при сжатии, и перечитывает индекс.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            if (appendChannel != null) {
+                appendChannel.close();
+            }
+        }
+        releaseReader();
+    }
+
+    Path getPath() {
+        return tableRootPath;
+    }
+
+    SegmentFormat getFormat() {
+        return format;
+    }
+
+    long getSourceSequence() {
+        return sourceSequence;
+    }
+
+    void setSourceSequence(long sourceSequence) {
+        this.sourceSequence = sourceSequence;
+    }
+
+    /**
+     * @return сдвиг, с которого будет дописана следующая запись (для сжатого сегмента - в несжатом содержимом)
+     */
+    long getSize() {
+        return size;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Задает общие для всех сегментов таблицы кэш распакованных блоков (через него читается сжатый сегмент),
+     * blob-файлы, на которые ссылаются записи сегмента, и учет открытых ридеров
+     */
+    void setTableStorage(DatabaseBlockCache blockCache, DatabaseBlobStore blobStore, SegmentReaderPool readerPool) {
+        this.blockCache = blockCache;
+        this.blobStore = blobStore;
+        this.readerPool = readerPool;
+    }
+
+    /**
+     * Задает пределы таблицы, по которым сегмент закрывается
+     */
+    void setRollingPolicy(SegmentRollingPolicy rollingPolicy) {
+        this.rollingPolicy = rollingPolicy;
+    }
+
+    /**
+     * Дописывает запись (или удаление, если значение {@code null}) и возвращает, где она легла
+     *
+     * @return место записи. {@link Optional#empty()} - если сегмент уже read-only
+     */
+    Optional<RecordLocation> append(byte[] objectKey, byte[] objectValue) throws IOException {
+        return appendToFile(objectKey, objectValue);
+    }
+
+    /**
+     * Дописывает готовую запись: ссылку на значение, уже записанное в blob-файл, или значение со сроком жизни
+     *
+     * @return место записи. {@link Optional#empty()} - если сегмент уже read-only
+     */
+    Optional<RecordLocation> append(WritableDatabaseRecord databaseRecord) throws IOException {
+        return appendToFile(databaseRecord);
+    }
+
+    /**
+     * Сжимает закрытый сегмент по блокам (см {@link DatabaseBlockFile}) и переключает чтение на сжатый файл.
+     * Сдвиги записей не меняются, поэтому индексы и hint-файл остаются верными.
+     *
+     * @return {@code true} - если сегмент был сжат
+     * @throws IOException если сжатый файл не удалось записать
+     */
+    boolean compress(int blockSize, int level) throws IOException {
+        if (!isReadOnly || closed || format != SegmentFormat.CHECKSUMMED) {
             return false;
         }
-        RemoveDatabaseRecord rdbr = new RemoveDatabaseRecord(objectKey.getBytes(StandardCharsets.UTF_8));
 
-        return appendToFile(objectKey, rdbr);
+        Path compressedPath = DatabaseBlockFile.compress(tableRootPath, blockSize, level,
+                config.getFsyncPolicy() != FsyncPolicy.NONE);
+        readerLock.writeLock().lock();
+        try {
+            // файл подменяется под write lock, чтобы новый ридер не открыл сжатый файл как несжатый
+            DatabaseBlockFile.install(compressedPath, tableRootPath);
+            format = SegmentFormat.COMPRESSED;
+            closeReader();
+        } finally {
+            readerLock.writeLock().unlock();
+        }
+        return true;
     }
 
-    private boolean appendToFile(String objectKey, WritableDatabaseRecord databaseRecord) throws IOException {
-        try (DatabaseOutputStream dbos = new DatabaseOutputStream(new FileOutputStream(
-                String.valueOf(tableRootPath), true))) {
-            segmentIndex.onIndexedEntityUpdated(objectKey, new SegmentOffsetInfoImpl(size));
-            size += dbos.write(databaseRecord);
+    /**
+     * Читает запись целиком по ее сдвигу в файле
+     */
+    Optional<DatabaseRecord> readRecord(long offset) throws IOException {
+        return readRecord(offset, 0);
+    }
+
+    /**
+     * Читает запись целиком по ее сдвигу в файле, зная ее размер (0 - если он неизвестен)
+     */
+    Optional<DatabaseRecord> readRecord(long offset, int recordSize) throws IOException {
+        lastReadNanos = System.nanoTime();
+        readerLock.readLock().lock();
+        try {
+            return reader().readDbUnit(offset, recordSize);
+        } finally {
+            readerLock.readLock().unlock();
         }
+    }
+
+    private byte[] readBlob(BlobReferenceDatabaseRecord reference) throws IOException {
+        return blobStore().read(reference);
+    }
 
-        if (size >= MAX_SEGMENT_SIZE) {
-            isReadOnly = true;
+    private DatabaseBlobStore blobStore() throws IOException {
+        DatabaseBlobStore store = blobStore;
+        if (store == null) {
+            throw new IOException(String.format("Segment %s refers to a blob file but is not attached to a table",
+                    segmentName));
         }
+        return store;
+    }
+
+    /**
+     * @return {@code false} - если фильтр Блума точно знает, что ключа в сегменте нет
+     */
+    boolean mightContain(byte[] objectKey) {
+        DatabaseBloomFilter filter = bloomFilter;
+        return filter == null || filter.mightContain(objectKey);
+    }
+
+    /**
+     * @return размер фильтра Блума в байтах, 0 - если фильтра нет
+     */
+    long bloomFilterSize() {
+        DatabaseBloomFilter filter = bloomFilter;
+        return filter == null ? 0 : filter.sizeInBytes();
+    }
+
+    /**
+     * @return доля записей сегмента, которые уже не нужны
+     */
+    double garbageRatio() {
+        int records = recordCount;
+        return records == 0 ? 1 : 1 - (double) liveRecords / records;
+    }
+
+    int liveRecordCount() {
+        return liveRecords;
+    }
+
+    void addLiveRecords(int delta) {
+        LIVE_RECORDS.addAndGet(this, delta);
+    }
+
+    long lastReadNanos() {
+        return lastReadNanos;
+    }
+
+    /**
+     * Закрывает активный сегмент, если он старше предела по возрасту. Так сегмент, в который давно не пишут,
+     * все равно становится read-only и может быть сжат
+     *
+     * @return {@code true} - если сегмент был закрыт
+     */
+    synchronized boolean sealIfExpired() throws IOException {
+        if (isReadOnly || recordCount == 0 || !rollingPolicy.isExpired(createdMillis, System.currentTimeMillis())) {
+            return false;
+        }
+        seal();
         return true;
     }
+
+    /**
+     * Помечает проинициализированный сегмент read-only, если он не последний в таблице.
+     * В такой сегмент еще ничего не писали, поэтому закрывать нечего.
+     */
+    void markReadOnly() {
+        isReadOnly = true;
+        loadBloomFilter();
+    }
+
+    /**
+     * Дописывает запись, скопированную компактором, не обращая внимания на максимальный размер сегмента
+     */
+    synchronized RecordLocation appendCopy(WritableDatabaseRecord databaseRecord) throws IOException {
+        long offset = size;
+        return recordAppended(offset, appendChannel().write(databaseRecord));
+    }
+
+    /**
+     * Сбрасывает на диск все, что уже дописано в сегмент, независимо от политики fsync
+     */
+    void sync() throws IOException {
+        DatabaseAppendChannel channel = appendChannel;
+        if (channel != null) {
+            channel.sync();
+        }
+    }
+
+    /**
+     * Сбрасывает сегмент на диск независимо от политики fsync и переводит его в read-only
+     */
+    synchronized void syncAndSeal() throws IOException {
+        if (appendChannel != null) {
+            appendChannel.sync();
+        }
+        seal();
+    }
+
+    private void releaseReader() throws IOException {
+        readerLock.writeLock().lock();
+        try {
+            closeReader();
+        } finally {
+            readerLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Закрывает ридер, если из сегмента сейчас никто не читает: не ждет, чтобы не заблокироваться
+     * на чужом сегменте (см {@link SegmentReaderPool}). Ридер, у которого одолжены участки (см {@link StoredValue}),
+     * тоже не закрывается: файл он все равно освободил бы только после их возврата
+     *
+     * @return {@code true} - если ридер был закрыт
+     */
+    boolean tryReleaseReader() {
+        if (!readerLock.writeLock().tryLock()) {
+            return false;
+        }
+        try {
+            if (reader == null || reader.isPinned()) {
+                return false;
+            }
+            closeReader();
+            return true;
+        } catch (IOException e) {
+            // ридер уже убран, следующее чтение откроет новый
+            return true;
+        } finally {
+            readerLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Вызывается только под write lock
+     */
+    private void closeReader() throws IOException {
+        DatabaseRecordReader current = reader;
+        if (current == null) {
+            return;
+        }
+        reader = null;
+        SegmentReaderPool pool = readerPool;
+        if (pool != null) {
+            pool.closed(this);
+        }
+        current.close();
+    }
+
+    /**
+     * Ридер открывается при первом обращении и живет, пока сегмент не закроют, не переведут в read-only
+     * или пока таблица не закроет его как давно не читавшийся. Вызывается только под read lock.
+     */
+    private DatabaseRecordReader reader() throws IOException {
+        DatabaseRecordReader current = reader;
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (readerOpenLock) {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            current = reader;
+            if (current != null) {
+                return current;
+            }
+            if (format.isCompressed()) {
+                current = new DatabaseChannelReader(DatabaseSegmentFile.open(tableRootPath, format, blockCache),
+                        format);
+            } else if (isReadOnly && readMode == SegmentReadMode.MMAP) {
+                current = DatabaseMappedReader.map(tableRootPath, size, format);
+            } else {
+                current = new DatabaseChannelReader(FileChannel.open(tableRootPath, StandardOpenOption.READ), format);
+            }
+            reader = current;
+        }
+
+        SegmentReaderPool pool = readerPool;
+        if (pool != null) {
+            // под read lock этого сегмента: ридер, который мы вернем, пул закрыть не сможет
+            pool.opened(this);
+        }
+        return current;
+    }
+
+    /**
+     * Переводит сегмент в read-only: закрывает канал на дозапись (он сбросит данные на диск согласно политике)
+     * и пишет hint-файл, чтобы при старте не читать сегмент целиком.
+     * В режиме {@link SegmentReadMode#MMAP} закрывает и канальный ридер, чтобы следующее чтение
+     * уже отобразило файл в память.
+     */
+    private void seal() throws IOException {
+        isReadOnly = true;
+        if (appendChannel != null) {
+            appendChannel.close();
+        }
+        writeHintFile();
+        buildBloomFilter();
+        if (readMode == SegmentReadMode.MMAP) {
+            releaseReader();
+        }
+    }
+
+    /**
+     * Берет фильтр Блума из файла, а если его нет или он не подходит к сегменту - строит заново
+     */
+    private void loadBloomFilter() {
+        if (bloomFilter != null || !isBloomFilterEnabled()) {
+            return;
+        }
+
+        try {
+            Optional<DatabaseBloomFilter> stored = DatabaseBloomFilter.read(tableRootPath, size);
+            if (stored.isPresent()) {
+                bloomFilter = stored.get();
+                return;
+            }
+        } catch (IOException e) {
+            // построим заново
+        }
+        buildBloomFilter();
+    }
+
+    /**
+     * Строит фильтр Блума по ключам записей сегмента и сохраняет его рядом с сегментом.
+     * Если сегмент не удалось прочитать, фильтра нет и поиск идет как без него.
+     * Если файл не удалось записать, фильтр все равно используется, а при старте будет построен заново
+     */
+    private void buildBloomFilter() {
+        if (!isBloomFilterEnabled()) {
+            return;
+        }
+
+        DatabaseBloomFilter filter = DatabaseBloomFilter.create(recordCount,
+                config.getBloomFalsePositiveRate(), size);
+        try {
+            DatabaseSegmentScanner.scan(tableRootPath, format, (key, offset, removed) -> filter.add(key));
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            filter.write(tableRootPath, config.getFsyncPolicy() != FsyncPolicy.NONE);
+        } catch (IOException e) {
+            // фильтр только ускоряет поиск
+        }
+        bloomFilter = filter;
+    }
+
+    private boolean isBloomFilterEnabled() {
+        double rate = config.getBloomFalsePositiveRate();
+        return rate > 0 && rate < 1;
+    }
+
+    /**
+     * Hint-файл только ускоряет старт: если его не удалось записать, сегмент будет прочитан целиком
+     */
+    private void writeHintFile() {
+        try {
+            DatabaseHintFile.write(tableRootPath, config.getFsyncPolicy() != FsyncPolicy.NONE);
+        } catch (IOException e) {
+            // при инициализации сегмент просто будет прочитан целиком
+        }
+    }
+
+    /**
+     * Дописывает запись в файл. Место записи таблица публикует в каталоге ключей уже после этого,
+     * чтобы читатели не увидели его раньше данных. На диск не сбрасывает, см {@link #flush()}.
+     */
+    private synchronized Optional<RecordLocation> appendToFile(WritableDatabaseRecord databaseRecord)
+            throws IOException {
+        if (!prepareAppend()) {
+            return Optional.empty();
+        }
+        long offset = size;
+        return Optional.of(sealIfFull(recordAppended(offset, appendChannel().write(databaseRecord))));
+    }
+
+    /**
+     * То же, что {@link #appendToFile(WritableDatabaseRecord)}, но без объекта записи
+     */
+    private synchronized Optional<RecordLocation> appendToFile(byte[] objectKey, byte[] objectValue)
+            throws IOException {
+        if (!prepareAppend()) {
+            return Optional.empty();
+        }
+        long offset = size;
+        return Optional.of(sealIfFull(recordAppended(offset, appendChannel().write(objectKey, objectValue))));
+    }
+
+    /**
+     * Сегмент закрывается, как только достиг пределов таблицы, а по возрасту - перед записью:
+     * тогда запись уходит уже в новый сегмент
+     *
+     * @return {@code true} - если в сегмент еще можно писать
+     */
+    private boolean prepareAppend() throws IOException {
+        if (isReadOnly) {
+            return false;
+        }
+        SegmentRollingPolicy policy = rollingPolicy;
+        if (recordCount > 0 && (policy.isFull(size, recordCount)
+                || policy.isExpired(createdMillis, System.currentTimeMillis()))) {
+            seal();
+            return false;
+        }
+        return true;
+    }
+
+    private RecordLocation sealIfFull(RecordLocation location) throws IOException {
+        if (rollingPolicy.isFull(size, recordCount)) {
+            seal();
+        }
+        return location;
+    }
+
+    private DatabaseAppendChannel appendChannel() throws IOException {
+        if (appendChannel == null) {
+            appendChannel = new DatabaseAppendChannel(tableRootPath, size, config);
+        }
+        return appendChannel;
+    }
+
+    private RecordLocation recordAppended(long offset, long recordSize) {
+        size += recordSize;
+        RECORD_COUNT.incrementAndGet(this);
+        return new RecordLocation(id, offset, (int) recordSize);
+    }
+
+    /**
+     * Время создания файла сегмента, а если файловая система его не хранит - время последнего изменения
+     */
+    private static long creationTime(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).creationTime().toMillis();
+        } catch (IOException e) {
+            return System.currentTimeMillis();
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package com.itmo.java.basics.logic.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ограничивает число сегментов таблицы, которые держат открытый файл для чтения (канал или отображение).
+ * Когда сегментов с ридером становится больше предела, ридеры давно не читавшихся сегментов закрываются,
+ * а при следующем чтении открываются заново.
+ * <p>
+ * Закрытие чужого ридера не ждет: если из сегмента сейчас читают, он пропускается. Поэтому поток,
+ * открывший ридер под read lock своего сегмента, не может заблокироваться на другом сегменте,
+ * а открытых ридеров ненадолго может оказаться больше предела. Так же пропускаются ридеры, у которых
+ * одолжены участки для передачи значений (см {@link com.itmo.java.basics.logic.StoredValue}): их файл
+ * все равно остался бы открытым до возврата участков.
+ */
+class SegmentReaderPool {
+    private final int maxOpenReaders;
+    private final Set<SegmentImpl> open = new LinkedHashSet<>();
+
+    SegmentReaderPool(int maxOpenReaders) {
+        this.maxOpenReaders = maxOpenReaders;
+    }
+
+    /**
+     * Учитывает, что сегмент открыл ридер, и закрывает лишние
+     */
+    void opened(SegmentImpl segment) {
+        List<SegmentImpl> candidates;
+        int excess;
+        synchronized (this) {
+            open.add(segment);
+            excess = open.size() - maxOpenReaders;
+            if (excess <= 0) {
+                return;
+            }
+            candidates = new ArrayList<>(open);
+        }
+
+        candidates.remove(segment);
+        candidates.sort(Comparator.comparingLong(SegmentImpl::lastReadNanos));
+        for (var candidate : candidates) {
+            if (excess <= 0) {
+                return;
+            }
+            if (candidate.tryReleaseReader()) {
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Учитывает, что сегмент закрыл ридер
+     */
+    synchronized void closed(SegmentImpl segment) {
+        open.remove(segment);
+    }
+
+    synchronized int openReaders() {
+        return open.size();
+    }
+}
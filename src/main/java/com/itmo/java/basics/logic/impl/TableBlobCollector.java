@@ -0,0 +1,167 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.index.RecordLocation;
+import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.io.DatabaseBlobStore;
+import com.itmo.java.basics.logic.io.DatabaseSegmentScanner;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Удаление ненужных blob-файлов таблицы (см {@link DatabaseBlobStore}).
+ * <p>
+ * Сжатие сегментов переносит только ссылки на большие значения, поэтому место в blob-файлах освобождается
+ * отдельно. Blob-файл, доля ненужных байт в котором не меньше {@link DatabaseConfig#getCompactionGarbageRatio()},
+ * переписывается: нужные значения копируются в текущий blob-файл, а в текущий сегмент дописываются ссылки
+ * на копии (только для ключей, которые с тех пор не перезаписали). Файл, в котором нужных значений не осталось,
+ * удаляется на следующем проходе - чтения, которые успели взять из каталога ключей старую ссылку, к этому времени
+ * заканчиваются. У таблицы, разбитой по времени, значения не переписываются (иначе они попали бы в новое окно),
+ * а удаляются только файлы без нужных значений.
+ * <p>
+ * Какие значения нужны, таблица знает по записям со ссылками (см {@link TableImpl#retainBlobReference}). Ссылки
+ * из сегментов, записанных до перезапуска, учитываются при первом проходе, поэтому инициализация таблицы
+ * не замедляется, а до этого файлы не удаляются. Работает в потоке компакции и никогда не пересекается с ней.
+ */
+class TableBlobCollector {
+    private final TableImpl table;
+    private final DatabaseBlobStore blobStore;
+    private final double garbageRatio;
+    /**
+     * Файлы, в которых на прошлом проходе не осталось нужных значений
+     */
+    private final List<Long> drained = new ArrayList<>();
+    private boolean loaded;
+
+    private TableBlobCollector(TableImpl table, boolean loaded) {
+        this.table = table;
+        this.blobStore = table.getBlobStore();
+        this.garbageRatio = table.getRetentionMillis() > 0 ? 1 : table.getConfig().getCompactionGarbageRatio();
+        this.loaded = loaded;
+    }
+
+    /**
+     * Запускает периодическое удаление ненужных blob-файлов с периодом компакции
+     */
+    static void schedule(TableImpl table) {
+        boolean hasFiles;
+        try {
+            hasFiles = table.getBlobStore().hasFiles();
+        } catch (IOException e) {
+            hasFiles = true;
+        }
+        TableBlobCollector collector = new TableBlobCollector(table, !hasFiles);
+        TableCompactor.scheduleBackground(table.getConfig(), collector::collectQuietly);
+    }
+
+    private void collectQuietly() {
+        try {
+            collect();
+        } catch (DatabaseException | IOException e) {
+            // файлы удаляются только без нужных значений, следующий проход продолжит
+        }
+    }
+
+    /**
+     * Выполняет один проход: удаляет файлы, опустевшие на прошлом проходе, и переписывает нужные значения
+     * из файлов, в которых их осталось мало
+     *
+     * @throws DatabaseException если не удалось создать новый сегмент для ссылок
+     * @throws IOException       если произошла ошибка ввода-вывода
+     */
+    void collect() throws DatabaseException, IOException {
+        if (!loaded) {
+            loadSegments();
+            loaded = true;
+        }
+
+        for (long file : drained) {
+            if (blobStore.isGarbage(file)) {
+                blobStore.delete(file);
+            }
+        }
+        drained.clear();
+
+        List<Long> emptied = new ArrayList<>();
+        Set<Segment> written = new LinkedHashSet<>();
+        try {
+            for (long file : blobStore.garbageFiles(garbageRatio)) {
+                if (!blobStore.isGarbage(file)) {
+                    relocate(file, written);
+                }
+                emptied.add(file);
+            }
+        } finally {
+            // ссылки на копии должны оказаться на диске раньше, чем удалятся старые значения
+            for (var segment : written) {
+                sync((SegmentImpl) segment);
+            }
+        }
+        drained.addAll(emptied);
+    }
+
+    /**
+     * Учитывает ссылки из всех сегментов таблицы, на которые указывает каталог ключей
+     */
+    private void loadSegments() throws IOException {
+        for (Segment segment : table.getSegments()) {
+            if (!(segment instanceof SegmentImpl)) {
+                continue;
+            }
+
+            SegmentImpl segmentImpl = (SegmentImpl) segment;
+            DatabaseSegmentScanner.scanBlobReferences(segmentImpl.getPath(), segmentImpl.getFormat(),
+                    (offset, reference) -> table.retainBlobReference(reference,
+                            new RecordLocation(segmentImpl.getId(), offset, 0)));
+        }
+    }
+
+    /**
+     * Копирует нужные значения файла в текущий blob-файл и дописывает ссылки на копии
+     *
+     * @param written сюда добавляются сегменты, в которые легли ссылки
+     */
+    private void relocate(long file, Set<Segment> written) throws DatabaseException, IOException {
+        List<BlobReferenceDatabaseRecord> references = table.blobReferencesIn(file);
+        List<BlobReferenceDatabaseRecord> copies = new ArrayList<>(references.size());
+        try {
+            for (var reference : references) {
+                copies.add(blobStore.write(reference.getKey(), blobStore.read(reference)));
+            }
+            // значения должны оказаться на диске раньше ссылок на них
+            blobStore.sync();
+        } catch (IOException e) {
+            for (var copy : copies) {
+                blobStore.release(copy);
+            }
+            throw e;
+        }
+
+        for (int i = 0; i < references.size(); i++) {
+            Segment segment = table.relocateBlobReference(references.get(i), copies.get(i));
+            if (segment != null) {
+                written.add(segment);
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает сегмент на диск независимо от политики fsync, даже если его уже закрыли
+     */
+    private static void sync(SegmentImpl segment) throws IOException {
+        if (!segment.isReadOnly()) {
+            segment.sync();
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(segment.getPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+}
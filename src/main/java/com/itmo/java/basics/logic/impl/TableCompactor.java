@@ -0,0 +1,320 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.index.KeyDirectory;
+import com.itmo.java.basics.index.RecordLocation;
+import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.io.DatabaseBloomFilter;
+import com.itmo.java.basics.logic.io.DatabaseHintFile;
+import com.itmo.java.basics.logic.io.DatabaseSegmentScanner;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Фоновое сжатие сегментов таблицы.
+ * <p>
+ * Выбирает read-only сегменты, в которых доля неактуальных записей не меньше
+ * {@link DatabaseConfig#getCompactionGarbageRatio()}, и переписывает из них в новый сегмент только те записи,
+ * на которые указывает каталог ключей таблицы. Места записей в каталоге переключаются атомарно по одному ключу
+ * (только если ключ не успели перезаписать), поэтому чтение и запись во время сжатия не блокируются.
+ * После этого старые файлы удаляются.
+ * <p>
+ * Удаления (tombstone) выбрасываются, только если ни в одном более старом сегменте, не участвующем в сжатии,
+ * нет этого ключа - иначе после перезапуска старое значение бы "воскресло". Своих индексов у сегментов нет,
+ * поэтому об этом судят по фильтрам Блума: если фильтр допускает ключ (или фильтров нет), удаление сохраняется.
+ * Новый сегмент получает первое свободное имя после самого нового из сжатых, чтобы порядок применения сегментов
+ * при инициализации не изменился.
+ */
+class TableCompactor {
+    private static final Pattern COMPACTED_NAME = Pattern.compile("(.*)-c(\\d+)");
+
+    private static final ScheduledExecutorService COMPACTION_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "kvs-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TableImpl table;
+    private final KeyDirectory keyDirectory;
+    private final double garbageRatio;
+    private final long bytesPerSecond;
+
+    private long copiedBytes;
+    private long startNanos;
+
+    TableCompactor(TableImpl table) {
+        this.table = table;
+        this.keyDirectory = table.getKeyDirectory();
+        this.garbageRatio = table.getConfig().getCompactionGarbageRatio();
+        this.bytesPerSecond = table.getConfig().getCompactionBytesPerSecond();
+    }
+
+    /**
+     * Запускает периодическое сжатие таблицы, если оно не выключено в конфигурации. Таблица, разбитая по времени,
+     * не сжимается: иначе в сегменты смешивались бы записи разных окон (см {@link TableRetention})
+     */
+    static void schedule(TableImpl table) {
+        long interval = table.getConfig().getCompactionIntervalMillis();
+        if (interval <= 0 || table.getRetentionMillis() > 0) {
+            return;
+        }
+
+        TableCompactor compactor = new TableCompactor(table);
+        COMPACTION_SCHEDULER.scheduleWithFixedDelay(compactor::compactQuietly, interval, interval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Запускает периодическую фоновую задачу таблицы другого устройства (например, слияние файлов {@link LsmTable})
+     * в потоке компакции и с тем же периодом, если компакция не выключена в конфигурации
+     */
+    static void scheduleBackground(DatabaseConfig config, Runnable task) {
+        scheduleBackground(config.getCompactionIntervalMillis(), task);
+    }
+
+    /**
+     * Запускает периодическую фоновую задачу таблицы в потоке компакции со своим периодом (например,
+     * истечение сроков ключей в {@link TableExpirer}), если период положительный
+     */
+    static void scheduleBackground(long intervalMillis, Runnable task) {
+        if (intervalMillis <= 0) {
+            return;
+        }
+
+        COMPACTION_SCHEDULER.scheduleWithFixedDelay(task, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ставит в очередь потока компакции разовую задачу таблицы другого устройства (например, сброс memtable
+     * {@link LsmTable}). Выполняется, даже если периодическая компакция выключена
+     */
+    static void executeBackground(Runnable task) {
+        COMPACTION_SCHEDULER.execute(task);
+    }
+
+    /**
+     * Ставит в очередь сжатие закрытого сегмента по блокам, если оно включено для таблицы.
+     * Выполняется в том же потоке, что и компакция, поэтому никогда не пересекается с ней
+     */
+    static void compressLater(TableImpl table, Segment segment) {
+        if (!table.isCompressionEnabled() || !(segment instanceof SegmentImpl)) {
+            return;
+        }
+
+        COMPACTION_SCHEDULER.execute(() -> compressQuietly(table, (SegmentImpl) segment));
+    }
+
+    private static void compressQuietly(TableImpl table, SegmentImpl segment) {
+        if (!table.getSegments().contains(segment)) {
+            // сегмент уже заменили при компакции
+            return;
+        }
+
+        try {
+            segment.compress(table.getConfig().getCompressionBlockSize(), table.getConfig().getCompressionLevel());
+        } catch (IOException e) {
+            // сегмент остается несжатым и продолжает читаться как раньше
+        }
+    }
+
+    /**
+     * Выполняет один проход сжатия. Сначала закрывает текущий сегмент таблицы, если он старше предела по возрасту,
+     * чтобы в сжатие попадали и сегменты таблиц, в которые давно не пишут.
+     *
+     * @return {@code true} - если какие-то сегменты были сжаты
+     * @throws DatabaseException если не удалось создать новый сегмент
+     * @throws IOException       если произошла ошибка ввода-вывода
+     */
+    boolean compact() throws DatabaseException, IOException {
+        table.rollExpiredSegment();
+        List<Segment> segments = table.getSegments();
+        List<SegmentImpl> inputs = new ArrayList<>();
+        for (var segment : segments) {
+            if (segment instanceof SegmentImpl && segment.isReadOnly()
+                    && ((SegmentImpl) segment).garbageRatio() >= garbageRatio) {
+                inputs.add((SegmentImpl) segment);
+            }
+        }
+        if (inputs.isEmpty()) {
+            return false;
+        }
+
+        String outputName = compactedName(inputs.get(inputs.size() - 1).getName());
+        while (Files.exists(table.getPath().resolve(outputName))) {
+            // самый новый из сжатых уже сжимали, но он пережил то сжатие (ошибка ввода-вывода или падение
+            // до удаления старых файлов), и прошлый результат еще лежит под этим именем
+            outputName = compactedName(outputName);
+        }
+        SegmentImpl output = (SegmentImpl) SegmentImpl.create(outputName, table.getPath(), table.getConfig());
+        long sourceSequence = output.getSourceSequence();
+        for (var input : inputs) {
+            sourceSequence = Math.min(sourceSequence, input.getSourceSequence());
+        }
+        output.setSourceSequence(sourceSequence);
+        table.registerSegment(output);
+        copiedBytes = 0;
+        startNanos = System.nanoTime();
+
+        try {
+            for (var input : inputs) {
+                copyLiveRecords(input, output, segments, inputs);
+            }
+            output.syncAndSeal();
+        } catch (IOException e) {
+            // на часть ключей каталог уже указывает в новый сегмент, а старые сегменты еще нужны остальным
+            table.addSegment(output);
+            output.syncAndSeal();
+            throw e;
+        }
+
+        List<SegmentImpl> removed = inputs;
+        if (output.liveRecordCount() == 0) {
+            output.close();
+            DatabaseHintFile.delete(output.getPath());
+            DatabaseBloomFilter.delete(output.getPath());
+            Files.deleteIfExists(output.getPath());
+            removed = new ArrayList<>(inputs);
+            removed.add(output);
+            output = null;
+        }
+        table.replaceSegments(removed, output);
+        if (output != null) {
+            compressLater(table, output);
+        }
+
+        // от старых к новым: если процесс упадет посередине, удаления из новых еще перекрывают значения из старых
+        for (var input : inputs) {
+            input.close();
+            DatabaseHintFile.delete(input.getPath());
+            DatabaseBloomFilter.delete(input.getPath());
+            Files.deleteIfExists(input.getPath());
+        }
+        return true;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (DatabaseException | IOException e) {
+            // сегменты остались в согласованном состоянии, следующий запуск попробует еще раз
+        }
+    }
+
+    /**
+     * Проходит по ключам сегмента и копирует актуальные записи, читая их целиком через ридер сегмента
+     */
+    private void copyLiveRecords(SegmentImpl input, SegmentImpl output, List<Segment> segments,
+                                 List<SegmentImpl> inputs) throws IOException {
+        DatabaseSegmentScanner.scan(input.getPath(), input.getFormat(), (key, offset, removed) -> {
+            RecordLocation location = new RecordLocation(input.getId(), offset, 0);
+            if (!isLatest(key, location)) {
+                return;
+            }
+
+            if (removed && !shadowsOlderSegment(key, input, segments, inputs)) {
+                if (keyDirectory.remove(key, location)) {
+                    input.addLiveRecords(-1);
+                }
+                return;
+            }
+
+            Optional<DatabaseRecord> record = input.readRecord(offset);
+            if (record.isEmpty()) {
+                return;
+            }
+            WritableDatabaseRecord live = (WritableDatabaseRecord) record.get();
+            if (ExpiringDatabaseRecord.isExpired(live, System.currentTimeMillis())) {
+                // истекшая запись - то же удаление: ее значение больше не нужно никогда
+                if (!shadowsOlderSegment(key, input, segments, inputs)) {
+                    table.forgetRecord(key, location, true);
+                    return;
+                }
+                if (!table.forgetRecord(key, location, false)) {
+                    return;
+                }
+                live = ((ExpiringDatabaseRecord) live).withoutValue();
+            }
+            RecordLocation copy = output.appendCopy(live);
+            if (keyDirectory.replace(key, location, copy)) {
+                TableImpl.moveLiveRecord(input, output);
+            }
+            throttle(live.size());
+        });
+    }
+
+    /**
+     * Запись актуальна, если каталог ключей указывает именно на нее
+     */
+    private boolean isLatest(byte[] key, RecordLocation location) {
+        return keyDirectory.pointsTo(key, location);
+    }
+
+    /**
+     * Нужно ли сохранить удаление: может ли ключ быть в более старом сегменте, который не сжимается вместе с этим
+     */
+    static boolean shadowsOlderSegment(byte[] key, SegmentImpl input, List<Segment> segments,
+                                       List<SegmentImpl> inputs) {
+        for (var segment : segments) {
+            if (segment == input) {
+                return false;
+            }
+            if (!inputs.contains(segment) && segment instanceof SegmentImpl
+                    && ((SegmentImpl) segment).mightContain(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void throttle(long bytes) throws InterruptedIOException {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+
+        copiedBytes += bytes;
+        long expectedNanos = copiedBytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+        long aheadNanos = expectedNanos - (System.nanoTime() - startNanos);
+        if (aheadNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Compaction was interrupted");
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} - если сегмент с таким именем создан сжатием
+     */
+    static boolean isCompactedName(String segmentName) {
+        return COMPACTED_NAME.matcher(segmentName).matches();
+    }
+
+    /**
+     * Имя нового сегмента должно идти после имени самого нового из сжатых, но раньше любого следующего сегмента:
+     * "t_100" -> "t_100-c0001", "t_100-c0001" -> "t_100-c0002". Если имя занято, берется следующее за ним:
+     * сегменты с одной основой применяются по возрастанию номера, а новый результат сжатия хранит только
+     * актуальные записи, поэтому может идти после любого из них
+     */
+    static String compactedName(String newestInputName) {
+        Matcher matcher = COMPACTED_NAME.matcher(newestInputName);
+        if (matcher.matches()) {
+            return String.format("%s-c%04d", matcher.group(1), Integer.parseInt(matcher.group(2)) + 1);
+        }
+        return newestInputName + "-c0001";
+    }
+}
@@ -0,0 +1,80 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.index.KeyDirectory;
+import com.itmo.java.basics.index.RecordLocation;
+import com.itmo.java.basics.index.impl.ExpirationWheel;
+import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.io.DatabaseSegmentScanner;
+
+import java.io.IOException;
+
+/**
+ * Фоновое истечение сроков ключей таблицы.
+ * <p>
+ * Раз в тик колеса {@link ExpirationWheel} забирает из него ключи с истекшим сроком и убирает их из таблицы
+ * (см {@link TableImpl#expireKey(byte[])}). Чтение и без этого не видит истекших значений - фоновый проход
+ * нужен, чтобы ключи не занимали каталог и упорядоченный индекс, пока до их сегментов не дойдет сжатие.
+ * Сроки из уже существующих сегментов попадают в колесо при первом запуске, поэтому инициализация таблицы
+ * не замедляется. Работает в потоке компакции и никогда не пересекается с ней.
+ */
+class TableExpirer {
+    private final TableImpl table;
+    private final ExpirationWheel wheel;
+    private boolean loaded;
+
+    private TableExpirer(TableImpl table) {
+        this.table = table;
+        this.wheel = table.getExpirations();
+    }
+
+    /**
+     * Запускает фоновое истечение сроков, если сроки у таблицы включены
+     */
+    static void schedule(TableImpl table) {
+        if (table.getExpirations() == null) {
+            return;
+        }
+
+        TableExpirer expirer = new TableExpirer(table);
+        TableCompactor.scheduleBackground(table.getConfig().getExpirationTickMillis(), expirer::expireQuietly);
+    }
+
+    private void expireQuietly() {
+        if (!loaded) {
+            loaded = true;
+            loadSegments();
+        }
+
+        for (byte[] key : wheel.advance(System.currentTimeMillis())) {
+            try {
+                table.expireKey(key);
+            } catch (IOException e) {
+                // ключ останется в каталоге до сжатия, чтение его все равно не вернет
+            }
+        }
+    }
+
+    /**
+     * Кладет в колесо сроки актуальных записей всех сегментов таблицы
+     */
+    private void loadSegments() {
+        KeyDirectory keyDirectory = table.getKeyDirectory();
+        for (Segment segment : table.getSegments()) {
+            if (!(segment instanceof SegmentImpl)) {
+                continue;
+            }
+
+            SegmentImpl segmentImpl = (SegmentImpl) segment;
+            try {
+                DatabaseSegmentScanner.scanExpiring(segmentImpl.getPath(), segmentImpl.getFormat(),
+                        (key, offset, expiresAtMillis) -> {
+                            if (keyDirectory.pointsTo(key, new RecordLocation(segmentImpl.getId(), offset, 0))) {
+                                wheel.add(key, expiresAtMillis);
+                            }
+                        });
+            } catch (IOException e) {
+                // сегмент могли удалить при сжатии, его записи уже переписаны в другой сегмент
+            }
+        }
+    }
+}
@@ -1,31 +1,139 @@
 package com.itmo.java.basics.logic.impl;
 
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.SegmentRollingPolicy;
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.index.impl.TableIndex;
+import com.itmo.java.basics.index.KeyDirectory;
+import com.itmo.java.basics.index.RecordLocation;
+import com.itmo.java.basics.index.impl.ExpirationWheel;
+import com.itmo.java.basics.index.impl.OrderedKeyIndex;
 import com.itmo.java.basics.initialization.TableInitializationContext;
+import com.itmo.java.basics.logic.DatabaseRecord;
 import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.StoredValue;
 import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.io.DatabaseBlobStore;
+import com.itmo.java.basics.logic.io.DatabaseBlockCache;
+import com.itmo.java.basics.logic.io.DatabaseBloomFilter;
+import com.itmo.java.basics.logic.io.DatabaseHintFile;
+import com.itmo.java.basics.logic.io.DatabaseSnapshot;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class TableImpl implements Table {
+    /**
+     * Разделяет части курсора обхода, см {@link #scan(String, ScanConsumer)}
+     */
+    private static final String CURSOR_SEPARATOR = "/";
+
     private final String tableName;
     private final Path path;
-    private final TableIndex tableIndex;
+    /**
+     * Ключ - где лежит его последняя запись. Номер сегмента в нем - индекс в {@link #segmentsById}
+     */
+    private final KeyDirectory keyDirectory;
+    private final KeyDirectory.KeyVerifier keyVerifier = this::hasKey;
+    /**
+     * Живые ключи по порядку для {@link #range}, {@code null} - если индекс для таблицы выключен
+     * (см {@link DatabaseConfig#isOrderedIndexEnabled(String, String)}). Меняется вместе с каталогом ключей
+     * под блокировкой таблицы
+     */
+    private final OrderedKeyIndex orderedIndex;
+    /**
+     * Сроки жизни ключей для фонового истечения (см {@link TableExpirer}), {@code null} - если сроков у таблицы нет
+     * (см {@link DatabaseConfig#isExpirationEnabled(String, String)})
+     */
+    private final ExpirationWheel expirations;
+    /**
+     * Срок хранения таблицы, разбитой по времени (см {@link TableRetention}), 0 - если записи хранятся без срока
+     */
+    private final long retentionMillis;
+    private final DatabaseConfig config;
+    private final boolean compressionEnabled;
+    private final boolean writeBufferEnabled;
+    /**
+     * Распакованные блоки сжатых сегментов таблицы
+     */
+    private final DatabaseBlockCache blockCache;
+    /**
+     * Большие значения таблицы, см {@link DatabaseConfig#getBlobThreshold()}
+     */
+    private final DatabaseBlobStore blobStore;
+    /**
+     * Ключи, последние записи которых - ссылки на значения в blob-файлах, и сами ссылки: по ним blob-файлы знают,
+     * сколько их значений еще нужны (см {@link TableBlobCollector}). Меняется вместе с каталогом ключей
+     * под блокировкой таблицы
+     */
+    private final Map<ByteBuffer, BlobReferenceDatabaseRecord> blobReferences = new HashMap<>();
+    /**
+     * Сколько сегментов таблицы держат открытый файл для чтения, см {@link DatabaseConfig#getSegmentMaxOpenReaders()}
+     */
+    private final SegmentReaderPool readerPool;
+    private final SegmentRollingPolicy rollingPolicy;
     private Segment currentSegment;
+    /**
+     * Номер следующего сегмента в его имени, меняется под блокировкой таблицы
+     */
+    private long nextSegmentSequence = 1;
+    /**
+     * Все сегменты таблицы в порядке создания. Список неизменяемый и целиком заменяется под блокировкой таблицы,
+     * поэтому компактор может обходить его без блокировок
+     */
+    private volatile List<Segment> segments;
+    /**
+     * Сегменты по их номерам в каталоге ключей, {@code null} - свободный номер. Как и список сегментов,
+     * заменяется целиком под блокировкой таблицы. Номера удаленных сегментов отдаются новым: если читатель
+     * успел взять из каталога старое место записи, ключ записи по этому месту не совпадет, и он перечитает каталог
+     */
+    private volatile Segment[] segmentsById = new Segment[0];
+    private final Deque<Integer> freeSegmentIds = new ArrayDeque<>();
 
-    private TableImpl(String tableName, Path pathToDatabaseRoot, TableIndex tableIndex, Segment currentSegment) {
+    private TableImpl(String tableName, Path pathToDatabaseRoot, KeyDirectory keyDirectory, Segment currentSegment,
+                      List<Segment> segments, DatabaseConfig config) {
         this.tableName = tableName;
         this.path = pathToDatabaseRoot;
-        this.tableIndex = tableIndex;
+        this.keyDirectory = keyDirectory;
         this.currentSegment = currentSegment;
+        this.segments = List.copyOf(segments);
+        this.config = config;
+        String dbName = path.getParent().getFileName().toString();
+        this.compressionEnabled = config.isCompressionEnabled(dbName, tableName);
+        this.writeBufferEnabled = config.isWriteBufferEnabled(dbName, tableName);
+        this.orderedIndex = config.isOrderedIndexEnabled(dbName, tableName) ? new OrderedKeyIndex() : null;
+        this.expirations = config.isExpirationEnabled(dbName, tableName) ? new ExpirationWheel(
+                config.getExpirationTickMillis(), config.getExpirationWheelSlots(), System.currentTimeMillis()) : null;
+        this.retentionMillis = Math.max(config.getRetentionMillis(dbName, tableName), 0);
+        this.blockCache = new DatabaseBlockCache(config.getCompressionBlockCacheBytes());
+        this.blobStore = new DatabaseBlobStore(path, config);
+        this.readerPool = new SegmentReaderPool(config.getSegmentMaxOpenReaders());
+        this.rollingPolicy = config.getSegmentRollingPolicy(dbName, tableName);
+    }
+
+    public static Table create(String tableName, Path pathToDatabaseRoot, KeyDirectory keyDirectory) throws DatabaseException {
+        return create(tableName, pathToDatabaseRoot, keyDirectory, DatabaseConfig.builder().build());
     }
 
-    public static Table create(String tableName, Path pathToDatabaseRoot, TableIndex tableIndex) throws DatabaseException {
-        TableImpl table = new TableImpl(tableName, pathToDatabaseRoot.resolve(tableName), tableIndex, null);
+    public static Table create(String tableName, Path pathToDatabaseRoot, KeyDirectory keyDirectory,
+                               DatabaseConfig config) throws DatabaseException {
+        TableImpl table = new TableImpl(tableName, pathToDatabaseRoot.resolve(tableName), keyDirectory, null,
+                List.of(), config);
 
         try {
             Files.createDirectory(pathToDatabaseRoot.resolve(tableName));
@@ -33,12 +141,78 @@ public class TableImpl implements Table {
             throw new DatabaseException(String.format("IO exception when trying to create table %s in path %s", tableName, pathToDatabaseRoot.toString()), e);
         }
 
-        return new CachingTable(table);
+        TableCompactor.schedule(table);
+        TableExpirer.schedule(table);
+        TableRetention.schedule(table);
+        TableBlobCollector.schedule(table);
+        return table.withBuffers();
+    }
+
+    public static Table initializeFromContext(TableInitializationContext context) throws DatabaseException {
+        return initializeFromContext(context, DatabaseConfig.builder().build());
     }
 
-    public static Table initializeFromContext(TableInitializationContext context) {
-        return new CachingTable(new TableImpl(context.getTableName(), context.getTablePath(),
-                context.getTableIndex(), context.getCurrentSegment()));
+    /**
+     * Номера сегментов в каталоге ключей из контекста - их позиции в {@link TableInitializationContext#getSegments()}.
+     * Новые сегменты получают в имени номер больше, чем у любого из уже существующих
+     */
+    public static Table initializeFromContext(TableInitializationContext context, DatabaseConfig config)
+            throws DatabaseException {
+        TableImpl table = new TableImpl(context.getTableName(), context.getTablePath(),
+                context.getKeyDirectory(), context.getCurrentSegment(), context.getSegments(), config);
+
+        table.segmentsById = table.segments.toArray(new Segment[0]);
+        for (int id = 0; id < table.segmentsById.length; id++) {
+            Segment segment = table.segmentsById[id];
+            table.nextSegmentSequence = Math.max(table.nextSegmentSequence,
+                    SegmentImpl.segmentSequence(segment.getName()) + 1);
+            if (segment instanceof SegmentImpl) {
+                ((SegmentImpl) segment).setId(id);
+                table.attachSegment((SegmentImpl) segment);
+                if (segment != table.currentSegment) {
+                    ((SegmentImpl) segment).markReadOnly();
+                }
+            }
+        }
+        table.keyDirectory.forEachLocation(location -> addLiveRecords(table.segmentById(location.getSegmentId()), 1));
+        if (table.orderedIndex != null) {
+            table.buildOrderedIndex();
+        }
+        for (var segment : table.segments) {
+            if (segment.isReadOnly()) {
+                TableCompactor.compressLater(table, segment);
+            }
+        }
+
+        TableCompactor.schedule(table);
+        TableExpirer.schedule(table);
+        TableRetention.schedule(table);
+        TableBlobCollector.schedule(table);
+        return table.withBuffers();
+    }
+
+    /**
+     * Собирает упорядоченный индекс проходом по сегментам: в него попадают ключи записей, на которые указывает
+     * каталог ключей
+     */
+    private void buildOrderedIndex() throws DatabaseException {
+        for (var segment : segments) {
+            if (!(segment instanceof SegmentImpl)) {
+                continue;
+            }
+            int id = ((SegmentImpl) segment).getId();
+            try {
+                ((SegmentImpl) segment).scanRecords(0, (key, offset, removed) -> {
+                    if (!removed && keyDirectory.pointsTo(key, new RecordLocation(id, offset, 0))) {
+                        orderedIndex.add(key);
+                    }
+                    return true;
+                });
+            } catch (IOException e) {
+                throw new DatabaseException(String.format("IO exception when trying to build ordered index of table %s",
+                        tableName), e);
+            }
+        }
     }
 
     @Override
@@ -47,51 +221,799 @@ public class TableImpl implements Table {
     }
 
     @Override
-    public void write(String objectKey, byte[] objectValue) throws DatabaseException {
+    public void write(byte[] objectKey, byte[] objectValue) throws DatabaseException {
         try {
-            if (currentSegment == null) {
-                currentSegment = SegmentImpl.create(SegmentImpl.createSegmentName(tableName), path);
-                currentSegment.write(objectKey, objectValue);
-            } else if (!currentSegment.write(objectKey, objectValue)) {
-                currentSegment = SegmentImpl.create(SegmentImpl.createSegmentName(tableName), path);
-                currentSegment.write(objectKey, objectValue);
-            }
-            tableIndex.onIndexedEntityUpdated(objectKey, currentSegment);
+            appendRecord(objectKey, objectValue);
         } catch (IOException e) {
-            throw new DatabaseException(String.format("IO exception when trying to write pair key-value %s-%s", objectKey, new String(objectValue)), e);
+            throw new DatabaseException(String.format("IO exception when trying to write pair key-value %s-%s",
+                    new String(objectKey, StandardCharsets.UTF_8), new String(objectValue)), e);
         }
     }
 
+    /**
+     * Значение со сроком пишется в сегмент, даже если оно больше {@link DatabaseConfig#getBlobThreshold()}
+     */
     @Override
-    public Optional<byte[]> read(String objectKey) throws DatabaseException {
-        if (tableIndex.searchForKey(objectKey).isEmpty()) {
-            return Optional.empty();
+    public void write(byte[] objectKey, byte[] objectValue, long expiresAtMillis) throws DatabaseException {
+        requireExpiration();
+        try {
+            Segment segment;
+            synchronized (this) {
+                segment = appendToCurrentSegment(objectKey, objectValue,
+                        new ExpiringDatabaseRecord(objectKey, objectValue, expiresAtMillis));
+            }
+            segment.flush();
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to write pair key-value %s-%s",
+                    new String(objectKey, StandardCharsets.UTF_8), new String(objectValue)), e);
         }
+    }
 
+    /**
+     * Значение читается и записывается заново под блокировкой таблицы, чтобы не затереть параллельную запись
+     */
+    @Override
+    public Optional<byte[]> expire(byte[] objectKey, long expiresAtMillis) throws DatabaseException {
+        requireExpiration();
         try {
-            return tableIndex.searchForKey(objectKey).get().read(objectKey);
+            Optional<byte[]> value;
+            Segment segment;
+            synchronized (this) {
+                value = read(objectKey);
+                if (value.isEmpty()) {
+                    return value;
+                }
+                segment = appendToCurrentSegment(objectKey, value.get(),
+                        new ExpiringDatabaseRecord(objectKey, value.get(), expiresAtMillis));
+            }
+            segment.flush();
+            return value;
         } catch (IOException e) {
-            throw new DatabaseException(String.format("IO exception when trying to read a value with key %s", objectKey), e);
+            throw new DatabaseException(String.format("IO exception when trying to expire a value with key %s",
+                    new String(objectKey, StandardCharsets.UTF_8)), e);
+        }
+    }
+
+    private void requireExpiration() throws DatabaseException {
+        if (expirations == null) {
+            throw new DatabaseException(String.format("Table %s has no key expiration", tableName));
+        }
+    }
+
+    /**
+     * Читает без блокировок: один поиск в каталоге ключей и одно чтение записи по ее месту.
+     * Если сегмент успели заменить при сжатии и закрыть, пока мы из него читали,
+     * каталог уже указывает на новое место - читаем оттуда. Если каталог хранит только хеши,
+     * а по найденному месту лежит другой ключ с тем же хешем, то искомого ключа нет.
+     */
+    @Override
+    public Optional<byte[]> read(byte[] objectKey) throws DatabaseException {
+        return readAtLocation(objectKey, (segment, location) -> segment.readValue(objectKey, location));
+    }
+
+    /**
+     * Читает так же, как {@link #read(byte[])}. Большое значение возвращается участком файла сегмента
+     * или blob-файла, см {@link SegmentImpl#readStoredValue}
+     */
+    @Override
+    public Optional<StoredValue> readStored(byte[] objectKey, int regionThreshold) throws DatabaseException {
+        return readAtLocation(objectKey,
+                (segment, location) -> segment.readStoredValue(objectKey, location, regionThreshold));
+    }
+
+    private <T> Optional<T> readAtLocation(byte[] objectKey, LocationReader<T> reader) throws DatabaseException {
+        try {
+            Optional<RecordLocation> location = keyDirectory.lookup(objectKey, keyVerifier);
+
+            while (location.isPresent()) {
+                try {
+                    return reader.read(segmentAt(location.get()), location.get());
+                } catch (IOException e) {
+                    Optional<RecordLocation> actual = keyDirectory.lookup(objectKey, keyVerifier);
+                    if (actual.equals(location)) {
+                        if (e instanceof KeyMismatchException && !keyDirectory.storesKeys()) {
+                            return Optional.empty();
+                        }
+                        throw e;
+                    }
+                    location = actual;
+                }
+            }
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to read a value with key %s",
+                    new String(objectKey, StandardCharsets.UTF_8)), e);
         }
     }
 
     @Override
-    public void delete(String objectKey) throws DatabaseException {
-        var tmp = tableIndex.searchForKey(objectKey);
+    public void delete(byte[] objectKey) throws DatabaseException {
+        try {
+            if (keyDirectory.lookup(objectKey, keyVerifier).isEmpty()) {
+                return;
+            }
+
+            appendRecord(objectKey, null);
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to delete a value with key %s",
+                    new String(objectKey, StandardCharsets.UTF_8)), e);
+        }
+    }
 
-        if (tmp.isPresent()) {
+    /**
+     * Обходит сегменты в порядке имен (он же порядок записи), а в каждом - записи по порядку, и передает те,
+     * на которые указывает каталог ключей. Обход ограничен концом текущего сегмента на момент начала обхода
+     * (границей), поэтому заканчивается, даже если в таблицу все время пишут. Курсор - имя сегмента и сдвиг
+     * следующей записи в нем, затем так же граница: "сегмент/сдвиг/сегмент границы/сдвиг границы"
+     * ("/" не бывает в именах файлов).
+     * <p>
+     * При сжатии живая запись переезжает только вперед по ходу обхода - в сегмент с именем после сжатых.
+     * Поэтому результаты сжатия обходятся, даже если они за границей, когда в них есть записи из сегментов до нее
+     * (см {@link SegmentImpl#getSourceSequence()}), а сегмент, удаленный после сжатия, пропускается:
+     * его живые записи уже лежат дальше.
+     */
+    @Override
+    public String scan(String cursor, ScanConsumer consumer) throws DatabaseException {
+        ScanPosition position;
+        ScanPosition bound;
+        if (SCAN_START.equals(cursor)) {
+            synchronized (this) {
+                if (!(currentSegment instanceof SegmentImpl)) {
+                    return SCAN_START;
+                }
+                bound = new ScanPosition(currentSegment.getName(), ((SegmentImpl) currentSegment).getSize());
+            }
+            position = new ScanPosition(null, 0);
+        } else {
+            String[] parts = cursor == null ? new String[0] : cursor.split(CURSOR_SEPARATOR, -1);
             try {
-                if (tmp.get().isReadOnly()) {
-                    if (currentSegment.isReadOnly()) {
-                        tableIndex.onIndexedEntityUpdated(objectKey, SegmentImpl.create(SegmentImpl.createSegmentName(tableName), path));
-                    } else {
-                        tableIndex.onIndexedEntityUpdated(objectKey, currentSegment);
+                if (parts.length != 4) {
+                    throw new NumberFormatException();
+                }
+                position = new ScanPosition(parts[0], Long.parseLong(parts[1]));
+                bound = new ScanPosition(parts[2], Long.parseLong(parts[3]));
+            } catch (NumberFormatException e) {
+                throw new DatabaseException(String.format("Invalid scan cursor %s for table %s", cursor, tableName));
+            }
+        }
+
+        try {
+            SegmentImpl segment = scanSegmentFrom(position.segmentName, true, bound);
+            while (segment != null) {
+                if (!segment.getName().equals(position.segmentName)) {
+                    position = new ScanPosition(segment.getName(), 0);
+                }
+                boolean[] stopped = {false};
+                long offset;
+                try {
+                    offset = scanSegment(segment, position.offset, bound, consumer, stopped);
+                } catch (ClosedChannelException | NoSuchFileException e) {
+                    if (segments.contains(segment)) {
+                        throw e;
                     }
+                    offset = 0;
+                }
+
+                if (stopped[0]) {
+                    return String.join(CURSOR_SEPARATOR, segment.getName(), String.valueOf(offset),
+                            bound.segmentName, String.valueOf(bound.offset));
+                }
+                segment = scanSegmentFrom(position.segmentName, false, bound);
+            }
+            return SCAN_START;
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to scan table %s", tableName), e);
+        }
+    }
+
+    /**
+     * @return первый сегмент, который нужно обойти, с именем после {@code name} (или равным ему,
+     * если {@code inclusive}), {@code null} - если такого нет. Если {@code name} - {@code null}, с начала таблицы
+     */
+    private SegmentImpl scanSegmentFrom(String name, boolean inclusive, ScanPosition bound) {
+        for (var segment : segments) {
+            if (!(segment instanceof SegmentImpl) || isBeyond((SegmentImpl) segment, bound)) {
+                continue;
+            }
+            int compared = name == null ? 1 : SegmentImpl.NAME_ORDER.compare(segment.getName(), name);
+            if (compared > 0 || compared == 0 && inclusive) {
+                return (SegmentImpl) segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Передает получателю живые записи сегмента начиная со сдвига {@code fromOffset} и до границы обхода
+     *
+     * @param stopped сюда записывается, остановил ли получатель обход
+     * @return сдвиг, на котором закончился проход по сегменту
+     */
+    private long scanSegment(SegmentImpl segment, long fromOffset, ScanPosition bound, ScanConsumer consumer,
+                             boolean[] stopped) throws IOException {
+        boolean boundSegment = segment.getName().equals(bound.segmentName);
+        return segment.scanRecords(fromOffset, (key, offset, removed) -> {
+            if (boundSegment && offset >= bound.offset) {
+                return false;
+            }
+            if (removed) {
+                return true;
+            }
+            Optional<byte[]> value = readScanned(key, new RecordLocation(segment.getId(), offset, 0));
+            if (value.isPresent() && !consumer.accept(key, value.get())) {
+                stopped[0] = true;
+                return false;
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Значение записи, которую встретил обход, если каталог ключей указывает на нее. Если запись уже переносят
+     * в сегмент, который компактор еще пишет, значение берется оттуда: этого сегмента нет в списке сегментов,
+     * и обход может пройти его место раньше, чем он там появится
+     */
+    private Optional<byte[]> readScanned(byte[] objectKey, RecordLocation location) throws IOException {
+        RecordLocation target = location;
+        while (true) {
+            if (!keyDirectory.pointsTo(objectKey, target)) {
+                Optional<RecordLocation> actual = keyDirectory.lookup(objectKey, keyVerifier);
+                if (actual.isEmpty() || !isBeingCompacted(actual.get())) {
+                    return Optional.empty();
+                }
+                target = actual.get();
+            }
+            try {
+                return segmentAt(target).readValue(objectKey, target);
+            } catch (IOException e) {
+                if (keyDirectory.pointsTo(objectKey, target)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private boolean isBeingCompacted(RecordLocation location) {
+        Segment segment = segmentById(location.getSegmentId());
+        return segment != null && !segments.contains(segment);
+    }
+
+    /**
+     * Сегмент за границей обхода, если в нем нет записей из сегментов до нее
+     */
+    private static boolean isBeyond(SegmentImpl segment, ScanPosition bound) {
+        return segment.getSourceSequence() > SegmentImpl.segmentSequence(bound.segmentName);
+    }
+
+    /**
+     * Ключи диапазона берутся из упорядоченного индекса, а значения читаются по каталогу ключей, как в
+     * {@link #read(byte[])}. Ключ, удаленный между ними, пропускается
+     */
+    @Override
+    public void range(byte[] fromKey, byte[] toKey, ScanConsumer consumer) throws DatabaseException {
+        if (orderedIndex == null) {
+            throw new DatabaseException(String.format("Table %s has no ordered index", tableName));
+        }
+
+        for (byte[] key : orderedIndex.range(fromKey, toKey)) {
+            Optional<byte[]> value = read(key);
+            if (value.isEmpty()) {
+                continue;
+            }
+            try {
+                if (!consumer.accept(key, value.get())) {
+                    return;
                 }
-                tmp.get().delete(objectKey);
             } catch (IOException e) {
-                throw new DatabaseException(String.format("IO exception when trying to delete a value with key %s", objectKey), e);
+                throw new DatabaseException(String.format("IO exception when trying to read a range of table %s",
+                        tableName), e);
+            }
+        }
+    }
+
+    /**
+     * Собирается без блокировки таблицы, поэтому во время записи может немного отставать.
+     * directoryEntries - число записей каталога ключей: каталог хранит и удаления, пока они перекрывают
+     * старые записи ключа, поэтому это не число живых ключей
+     */
+    @Override
+    public Map<String, Long> getStats() {
+        List<Segment> current = segments;
+        long readOnlySegments = 0;
+        long bloomFilters = 0;
+        long bloomFilterBytes = 0;
+        for (var segment : current) {
+            if (segment.isReadOnly()) {
+                readOnlySegments++;
+            }
+            long bloomFilterSize = segment instanceof SegmentImpl ? ((SegmentImpl) segment).bloomFilterSize() : 0;
+            if (bloomFilterSize > 0) {
+                bloomFilters++;
+                bloomFilterBytes += bloomFilterSize;
+            }
+        }
+
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("segments", (long) current.size());
+        stats.put("readOnlySegments", readOnlySegments);
+        stats.put("directoryEntries", (long) keyDirectory.size());
+        stats.put("keyDirectoryBytes", keyDirectory.sizeInBytes());
+        stats.put("bloomFilters", bloomFilters);
+        stats.put("bloomFilterBytes", bloomFilterBytes);
+        stats.put("openSegmentReaders", (long) readerPool.openReaders());
+        if (orderedIndex != null) {
+            stats.put("orderedIndexKeys", (long) orderedIndex.size());
+            stats.put("orderedIndexKeyBytes", orderedIndex.keyBytes());
+        }
+        if (expirations != null) {
+            stats.put("expirationWheelKeys", (long) expirations.size());
+        }
+        return stats;
+    }
+
+    /**
+     * Закрывает текущий сегмент и связывает сегменты с их hint-файлами и фильтрами Блума, а также blob-файлы.
+     * Все это - под блокировкой таблицы: компакция и удаление по сроку хранения заменяют сегменты под ней,
+     * а удаляют файлы уже после, так что все файлы из списка сегментов на месте
+     */
+    @Override
+    public void snapshot(Path snapshotTablePath) throws DatabaseException {
+        try {
+            synchronized (this) {
+                Files.createDirectories(snapshotTablePath);
+                if (currentSegment instanceof SegmentImpl && !currentSegment.isReadOnly()) {
+                    ((SegmentImpl) currentSegment).syncAndSeal();
+                    TableCompactor.compressLater(this, currentSegment);
+                }
+                // ссылки на blob-файлы из закрытых сегментов уже указывают на записанные значения
+                blobStore.snapshot(snapshotTablePath);
+                for (var segment : segments) {
+                    if (!(segment instanceof SegmentImpl)) {
+                        continue;
+                    }
+                    Path segmentPath = ((SegmentImpl) segment).getPath();
+                    DatabaseSnapshot.link(segmentPath, snapshotTablePath);
+                    DatabaseSnapshot.linkIfExists(DatabaseHintFile.hintPath(segmentPath), snapshotTablePath);
+                    DatabaseSnapshot.linkIfExists(DatabaseBloomFilter.bloomPath(segmentPath), snapshotTablePath);
+                }
             }
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to snapshot table %s", tableName), e);
+        }
+    }
+
+    /**
+     * Дописывает запись (или удаление, если значение {@code null}) в текущий сегмент, при необходимости создавая новый.
+     * Запись и обновление каталога ключей происходят под блокировкой таблицы, а подтверждение на диске - уже без нее,
+     * чтобы параллельные записи успели объединиться в один fsync.
+     * Большое значение сначала пишется в blob-файл (без блокировки таблицы), а в сегмент - только ссылка на него.
+     */
+    private void appendRecord(byte[] objectKey, byte[] objectValue) throws IOException, DatabaseException {
+        BlobReferenceDatabaseRecord reference = null;
+        int blobThreshold = config.getBlobThreshold();
+        if (objectValue != null && blobThreshold > 0 && objectValue.length >= blobThreshold) {
+            reference = blobStore.write(objectKey, objectValue);
+            // значение должно подтвердиться раньше ссылки на него
+            blobStore.flush();
+        }
+
+        Segment segment;
+        try {
+            synchronized (this) {
+                segment = appendToCurrentSegment(objectKey, objectValue, reference);
+            }
+        } catch (IOException | DatabaseException e) {
+            if (reference != null) {
+                // ссылку так и не записали, значение в blob-файле никому не нужно
+                blobStore.release(reference);
+            }
+            throw e;
+        }
+        segment.flush();
+    }
+
+    /**
+     * Дописывает пачку записей (удаление - если значение {@code null}) так же, как {@link #appendRecord}, но
+     * все записи ложатся в сегменты под одной блокировкой таблицы, а на диске по отдельности не подтверждаются:
+     * вызывающий сам сбрасывает пачку целиком через {@link #sync()}. Большие значения пишутся в blob-файлы
+     * заранее, без блокировки таблицы. Удаление ключа, которого в таблице нет, не дописывается
+     *
+     * @param entries ключ - байты ключа, обернутые в {@link ByteBuffer}, значение - записываемое значение
+     * @throws IOException если записи не удалось дописать: часть пачки могла уже попасть в таблицу
+     */
+    void appendAll(Map<ByteBuffer, byte[]> entries) throws IOException, DatabaseException {
+        List<BlobReferenceDatabaseRecord> references = new ArrayList<>(entries.size());
+        int blobThreshold = config.getBlobThreshold();
+        int appended = 0;
+        try {
+            for (var entry : entries.entrySet()) {
+                byte[] value = entry.getValue();
+                references.add(value != null && blobThreshold > 0 && value.length >= blobThreshold
+                        ? blobStore.write(entry.getKey().array(), value)
+                        : null);
+            }
+            // значения должны подтвердиться раньше ссылок на них - одним fsync на всю пачку
+            blobStore.flush();
+
+            synchronized (this) {
+                for (var entry : entries.entrySet()) {
+                    byte[] key = entry.getKey().array();
+                    if (entry.getValue() != null || keyDirectory.lookup(key, keyVerifier).isPresent()) {
+                        appendToCurrentSegment(key, entry.getValue(), references.get(appended));
+                    }
+                    appended++;
+                }
+            }
+        } catch (IOException | DatabaseException e) {
+            // ссылки из недописанной части пачки так и не записали
+            for (var reference : references.subList(appended, references.size())) {
+                if (reference != null) {
+                    blobStore.release(reference);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Дописывает запись в текущий сегмент и публикует ее место в каталоге ключей. Вызывается под блокировкой таблицы
+     *
+     * @param prepared готовая запись (ссылка на blob или значение со сроком), {@code null} - если записываются
+     *                 просто ключ и значение
+     * @return сегмент, в который легла запись
+     */
+    private Segment appendToCurrentSegment(byte[] objectKey, byte[] objectValue, WritableDatabaseRecord prepared)
+            throws IOException, DatabaseException {
+        Optional<RecordLocation> location = currentSegment == null
+                ? Optional.empty()
+                : writeToCurrentSegment(objectKey, objectValue, prepared);
+        if (location.isEmpty()) {
+            if (currentSegment != null) {
+                TableCompactor.compressLater(this, currentSegment);
+            }
+            currentSegment = SegmentImpl.create(SegmentImpl.createSegmentName(tableName, nextSegmentSequence++),
+                    path, config);
+            addSegment(currentSegment);
+            location = writeToCurrentSegment(objectKey, objectValue, prepared);
+        }
+        Segment segment = currentSegment;
+        Optional<RecordLocation> previous = keyDirectory.update(objectKey, location.orElseThrow(), keyVerifier);
+        moveLiveRecord(previous.map(p -> segmentById(p.getSegmentId())).orElse(null), segment);
+        if (orderedIndex != null) {
+            if (objectValue == null) {
+                orderedIndex.remove(objectKey);
+            } else {
+                orderedIndex.add(objectKey);
+            }
+        }
+        if (prepared instanceof ExpiringDatabaseRecord) {
+            expirations.add(objectKey, ((ExpiringDatabaseRecord) prepared).getExpiresAtMillis());
+        }
+        trackBlobReference(objectKey,
+                prepared instanceof BlobReferenceDatabaseRecord ? (BlobReferenceDatabaseRecord) prepared : null);
+        return segment;
+    }
+
+    /**
+     * Запоминает, что последняя запись ключа - ссылка на blob (или уже нет, если {@code null}), и отпускает
+     * значение, на которое ссылалась прежняя запись. Вызывается под блокировкой таблицы
+     */
+    private void trackBlobReference(byte[] objectKey, BlobReferenceDatabaseRecord reference) {
+        BlobReferenceDatabaseRecord replaced = reference == null
+                ? blobReferences.remove(ByteBuffer.wrap(objectKey))
+                : blobReferences.put(ByteBuffer.wrap(objectKey), reference);
+        if (replaced != null) {
+            blobStore.release(replaced);
+        }
+    }
+
+    /**
+     * Учитывает ссылку на blob из сегмента, записанного до перезапуска, если каталог ключей указывает на нее
+     *
+     * @param location место записи-ссылки
+     */
+    synchronized void retainBlobReference(BlobReferenceDatabaseRecord reference, RecordLocation location) {
+        if (keyDirectory.pointsTo(reference.getKey(), location)
+                && blobReferences.putIfAbsent(ByteBuffer.wrap(reference.getKey()), reference) == null) {
+            blobStore.retain(reference);
+        }
+    }
+
+    /**
+     * @return ссылки из последних записей ключей, значения которых лежат в этом blob-файле
+     */
+    synchronized List<BlobReferenceDatabaseRecord> blobReferencesIn(long blobFile) {
+        List<BlobReferenceDatabaseRecord> result = new ArrayList<>();
+        for (var reference : blobReferences.values()) {
+            if (reference.getBlobFile() == blobFile) {
+                result.add(reference);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Дописывает в текущий сегмент ссылку на копию значения, если ключ с тех пор не перезаписали.
+     * Проверка и запись идут под блокировкой таблицы, поэтому новая ссылка не перекроет более новую запись ключа
+     *
+     * @param from ссылка из {@link #blobReferencesIn(long)}
+     * @param to   ссылка на копию значения в текущем blob-файле
+     * @return сегмент, в который легла ссылка, {@code null} - если ключ уже перезаписали
+     */
+    synchronized Segment relocateBlobReference(BlobReferenceDatabaseRecord from, BlobReferenceDatabaseRecord to)
+            throws IOException, DatabaseException {
+        if (blobReferences.get(ByteBuffer.wrap(from.getKey())) != from) {
+            blobStore.release(to);
+            return null;
+        }
+        return appendToCurrentSegment(from.getKey(), to.getValue(), to);
+    }
+
+    /**
+     * Убирает ключ, если его последняя запись - запись с истекшим сроком (см {@link #forgetRecord}). Удаление не
+     * дописывается: из каталога ключей ключ уходит, только если ни в одном более старом сегменте его нет,
+     * а иначе запись со сроком остается в каталоге и перекрывает старые записи, пока ее не выбросит сжатие
+     *
+     * @throws IOException если запись не удалось прочитать
+     */
+    void expireKey(byte[] objectKey) throws IOException {
+        Optional<RecordLocation> location = keyDirectory.lookup(objectKey, keyVerifier);
+        if (location.isEmpty()) {
+            return;
+        }
+
+        SegmentImpl segment = segmentAt(location.get());
+        Optional<DatabaseRecord> record = segment.readRecord(location.get().getOffset(), location.get().getRecordSize());
+        if (record.isEmpty() || !Arrays.equals(objectKey, record.get().getKey())
+                || !ExpiringDatabaseRecord.isExpired(record.get(), System.currentTimeMillis())) {
+            return;
+        }
+        forgetRecord(objectKey, location.get(),
+                !TableCompactor.shadowsOlderSegment(objectKey, segment, segments, List.of()));
+    }
+
+    /**
+     * Убирает ключ, последняя запись которого больше не нужна (истек ее срок или удаляется ее сегмент),
+     * из упорядоченного индекса, а если {@code fromDirectory} - то и из каталога ключей.
+     * Ничего не делает, если ключ уже перезаписали
+     *
+     * @param location место ненужной записи
+     * @return {@code true} - если каталог ключей еще указывал на эту запись
+     */
+    synchronized boolean forgetRecord(byte[] objectKey, RecordLocation location, boolean fromDirectory) {
+        if (!keyDirectory.pointsTo(objectKey, location)) {
+            return false;
+        }
+        if (orderedIndex != null) {
+            orderedIndex.remove(objectKey);
+        }
+        if (fromDirectory && keyDirectory.remove(objectKey, location)) {
+            addLiveRecords(segmentById(location.getSegmentId()), -1);
+            trackBlobReference(objectKey, null);
+        }
+        return true;
+    }
+
+    /**
+     * Сбрасывает на диск все, что уже записано в таблицу, независимо от политики fsync. Закрытые сегменты
+     * и blob-файлы сбрасываются на диск при закрытии (если политика не {@link com.itmo.java.basics.config.FsyncPolicy#NONE}),
+     * поэтому достаточно сбросить текущие
+     */
+    void sync() throws IOException {
+        blobStore.sync();
+        Segment segment;
+        synchronized (this) {
+            segment = currentSegment;
+        }
+        if (segment instanceof SegmentImpl) {
+            ((SegmentImpl) segment).sync();
+        }
+    }
+
+    /**
+     * Оборачивает таблицу кэшем, а если для нее включен буфер записи - еще и буфером
+     * (см {@link DatabaseConfig#isWriteBufferEnabled(String, String)}). Журналы буфера, оставшиеся
+     * с прошлого запуска, переносятся в таблицу в любом случае. Таблица, разбитая по времени, кэшем
+     * не оборачивается: кэш не узнал бы, что ее сегменты удалены по сроку хранения
+     */
+    private Table withBuffers() throws DatabaseException {
+        try {
+            Table buffered = this;
+            if (writeBufferEnabled) {
+                buffered = WriteBufferedTable.open(this, path, config);
+            } else {
+                WriteBufferedTable.replayLogs(this, path, config);
+            }
+            return retentionMillis > 0 ? buffered : new CachingTable(buffered);
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to replay write buffer of table %s",
+                    tableName), e);
+        }
+    }
+
+    private Optional<RecordLocation> writeToCurrentSegment(byte[] objectKey, byte[] objectValue,
+                                                           WritableDatabaseRecord prepared) throws IOException {
+        if (prepared == null) {
+            return ((SegmentImpl) currentSegment).append(objectKey, objectValue);
+        }
+        return ((SegmentImpl) currentSegment).append(prepared);
+    }
+
+    private SegmentImpl segmentAt(RecordLocation location) throws IOException {
+        Segment segment = segmentById(location.getSegmentId());
+        if (!(segment instanceof SegmentImpl)) {
+            throw new IOException(String.format("No segment with id %d in table %s", location.getSegmentId(), tableName));
+        }
+        return (SegmentImpl) segment;
+    }
+
+    private boolean hasKey(byte[] objectKey, RecordLocation location) throws IOException {
+        Segment segment = segmentById(location.getSegmentId());
+        return segment instanceof SegmentImpl && ((SegmentImpl) segment).hasKeyAt(objectKey, location);
+    }
+
+    private Segment segmentById(int segmentId) {
+        Segment[] current = segmentsById;
+        return segmentId >= 0 && segmentId < current.length ? current[segmentId] : null;
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    KeyDirectory getKeyDirectory() {
+        return keyDirectory;
+    }
+
+    DatabaseConfig getConfig() {
+        return config;
+    }
+
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * @return сроки жизни ключей, {@code null} - если сроков у таблицы нет
+     */
+    ExpirationWheel getExpirations() {
+        return expirations;
+    }
+
+    SegmentRollingPolicy getRollingPolicy() {
+        return rollingPolicy;
+    }
+
+    /**
+     * @return срок хранения таблицы, разбитой по времени, 0 - если записи хранятся без срока
+     */
+    long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    DatabaseBlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    /**
+     * Добавляет сегмент в список, сохраняя порядок имен (он же порядок применения при инициализации)
+     */
+    synchronized void addSegment(Segment segment) {
+        replaceSegments(List.of(), segment);
+    }
+
+    /**
+     * Заменяет сжатые сегменты на результат сжатия. Номера удаленных сегментов освобождаются.
+     *
+     * @param removed сегменты, которые больше не нужны
+     * @param added   новый сегмент или {@code null}, если после сжатия ничего не осталось
+     */
+    synchronized void replaceSegments(List<? extends Segment> removed, Segment added) {
+        List<Segment> updated = new ArrayList<>(segments);
+        updated.removeAll(removed);
+        for (var segment : removed) {
+            unregisterSegment(segment);
+        }
+        if (added != null) {
+            if (added instanceof SegmentImpl) {
+                registerSegment((SegmentImpl) added);
+            }
+            updated.add(added);
+            updated.sort(Comparator.comparing(Segment::getName, SegmentImpl.NAME_ORDER));
+        }
+        segments = List.copyOf(updated);
+    }
+
+    /**
+     * Закрывает текущий сегмент, если он старше предела по возрасту (см {@link SegmentRollingPolicy#getMaxAgeMillis()}).
+     * Следующая запись создаст новый сегмент
+     */
+    synchronized void rollExpiredSegment() throws IOException {
+        if (currentSegment instanceof SegmentImpl && ((SegmentImpl) currentSegment).sealIfExpired()) {
+            TableCompactor.compressLater(this, currentSegment);
+        }
+    }
+
+    private void attachSegment(SegmentImpl segment) {
+        segment.setTableStorage(blockCache, blobStore, readerPool);
+        segment.setRollingPolicy(rollingPolicy);
+    }
+
+    /**
+     * Выдает сегменту номер в каталоге ключей, если у него еще нет номера. Компактор регистрирует новый сегмент
+     * до того, как каталог начнет на него указывать, а в список сегментов добавляет уже после сжатия
+     */
+    synchronized void registerSegment(SegmentImpl segment) {
+        attachSegment(segment);
+        if (segment.getId() != KeyDirectory.NO_SEGMENT) {
+            return;
+        }
+
+        Integer free = freeSegmentIds.poll();
+        int id = free == null ? segmentsById.length : free;
+        Segment[] updated = Arrays.copyOf(segmentsById, Math.max(segmentsById.length, id + 1));
+        updated[id] = segment;
+        segment.setId(id);
+        segmentsById = updated;
+    }
+
+    private void unregisterSegment(Segment segment) {
+        if (!(segment instanceof SegmentImpl)) {
+            return;
+        }
+
+        int id = ((SegmentImpl) segment).getId();
+        if (id != KeyDirectory.NO_SEGMENT && segmentById(id) == segment) {
+            Segment[] updated = segmentsById.clone();
+            updated[id] = null;
+            segmentsById = updated;
+            freeSegmentIds.push(id);
+        }
+    }
+
+    /**
+     * Учитывает, что актуальная запись по ключу переехала из одного сегмента в другой
+     */
+    static void moveLiveRecord(Segment from, Segment to) {
+        if (from == to) {
+            return;
+        }
+        addLiveRecords(from, -1);
+        addLiveRecords(to, 1);
+    }
+
+    private static void addLiveRecords(Segment segment, int delta) {
+        if (segment instanceof SegmentImpl) {
+            ((SegmentImpl) segment).addLiveRecords(delta);
+        }
+    }
+
+    /**
+     * Чтение значения из сегмента по месту записи из каталога ключей
+     */
+    @FunctionalInterface
+    private interface LocationReader<T> {
+        Optional<T> read(SegmentImpl segment, RecordLocation location) throws IOException;
+    }
+
+    /**
+     * Место в таблице при обходе: сегмент и сдвиг записи в нем
+     */
+    private static final class ScanPosition {
+        private final String segmentName;
+        private final long offset;
+
+        private ScanPosition(String segmentName, long offset) {
+            this.segmentName = segmentName;
+            this.offset = offset;
         }
     }
 }
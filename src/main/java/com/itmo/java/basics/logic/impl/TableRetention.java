@@ -0,0 +1,100 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.index.RecordLocation;
+import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.io.DatabaseBloomFilter;
+import com.itmo.java.basics.logic.io.DatabaseHintFile;
+import com.itmo.java.basics.logic.io.DatabaseSegmentScanner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Удаление старых сегментов таблицы, разбитой по времени.
+ * <p>
+ * У такой таблицы есть срок хранения ({@link DatabaseConfig#getRetentionMillis(String, String)}), а сегменты
+ * обычно закрываются по окнам времени ({@link com.itmo.java.basics.config.SegmentRollingPolicy#getWindowMillis()}).
+ * Read-only сегмент, в который не писали дольше срока хранения (по времени изменения файла, его сохраняют
+ * и сжатие по блокам, и копирование в снимок), удаляется целиком:
+ * его ключи убираются из каталога ключей без записи удалений, а файл стирается. Удаляются только самые старые
+ * сегменты подряд - тогда ни одна запись удаленного сегмента не перекрывает записи оставшихся, и после
+ * перезапуска ничего не "воскресает". Текущий сегмент закрывается в потоке компакции, когда кончилось его окно,
+ * так что в таблицу, в которую давно не пишут, данные тоже не задерживаются дольше одного окна.
+ * Работает в потоке компакции и никогда не пересекается с ней.
+ */
+class TableRetention {
+    /**
+     * Как часто проверять сегменты, если окно и срок хранения длиннее
+     */
+    private static final long MAX_CHECK_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final TableImpl table;
+    private final long retentionMillis;
+
+    private TableRetention(TableImpl table) {
+        this.table = table;
+        this.retentionMillis = table.getRetentionMillis();
+    }
+
+    /**
+     * Запускает периодическое удаление старых сегментов, если у таблицы есть срок хранения
+     */
+    static void schedule(TableImpl table) {
+        long retentionMillis = table.getRetentionMillis();
+        if (retentionMillis <= 0) {
+            return;
+        }
+
+        long window = table.getRollingPolicy().getWindowMillis();
+        long interval = Math.min(window > 0 ? Math.min(window, retentionMillis) : retentionMillis,
+                MAX_CHECK_INTERVAL_MILLIS);
+        TableRetention retention = new TableRetention(table);
+        TableCompactor.scheduleBackground(interval, retention::dropQuietly);
+    }
+
+    private void dropQuietly() {
+        try {
+            dropExpiredSegments();
+        } catch (IOException e) {
+            // удалены только самые старые сегменты, следующий запуск продолжит
+        }
+    }
+
+    /**
+     * Удаляет самые старые read-only сегменты, в которые не писали дольше срока хранения
+     *
+     * @return сколько сегментов удалено
+     * @throws IOException если сегмент не удалось прочитать или удалить
+     */
+    int dropExpiredSegments() throws IOException {
+        table.rollExpiredSegment();
+        long deadline = System.currentTimeMillis() - retentionMillis;
+        int dropped = 0;
+        for (Segment segment : table.getSegments()) {
+            if (!(segment instanceof SegmentImpl) || !segment.isReadOnly()
+                    || Files.getLastModifiedTime(((SegmentImpl) segment).getPath()).toMillis() > deadline) {
+                break;
+            }
+            drop((SegmentImpl) segment);
+            dropped++;
+        }
+        return dropped;
+    }
+
+    /**
+     * Убирает из таблицы ключи, последние записи которых лежат в сегменте, и удаляет сегмент
+     */
+    private void drop(SegmentImpl segment) throws IOException {
+        DatabaseSegmentScanner.scan(segment.getPath(), segment.getFormat(), (key, offset, removed) ->
+                table.forgetRecord(key, new RecordLocation(segment.getId(), offset, 0), true));
+        table.replaceSegments(List.of(segment), null);
+
+        segment.close();
+        DatabaseHintFile.delete(segment.getPath());
+        DatabaseBloomFilter.delete(segment.getPath());
+        Files.deleteIfExists(segment.getPath());
+    }
+}
@@ -0,0 +1,505 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.FsyncPolicy;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.logic.StoredValue;
+import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.io.DatabaseAppendChannel;
+import com.itmo.java.basics.logic.io.DatabaseChannelReader;
+import com.itmo.java.basics.logic.io.DatabaseSegmentScanner;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Буфер записи таблицы {@link TableImpl} (см {@link DatabaseConfig#isWriteBufferEnabled(String, String)}).
+ * <p>
+ * Запись попадает в журнал writebuffer_N.log (формат {@link SegmentFormat#CHECKSUMMED}) и в буфер в памяти,
+ * и на этом команда завершается: сегменты, каталог ключей, закрытие заполненных сегментов с их hint-файлами
+ * и фильтрами Блума остаются фоновому потоку. Он раз в {@link DatabaseConfig#getWriteBufferFlushIntervalMillis()}
+ * или когда буфер заполнился наполовину подменяет буфер пустым и переносит старый в таблицу одной пачкой,
+ * после чего удаляет его журнал. Чтение смотрит в текущий буфер, затем в переносимый, затем в таблицу.
+ * <p>
+ * Если в буферах набралось {@link DatabaseConfig#getWriteBufferBytes()} байт, то есть перенос не успевает
+ * за записью, запись ждет, пока он освободит место. При открытии таблицы оставшиеся журналы переносятся в нее сразу.
+ * <p>
+ * Поток переноса один на все таблицы, как и поток fsync.
+ */
+public class WriteBufferedTable implements Table {
+    private static final Pattern LOG_FILE_NAME = Pattern.compile("writebuffer_(\\d+)\\.log");
+    /**
+     * Значение удаленного ключа в буфере, сравнивается по ссылке
+     */
+    private static final byte[] TOMBSTONE = new byte[0];
+    private static final ScheduledExecutorService FLUSH_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "kvs-write-buffer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TableImpl table;
+    private final Path path;
+    private final DatabaseConfig config;
+    private final long maxBytes;
+    /**
+     * Сюда идут новые записи. Заменяется только под монитором таблицы
+     */
+    private volatile Buffer active;
+    /**
+     * Буфер, который сейчас переносится в таблицу, {@code null} - если переноса нет
+     */
+    private volatile Buffer flushing;
+    private long nextSequence;
+    private boolean flushScheduled = false;
+    /**
+     * Почему не удался последний перенос, {@code null} - если он удался
+     */
+    private IOException flushFailure;
+
+    private WriteBufferedTable(TableImpl table, Path path, DatabaseConfig config, long nextSequence) {
+        this.table = table;
+        this.path = path;
+        this.config = config;
+        this.maxBytes = config.getWriteBufferBytes();
+        this.nextSequence = nextSequence + 1;
+        this.active = new Buffer(nextSequence);
+    }
+
+    /**
+     * Переносит в таблицу журналы, оставшиеся с прошлого запуска, и запускает фоновый перенос буфера
+     *
+     * @param table  таблица, в которую переносятся записи
+     * @param path   путь до папки таблицы
+     * @param config конфигурация
+     * @throws IOException если журналы не удалось прочитать или перенести
+     */
+    static WriteBufferedTable open(TableImpl table, Path path, DatabaseConfig config) throws IOException {
+        WriteBufferedTable buffered = new WriteBufferedTable(table, path, config, replayLogs(table, path, config));
+        long interval = config.getWriteBufferFlushIntervalMillis();
+        FLUSH_SCHEDULER.scheduleWithFixedDelay(buffered::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        return buffered;
+    }
+
+    /**
+     * Переносит в таблицу журналы, оставшиеся с прошлого запуска, и удаляет их. Вызывается при открытии
+     * любой таблицы {@link TableImpl}: буфер могли выключить, пока в журналах оставались записи
+     *
+     * @param table  таблица, в которую переносятся записи
+     * @param path   путь до папки таблицы
+     * @param config конфигурация
+     * @return номер, с которого можно называть новые журналы
+     * @throws IOException если журналы не удалось прочитать или перенести
+     */
+    static long replayLogs(TableImpl table, Path path, DatabaseConfig config) throws IOException {
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+            for (var entry : entries) {
+                Matcher logName = LOG_FILE_NAME.matcher(entry.getFileName().toString());
+                if (logName.matches()) {
+                    logs.put(Long.parseLong(logName.group(1)), entry);
+                }
+            }
+        }
+        if (logs.isEmpty()) {
+            return 0;
+        }
+
+        for (var log : logs.values()) {
+            replay(table, log);
+        }
+        syncTable(table, config);
+        for (var log : logs.values()) {
+            Files.delete(log);
+        }
+        return logs.lastKey() + 1;
+    }
+
+    /**
+     * @return {@code true} - если файл с таким именем является журналом буфера записи
+     */
+    public static boolean isLogFile(String fileName) {
+        return LOG_FILE_NAME.matcher(fileName).matches();
+    }
+
+    @Override
+    public String getName() {
+        return table.getName();
+    }
+
+    @Override
+    public void write(byte[] objectKey, byte[] objectValue) throws DatabaseException {
+        try {
+            appendRecord(objectKey, objectValue);
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to write pair key-value %s-%s",
+                    new String(objectKey, StandardCharsets.UTF_8), new String(objectValue)), e);
+        }
+    }
+
+    /**
+     * Значение со сроком идет в таблицу мимо буфера: в журнале буфера нет места для срока. Перед этим ждет,
+     * пока уже записанное попадет в таблицу, иначе перенос старой записи затер бы срок
+     */
+    @Override
+    public void write(byte[] objectKey, byte[] objectValue, long expiresAtMillis) throws DatabaseException {
+        try {
+            awaitFlushed();
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to write pair key-value %s-%s",
+                    new String(objectKey, StandardCharsets.UTF_8), new String(objectValue)), e);
+        }
+
+        table.write(objectKey, objectValue, expiresAtMillis);
+    }
+
+    /**
+     * Как и запись со сроком, идет мимо буфера после переноса уже записанного
+     */
+    @Override
+    public Optional<byte[]> expire(byte[] objectKey, long expiresAtMillis) throws DatabaseException {
+        try {
+            awaitFlushed();
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to expire a value with key %s",
+                    new String(objectKey, StandardCharsets.UTF_8)), e);
+        }
+
+        return table.expire(objectKey, expiresAtMillis);
+    }
+
+    @Override
+    public Optional<byte[]> read(byte[] objectKey) throws DatabaseException {
+        byte[] buffered = buffered(objectKey);
+        if (buffered != null) {
+            return buffered == TOMBSTONE ? Optional.empty() : Optional.of(buffered);
+        }
+        return table.read(objectKey);
+    }
+
+    @Override
+    public Optional<StoredValue> readStored(byte[] objectKey, int regionThreshold) throws DatabaseException {
+        byte[] buffered = buffered(objectKey);
+        if (buffered != null) {
+            return buffered == TOMBSTONE ? Optional.empty() : Optional.of(StoredValue.of(buffered));
+        }
+        return table.readStored(objectKey, regionThreshold);
+    }
+
+    /**
+     * Удаление всегда пишется в буфер: есть ли ключ в таблице, проверит уже перенос
+     */
+    @Override
+    public void delete(byte[] objectKey) throws DatabaseException {
+        try {
+            appendRecord(objectKey, null);
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to delete a value with key %s",
+                    new String(objectKey, StandardCharsets.UTF_8)), e);
+        }
+    }
+
+    /**
+     * Обход идет по таблице, а значения ключей, которые есть в буфере, берутся из буфера. Перед началом обхода
+     * ждет, пока уже записанное попадет в таблицу: иначе ключ, который пока есть только в буфере, обход бы пропустил
+     */
+    @Override
+    public String scan(String cursor, ScanConsumer consumer) throws DatabaseException {
+        if (SCAN_START.equals(cursor)) {
+            try {
+                awaitFlushed();
+            } catch (IOException e) {
+                throw new DatabaseException(String.format("IO exception when trying to scan table %s", getName()), e);
+            }
+        }
+
+        return table.scan(cursor, withBuffered(consumer));
+    }
+
+    /**
+     * Как и обход, сначала ждет, пока уже записанное попадет в таблицу
+     */
+    @Override
+    public void range(byte[] fromKey, byte[] toKey, ScanConsumer consumer) throws DatabaseException {
+        try {
+            awaitFlushed();
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to read a range of table %s",
+                    getName()), e);
+        }
+
+        table.range(fromKey, toKey, withBuffered(consumer));
+    }
+
+    /**
+     * Подменяет значения ключей, которые есть в буфере, и пропускает удаленные в нем
+     */
+    private ScanConsumer withBuffered(ScanConsumer consumer) {
+        return (key, value) -> {
+            byte[] buffered = buffered(key);
+            if (buffered == TOMBSTONE) {
+                return true;
+            }
+            return consumer.accept(key, buffered == null ? value : buffered);
+        };
+    }
+
+    @Override
+    public Map<String, Long> getStats() {
+        // в таком порядке буфер, который успели подменить между чтениями, не посчитается дважды
+        Buffer inFlush = flushing;
+        Buffer current = active;
+        if (inFlush == current) {
+            inFlush = null;
+        }
+        Map<String, Long> stats = new LinkedHashMap<>(table.getStats());
+        stats.put("writeBufferKeys", (long) current.entries.size() + (inFlush == null ? 0 : inFlush.entries.size()));
+        stats.put("writeBufferBytes", current.bytes + (inFlush == null ? 0 : inFlush.bytes));
+        return stats;
+    }
+
+    /**
+     * Сначала ждет, пока уже записанное попадет в таблицу: журналы буфера дописываются и в снимок не попадают
+     */
+    @Override
+    public void snapshot(Path snapshotTablePath) throws DatabaseException {
+        try {
+            awaitFlushed();
+        } catch (IOException e) {
+            throw new DatabaseException(String.format("IO exception when trying to snapshot table %s",
+                    table.getName()), e);
+        }
+
+        table.snapshot(snapshotTablePath);
+    }
+
+    /**
+     * Переносит текущий буфер в таблицу, если в нем что-то есть. Если прошлый перенос не удался, сначала
+     * повторяет его. Выполняется в потоке переноса
+     *
+     * @throws IOException если записи не удалось перенести: они остаются в буфере до следующей попытки
+     */
+    void flush() throws IOException {
+        Buffer buffer;
+        synchronized (this) {
+            flushScheduled = false;
+            if (flushing == null) {
+                if (active.entries.isEmpty()) {
+                    return;
+                }
+                flushing = active;
+                active = new Buffer(nextSequence++);
+            }
+            buffer = flushing;
+        }
+
+        try {
+            if (buffer.log != null) {
+                // новые записи идут уже в другой журнал, а при закрытии этот сбросится на диск
+                buffer.log.close();
+            }
+            apply(table, buffer.entries);
+            syncTable(table, config);
+            Files.deleteIfExists(logPath(buffer.sequence));
+        } catch (IOException | DatabaseException e) {
+            IOException failure = e instanceof IOException ? (IOException) e : new IOException(e);
+            synchronized (this) {
+                flushFailure = failure;
+                notifyAll();
+            }
+            throw failure;
+        }
+
+        synchronized (this) {
+            flushing = null;
+            flushFailure = null;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Дописывает запись (или удаление, если значение {@code null}) в журнал и буфер. Если буферы заполнены,
+     * сначала ждет, пока перенос освободит место. Подтверждение на диске - уже без монитора таблицы,
+     * чтобы параллельные записи успели объединиться в один fsync
+     */
+    private void appendRecord(byte[] objectKey, byte[] objectValue) throws IOException {
+        DatabaseAppendChannel log;
+        synchronized (this) {
+            awaitSpace();
+            Buffer buffer = active;
+            if (buffer.log == null) {
+                buffer.log = openLog(buffer.sequence);
+            }
+            long recordSize = buffer.log.write(objectKey, objectValue);
+            buffer.entries.put(ByteBuffer.wrap(objectKey), objectValue == null ? TOMBSTONE : objectValue);
+            buffer.bytes += recordSize;
+            log = buffer.log;
+            if (buffer.bytes >= maxBytes / 2) {
+                scheduleFlush();
+            }
+        }
+        // если журнал уже закрыт переносом, запись подтверждена при его закрытии
+        log.flush();
+    }
+
+    /**
+     * Ждет, пока в буферах не станет меньше {@link DatabaseConfig#getWriteBufferBytes()} байт.
+     * Одна запись больше предела проходит в пустой буфер. Вызывается под монитором таблицы
+     */
+    private void awaitSpace() throws IOException {
+        while (active.bytes > 0 && active.bytes + (flushing == null ? 0 : flushing.bytes) >= maxBytes) {
+            if (flushFailure != null) {
+                throw new IOException("Write buffer is full and cannot be flushed", flushFailure);
+            }
+            scheduleFlush();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for write buffer flush");
+            }
+        }
+    }
+
+    /**
+     * Ждет, пока записи, которые уже есть в буферах, не окажутся в таблице
+     */
+    private synchronized void awaitFlushed() throws IOException {
+        Buffer target = active.entries.isEmpty() ? flushing : active;
+        while (target != null && (target == active || target == flushing)) {
+            if (flushFailure != null) {
+                throw new IOException("Write buffer cannot be flushed", flushFailure);
+            }
+            scheduleFlush();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for write buffer flush");
+            }
+        }
+    }
+
+    /**
+     * Вызывается под монитором таблицы
+     */
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            FLUSH_SCHEDULER.execute(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // записи остаются в буфере, следующий запуск попробует еще раз
+        }
+    }
+
+    /**
+     * @return значение из буфера, {@link #TOMBSTONE} - если ключ удален, {@code null} - если ключа в буферах нет
+     */
+    private byte[] buffered(byte[] objectKey) {
+        ByteBuffer key = ByteBuffer.wrap(objectKey);
+        byte[] value = active.entries.get(key);
+        if (value != null) {
+            return value;
+        }
+        Buffer inFlush = flushing;
+        return inFlush == null ? null : inFlush.entries.get(key);
+    }
+
+    private DatabaseAppendChannel openLog(long sequence) throws IOException {
+        Path logPath = logPath(sequence);
+        Files.write(logPath, SegmentFormat.CHECKSUMMED.header(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        return new DatabaseAppendChannel(logPath, SegmentFormat.CHECKSUMMED.getHeaderSize(), config);
+    }
+
+    private Path logPath(long sequence) {
+        return path.resolve("writebuffer_" + sequence + ".log");
+    }
+
+    /**
+     * Переносит журнал в таблицу. Оборванный при падении хвост журнала отбрасывается.
+     * Записи сначала собираются в памяти (журнал не больше одного буфера): перенос может закрыть сегмент,
+     * а закрытие само проходит по сегменту тем же {@link DatabaseSegmentScanner} этого потока
+     */
+    private static void replay(TableImpl table, Path logPath) throws IOException {
+        SegmentFormat format = SegmentFormat.detect(logPath);
+        Map<ByteBuffer, byte[]> entries = new LinkedHashMap<>();
+        try (DatabaseChannelReader reader = new DatabaseChannelReader(
+                FileChannel.open(logPath, StandardOpenOption.READ), format)) {
+            DatabaseSegmentScanner.scan(logPath, format, (key, offset, removed) -> {
+                Optional<DatabaseRecord> record = reader.readDbUnit(offset);
+                if (record.isPresent()) {
+                    entries.put(ByteBuffer.wrap(key),
+                            record.get().isValuePresented() ? record.get().getValue() : TOMBSTONE);
+                }
+            });
+        }
+
+        try {
+            apply(table, entries);
+        } catch (DatabaseException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Переносит записи в таблицу одной пачкой (см {@link TableImpl#appendAll}): на диск они сбрасываются
+     * вместе, в {@link #syncTable}
+     */
+    private static void apply(TableImpl table, Map<ByteBuffer, byte[]> entries) throws IOException, DatabaseException {
+        Map<ByteBuffer, byte[]> batch = new LinkedHashMap<>(entries.size() * 2);
+        for (var entry : entries.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue() == TOMBSTONE ? null : entry.getValue());
+        }
+        table.appendAll(batch);
+    }
+
+    /**
+     * Журнал удаляется только после того, как перенесенные записи оказались на диске.
+     * При политике {@link FsyncPolicy#NONE} на диск не сбрасывается ничего
+     */
+    private static void syncTable(TableImpl table, DatabaseConfig config) throws IOException {
+        if (config.getFsyncPolicy() != FsyncPolicy.NONE) {
+            table.sync();
+        }
+    }
+
+    /**
+     * Записи буфера: ключ - байты ключа, обернутые в {@link ByteBuffer}, значение - последнее записанное.
+     * Размер и журнал меняются только под монитором таблицы
+     */
+    private static final class Buffer {
+        private final long sequence;
+        private final Map<ByteBuffer, byte[]> entries = new ConcurrentHashMap<>();
+        private volatile long bytes;
+        private DatabaseAppendChannel log;
+
+        private Buffer(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
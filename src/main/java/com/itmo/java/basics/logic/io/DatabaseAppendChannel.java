@@ -0,0 +1,207 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.FsyncPolicy;
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Долгоживущий канал для дозаписи в файл сегмента (формат {@link SegmentFormat#CHECKSUMMED}).
+ * <p>
+ * Каждая запись кодируется целиком вместе с контрольной суммой (см {@link DatabaseRecordEncoder})
+ * и уходит в файл одним вызовом write, так что при падении в файле может остаться только недописанный хвост, который отбросится при инициализации.
+ * Сброс на диск выполняется согласно {@link FsyncPolicy} и объединяется между потоками (group commit):
+ * один fsync подтверждает все записи, которые успели попасть в файл до его начала,
+ * а потоки, пришедшие во время fsync, дожидаются следующего и тоже делят его на всех.
+ */
+public class DatabaseAppendChannel implements Closeable {
+    private static final ScheduledExecutorService FSYNC_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "kvs-fsync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FileChannel channel;
+    private final FsyncPolicy policy;
+    private final long fsyncBytes;
+    private final ScheduledFuture<?> intervalSync;
+    /**
+     * Буфер кодировщика берется из общего пула и возвращается в него при закрытии канала
+     */
+    private final DatabaseRecordEncoder encoder = DatabaseRecordEncoder.create();
+
+    /**
+     * Сколько байт записано в файл. Меняется только под монитором канала
+     */
+    private volatile long writtenPosition;
+    private volatile boolean closed = false;
+
+    private final Object syncLock = new Object();
+    private long syncedPosition;
+    private boolean syncInProgress = false;
+
+    /**
+     * Открывает файл на дозапись.
+     *
+     * @param path   путь до файла сегмента
+     * @param size   текущий размер файла
+     * @param config конфигурация с политикой fsync
+     * @throws IOException если файл не удалось открыть
+     */
+    public DatabaseAppendChannel(Path path, long size, DatabaseConfig config) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.policy = config.getFsyncPolicy();
+        this.fsyncBytes = config.getFsyncBytes();
+        this.writtenPosition = size;
+        this.syncedPosition = size;
+
+        if (policy == FsyncPolicy.INTERVAL) {
+            long interval = config.getFsyncIntervalMillis();
+            intervalSync = FSYNC_SCHEDULER.scheduleWithFixedDelay(this::syncQuietly, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            intervalSync = null;
+        }
+    }
+
+    /**
+     * Дописывает запись в конец файла. На диск не сбрасывает, для этого есть {@link #flush()}.
+     *
+     * @param databaseRecord запись
+     * @return размер записи в файле (вместе с контрольной суммой)
+     * @throws IOException если запись не удалась
+     */
+    public synchronized long write(WritableDatabaseRecord databaseRecord) throws IOException {
+        checkOpen();
+        return written(encoder.encode(databaseRecord));
+    }
+
+    /**
+     * Дописывает запись по ключу (удаление, если значение {@code null}), не создавая объект записи.
+     * На диск не сбрасывает, для этого есть {@link #flush()}.
+     *
+     * @return размер записи в файле (вместе с контрольной суммой)
+     * @throws IOException если запись не удалась
+     */
+    public synchronized long write(byte[] key, byte[] value) throws IOException {
+        checkOpen();
+        return written(encoder.encode(key, value));
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private long written(int recordSize) throws IOException {
+        encoder.writeTo(channel);
+        writtenPosition += recordSize;
+        return recordSize;
+    }
+
+    /**
+     * Подтверждает записанное согласно политике: для {@link FsyncPolicy#ALWAYS} дожидается fsync всегда,
+     * для {@link FsyncPolicy#BYTES} - если несброшенных байт накопилось достаточно. Иначе ничего не делает.
+     *
+     * @throws IOException если fsync не удался
+     */
+    public void flush() throws IOException {
+        if (policy == FsyncPolicy.ALWAYS) {
+            sync();
+        } else if (policy == FsyncPolicy.BYTES && writtenPosition - syncedPosition() >= fsyncBytes) {
+            sync();
+        }
+    }
+
+    /**
+     * Дожидается, пока все, что было записано к моменту вызова, окажется на диске.
+     * Если fsync уже идет, ждет его окончания и, если нужно, выполняет следующий за всех ожидающих.
+     *
+     * @throws IOException если fsync не удался
+     */
+    public void sync() throws IOException {
+        long position = writtenPosition;
+        synchronized (syncLock) {
+            while (syncInProgress && syncedPosition < position) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for fsync");
+                }
+            }
+            if (syncedPosition >= position || closed) {
+                return;
+            }
+            syncInProgress = true;
+        }
+
+        long target = writtenPosition;
+        boolean synced = false;
+        try {
+            channel.force(false);
+            synced = true;
+        } catch (ClosedChannelException e) {
+            // канал закрыли параллельно, а при закрытии все уже было сброшено
+            if (!closed) {
+                throw e;
+            }
+        } finally {
+            synchronized (syncLock) {
+                if (synced) {
+                    syncedPosition = Math.max(syncedPosition, target);
+                }
+                syncInProgress = false;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает на диск все записанное (если политика не {@link FsyncPolicy#NONE}) и закрывает файл
+     */
+    @Override
+    public void close() throws IOException {
+        if (intervalSync != null) {
+            intervalSync.cancel(false);
+        }
+
+        try {
+            if (policy != FsyncPolicy.NONE && channel.isOpen()) {
+                sync();
+            }
+        } finally {
+            synchronized (this) {
+                closed = true;
+                channel.close();
+                encoder.close();
+            }
+        }
+    }
+
+    private long syncedPosition() {
+        synchronized (syncLock) {
+            return syncedPosition;
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            // следующий запуск попробует еще раз
+        }
+    }
+}
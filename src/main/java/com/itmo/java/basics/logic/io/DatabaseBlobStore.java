@@ -0,0 +1,310 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.logic.StoredValue;
+import com.itmo.java.basics.logic.impl.BlobReferenceDatabaseRecord;
+import com.itmo.java.basics.logic.impl.SetDatabaseRecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Blob-файлы таблицы: значения не меньше {@link DatabaseConfig#getBlobThreshold()} пишутся не в сегмент,
+ * а в отдельные файлы в папке {@link #BLOB_DIRECTORY} таблицы. В сегмент попадает только ссылка
+ * ({@link BlobReferenceDatabaseRecord}), поэтому большие значения не закрывают сегменты раньше времени,
+ * а компактор переносит ссылки, не копируя сами значения.
+ * <p>
+ * Blob-файл имеет формат сегмента {@link SegmentFormat#CHECKSUMMED}: значение лежит в нем записью ключ|значение
+ * с контрольной суммой, так что по ключу можно проверить, что ссылка указывает куда нужно.
+ * Дописывается только последний файл. После перезапуска всегда начинается новый файл,
+ * поэтому оборванный при падении хвост старого никогда не дописывается.
+ * <p>
+ * Для каждого файла считается, сколько байт значений в нем еще нужны: значение учитывается при записи,
+ * а перестает учитываться, когда таблица перезаписывает или удаляет ключ (см {@link #release}). Файлы,
+ * в которых нужных значений не осталось или осталось мало, удаляет таблица (см
+ * {@link com.itmo.java.basics.logic.impl.TableImpl}), перед этим переписав нужные значения в текущий файл.
+ */
+public class DatabaseBlobStore {
+    public static final String BLOB_DIRECTORY = "blobs";
+    private static final String BLOB_FILE_PREFIX = "blob_";
+
+    private final Path directory;
+    private final DatabaseConfig config;
+    private final Map<Long, DatabaseChannelReader> readers = new ConcurrentHashMap<>();
+    /**
+     * Сколько байт значений в каждом файле еще нужны таблице. Меняется под блокировкой хранилища
+     */
+    private final Map<Long, Long> liveBytes = new HashMap<>();
+
+    private long currentFile = -1;
+    private long currentSize;
+    private volatile DatabaseAppendChannel appendChannel;
+    /**
+     * Текущий файл попал в снимок: следующее значение начнет новый файл
+     */
+    private boolean sealed;
+
+    /**
+     * @param tablePath путь до папки таблицы
+     * @param config    конфигурация с размером blob-файла и политикой fsync
+     */
+    public DatabaseBlobStore(Path tablePath, DatabaseConfig config) {
+        this.directory = tablePath.resolve(BLOB_DIRECTORY);
+        this.config = config;
+    }
+
+    /**
+     * Дописывает значение в текущий blob-файл, при необходимости начиная новый. На диск не сбрасывает,
+     * см {@link #flush()}.
+     *
+     * @return запись-ссылка на значение для сегмента
+     * @throws IOException если значение не удалось записать
+     */
+    public synchronized BlobReferenceDatabaseRecord write(byte[] key, byte[] value) throws IOException {
+        if (appendChannel == null || sealed || currentSize >= config.getBlobFileSize()) {
+            startNewFile();
+        }
+
+        long offset = currentSize;
+        currentSize += appendChannel.write(new SetDatabaseRecord(key, value));
+        liveBytes.merge(currentFile, (long) value.length, Long::sum);
+        return new BlobReferenceDatabaseRecord(key, currentFile, offset, value.length);
+    }
+
+    /**
+     * Учитывает значение, записанное до перезапуска, на которое еще указывает таблица
+     */
+    public synchronized void retain(BlobReferenceDatabaseRecord reference) {
+        liveBytes.merge(reference.getBlobFile(), (long) reference.getLength(), Long::sum);
+    }
+
+    /**
+     * Перестает учитывать значение: таблица перезаписала или удалила ключ, и ссылка на значение больше не нужна
+     */
+    public synchronized void release(BlobReferenceDatabaseRecord reference) {
+        liveBytes.computeIfPresent(reference.getBlobFile(), (file, bytes) -> bytes - reference.getLength());
+    }
+
+    /**
+     * Возвращает закрытые blob-файлы, доля ненужных байт в которых не меньше {@code garbageRatio}:
+     * при 1 - только файлы, в которых нужных значений не осталось совсем
+     *
+     * @throws IOException если список файлов не удалось прочитать
+     */
+    public synchronized List<Long> garbageFiles(double garbageRatio) throws IOException {
+        List<Long> result = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return result;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, BLOB_FILE_PREFIX + "*")) {
+            for (var path : files) {
+                long file = fileNumber(path);
+                if (file < 0 || file == currentFile) {
+                    continue;
+                }
+                long live = liveBytes.getOrDefault(file, 0L);
+                long payload = Files.size(path) - SegmentFormat.CHECKSUMMED.getHeaderSize();
+                if (live <= 0 || payload > 0 && 1 - (double) live / payload >= garbageRatio) {
+                    result.add(file);
+                }
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * @return {@code true} - если в файле не осталось нужных таблице значений
+     */
+    public synchronized boolean isGarbage(long file) {
+        return file != currentFile && liveBytes.getOrDefault(file, 0L) <= 0;
+    }
+
+    /**
+     * Удаляет файл, в котором не осталось нужных значений (см {@link #isGarbage(long)})
+     *
+     * @throws IOException если файл не удалось удалить
+     */
+    public synchronized void delete(long file) throws IOException {
+        liveBytes.remove(file);
+        DatabaseChannelReader reader = readers.remove(file);
+        if (reader != null) {
+            reader.close();
+        }
+        // под блокировкой хранилища, чтобы не пересечься со снимком
+        Files.deleteIfExists(blobPath(file));
+    }
+
+    /**
+     * @return {@code true} - если у таблицы есть blob-файлы
+     */
+    public boolean hasFiles() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, BLOB_FILE_PREFIX + "*")) {
+            return files.iterator().hasNext();
+        }
+    }
+
+    /**
+     * Подтверждает записанное в текущий blob-файл согласно политике fsync (см {@link DatabaseAppendChannel#flush()})
+     */
+    public void flush() throws IOException {
+        DatabaseAppendChannel channel = appendChannel;
+        if (channel != null) {
+            channel.flush();
+        }
+    }
+
+    /**
+     * Сбрасывает на диск все записанное в текущий blob-файл независимо от политики fsync
+     */
+    public void sync() throws IOException {
+        DatabaseAppendChannel channel = appendChannel;
+        if (channel != null) {
+            channel.sync();
+        }
+    }
+
+    /**
+     * Кладет в папку таблицы снимка ссылки на все blob-файлы (см {@link DatabaseSnapshot}). Текущий файл
+     * перед этим сбрасывается на диск и больше не дописывается: следующее значение начнет новый файл
+     *
+     * @param snapshotTablePath папка таблицы в снимке
+     */
+    public synchronized void snapshot(Path snapshotTablePath) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        sync();
+        sealed = true;
+        Path target = Files.createDirectories(snapshotTablePath.resolve(BLOB_DIRECTORY));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, BLOB_FILE_PREFIX + "*")) {
+            for (var file : files) {
+                DatabaseSnapshot.link(file, target);
+            }
+        }
+    }
+
+    /**
+     * Читает значение по ссылке
+     *
+     * @throws IOException если значение не удалось прочитать или ссылка не сходится с записью в blob-файле
+     */
+    public byte[] read(BlobReferenceDatabaseRecord reference) throws IOException {
+        Optional<DatabaseRecord> record = reader(reference.getBlobFile()).readDbUnit(reference.getOffset());
+        if (record.isEmpty() || !record.get().isValuePresented()
+                || !Arrays.equals(record.get().getKey(), reference.getKey())
+                || record.get().getValue().length != reference.getLength()) {
+            throw damagedReference(reference);
+        }
+        return record.get().getValue();
+    }
+
+    /**
+     * Возвращает значение по ссылке участком blob-файла (см {@link StoredValue}), если оно не меньше
+     * {@code regionThreshold} байт, а меньшие значения читает в память, как {@link #read}.
+     * Заголовок записи в blob-файле сверяется со ссылкой, но контрольная сумма значения в участке не проверяется:
+     * для этого пришлось бы прочитать его целиком. Участок одалживается у ридера файла (см
+     * {@link DatabaseRecordReader#pinRegion}), поэтому {@link #delete(long)} освободит файл только после его возврата
+     *
+     * @param regionThreshold размер значения, начиная с которого оно возвращается участком файла,
+     *                        0 или меньше - всегда в памяти
+     * @throws IOException если значение не удалось прочитать или ссылка не сходится с записью в blob-файле
+     */
+    public StoredValue readStored(BlobReferenceDatabaseRecord reference, int regionThreshold) throws IOException {
+        if (regionThreshold <= 0 || reference.getLength() < regionThreshold) {
+            return StoredValue.of(read(reference));
+        }
+
+        DatabaseChannelReader reader = reader(reference.getBlobFile());
+        Optional<DatabaseRecordHeader> header = reader.readHeader(reference.getOffset());
+        if (header.isEmpty() || !Arrays.equals(header.get().getKey(), reference.getKey())
+                || header.get().getValueSize() != reference.getLength()) {
+            throw damagedReference(reference);
+        }
+        // если файл тем временем удалили, ридер уже закрыт и участок не одолжит: таблица перечитает ключ
+        return reader.pinRegion(header.get().valueOffset(reference.getOffset()), reference.getLength())
+                .orElseThrow();
+    }
+
+    private static IOException damagedReference(BlobReferenceDatabaseRecord reference) {
+        return new IOException(String.format("Blob reference to file %d at offset %d is damaged",
+                reference.getBlobFile(), reference.getOffset()));
+    }
+
+    private void startNewFile() throws IOException {
+        if (appendChannel != null) {
+            appendChannel.close();
+        }
+
+        Files.createDirectories(directory);
+        long file = Math.max(currentFile, lastFile()) + 1;
+        Path path = blobPath(file);
+        Files.write(path, SegmentFormat.CHECKSUMMED.header(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        currentFile = file;
+        currentSize = SegmentFormat.CHECKSUMMED.getHeaderSize();
+        sealed = false;
+        appendChannel = new DatabaseAppendChannel(path, currentSize, config);
+    }
+
+    /**
+     * @return номер последнего blob-файла на диске, -1 - если файлов нет
+     */
+    private long lastFile() throws IOException {
+        long last = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, BLOB_FILE_PREFIX + "*")) {
+            for (var file : files) {
+                last = Math.max(last, fileNumber(file));
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return номер blob-файла из его имени, -1 - если это чужой файл
+     */
+    private static long fileNumber(Path path) {
+        try {
+            return Long.parseLong(path.getFileName().toString().substring(BLOB_FILE_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private DatabaseChannelReader reader(long file) throws IOException {
+        try {
+            return readers.computeIfAbsent(file, number -> {
+                try {
+                    return new DatabaseChannelReader(FileChannel.open(blobPath(number), StandardOpenOption.READ),
+                            SegmentFormat.CHECKSUMMED);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Path blobPath(long file) {
+        return directory.resolve(BLOB_FILE_PREFIX + file);
+    }
+}
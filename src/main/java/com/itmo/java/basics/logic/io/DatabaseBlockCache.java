@@ -0,0 +1,83 @@
+package com.itmo.java.basics.logic.io;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * LRU-кэш распакованных блоков сжатых сегментов с ограничением по суммарному размеру блоков
+ */
+public class DatabaseBlockCache {
+    private final long capacityBytes;
+    private final Map<Key, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes = 0;
+
+    /**
+     * @param capacityBytes сколько байт распакованных блоков держать. 0 - ничего не кэшировать
+     */
+    public DatabaseBlockCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * @return блок файла или {@code null}, если его нет в кэше
+     */
+    synchronized byte[] get(Object file, int block) {
+        return blocks.get(new Key(file, block));
+    }
+
+    synchronized void put(Object file, int block, byte[] content) {
+        if (content.length > capacityBytes) {
+            return;
+        }
+
+        byte[] previous = blocks.put(new Key(file, block), content);
+        sizeBytes += content.length - (previous == null ? 0 : previous.length);
+        var iterator = blocks.values().iterator();
+        while (sizeBytes > capacityBytes) {
+            sizeBytes -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Выбрасывает все блоки файла, например, когда он закрыт
+     */
+    synchronized void invalidate(Object file) {
+        var iterator = blocks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (entry.getKey().file == file) {
+                sizeBytes -= entry.getValue().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Key {
+        private final Object file;
+        private final int block;
+
+        private Key(Object file, int block) {
+            this.file = file;
+            this.block = block;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return file == key.file && block == key.block;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(file), block);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сегмент, сжатый по блокам ({@link SegmentFormat#COMPRESSED}).
+ * <p>
+ * Несжатое содержимое (файл формата {@link SegmentFormat#CHECKSUMMED} целиком, вместе с заголовком) режется
+ * на блоки фиксированного размера, каждый блок сжимается {@link Deflater} отдельно. Формат файла:
+ * заголовок magic(int)|version(int), сжатые блоки подряд, индекс блоков - для каждого fileOffset(long)|length(int),
+ * и в конце blockSize(int)|blockCount(int)|logicalSize(long)|indexOffset(long)|crc32c(int)
+ * (контрольная сумма индекса и предыдущих полей).
+ * <p>
+ * Сдвиг в несжатом содержимом однозначно задает блок (offset / blockSize) и место внутри блока (offset % blockSize),
+ * поэтому {@link com.itmo.java.basics.index.SegmentOffsetInfo} для сжатого сегмента не меняется.
+ */
+public class DatabaseBlockFile implements DatabaseSegmentFile {
+    public static final String TEMP_FILE_SUFFIX = ".compressing";
+    private static final int INDEX_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int FOOTER_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private final FileChannel channel;
+    private final DatabaseBlockCache blockCache;
+    private final int blockSize;
+    private final long logicalSize;
+    private final ByteBuffer index;
+
+    private DatabaseBlockFile(FileChannel channel, DatabaseBlockCache blockCache, int blockSize, long logicalSize,
+                              ByteBuffer index) {
+        this.channel = channel;
+        this.blockCache = blockCache;
+        this.blockSize = blockSize;
+        this.logicalSize = logicalSize;
+        this.index = index;
+    }
+
+    /**
+     * Читает индекс блоков сжатого файла. Файл закрывается вместе с {@link DatabaseBlockFile}
+     *
+     * @param channel    канал сжатого файла
+     * @param blockCache кэш распакованных блоков, может быть {@code null}
+     * @throws IOException если индекс не удалось прочитать или он поврежден
+     */
+    static DatabaseBlockFile open(FileChannel channel, DatabaseBlockCache blockCache) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < SegmentFormat.COMPRESSED.getHeaderSize() + FOOTER_SIZE) {
+            throw new EOFException("Compressed segment is too short");
+        }
+
+        ByteBuffer footer = readFully(channel, fileSize - FOOTER_SIZE, FOOTER_SIZE);
+        int blockSize = footer.getInt();
+        int blockCount = footer.getInt();
+        long logicalSize = footer.getLong();
+        long indexOffset = footer.getLong();
+        int checksum = footer.getInt();
+
+        long indexSize = (long) blockCount * INDEX_ENTRY_SIZE;
+        if (blockSize <= 0 || blockCount < 0 || indexOffset + indexSize + FOOTER_SIZE != fileSize) {
+            throw new IOException("Compressed segment index is damaged");
+        }
+
+        ByteBuffer indexAndFooter = readFully(channel, indexOffset, (int) indexSize + FOOTER_SIZE);
+        if (SegmentFormat.checksum(indexAndFooter, 0, (int) indexSize + FOOTER_SIZE - Integer.BYTES) != checksum) {
+            throw new IOException("Compressed segment index is damaged");
+        }
+
+        indexAndFooter.limit((int) indexSize);
+        return new DatabaseBlockFile(channel, blockCache, blockSize, logicalSize, indexAndFooter.slice());
+    }
+
+    /**
+     * Пишет сжатую копию сегмента рядом с ним. Исходный файл не меняется, пока копию не установят
+     * через {@link #install(Path, Path)}.
+     *
+     * @param segmentPath путь до закрытого сегмента формата {@link SegmentFormat#CHECKSUMMED}
+     * @param blockSize   размер несжатого блока
+     * @param level       уровень сжатия {@link Deflater}
+     * @param sync        сбросить ли сжатый файл на диск
+     * @return путь до сжатой копии
+     * @throws IOException если файл не удалось прочитать или записать
+     */
+    public static Path compress(Path segmentPath, int blockSize, int level, boolean sync) throws IOException {
+        Path tempPath = segmentPath.resolveSibling(segmentPath.getFileName() + TEMP_FILE_SUFFIX);
+        Deflater deflater = new Deflater(level);
+
+        try (FileChannel source = FileChannel.open(segmentPath, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long logicalSize = source.size();
+            int blockCount = (int) ((logicalSize + blockSize - 1) / blockSize);
+            ByteBuffer indexAndFooter = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE + FOOTER_SIZE);
+            long position = writeFully(target, ByteBuffer.wrap(SegmentFormat.COMPRESSED.header()), 0);
+
+            byte[] compressed = new byte[blockSize + blockSize / 2 + 64];
+            for (int block = 0; block < blockCount; block++) {
+                int length = (int) Math.min(blockSize, logicalSize - (long) block * blockSize);
+                ByteBuffer content = readFully(source, (long) block * blockSize, length);
+
+                deflater.reset();
+                deflater.setInput(content.array(), 0, length);
+                deflater.finish();
+                int compressedLength = 0;
+                while (!deflater.finished()) {
+                    if (compressedLength == compressed.length) {
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    }
+                    compressedLength += deflater.deflate(compressed, compressedLength,
+                            compressed.length - compressedLength);
+                }
+
+                indexAndFooter.putLong(position).putInt(compressedLength);
+                position += writeFully(target, ByteBuffer.wrap(compressed, 0, compressedLength), position);
+            }
+
+            indexAndFooter.putInt(blockSize).putInt(blockCount).putLong(logicalSize).putLong(position);
+            indexAndFooter.putInt(SegmentFormat.checksum(indexAndFooter, 0, indexAndFooter.position()));
+            indexAndFooter.flip();
+            writeFully(target, indexAndFooter, position);
+            if (sync) {
+                target.force(false);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        } finally {
+            deflater.end();
+        }
+        return tempPath;
+    }
+
+    /**
+     * Атомарно заменяет сегмент его сжатой копией. Уже открытые дескрипторы исходного файла
+     * продолжают читать старое содержимое, пока их не закроют. Копия получает время изменения сегмента:
+     * по нему считается возраст сегмента (например, срок хранения таблицы, разбитой по времени).
+     *
+     * @param compressedPath результат {@link #compress(Path, int, int, boolean)}
+     * @param segmentPath    путь до сегмента
+     */
+    public static void install(Path compressedPath, Path segmentPath) throws IOException {
+        Files.setLastModifiedTime(compressedPath, Files.getLastModifiedTime(segmentPath));
+        Files.move(compressedPath, segmentPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return {@code true} - если это недописанный при сжатии файл
+     */
+    public static boolean isTempFile(String fileName) {
+        return fileName.endsWith(TEMP_FILE_SUFFIX);
+    }
+
+    @Override
+    public long size() {
+        return logicalSize;
+    }
+
+    @Override
+    public int read(ByteBuffer destination, long position) throws IOException {
+        if (position >= logicalSize) {
+            return -1;
+        }
+
+        int read = 0;
+        while (destination.hasRemaining() && position < logicalSize) {
+            int block = (int) (position / blockSize);
+            int inBlock = (int) (position % blockSize);
+            byte[] content = block(block);
+            int length = Math.min(destination.remaining(), content.length - inBlock);
+            destination.put(content, inBlock, length);
+            position += length;
+            read += length;
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (blockCache != null) {
+            blockCache.invalidate(this);
+        }
+        channel.close();
+    }
+
+    private byte[] block(int block) throws IOException {
+        byte[] content = blockCache == null ? null : blockCache.get(this, block);
+        if (content != null) {
+            return content;
+        }
+
+        long fileOffset = index.getLong(block * INDEX_ENTRY_SIZE);
+        int compressedLength = index.getInt(block * INDEX_ENTRY_SIZE + Long.BYTES);
+        ByteBuffer compressed = readFully(channel, fileOffset, compressedLength);
+        content = new byte[(int) Math.min(blockSize, logicalSize - (long) block * blockSize)];
+
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressed.array(), 0, compressedLength);
+        try {
+            int inflated = 0;
+            while (inflated < content.length && !inflater.finished()) {
+                int count = inflater.inflate(content, inflated, content.length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != content.length) {
+                throw new IOException(String.format("Compressed block %d is damaged", block));
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("Compressed block %d is damaged", block), e);
+        }
+
+        if (blockCache != null) {
+            blockCache.put(this, block, content);
+        }
+        return content;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException(String.format("Unexpected end of compressed segment at offset %d", position));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + length - buffer.remaining());
+        }
+        return length;
+    }
+}
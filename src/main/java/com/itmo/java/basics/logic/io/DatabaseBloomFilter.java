@@ -0,0 +1,212 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Фильтр Блума по ключам закрытого сегмента: если фильтр говорит, что ключа нет, файл сегмента можно не читать.
+ * Строится при закрытии сегмента (в том числе результата компакции) и хранится рядом с ним.
+ * <p>
+ * Формат: magic(int)|version(int)|dataSize(long)|hashCount(int)|wordCount(int), затем wordCount слов
+ * битового массива (long), в конце CRC32 всего предыдущего (int). Как и hint-файл, фильтр считается верным,
+ * только если совпала контрольная сумма и размер содержимого сегмента равен dataSize.
+ * <p>
+ * Номера битов считаются двойным хешированием h1 + i * h2 от 64-битного хеша байт ключа (для строкового ключа - его UTF-8).
+ */
+public class DatabaseBloomFilter {
+    public static final String BLOOM_FILE_SUFFIX = ".bloom";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x4b565342;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+    private static final int MAX_HASH_COUNT = 16;
+
+    private final long dataSize;
+    private final int hashCount;
+    private final long[] words;
+
+    private DatabaseBloomFilter(long dataSize, int hashCount, long[] words) {
+        this.dataSize = dataSize;
+        this.hashCount = hashCount;
+        this.words = words;
+    }
+
+    /**
+     * Создает пустой фильтр, рассчитанный на заданное число ключей
+     *
+     * @param expectedKeys      сколько ключей будет добавлено
+     * @param falsePositiveRate допустимая доля ложноположительных ответов, от 0 до 1
+     * @param dataSize          размер содержимого сегмента, для которого строится фильтр
+     */
+    public static DatabaseBloomFilter create(int expectedKeys, double falsePositiveRate, long dataSize) {
+        int keys = Math.max(expectedKeys, 1);
+        double ln2 = Math.log(2);
+        long bitCount = (long) Math.ceil(-keys * Math.log(falsePositiveRate) / (ln2 * ln2));
+        int wordCount = (int) Math.min(Math.max((bitCount + Long.SIZE - 1) / Long.SIZE, 1), Integer.MAX_VALUE / Long.BYTES);
+        int hashCount = (int) Math.round((double) wordCount * Long.SIZE / keys * ln2);
+        return new DatabaseBloomFilter(dataSize, Math.min(Math.max(hashCount, 1), MAX_HASH_COUNT), new long[wordCount]);
+    }
+
+    /**
+     * @return путь до файла фильтра сегмента
+     */
+    public static Path bloomPath(Path segmentPath) {
+        return segmentPath.resolveSibling(segmentPath.getFileName() + BLOOM_FILE_SUFFIX);
+    }
+
+    /**
+     * @return {@code true} - если файл с таким именем является файлом фильтра (в том числе недописанным)
+     */
+    public static boolean isBloomFilterFile(String fileName) {
+        return fileName.endsWith(BLOOM_FILE_SUFFIX) || fileName.endsWith(BLOOM_FILE_SUFFIX + TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * Читает фильтр сегмента и проверяет, что он соответствует сегменту.
+     *
+     * @param segmentPath путь до сегмента
+     * @param segmentSize размер содержимого сегмента (см {@link DatabaseSegmentFile#size()})
+     * @return фильтр. {@link Optional#empty()} - если файла нет или он не прошел проверку
+     * @throws IOException если файл фильтра не удалось прочитать
+     */
+    public static Optional<DatabaseBloomFilter> read(Path segmentPath, long segmentSize) throws IOException {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(bloomPath(segmentPath));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        if (content.length < HEADER_SIZE + Integer.BYTES) {
+            return Optional.empty();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        int checksumPosition = content.length - Integer.BYTES;
+        if (buffer.getInt(checksumPosition) != checksum(content, checksumPosition)) {
+            return Optional.empty();
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return Optional.empty();
+        }
+
+        long dataSize = buffer.getLong();
+        int hashCount = buffer.getInt();
+        int wordCount = buffer.getInt();
+        if (dataSize != segmentSize || hashCount <= 0 || wordCount <= 0
+                || (long) wordCount * Long.BYTES != checksumPosition - HEADER_SIZE) {
+            return Optional.empty();
+        }
+
+        long[] words = new long[wordCount];
+        buffer.asLongBuffer().get(words);
+        return Optional.of(new DatabaseBloomFilter(dataSize, hashCount, words));
+    }
+
+    /**
+     * Удаляет файл фильтра сегмента, если он есть
+     */
+    public static void delete(Path segmentPath) throws IOException {
+        Files.deleteIfExists(bloomPath(segmentPath));
+    }
+
+    /**
+     * Добавляет ключ в фильтр. Не потокобезопасно: фильтр заполняется до того, как его начинают читать
+     */
+    public void add(byte[] key) {
+        long hash = hash(key);
+        long bitCount = (long) words.length * Long.SIZE;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * (hash >>> 32 | 1), bitCount);
+            words[(int) (bit / Long.SIZE)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return {@code false} - если ключа в сегменте точно нет, {@code true} - если он там может быть
+     */
+    public boolean mightContain(byte[] key) {
+        long hash = hash(key);
+        long bitCount = (long) words.length * Long.SIZE;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * (hash >>> 32 | 1), bitCount);
+            if ((words[(int) (bit / Long.SIZE)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Записывает фильтр рядом с сегментом: сначала во временный файл, потом переименовывает,
+     * так что недописанный фильтр никогда не окажется на месте настоящего
+     *
+     * @param segmentPath путь до сегмента
+     * @param sync        сбросить ли файл на диск перед переименованием
+     * @throws IOException если файл не удалось записать
+     */
+    public void write(Path segmentPath, boolean sync) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + words.length * Long.BYTES + Integer.BYTES);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(dataSize);
+        buffer.putInt(hashCount);
+        buffer.putInt(words.length);
+        for (long word : words) {
+            buffer.putLong(word);
+        }
+        buffer.putInt(checksum(buffer.array(), buffer.position()));
+        buffer.flip();
+
+        Path bloomPath = bloomPath(segmentPath);
+        Path tempPath = bloomPath.resolveSibling(bloomPath.getFileName() + TEMP_FILE_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        }
+        Files.move(tempPath, bloomPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return размер битового массива в байтах
+     */
+    public long sizeInBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    /**
+     * FNV-1a по байтам ключа с перемешиванием результата (finalizer из MurmurHash3),
+     * чтобы старшая и младшая половины хеша были независимы
+     */
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int checksum(byte[] content, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,202 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.logic.StoredValue;
+import com.itmo.java.basics.logic.impl.BlobReferenceDatabaseRecord;
+import com.itmo.java.basics.logic.impl.ExpiringDatabaseRecord;
+import com.itmo.java.basics.logic.impl.RemoveDatabaseRecord;
+import com.itmo.java.basics.logic.impl.SetDatabaseRecord;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Optional;
+
+/**
+ * Читает записи (формат см {@link SegmentFormat}) из файлового канала позиционным чтением,
+ * не меняя позицию самого канала. Контрольная сумма каждой прочитанной записи проверяется, а размеры
+ * из заголовка - еще до чтения записи.
+ * Сжатые сегменты читаются так же, через их несжатое содержимое (см {@link DatabaseSegmentFile}).
+ * <p>
+ * Ридер владеет переданным каналом и закрывает его в {@link #close()}, но не раньше, чем вернут участки,
+ * одолженные через {@link #pinRegion}.
+ * Буфер для чтения у каждого потока свой и переиспользуется между вызовами, поэтому один экземпляр
+ * можно использовать из нескольких потоков одновременно.
+ */
+public class DatabaseChannelReader implements DatabaseRecordReader {
+    private static final int REMOVED_OBJECT_SIZE = -1;
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_CACHED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE));
+
+    private final DatabaseSegmentFile file;
+    private final SegmentFormat format;
+    /**
+     * Канал несжатого файла, из которого можно одалживать участки, {@code null} - если ридер читает через
+     * {@link DatabaseSegmentFile}
+     */
+    private final FileChannel channel;
+    private final ReaderPins pins;
+
+    public DatabaseChannelReader(FileChannel channel, SegmentFormat format) {
+        this(DatabaseSegmentFile.of(channel), format, channel);
+    }
+
+    public DatabaseChannelReader(DatabaseSegmentFile file, SegmentFormat format) {
+        this(file, format, null);
+    }
+
+    private DatabaseChannelReader(DatabaseSegmentFile file, SegmentFormat format, FileChannel channel) {
+        this.file = file;
+        this.format = format;
+        this.channel = channel;
+        this.pins = new ReaderPins(file);
+    }
+
+    @Override
+    public Optional<DatabaseRecord> readDbUnit(long offset) throws IOException {
+        return readDbUnit(offset, 0);
+    }
+
+    /**
+     * Буфер сразу расширяется до размера записи, и первое же чтение из файла забирает ее целиком
+     */
+    @Override
+    public Optional<DatabaseRecord> readDbUnit(long offset, int recordSizeHint) throws IOException {
+        ByteBuffer buffer = READ_BUFFER.get();
+        buffer.clear();
+        if (recordSizeHint > 0) {
+            buffer = ensureCapacity(buffer, recordSizeHint);
+        }
+        if (!fill(buffer, offset, Integer.BYTES, false)) {
+            return Optional.empty();
+        }
+
+        int keySize = buffer.getInt(0);
+        buffer = ensureRecordCapacity(buffer, offset, keySize < 0 ? -1 : 2L * Integer.BYTES + keySize);
+        fill(buffer, offset, 2 * Integer.BYTES + keySize, true);
+        int valueSize = buffer.getInt(Integer.BYTES + keySize);
+
+        long storedSize = format.isValidValueSize(valueSize) ? format.recordSize(keySize, valueSize) : -1;
+        buffer = ensureRecordCapacity(buffer, offset, storedSize);
+        int recordSize = (int) storedSize;
+        fill(buffer, offset, recordSize, true);
+        format.verify(buffer, 0, recordSize, offset);
+
+        byte[] key = new byte[keySize];
+        buffer.duplicate().position(Integer.BYTES).get(key);
+        if (valueSize == REMOVED_OBJECT_SIZE) {
+            return Optional.of(new RemoveDatabaseRecord(key));
+        }
+        if (valueSize == BlobReferenceDatabaseRecord.VALUE_SIZE) {
+            return Optional.of(BlobReferenceDatabaseRecord.read(key, buffer, 2 * Integer.BYTES + keySize));
+        }
+        if (ExpiringDatabaseRecord.isExpiring(valueSize)) {
+            return Optional.of(ExpiringDatabaseRecord.read(key, valueSize, buffer, 2 * Integer.BYTES + keySize));
+        }
+
+        byte[] value = new byte[valueSize];
+        buffer.duplicate().position(2 * Integer.BYTES + keySize).get(value);
+        return Optional.of(new SetDatabaseRecord(key, value));
+    }
+
+    @Override
+    public Optional<DatabaseRecordHeader> readHeader(long offset) throws IOException {
+        ByteBuffer buffer = READ_BUFFER.get();
+        buffer.clear();
+        if (!fill(buffer, offset, Integer.BYTES, false)) {
+            return Optional.empty();
+        }
+
+        int keySize = buffer.getInt(0);
+        buffer = ensureRecordCapacity(buffer, offset, keySize < 0 ? -1 : 2L * Integer.BYTES + keySize);
+        fill(buffer, offset, 2 * Integer.BYTES + keySize, true);
+
+        byte[] key = new byte[keySize];
+        buffer.duplicate().position(Integer.BYTES).get(key);
+        return Optional.of(new DatabaseRecordHeader(key, buffer.getInt(Integer.BYTES + keySize)));
+    }
+
+    /**
+     * Участок одалживается прямо из канала ридера, поэтому ридер, созданный по {@link DatabaseSegmentFile},
+     * участков не одалживает
+     */
+    @Override
+    public Optional<StoredValue> pinRegion(long position, int length) throws IOException {
+        if (channel == null) {
+            return Optional.empty();
+        }
+
+        pins.pin();
+        return Optional.of(StoredValue.region(channel, position, length, pins::unpin));
+    }
+
+    @Override
+    public boolean isPinned() {
+        return pins.isPinned();
+    }
+
+    /**
+     * Закрывает канал, переданный в конструкторе, как только вернут все одолженные участки
+     */
+    @Override
+    public void close() throws IOException {
+        pins.close();
+    }
+
+    /**
+     * Дочитывает в буфер байты записи, пока их не станет хотя бы {@code required}.
+     * Буфер всегда содержит байты с начала записи: позиция буфера - сколько уже прочитано.
+     */
+    private boolean fill(ByteBuffer buffer, long offset, int required, boolean strict) throws IOException {
+        buffer.limit(buffer.capacity());
+        while (buffer.position() < required) {
+            int read = file.read(buffer, offset + buffer.position());
+            if (read < 0) {
+                if (!strict && buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException(String.format("Unexpected end of segment file at offset %d", offset));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Размеры в заголовке записи проверяются до выделения буфера: поврежденная длина не должна приводить
+     * к огромному буферу. Если запись помещается в уже выделенный буфер, ее конец за концом файла
+     * и так обнаружит {@link #fill}, поэтому размер файла спрашивается только для длинных записей
+     *
+     * @param required сколько байт записи нужно прочитать, отрицательное - если длина в заголовке невозможна
+     * @throws IOException если запись не может поместиться в файл
+     */
+    private ByteBuffer ensureRecordCapacity(ByteBuffer buffer, long offset, long required) throws IOException {
+        if (required < 0 || required > Integer.MAX_VALUE
+                || required > buffer.capacity() && offset + required > file.size()) {
+            throw new IOException(String.format(
+                    "Damaged record at offset %d: sizes in its header do not fit the segment file", offset));
+        }
+        return ensureCapacity(buffer, (int) required);
+    }
+
+    private ByteBuffer ensureCapacity(ByteBuffer buffer, int required) {
+        if (buffer.capacity() >= required) {
+            return buffer;
+        }
+
+        ByteBuffer extended;
+        if (required <= MAX_CACHED_BUFFER_SIZE) {
+            extended = ByteBuffer.allocateDirect(Math.min(Integer.highestOneBit(required) << 1, MAX_CACHED_BUFFER_SIZE));
+            READ_BUFFER.set(extended);
+        } else {
+            // большие значения читаем в одноразовый буфер, чтобы не держать его в каждом потоке
+            extended = ByteBuffer.allocate(required);
+        }
+        buffer.flip();
+        extended.put(buffer);
+        return extended;
+    }
+}
@@ -0,0 +1,211 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Hint-файл сегмента: рядом с закрытым сегментом лежит его краткое содержание - для каждого ключа
+ * сдвиг последней записи и признак удаления. При старте достаточно прочитать его, а не весь файл со значениями.
+ * <p>
+ * Формат: magic(int)|version(int)|dataSize(long)|recordCount(int)|entryCount(int),
+ * затем entryCount раз keySize(int)|key|offset(long)|tombstone(byte), в конце CRC32 всего предыдущего (int).
+ * Hint-файл считается верным, только если совпала контрольная сумма и размер сегмента равен dataSize
+ * (для сжатого сегмента - размер его несжатого содержимого, поэтому hint-файл переживает сжатие).
+ */
+public class DatabaseHintFile {
+    public static final String HINT_FILE_SUFFIX = ".hint";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x4b565348;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+
+    /**
+     * Получатель записей hint-файла
+     */
+    public interface EntryConsumer {
+        void accept(byte[] key, long offset, boolean tombstone);
+    }
+
+    private final long dataSize;
+    private final int recordCount;
+    private final ByteBuffer entries;
+    private final int entryCount;
+
+    private DatabaseHintFile(long dataSize, int recordCount, ByteBuffer entries, int entryCount) {
+        this.dataSize = dataSize;
+        this.recordCount = recordCount;
+        this.entries = entries;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * @return путь до hint-файла сегмента
+     */
+    public static Path hintPath(Path segmentPath) {
+        return segmentPath.resolveSibling(segmentPath.getFileName() + HINT_FILE_SUFFIX);
+    }
+
+    /**
+     * @return {@code true} - если файл с таким именем является hint-файлом (в том числе недописанным)
+     */
+    public static boolean isHintFile(String fileName) {
+        return fileName.endsWith(HINT_FILE_SUFFIX) || fileName.endsWith(HINT_FILE_SUFFIX + TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * Читает ключи сегмента (значения пропускаются) и записывает hint-файл.
+     * Файл сначала пишется во временный и только потом переименовывается, так что недописанный hint-файл
+     * никогда не окажется на месте настоящего.
+     *
+     * @param segmentPath путь до закрытого сегмента
+     * @param sync        сбросить ли hint-файл на диск перед переименованием
+     * @throws IOException если сегмент не удалось прочитать или hint-файл не удалось записать
+     */
+    public static void write(Path segmentPath, boolean sync) throws IOException {
+        // ByteBuffer сравнивается по содержимому, поэтому годится ключом карты для байт ключа
+        Map<ByteBuffer, Entry> entries = new LinkedHashMap<>();
+        int[] recordCount = {0};
+        long dataSize = DatabaseSegmentScanner.scan(segmentPath, SegmentFormat.detect(segmentPath), (key, offset, removed) -> {
+            Entry entry = entries.computeIfAbsent(ByteBuffer.wrap(key), wrapped -> new Entry(key));
+            entry.offset = offset;
+            entry.tombstone = removed;
+            recordCount[0]++;
+        });
+
+        int entriesSize = 0;
+        for (var entry : entries.values()) {
+            entriesSize += Integer.BYTES + entry.key.length + Long.BYTES + 1;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + entriesSize + Integer.BYTES);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(dataSize);
+        buffer.putInt(recordCount[0]);
+        buffer.putInt(entries.size());
+        for (var entry : entries.values()) {
+            buffer.putInt(entry.key.length);
+            buffer.put(entry.key);
+            buffer.putLong(entry.offset);
+            buffer.put((byte) (entry.tombstone ? 1 : 0));
+        }
+        buffer.putInt(checksum(buffer.array(), buffer.position()));
+        buffer.flip();
+
+        Path hintPath = hintPath(segmentPath);
+        Path tempPath = hintPath.resolveSibling(hintPath.getFileName() + TEMP_FILE_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        }
+        Files.move(tempPath, hintPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Читает hint-файл сегмента и проверяет, что он соответствует сегменту.
+     *
+     * @param segmentPath путь до сегмента
+     * @param segmentSize размер содержимого сегмента (см {@link DatabaseSegmentFile#size()})
+     * @return содержимое hint-файла. {@link Optional#empty()} - если файла нет или он не прошел проверку
+     * @throws IOException если hint-файл не удалось прочитать
+     */
+    public static Optional<DatabaseHintFile> read(Path segmentPath, long segmentSize) throws IOException {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(hintPath(segmentPath));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        if (content.length < HEADER_SIZE + Integer.BYTES) {
+            return Optional.empty();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        int checksumPosition = content.length - Integer.BYTES;
+        if (buffer.getInt(checksumPosition) != checksum(content, checksumPosition)) {
+            return Optional.empty();
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return Optional.empty();
+        }
+
+        long dataSize = buffer.getLong();
+        int recordCount = buffer.getInt();
+        int entryCount = buffer.getInt();
+        if (dataSize != segmentSize) {
+            return Optional.empty();
+        }
+
+        buffer.limit(checksumPosition);
+        return Optional.of(new DatabaseHintFile(dataSize, recordCount, buffer.slice(), entryCount));
+    }
+
+    /**
+     * Удаляет hint-файл сегмента, если он есть
+     */
+    public static void delete(Path segmentPath) throws IOException {
+        Files.deleteIfExists(hintPath(segmentPath));
+    }
+
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Передает получателю все записи hint-файла в порядке первого появления ключа в сегменте
+     *
+     * @throws IOException если записи выходят за границы файла
+     */
+    public void forEach(EntryConsumer consumer) throws IOException {
+        ByteBuffer buffer = entries.duplicate();
+        try {
+            for (int i = 0; i < entryCount; i++) {
+                byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                long offset = buffer.getLong();
+                boolean tombstone = buffer.get() != 0;
+                consumer.accept(key, offset, tombstone);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Hint file is damaged", e);
+        }
+    }
+
+    private static int checksum(byte[] content, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Последняя запись ключа в сегменте
+     */
+    private static final class Entry {
+        private final byte[] key;
+        private long offset;
+        private boolean tombstone;
+
+        private Entry(byte[] key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.logic.StoredValue;
+import com.itmo.java.basics.logic.impl.BlobReferenceDatabaseRecord;
+import com.itmo.java.basics.logic.impl.ExpiringDatabaseRecord;
+import com.itmo.java.basics.logic.impl.RemoveDatabaseRecord;
+import com.itmo.java.basics.logic.impl.SetDatabaseRecord;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Читает записи из файла, целиком отображенного в память.
+ * Подходит только для файлов, которые больше не меняются (read-only сегменты).
+ * Контрольная сумма каждой прочитанной записи проверяется (формат см {@link SegmentFormat}).
+ * <p>
+ * После {@link #close()} отображение освобождается сразу, не дожидаясь сборщика мусора,
+ * поэтому вызывающий код должен гарантировать, что в этот момент никто не читает.
+ * Участки, одолженные через {@link #pinRegion}, закрытие ждет: отображение освобождается, когда вернут последний.
+ */
+public class DatabaseMappedReader implements DatabaseRecordReader {
+    private static final int REMOVED_OBJECT_SIZE = -1;
+
+    private final MappedByteBuffer mapping;
+    private final SegmentFormat format;
+    private final ReaderPins pins;
+
+    private DatabaseMappedReader(MappedByteBuffer mapping, SegmentFormat format) {
+        this.mapping = mapping;
+        this.format = format;
+        this.pins = new ReaderPins(() -> unmap(mapping));
+    }
+
+    /**
+     * Отображает в память первые {@code size} байт файла.
+     *
+     * @param path   путь до файла
+     * @param size   сколько байт файла отобразить
+     * @param format формат сегмента
+     * @throws IOException если файл не удалось открыть или отобразить
+     */
+    public static DatabaseMappedReader map(Path path, long size, SegmentFormat format) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("File %s is too large to be mapped", path));
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new DatabaseMappedReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), format);
+        }
+    }
+
+    @Override
+    public Optional<DatabaseRecord> readDbUnit(long offset) throws IOException {
+        int limit = mapping.limit();
+        if (offset >= limit) {
+            return Optional.empty();
+        }
+
+        int position = (int) offset;
+        int keySize = readInt(position, limit);
+        int keyPosition = position + Integer.BYTES;
+        int valueSize = readInt(keyPosition + keySize, limit);
+        int valuePosition = keyPosition + keySize + Integer.BYTES;
+        long recordSize = format.recordSize(keySize, valueSize);
+        if (keySize < 0 || position + recordSize > limit) {
+            throw new EOFException(String.format("Unexpected end of mapped segment at offset %d", position));
+        }
+        format.verify(mapping, position, (int) recordSize, offset);
+
+        byte[] key = copy(keyPosition, keySize, limit);
+        if (valueSize == REMOVED_OBJECT_SIZE) {
+            return Optional.of(new RemoveDatabaseRecord(key));
+        }
+        if (valueSize == BlobReferenceDatabaseRecord.VALUE_SIZE) {
+            return Optional.of(BlobReferenceDatabaseRecord.read(key, mapping, valuePosition));
+        }
+        if (ExpiringDatabaseRecord.isExpiring(valueSize)) {
+            return Optional.of(ExpiringDatabaseRecord.read(key, valueSize, mapping, valuePosition));
+        }
+        return Optional.of(new SetDatabaseRecord(key, copy(valuePosition, valueSize, limit)));
+    }
+
+    @Override
+    public Optional<DatabaseRecordHeader> readHeader(long offset) throws IOException {
+        int limit = mapping.limit();
+        if (offset >= limit) {
+            return Optional.empty();
+        }
+
+        int position = (int) offset;
+        int keySize = readInt(position, limit);
+        int keyPosition = position + Integer.BYTES;
+        int valueSize = readInt(keyPosition + keySize, limit);
+        return Optional.of(new DatabaseRecordHeader(copy(keyPosition, keySize, limit), valueSize));
+    }
+
+    /**
+     * Одалживает участок отображения: значение пишется в канал прямо из него
+     */
+    @Override
+    public Optional<StoredValue> pinRegion(long position, int length) throws IOException {
+        int limit = mapping.limit();
+        if (position < 0 || length < 0 || position + length > limit) {
+            throw new EOFException(String.format("Unexpected end of mapped segment at offset %d", position));
+        }
+
+        pins.pin();
+        ByteBuffer region = mapping.duplicate().position((int) position).limit((int) position + length).slice();
+        return Optional.of(StoredValue.region(region, pins::unpin));
+    }
+
+    @Override
+    public boolean isPinned() {
+        return pins.isPinned();
+    }
+
+    /**
+     * Освобождает отображение, как только вернут все одолженные участки
+     */
+    @Override
+    public void close() throws IOException {
+        pins.close();
+    }
+
+    private int readInt(int position, int limit) throws EOFException {
+        if (position < 0 || position + Integer.BYTES > limit) {
+            throw new EOFException(String.format("Unexpected end of mapped segment at offset %d", position));
+        }
+        return mapping.getInt(position);
+    }
+
+    private byte[] copy(int position, int length, int limit) throws EOFException {
+        if (length < 0 || position + length > limit) {
+            throw new EOFException(String.format("Unexpected end of mapped segment at offset %d", position));
+        }
+
+        byte[] result = new byte[length];
+        mapping.duplicate().position(position).get(result);
+        return result;
+    }
+
+    /**
+     * В Java 11 нет публичного способа освободить отображение, поэтому используется Unsafe#invokeCleaner.
+     * Если он недоступен, отображение освободит сборщик мусора.
+     */
+    private static void unmap(ByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // остается только дождаться сборщика мусора
+        }
+    }
+}
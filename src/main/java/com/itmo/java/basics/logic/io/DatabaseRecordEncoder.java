@@ -0,0 +1,199 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.impl.ExpiringDatabaseRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32C;
+
+/**
+ * Кодирует записи формата {@link SegmentFormat#CHECKSUMMED} для дозаписи в файл.
+ * <p>
+ * Запись целиком (заголовок, ключ, значение и контрольная сумма) собирается за один проход в direct-буфер,
+ * который берется из общего пула и возвращается в него при {@link #close()}, и уходит в канал одним write:
+ * из direct-буфера канал пишет без промежуточного копирования, так что на запись не выделяется ничего,
+ * кроме ключа и значения, которые передал вызывающий.
+ * <p>
+ * Запись, которая не помещается в буфер, пишется одним gathering write из трех частей: заголовок с ключом
+ * и контрольная сумма из буфера, значение - из своего массива без копирования.
+ * <p>
+ * Не потокобезопасен: пользуется им один владелец, например канал под своим монитором.
+ */
+public final class DatabaseRecordEncoder implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int POOL_SIZE = 16;
+    private static final Queue<ByteBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final CRC32C crc = new CRC32C();
+    private final ByteBuffer[] parts = new ByteBuffer[3];
+    private ByteBuffer buffer;
+    private ByteBuffer head;
+    private ByteBuffer tail;
+    /**
+     * Сколько частей у последней закодированной записи: 1 - запись целиком в буфере, 3 - значение отдельно
+     */
+    private int partCount;
+
+    private DatabaseRecordEncoder(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.head = buffer.duplicate();
+        this.tail = buffer.duplicate();
+    }
+
+    /**
+     * Берет буфер из пула, а если пул пуст - создает новый
+     */
+    public static DatabaseRecordEncoder create() {
+        ByteBuffer pooled = POOL.poll();
+        return new DatabaseRecordEncoder(pooled == null ? ByteBuffer.allocateDirect(BUFFER_SIZE) : pooled);
+    }
+
+    /**
+     * Кодирует запись по ключу (удаление, если значение {@code null})
+     *
+     * @return полный размер записи в файле
+     */
+    public int encode(byte[] key, byte[] value) {
+        int valueSize = value == null ? -1 : value.length;
+        int recordSize = (int) SegmentFormat.CHECKSUMMED.recordSize(key.length, valueSize);
+        if (recordSize > buffer.capacity() && value == null) {
+            growBuffer(recordSize);
+        }
+        ByteBuffer target = recordSize <= buffer.capacity()
+                ? buffer : separateValue(2 * Integer.BYTES + key.length, value);
+
+        target.clear();
+        target.putInt(key.length);
+        target.put(key);
+        target.putInt(valueSize);
+        if (target == buffer) {
+            if (value != null) {
+                buffer.put(value);
+            }
+            putChecksum(buffer);
+            buffer.flip();
+            partCount = 1;
+        } else {
+            finishSeparateValue(value);
+        }
+        return recordSize;
+    }
+
+    /**
+     * Кодирует готовую запись (например, ссылку на blob или копию записи при сжатии)
+     *
+     * @return полный размер записи в файле
+     */
+    public int encode(WritableDatabaseRecord record) {
+        int recordSize = (int) SegmentFormat.CHECKSUMMED.recordSize(record.getKeySize(), record.getValueSize());
+        if (recordSize > buffer.capacity() && record.isValuePresented()) {
+            boolean expiring = record instanceof ExpiringDatabaseRecord;
+            ByteBuffer target = separateValue(2 * Integer.BYTES + record.getKeySize() + (expiring ? Long.BYTES : 0),
+                    record.getValue());
+            target.clear();
+            target.putInt(record.getKeySize());
+            target.put(record.getKey());
+            target.putInt(record.getValueSize());
+            if (expiring) {
+                target.putLong(((ExpiringDatabaseRecord) record).getExpiresAtMillis());
+            }
+            finishSeparateValue(record.getValue());
+            return recordSize;
+        }
+
+        if (recordSize > buffer.capacity()) {
+            growBuffer(recordSize);
+        }
+        buffer.clear();
+        SegmentFormat.CHECKSUMMED.encode(record, buffer);
+        buffer.flip();
+        partCount = 1;
+        return recordSize;
+    }
+
+    /**
+     * Пишет последнюю закодированную запись в канал целиком
+     *
+     * @throws IOException если запись не удалась
+     */
+    public void writeTo(GatheringByteChannel channel) throws IOException {
+        if (partCount == 1) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return;
+        }
+
+        while (tail.hasRemaining()) {
+            channel.write(parts, 0, partCount);
+        }
+        parts[1] = null;
+    }
+
+    /**
+     * Возвращает буфер в пул. Увеличенный под большую запись буфер в пул не попадает
+     */
+    @Override
+    public void close() {
+        ByteBuffer released = buffer;
+        buffer = null;
+        if (released != null && released.capacity() == BUFFER_SIZE) {
+            released.clear();
+            POOL.offer(released);
+        }
+    }
+
+    /**
+     * Готовит запись в три части: заголовок и ключ - в начале буфера, значение - отдельно, контрольная сумма - после
+     * ключа. Если в буфер не помещается даже ключ, буфер увеличивается
+     *
+     * @param headSize сколько байт записи идет до значения
+     * @return куда писать заголовок и ключ
+     */
+    private ByteBuffer separateValue(int headSize, byte[] value) {
+        if (headSize + Integer.BYTES > buffer.capacity()) {
+            growBuffer(headSize + Integer.BYTES);
+        }
+        parts[1] = ByteBuffer.wrap(value);
+        return head;
+    }
+
+    private void finishSeparateValue(byte[] value) {
+        head.flip();
+        crc.reset();
+        crc.update(head);
+        crc.update(value, 0, value.length);
+        head.flip();
+
+        tail.clear().position(head.limit());
+        tail.putInt((int) crc.getValue());
+        tail.flip().position(head.limit());
+
+        parts[0] = head;
+        parts[2] = tail;
+        partCount = 3;
+    }
+
+    /**
+     * Дописывает контрольную сумму байт буфера от начала до текущей позиции
+     */
+    private void putChecksum(ByteBuffer target) {
+        int end = target.position();
+        target.flip();
+        crc.reset();
+        crc.update(target);
+        target.limit(target.capacity()).position(end);
+        target.putInt((int) crc.getValue());
+    }
+
+    private void growBuffer(int capacity) {
+        buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(capacity - 1) << 1);
+        head = buffer.duplicate();
+        tail = buffer.duplicate();
+    }
+}
@@ -0,0 +1,36 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.logic.impl.BlobReferenceDatabaseRecord;
+
+/**
+ * Заголовок записи сегмента: ключ и размер значения, без самого значения (формат см {@link SegmentFormat})
+ */
+public final class DatabaseRecordHeader {
+    private final byte[] key;
+    private final int valueSize;
+
+    public DatabaseRecordHeader(byte[] key, int valueSize) {
+        this.key = key;
+        this.valueSize = valueSize;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    /**
+     * @return размер значения, -1 для удаления, {@link BlobReferenceDatabaseRecord#VALUE_SIZE} для ссылки на blob,
+     * не больше {@link com.itmo.java.basics.logic.impl.ExpiringDatabaseRecord#VALUE_SIZE_BASE} для записи со сроком жизни
+     */
+    public int getValueSize() {
+        return valueSize;
+    }
+
+    /**
+     * @param recordOffset сдвиг начала записи
+     * @return сдвиг начала значения записи
+     */
+    public long valueOffset(long recordOffset) {
+        return recordOffset + 2L * Integer.BYTES + key.length;
+    }
+}
@@ -0,0 +1,67 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.logic.StoredValue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Читает записи сегмента по их сдвигу в файле (формат см {@link SegmentFormat})
+ */
+public interface DatabaseRecordReader extends Closeable {
+    /**
+     * Читает запись, которая начинается с указанного сдвига в файле.
+     *
+     * @param offset сдвиг начала записи
+     * @return запись, если она существует. {@link Optional#empty()} - если сдвиг указывает на конец файла
+     * @throws IOException если запись обрывается раньше конца, не сошлась контрольная сумма
+     *                     или произошла ошибка ввода-вывода
+     */
+    Optional<DatabaseRecord> readDbUnit(long offset) throws IOException;
+
+    /**
+     * Читает запись, зная ее размер заранее (например, из каталога ключей таблицы),
+     * так что ее можно прочитать за одно обращение к файлу.
+     *
+     * @param offset     сдвиг начала записи
+     * @param recordSize размер записи, 0 - если он неизвестен
+     * @return запись, если она существует. {@link Optional#empty()} - если сдвиг указывает на конец файла
+     * @throws IOException если запись обрывается раньше конца, не сошлась контрольная сумма
+     *                     или произошла ошибка ввода-вывода
+     */
+    default Optional<DatabaseRecord> readDbUnit(long offset, int recordSize) throws IOException {
+        return readDbUnit(offset);
+    }
+
+    /**
+     * Читает только заголовок записи: ключ и размер значения. Само значение не читается,
+     * поэтому и контрольная сумма записи не проверяется.
+     *
+     * @param offset сдвиг начала записи
+     * @return заголовок, если запись существует. {@link Optional#empty()} - если сдвиг указывает на конец файла
+     * @throws IOException если заголовок обрывается раньше конца или произошла ошибка ввода-вывода
+     */
+    Optional<DatabaseRecordHeader> readHeader(long offset) throws IOException;
+
+    /**
+     * Одалживает участок файла, чтобы передать значение, не читая его в кучу (см {@link StoredValue}).
+     * Пока значение не закрыто, ридер не освобождает файл, даже если его самого уже закрыли.
+     *
+     * @param position где в файле начинается участок
+     * @param length   размер участка
+     * @return участок. {@link Optional#empty()} - если ридер не может его одолжить (например, файл сжат)
+     * @throws IOException если ридер уже закрыт или участок выходит за конец файла
+     */
+    default Optional<StoredValue> pinRegion(long position, int length) throws IOException {
+        return Optional.empty();
+    }
+
+    /**
+     * @return {@code true} - если одолженные ридером участки еще не вернули (см {@link #pinRegion})
+     */
+    default boolean isPinned() {
+        return false;
+    }
+}
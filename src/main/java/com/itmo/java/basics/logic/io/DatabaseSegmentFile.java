@@ -0,0 +1,78 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Содержимое файла сегмента для позиционного чтения. Для сжатых сегментов это несжатое содержимое,
+ * так что читающий код не различает сжатые и обычные файлы.
+ */
+public interface DatabaseSegmentFile extends Closeable {
+    /**
+     * @return размер содержимого в байтах
+     */
+    long size() throws IOException;
+
+    /**
+     * Читает байты содержимого, начиная с {@code position}, в свободное место буфера (как {@link FileChannel#read(ByteBuffer, long)}).
+     *
+     * @return сколько байт прочитано, -1 - если {@code position} указывает на конец содержимого
+     */
+    int read(ByteBuffer destination, long position) throws IOException;
+
+    /**
+     * Открывает файл сегмента на чтение.
+     *
+     * @param path       путь до файла сегмента
+     * @param format     формат сегмента
+     * @param blockCache кэш распакованных блоков для сжатых сегментов, может быть {@code null}
+     */
+    static DatabaseSegmentFile open(Path path, SegmentFormat format, DatabaseBlockCache blockCache) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (!format.isCompressed()) {
+            return of(channel);
+        }
+
+        try {
+            return DatabaseBlockFile.open(channel, blockCache);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return размер содержимого файла сегмента (для сжатого сегмента - несжатого содержимого)
+     */
+    static long size(Path path, SegmentFormat format) throws IOException {
+        try (DatabaseSegmentFile file = open(path, format, null)) {
+            return file.size();
+        }
+    }
+
+    /**
+     * Содержимое несжатого файла: чтение напрямую из канала. Канал закрывается вместе с файлом
+     */
+    static DatabaseSegmentFile of(FileChannel channel) {
+        return new DatabaseSegmentFile() {
+            @Override
+            public long size() throws IOException {
+                return channel.size();
+            }
+
+            @Override
+            public int read(ByteBuffer destination, long position) throws IOException {
+                return channel.read(destination, position);
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
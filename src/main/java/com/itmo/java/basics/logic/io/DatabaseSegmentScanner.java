@@ -0,0 +1,284 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.logic.impl.BlobReferenceDatabaseRecord;
+import com.itmo.java.basics.logic.impl.ExpiringDatabaseRecord;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+
+/**
+ * Последовательный проход по всем записям сегмента (формат см {@link SegmentFormat}) для восстановления индексов.
+ * <p>
+ * Файл читается большими кусками в прямой буфер, который у каждого потока свой и переиспользуется между сегментами
+ * (вложенный проход - например, получатель закрыл сегмент и тот строит фильтр Блума - берет себе отдельный).
+ * Значения не копируются: в формате с контрольными суммами они только проверяются прямо в буфере,
+ * а в старом формате пропускаются следующим позиционным чтением. На каждую запись создается только массив байт ключа.
+ * <p>
+ * Проход останавливается на первой записи, которая оборвана или не сошлась по контрольной сумме
+ * (например, недописанной при падении), и возвращает размер корректного начала файла.
+ */
+public final class DatabaseSegmentScanner {
+    private static final int REMOVED_OBJECT_SIZE = -1;
+    private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Свободный буфер потока, {@code null} - если его забрал идущий проход
+     */
+    private static final ThreadLocal<ByteBuffer> SCAN_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE));
+
+    /**
+     * Получатель записей сегмента
+     */
+    public interface RecordConsumer {
+        /**
+         * @param key     ключ записи
+         * @param offset  сдвиг записи от начала файла
+         * @param removed является ли запись удалением
+         */
+        void accept(byte[] key, long offset, boolean removed) throws IOException;
+    }
+
+    /**
+     * Получатель записей сегмента, который может остановить проход
+     */
+    public interface RecordVisitor {
+        /**
+         * @param key     ключ записи
+         * @param offset  сдвиг записи от начала файла
+         * @param removed является ли запись удалением
+         * @return {@code false} - если следующие записи не нужны
+         */
+        boolean visit(byte[] key, long offset, boolean removed) throws IOException;
+    }
+
+    /**
+     * Получатель записей сегмента со сроком жизни (см {@link ExpiringDatabaseRecord})
+     */
+    public interface ExpiringRecordConsumer {
+        /**
+         * @param key             ключ записи
+         * @param offset          сдвиг записи от начала файла
+         * @param expiresAtMillis когда истекает срок записи
+         */
+        void accept(byte[] key, long offset, long expiresAtMillis) throws IOException;
+    }
+
+    /**
+     * Получатель записей сегмента, значения которых лежат в blob-файлах (см {@link BlobReferenceDatabaseRecord})
+     */
+    public interface BlobReferenceConsumer {
+        /**
+         * @param offset    сдвиг записи от начала файла
+         * @param reference запись-ссылка на значение
+         */
+        void accept(long offset, BlobReferenceDatabaseRecord reference) throws IOException;
+    }
+
+    private final DatabaseSegmentFile file;
+    private final SegmentFormat format;
+    private ByteBuffer buffer;
+    /**
+     * Сдвиг в файле, с которого начинаются данные буфера. В буфере лежат байты [windowStart, windowStart + limit)
+     */
+    private long windowStart = 0;
+
+    private DatabaseSegmentScanner(DatabaseSegmentFile file, SegmentFormat format, ByteBuffer buffer) {
+        this.file = file;
+        this.format = format;
+        this.buffer = buffer;
+        this.buffer.clear().limit(0);
+    }
+
+    /**
+     * Передает получателю все корректные записи сегмента по порядку.
+     *
+     * @param path     путь до сегмента
+     * @param format   формат сегмента
+     * @param consumer получатель записей
+     * @return размер корректного начала файла (для сжатого сегмента - его несжатого содержимого):
+     * заголовок и все записи, переданные получателю
+     * @throws IOException если файл не удалось прочитать или получатель бросил исключение
+     */
+    public static long scan(Path path, SegmentFormat format, RecordConsumer consumer) throws IOException {
+        try (DatabaseSegmentFile file = DatabaseSegmentFile.open(path, format, null)) {
+            return scan(file, format, 0, (key, offset, removed) -> {
+                consumer.accept(key, offset, removed);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Передает получателю только записи со сроком жизни, вместе со сроком. Значения не копируются, как и при
+     * обычном проходе
+     *
+     * @param path     путь до сегмента
+     * @param format   формат сегмента
+     * @param consumer получатель записей
+     * @throws IOException если файл не удалось прочитать или получатель бросил исключение
+     */
+    public static void scanExpiring(Path path, SegmentFormat format, ExpiringRecordConsumer consumer)
+            throws IOException {
+        try (DatabaseSegmentFile file = DatabaseSegmentFile.open(path, format, null)) {
+            scan(file, format, 0, (key, offset, removed) -> true, consumer, null);
+        }
+    }
+
+    /**
+     * Передает получателю только ссылки на значения в blob-файлах. Значения не копируются, как и при
+     * обычном проходе
+     *
+     * @param path     путь до сегмента
+     * @param format   формат сегмента
+     * @param consumer получатель записей
+     * @throws IOException если файл не удалось прочитать или получатель бросил исключение
+     */
+    public static void scanBlobReferences(Path path, SegmentFormat format, BlobReferenceConsumer consumer)
+            throws IOException {
+        try (DatabaseSegmentFile file = DatabaseSegmentFile.open(path, format, null)) {
+            scan(file, format, 0, (key, offset, removed) -> true, null, consumer);
+        }
+    }
+
+    /**
+     * Передает получателю корректные записи уже открытого сегмента по порядку, начиная с записи по сдвигу
+     * {@code fromOffset}, пока получатель их принимает. Файл не закрывается.
+     *
+     * @param file       файл сегмента
+     * @param format     формат сегмента
+     * @param fromOffset сдвиг записи, с которой начать (сдвиг меньше заголовка - с первой записи)
+     * @param visitor    получатель записей
+     * @return сдвиг сразу за последней записью, переданной получателю, если он остановил проход,
+     * иначе - размер корректного начала файла. 0 - если в файле нет даже заголовка
+     * @throws IOException если файл не удалось прочитать или получатель бросил исключение
+     */
+    public static long scan(DatabaseSegmentFile file, SegmentFormat format, long fromOffset, RecordVisitor visitor)
+            throws IOException {
+        return scan(file, format, fromOffset, visitor, null, null);
+    }
+
+    private static long scan(DatabaseSegmentFile file, SegmentFormat format, long fromOffset, RecordVisitor visitor,
+                             ExpiringRecordConsumer expiring, BlobReferenceConsumer blobs) throws IOException {
+        ByteBuffer buffer = SCAN_BUFFER.get();
+        SCAN_BUFFER.set(null);
+        try {
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE);
+            }
+            return new DatabaseSegmentScanner(file, format, buffer).scan(fromOffset, visitor, expiring, blobs);
+        } finally {
+            SCAN_BUFFER.set(buffer);
+        }
+    }
+
+    private long scan(long fromOffset, RecordVisitor visitor, ExpiringRecordConsumer expiring,
+                      BlobReferenceConsumer blobs) throws IOException {
+        long fileSize = file.size();
+        long offset = Math.max(fromOffset, format.getHeaderSize());
+        if (format.getHeaderSize() > fileSize) {
+            return 0;
+        }
+
+        while (offset < fileSize) {
+            if (offset + 2L * Integer.BYTES > fileSize) {
+                return offset;
+            }
+            int position = ensure(offset, Integer.BYTES);
+            int keySize = buffer.getInt(position);
+            if (keySize < 0 || offset + 2L * Integer.BYTES + keySize > fileSize) {
+                return offset;
+            }
+
+            position = ensure(offset, 2 * Integer.BYTES + keySize);
+            int valueSize = buffer.getInt(position + Integer.BYTES + keySize);
+            long recordSize = format.recordSize(keySize, valueSize);
+            if (!format.isValidValueSize(valueSize) || offset + recordSize > fileSize
+                    || !checksumMatches(offset, recordSize)) {
+                return offset;
+            }
+
+            position = ensure(offset, 2 * Integer.BYTES + keySize);
+            byte[] key = new byte[keySize];
+            buffer.position(position + Integer.BYTES);
+            buffer.get(key);
+            if (expiring != null && ExpiringDatabaseRecord.isExpiring(valueSize)) {
+                position = ensure(offset + 2L * Integer.BYTES + keySize, Long.BYTES);
+                expiring.accept(key, offset, buffer.getLong(position));
+            }
+            if (blobs != null && valueSize == BlobReferenceDatabaseRecord.VALUE_SIZE) {
+                position = ensure(offset + 2L * Integer.BYTES + keySize, BlobReferenceDatabaseRecord.REFERENCE_SIZE);
+                blobs.accept(offset, BlobReferenceDatabaseRecord.read(key, buffer, position));
+            }
+            boolean more = visitor.visit(key, offset, valueSize == REMOVED_OBJECT_SIZE);
+
+            offset += recordSize;
+            if (!more) {
+                return offset;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Считает контрольную сумму записи кусками, так что запись может быть больше буфера
+     */
+    private boolean checksumMatches(long offset, long recordSize) throws IOException {
+        if (format.getChecksumSize() == 0) {
+            return true;
+        }
+
+        if (recordSize <= buffer.capacity()) {
+            int position = ensure(offset, (int) recordSize);
+            return format.checksumMatches(buffer, position, (int) recordSize);
+        }
+
+        long dataEnd = offset + recordSize - format.getChecksumSize();
+        CRC32C crc = new CRC32C();
+        for (long chunkStart = offset; chunkStart < dataEnd; ) {
+            int chunkSize = (int) Math.min(dataEnd - chunkStart, buffer.capacity());
+            int position = ensure(chunkStart, chunkSize);
+            ByteBuffer chunk = buffer.duplicate();
+            chunk.limit(position + chunkSize).position(position);
+            crc.update(chunk);
+            chunkStart += chunkSize;
+        }
+        int position = ensure(dataEnd, format.getChecksumSize());
+        return buffer.getInt(position) == (int) crc.getValue();
+    }
+
+    /**
+     * Гарантирует, что байты файла [offset, offset + length) лежат в буфере, при необходимости перечитывая его
+     * начиная с {@code offset}.
+     *
+     * @return позиция {@code offset} в буфере
+     */
+    private int ensure(long offset, int length) throws IOException {
+        if (offset >= windowStart && offset + length <= windowStart + buffer.limit()) {
+            return (int) (offset - windowStart);
+        }
+
+        if (buffer.capacity() < length) {
+            // ключ больше буфера - читаем в одноразовый буфер, чтобы не держать такой в каждом потоке
+            buffer = ByteBuffer.allocate(length);
+        }
+
+        buffer.clear();
+        windowStart = offset;
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, offset + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+
+        if (buffer.limit() < length) {
+            throw new EOFException(String.format("Unexpected end of segment file at offset %d", offset));
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,111 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Снимок рабочей папки: папка с той же структурой база/таблица/файлы, в которой вместо копий лежат жесткие ссылки
+ * на закрытые файлы таблиц. Закрытые файлы никогда не меняются на месте (сжатие и компакция пишут новые файлы
+ * и удаляют старые), поэтому снимок не зависит от дальнейших записей и создается за время, не зависящее
+ * от объема данных. Если файловая система не поддерживает жесткие ссылки (или снимок лежит на другой),
+ * файл копируется.
+ * <p>
+ * Файл, на который есть несколько жестких ссылок, общий для рабочей папки и снимка: дописывать в него нельзя
+ * (см {@link #isShared(Path)}).
+ */
+public class DatabaseSnapshot {
+    private static final String SNAPSHOT_PREFIX = "snapshot_";
+    private static final DateTimeFormatter SNAPSHOT_TIME = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
+
+    private DatabaseSnapshot() {
+    }
+
+    /**
+     * Создает папку нового снимка с именем по текущему времени
+     *
+     * @param snapshotsRoot папка со снимками, создается, если ее нет
+     * @return путь до папки снимка
+     * @throws IOException если папку не удалось создать
+     */
+    public static Path createDirectory(Path snapshotsRoot) throws IOException {
+        Files.createDirectories(snapshotsRoot);
+        String name = SNAPSHOT_PREFIX + LocalDateTime.now().format(SNAPSHOT_TIME);
+        for (int attempt = 0; ; attempt++) {
+            Path path = snapshotsRoot.resolve(attempt == 0 ? name : name + "_" + attempt);
+            try {
+                return Files.createDirectory(path);
+            } catch (FileAlreadyExistsException e) {
+                // снимок в ту же миллисекунду
+            }
+        }
+    }
+
+    /**
+     * Удаляет папку снимка со всем содержимым (например, недоснятый снимок). Файлы рабочей папки не затрагиваются:
+     * удаляются только ссылки на них
+     *
+     * @param snapshotPath папка снимка
+     * @throws IOException если что-то не удалось удалить
+     */
+    public static void delete(Path snapshotPath) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(snapshotPath)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Кладет в папку снимка жесткую ссылку на файл (или его копию) под тем же именем
+     *
+     * @param file            закрытый файл таблицы
+     * @param targetDirectory папка таблицы в снимке
+     * @throws IOException если файла нет или его не удалось ни связать, ни скопировать
+     */
+    public static void link(Path file, Path targetDirectory) throws IOException {
+        Path target = targetDirectory.resolve(file.getFileName().toString());
+        try {
+            Files.createLink(target, file);
+        } catch (NoSuchFileException | FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // с временем изменения: по нему считается возраст сегмента
+            Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    /**
+     * То же, что {@link #link(Path, Path)}, но пропускает файл, которого нет (например, фильтр Блума,
+     * который не строится для таблицы)
+     */
+    public static void linkIfExists(Path file, Path targetDirectory) throws IOException {
+        if (Files.exists(file)) {
+            link(file, targetDirectory);
+        }
+    }
+
+    /**
+     * @return {@code true} - если на файл есть другие жесткие ссылки (он попал в снимок или взят из него),
+     * и дописывать в него нельзя. Если файловая система не сообщает числа ссылок - {@code false}
+     */
+    public static boolean isShared(Path file) {
+        try {
+            return ((Number) Files.getAttribute(file, "unix:nlink")).intValue() > 1;
+        } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+            return false;
+        }
+    }
+}
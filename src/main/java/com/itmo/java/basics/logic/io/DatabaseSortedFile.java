@@ -0,0 +1,547 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.impl.RemoveDatabaseRecord;
+import com.itmo.java.basics.logic.impl.SetDatabaseRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+
+/**
+ * Отсортированный по ключу неизменяемый файл LSM-таблицы (SSTable).
+ * <p>
+ * Формат: заголовок magic(int)|version(int), затем записи формата {@link SegmentFormat#CHECKSUMMED}
+ * в порядке возрастания ключа (каждый ключ не больше одного раза, удаление - запись с valueSize -1),
+ * затем разреженный индекс - entryCount раз keySize(int)|key|offset(long), и в конце
+ * indexOffset(long)|entryCount(int)|recordCount(long)|crc32c(int) (контрольная сумма индекса и предыдущих полей).
+ * <p>
+ * Записи делятся на блоки: блок заканчивается, как только в нем набралось не меньше indexInterval байт,
+ * и в индекс попадает первый ключ каждого блока. Поиск - двоичный поиск по индексу в памяти и одно чтение блока,
+ * а в памяти держится около (размер файла / indexInterval) ключей, сколько бы записей ни было в файле.
+ * <p>
+ * Ключи сравниваются как байты без знака ({@link KeyOrder#BYTES}). Файлы версии 1 писались со строковыми ключами
+ * и отсортированы как строки ({@link KeyOrder#STRINGS}): такие файлы читаются, а LSM-таблица, в которой они есть,
+ * продолжает писать в строковом порядке, чтобы все ее файлы можно было слить.
+ * Чтение позиционное, поэтому один экземпляр можно использовать из нескольких потоков одновременно.
+ */
+public class DatabaseSortedFile implements Closeable {
+    public static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x4b565354;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int FOOTER_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int REMOVED_OBJECT_SIZE = -1;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long dataEnd;
+    private final long recordCount;
+    private final KeyOrder keyOrder;
+    private final byte[][] indexKeys;
+    private final long[] indexOffsets;
+
+    private DatabaseSortedFile(Path path, FileChannel channel, long fileSize, long dataEnd, long recordCount,
+                               KeyOrder keyOrder, byte[][] indexKeys, long[] indexOffsets) {
+        this.path = path;
+        this.keyOrder = keyOrder;
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.dataEnd = dataEnd;
+        this.recordCount = recordCount;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+    }
+
+    /**
+     * Открывает файл и читает его разреженный индекс
+     *
+     * @throws IOException если файл не удалось прочитать или он поврежден
+     */
+    public static DatabaseSortedFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return open(path, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static DatabaseSortedFile open(Path path, FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE + FOOTER_SIZE) {
+            throw new EOFException(String.format("Sorted file %s is too short", path));
+        }
+
+        ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+        KeyOrder keyOrder = header.getInt() == MAGIC ? KeyOrder.ofVersion(header.getInt()) : null;
+        if (keyOrder == null) {
+            throw new IOException(String.format("%s is not a sorted file of a supported version", path));
+        }
+
+        ByteBuffer footer = readFully(channel, fileSize - FOOTER_SIZE, FOOTER_SIZE);
+        long indexOffset = footer.getLong();
+        int entryCount = footer.getInt();
+        long recordCount = footer.getLong();
+        int checksum = footer.getInt();
+        if (indexOffset < HEADER_SIZE || indexOffset > fileSize - FOOTER_SIZE || entryCount < 0
+                || fileSize - indexOffset > Integer.MAX_VALUE) {
+            throw damaged(path);
+        }
+
+        int indexAndFooterSize = (int) (fileSize - indexOffset);
+        ByteBuffer index = readFully(channel, indexOffset, indexAndFooterSize);
+        if (SegmentFormat.checksum(index, 0, indexAndFooterSize - Integer.BYTES) != checksum) {
+            throw damaged(path);
+        }
+
+        index.limit(indexAndFooterSize - FOOTER_SIZE);
+        byte[][] keys = new byte[entryCount][];
+        long[] offsets = new long[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            if (index.remaining() < Integer.BYTES) {
+                throw damaged(path);
+            }
+            int keySize = index.getInt();
+            if (keySize < 0 || index.remaining() < keySize + Long.BYTES) {
+                throw damaged(path);
+            }
+            keys[i] = new byte[keySize];
+            index.get(keys[i]);
+            offsets[i] = index.getLong();
+        }
+        if (index.hasRemaining()) {
+            throw damaged(path);
+        }
+
+        return new DatabaseSortedFile(path, channel, fileSize, indexOffset, recordCount, keyOrder, keys, offsets);
+    }
+
+    /**
+     * Начинает запись нового файла. Пока файл не дописан ({@link Writer#finish()}), он лежит рядом
+     * под временным именем (см {@link #isTempFile(String)})
+     *
+     * @param path          путь до файла
+     * @param indexInterval шаг разреженного индекса в байтах
+     * @param sync          сбросить ли файл на диск перед переименованием
+     * @param keyOrder      порядок, в котором будут передаваться ключи
+     */
+    public static Writer writer(Path path, int indexInterval, boolean sync, KeyOrder keyOrder) throws IOException {
+        return new Writer(path, indexInterval, sync, keyOrder);
+    }
+
+    /**
+     * @return {@code true} - если это недописанный файл
+     */
+    public static boolean isTempFile(String fileName) {
+        return fileName.endsWith(TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * Ищет запись по ключу
+     *
+     * @return запись со значением или удаление. {@link Optional#empty()} - если ключа в файле нет
+     * @throws IOException если блок не удалось прочитать или он поврежден
+     */
+    public Optional<WritableDatabaseRecord> find(byte[] key) throws IOException {
+        int block = Arrays.binarySearch(indexKeys, key, keyOrder);
+        if (block < 0) {
+            block = -block - 2;
+            if (block < 0) {
+                return Optional.empty();
+            }
+        }
+
+        ByteBuffer content = readBlock(block);
+        while (content.hasRemaining()) {
+            int position = content.position();
+            int keySize = content.getInt(position);
+            if (keySize < 0 || content.remaining() < 2 * Integer.BYTES + keySize) {
+                throw damaged(path);
+            }
+            int compared = keyOrder.compare(content.array(), position + Integer.BYTES, keySize, key);
+            if (compared == 0) {
+                return Optional.of(decode(content, indexOffsets[block]));
+            }
+            if (compared > 0) {
+                return Optional.empty();
+            }
+            skip(content);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return курсор по всем записям файла в порядке ключей
+     */
+    public Cursor cursor() {
+        return new Cursor(-1, null, false);
+    }
+
+    /**
+     * @return курсор по записям файла с ключами больше {@code after} в порядке ключей. Чтение начинается
+     * с блока, в котором мог бы лежать {@code after}
+     */
+    public Cursor cursorAfter(byte[] after) {
+        return cursorAt(after, false);
+    }
+
+    /**
+     * @return курсор по записям файла с ключами не меньше {@code from} в порядке ключей
+     */
+    public Cursor cursorFrom(byte[] from) {
+        return cursorAt(from, true);
+    }
+
+    private Cursor cursorAt(byte[] key, boolean inclusive) {
+        int block = Arrays.binarySearch(indexKeys, key, keyOrder);
+        if (block < 0) {
+            block = -block - 2;
+        }
+        return new Cursor(Math.max(block, 0) - 1, key, inclusive);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return в каком порядке отсортированы ключи файла
+     */
+    public KeyOrder getKeyOrder() {
+        return keyOrder;
+    }
+
+    /**
+     * @return размер файла в байтах
+     */
+    public long size() {
+        return fileSize;
+    }
+
+    /**
+     * @return число записей (вместе с удалениями)
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return число ключей в разреженном индексе
+     */
+    public int getIndexSize() {
+        return indexKeys.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer readBlock(int block) throws IOException {
+        long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : dataEnd;
+        return readFully(channel, indexOffsets[block], (int) (end - indexOffsets[block]));
+    }
+
+    /**
+     * Декодирует запись с текущей позиции блока и сдвигает позицию за нее
+     */
+    private WritableDatabaseRecord decode(ByteBuffer content, long blockOffset) throws IOException {
+        int position = content.position();
+        int keySize = content.getInt(position);
+        if (keySize < 0 || content.remaining() < 2 * Integer.BYTES + keySize) {
+            throw damaged(path);
+        }
+        int valueSize = content.getInt(position + Integer.BYTES + keySize);
+        long recordSize = SegmentFormat.CHECKSUMMED.recordSize(keySize, valueSize);
+        if (valueSize < REMOVED_OBJECT_SIZE || recordSize > content.remaining()) {
+            throw damaged(path);
+        }
+        SegmentFormat.CHECKSUMMED.verify(content, position, (int) recordSize, blockOffset + position);
+
+        byte[] key = new byte[keySize];
+        content.position(position + Integer.BYTES);
+        content.get(key);
+        content.position(position + 2 * Integer.BYTES + keySize);
+        WritableDatabaseRecord record;
+        if (valueSize == REMOVED_OBJECT_SIZE) {
+            record = new RemoveDatabaseRecord(key);
+        } else {
+            byte[] value = new byte[valueSize];
+            content.get(value);
+            record = new SetDatabaseRecord(key, value);
+        }
+        content.position(position + (int) recordSize);
+        return record;
+    }
+
+    private void skip(ByteBuffer content) throws IOException {
+        int position = content.position();
+        int keySize = content.getInt(position);
+        int valueSize = content.getInt(position + Integer.BYTES + keySize);
+        long recordSize = SegmentFormat.CHECKSUMMED.recordSize(keySize, valueSize);
+        if (valueSize < REMOVED_OBJECT_SIZE || recordSize > content.remaining()) {
+            throw damaged(path);
+        }
+        content.position(position + (int) recordSize);
+    }
+
+    private static IOException damaged(Path path) {
+        return new IOException(String.format("Sorted file %s is damaged", path));
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException(String.format("Unexpected end of sorted file at offset %d", position));
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Курсор по записям файла в порядке ключей, читает по одному блоку. Не потокобезопасен
+     */
+    public final class Cursor {
+        private int block;
+        private ByteBuffer content = ByteBuffer.allocate(0);
+        private WritableDatabaseRecord record;
+        /**
+         * Записи с ключами меньше этого (или не больше, если не {@code inclusive}) пропускаются,
+         * {@code null} - если пропускать нечего
+         */
+        private byte[] from;
+        private final boolean inclusive;
+
+        private Cursor(int block, byte[] from, boolean inclusive) {
+            this.block = block;
+            this.from = from;
+            this.inclusive = inclusive;
+        }
+
+        /**
+         * Переходит к следующей записи
+         *
+         * @return {@code false} - если записи закончились
+         * @throws IOException если блок не удалось прочитать или он поврежден
+         */
+        public boolean next() throws IOException {
+            do {
+                while (!content.hasRemaining()) {
+                    if (block + 1 >= indexOffsets.length) {
+                        record = null;
+                        return false;
+                    }
+                    content = readBlock(++block);
+                }
+                record = decode(content, indexOffsets[block]);
+            } while (from != null && isBefore(record.getKey()));
+            from = null;
+            return true;
+        }
+
+        private boolean isBefore(byte[] key) {
+            int compared = keyOrder.compare(key, from);
+            return compared < 0 || compared == 0 && !inclusive;
+        }
+
+        /**
+         * @return ключ текущей записи
+         */
+        public byte[] key() {
+            return record.getKey();
+        }
+
+        /**
+         * @return текущая запись: значение или удаление
+         */
+        public WritableDatabaseRecord record() {
+            return record;
+        }
+    }
+
+    /**
+     * Пишет новый файл: записи передаются строго по возрастанию ключа
+     */
+    public static final class Writer implements Closeable {
+        private final Path path;
+        private final Path tempPath;
+        private final FileChannel channel;
+        private final int indexInterval;
+        private final boolean sync;
+        private final KeyOrder keyOrder;
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final DataOutputStream indexOutput = new DataOutputStream(index);
+
+        private ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        private long position = HEADER_SIZE;
+        private long blockStart;
+        private int entryCount;
+        private long recordCount;
+        private byte[] lastKey;
+        private boolean finished;
+
+        private Writer(Path path, int indexInterval, boolean sync, KeyOrder keyOrder) throws IOException {
+            this.path = path;
+            this.tempPath = path.resolveSibling(path.getFileName() + TEMP_FILE_SUFFIX);
+            this.indexInterval = indexInterval;
+            this.sync = sync;
+            this.keyOrder = keyOrder;
+            this.channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            buffer.putInt(MAGIC).putInt(keyOrder.version);
+        }
+
+        /**
+         * @param record значение или удаление, ключ больше всех ранее переданных
+         * @throws IllegalArgumentException если ключ не больше предыдущего
+         */
+        public void append(WritableDatabaseRecord record) throws IOException {
+            byte[] key = record.getKey();
+            if (lastKey != null && keyOrder.compare(lastKey, key) >= 0) {
+                throw new IllegalArgumentException(String.format("Key %s is not greater than the previous key %s",
+                        new String(key, StandardCharsets.UTF_8), new String(lastKey, StandardCharsets.UTF_8)));
+            }
+
+            if (entryCount == 0 || position - blockStart >= indexInterval) {
+                indexOutput.writeInt(record.getKeySize());
+                indexOutput.write(record.getKey());
+                indexOutput.writeLong(position);
+                blockStart = position;
+                entryCount++;
+            }
+
+            int recordSize = (int) SegmentFormat.CHECKSUMMED.recordSize(record.getKeySize(), record.getValueSize());
+            if (buffer.remaining() < recordSize) {
+                flushBuffer();
+                if (buffer.capacity() < recordSize) {
+                    buffer = ByteBuffer.allocate(recordSize);
+                }
+            }
+            SegmentFormat.CHECKSUMMED.encode(record, buffer);
+            position += recordSize;
+            recordCount++;
+            lastKey = key;
+        }
+
+        /**
+         * Дописывает индекс и переименовывает файл на место
+         *
+         * @return открытый для чтения файл
+         */
+        public DatabaseSortedFile finish() throws IOException {
+            flushBuffer();
+            byte[] indexContent = index.toByteArray();
+            ByteBuffer tail = ByteBuffer.allocate(indexContent.length + FOOTER_SIZE);
+            tail.put(indexContent).putLong(position).putInt(entryCount).putLong(recordCount);
+            tail.putInt(SegmentFormat.checksum(tail, 0, tail.position()));
+            tail.flip();
+            writeFully(tail);
+            if (sync) {
+                channel.force(false);
+            }
+            channel.close();
+
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            return open(path);
+        }
+
+        /**
+         * Если файл не был дописан, удаляет его
+         */
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                channel.close();
+                Files.deleteIfExists(tempPath);
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer content) throws IOException {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+    }
+
+    /**
+     * Порядок ключей в файле. Номер версии файла определяет порядок
+     */
+    public enum KeyOrder implements Comparator<byte[]> {
+        /**
+         * Как строки из UTF-8, а при равных строках - по байтам: не-UTF-8 ключи могут давать одинаковые строки
+         */
+        STRINGS(1) {
+            @Override
+            public int compare(byte[] first, byte[] second) {
+                int compared = new String(first, StandardCharsets.UTF_8)
+                        .compareTo(new String(second, StandardCharsets.UTF_8));
+                return compared != 0 ? compared : Arrays.compareUnsigned(first, second);
+            }
+
+            @Override
+            int compare(byte[] content, int from, int length, byte[] key) {
+                return compare(Arrays.copyOfRange(content, from, from + length), key);
+            }
+        },
+        /**
+         * Как байты без знака, лексикографически
+         */
+        BYTES(2) {
+            @Override
+            public int compare(byte[] first, byte[] second) {
+                return Arrays.compareUnsigned(first, second);
+            }
+
+            @Override
+            int compare(byte[] content, int from, int length, byte[] key) {
+                return Arrays.compareUnsigned(content, from, from + length, key, 0, key.length);
+            }
+        };
+
+        private final int version;
+
+        KeyOrder(int version) {
+            this.version = version;
+        }
+
+        /**
+         * Сравнивает ключ, лежащий в массиве, с заданным, не копируя его
+         */
+        abstract int compare(byte[] content, int from, int length, byte[] key);
+
+        /**
+         * @return порядок файлов этой версии, {@code null} - если версия неизвестна
+         */
+        private static KeyOrder ofVersion(int version) {
+            for (var order : values()) {
+                if (order.version == version) {
+                    return order;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.config.TableEngine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Файл {@link #METADATA_FILE_NAME} в папке таблицы: свойства таблицы, которые задаются при создании
+ * и не должны меняться вместе с конфигурацией сервера. Сейчас это только {@link TableEngine}.
+ * <p>
+ * Таблицы, созданные до появления файла, его не имеют и считаются {@link TableEngine#HASH}.
+ */
+public class DatabaseTableMetadata {
+    public static final String METADATA_FILE_NAME = "table.meta";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String ENGINE_PROPERTY = "engine";
+
+    private DatabaseTableMetadata() {
+    }
+
+    /**
+     * @return {@code true} - если файл с таким именем является файлом метаданных (в том числе недописанным)
+     */
+    public static boolean isMetadataFile(String fileName) {
+        return fileName.equals(METADATA_FILE_NAME) || fileName.equals(METADATA_FILE_NAME + TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * @param tablePath путь до папки таблицы
+     * @return движок таблицы, {@link TableEngine#HASH} - если файла нет
+     * @throws IOException если файл не удалось прочитать или в нем неизвестный движок
+     */
+    public static TableEngine readEngine(Path tablePath) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(tablePath.resolve(METADATA_FILE_NAME))) {
+            properties.load(input);
+        } catch (NoSuchFileException e) {
+            return TableEngine.HASH;
+        }
+
+        String engine = properties.getProperty(ENGINE_PROPERTY, TableEngine.HASH.name());
+        try {
+            return TableEngine.valueOf(engine.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("Unknown table engine %s in %s", engine, tablePath), e);
+        }
+    }
+
+    /**
+     * Записывает метаданные таблицы через временный файл, так что недописанный файл никогда не окажется на месте настоящего
+     *
+     * @param tablePath путь до папки таблицы
+     * @param engine    движок таблицы
+     */
+    public static void writeEngine(Path tablePath, TableEngine engine) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(ENGINE_PROPERTY, engine.name());
+
+        Path metadataPath = tablePath.resolve(METADATA_FILE_NAME);
+        Path tempPath = tablePath.resolve(METADATA_FILE_NAME + TEMP_FILE_SUFFIX);
+        try (OutputStream output = Files.newOutputStream(tempPath)) {
+            properties.store(output, null);
+        }
+        Files.move(tempPath, metadataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,72 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * Счетчик участков файла, которые ридер одолжил значениям (см {@link DatabaseRecordReader#pinRegion}).
+ * Файл освобождается, только когда ридер закрыт и все участки возвращены: закрытие ридера при вытеснении,
+ * сжатии или замене сегмента не обрывает передачу значения, которая еще идет
+ */
+final class ReaderPins {
+    private final Closeable file;
+    private int pins;
+    private boolean closed;
+
+    /**
+     * @param file то, что нужно освободить, когда ридер закрыт и участков не осталось
+     */
+    ReaderPins(Closeable file) {
+        this.file = file;
+    }
+
+    /**
+     * Учитывает одолженный участок
+     *
+     * @throws ClosedChannelException если ридер уже закрыт
+     */
+    synchronized void pin() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        pins++;
+    }
+
+    /**
+     * Возвращает участок. Последний возвращенный участок закрытого ридера освобождает файл
+     */
+    void unpin() throws IOException {
+        boolean release;
+        synchronized (this) {
+            release = --pins == 0 && closed;
+        }
+        if (release) {
+            file.close();
+        }
+    }
+
+    /**
+     * @return {@code true} - если одолженные участки еще не вернули
+     */
+    synchronized boolean isPinned() {
+        return pins > 0;
+    }
+
+    /**
+     * Закрывает ридер: файл освобождается сразу, если участков нет, а иначе - когда вернут последний
+     */
+    void close() throws IOException {
+        boolean release;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release = pins == 0;
+        }
+        if (release) {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
+import com.itmo.java.basics.logic.impl.BlobReferenceDatabaseRecord;
+import com.itmo.java.basics.logic.impl.ExpiringDatabaseRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Формат файла сегмента.
+ * <p>
+ * {@link #CHECKSUMMED} - текущий формат: заголовок magic(int)|version(int), затем записи
+ * keySize(int)|key|valueSize(int)|value|crc32c(int), где контрольная сумма считается по всем предыдущим байтам записи.
+ * У удаления valueSize равен -1, а value отсутствует. Если valueSize равен -2, на месте value лежит ссылка
+ * на значение в blob-файле (см {@link BlobReferenceDatabaseRecord}). Если valueSize -3 или меньше, на месте value
+ * лежит срок жизни записи и само значение (см {@link ExpiringDatabaseRecord}).
+ * <p>
+ * {@link #COMPRESSED} - закрытый сегмент формата {@link #CHECKSUMMED}, сжатый по блокам (см {@link DatabaseBlockFile}).
+ * Сдвиги записей и размеры считаются в несжатом содержимом, поэтому индексы и hint-файлы при сжатии не меняются.
+ * <p>
+ * {@link #LEGACY} - формат сегментов, созданных до появления заголовка: записи keySize|key|valueSize|value
+ * без контрольных сумм (см {@link DatabaseOutputStream}). Такие сегменты только читаются.
+ */
+public enum SegmentFormat {
+    LEGACY(0, 0, 0),
+    CHECKSUMMED(2 * Integer.BYTES, Integer.BYTES, 2),
+    COMPRESSED(2 * Integer.BYTES, Integer.BYTES, 3);
+
+    private static final int MAGIC = 0x4b565353;
+
+    private static final ThreadLocal<CRC32C> CRC = ThreadLocal.withInitial(CRC32C::new);
+
+    private final int headerSize;
+    private final int checksumSize;
+    private final int version;
+
+    SegmentFormat(int headerSize, int checksumSize, int version) {
+        this.headerSize = headerSize;
+        this.checksumSize = checksumSize;
+        this.version = version;
+    }
+
+    /**
+     * @return сжат ли файл по блокам
+     */
+    public boolean isCompressed() {
+        return this == COMPRESSED;
+    }
+
+    /**
+     * @return размер заголовка файла: с этого сдвига начинается первая запись
+     */
+    public int getHeaderSize() {
+        return headerSize;
+    }
+
+    /**
+     * @return сколько байт в конце каждой записи занимает контрольная сумма
+     */
+    public int getChecksumSize() {
+        return checksumSize;
+    }
+
+    /**
+     * @param keySize   размер ключа
+     * @param valueSize размер значения, -1 для удаления, {@link BlobReferenceDatabaseRecord#VALUE_SIZE} для ссылки,
+     *                  не больше {@link ExpiringDatabaseRecord#VALUE_SIZE_BASE} для записи со сроком жизни
+     * @return полный размер записи в файле
+     */
+    public long recordSize(int keySize, int valueSize) {
+        long storedValueSize;
+        if (valueSize == BlobReferenceDatabaseRecord.VALUE_SIZE) {
+            storedValueSize = BlobReferenceDatabaseRecord.REFERENCE_SIZE;
+        } else if (ExpiringDatabaseRecord.isExpiring(valueSize)) {
+            storedValueSize = ExpiringDatabaseRecord.storedSize(valueSize);
+        } else {
+            storedValueSize = Math.max(valueSize, 0);
+        }
+        return 2L * Integer.BYTES + keySize + storedValueSize + checksumSize;
+    }
+
+    /**
+     * @return может ли в этом формате быть запись с таким размером значения: в {@link #LEGACY} нет записей
+     * со сроком жизни, и размер меньше {@link BlobReferenceDatabaseRecord#VALUE_SIZE} там значит, что запись повреждена
+     */
+    public boolean isValidValueSize(int valueSize) {
+        return this != LEGACY || valueSize >= BlobReferenceDatabaseRecord.VALUE_SIZE;
+    }
+
+    /**
+     * Кодирует запись в этом формате, вместе с контрольной суммой, если она в нем есть.
+     *
+     * @param record запись
+     * @param buffer буфер, в котором с текущей позиции есть место на {@link #recordSize} байт.
+     *               Позиция сдвигается за конец записи
+     */
+    public void encode(WritableDatabaseRecord record, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(record.getKeySize());
+        buffer.put(record.getKey());
+        buffer.putInt(record.getValueSize());
+        if (record instanceof ExpiringDatabaseRecord) {
+            buffer.putLong(((ExpiringDatabaseRecord) record).getExpiresAtMillis());
+        }
+        if (record.isValuePresented()) {
+            buffer.put(record.getValue());
+        }
+        if (checksumSize > 0) {
+            // считаем по самому буферу, а не по его копии: кодирование не должно ничего выделять
+            int end = buffer.position();
+            int limit = buffer.limit();
+            CRC32C crc = CRC.get();
+            crc.reset();
+            buffer.limit(end).position(start);
+            crc.update(buffer);
+            buffer.limit(limit);
+            buffer.putInt((int) crc.getValue());
+        }
+    }
+
+    /**
+     * Проверяет контрольную сумму записи, целиком лежащей в буфере. Для {@link #LEGACY} ничего не делает.
+     *
+     * @param buffer     буфер с записью (его позиция и лимит не меняются)
+     * @param position   начало записи в буфере
+     * @param recordSize полный размер записи
+     * @param offset     сдвиг записи в файле, для сообщения об ошибке
+     * @throws IOException если контрольная сумма не совпала
+     */
+    public void verify(ByteBuffer buffer, int position, int recordSize, long offset) throws IOException {
+        if (!checksumMatches(buffer, position, recordSize)) {
+            throw new IOException(String.format("Checksum mismatch in the record at offset %d", offset));
+        }
+    }
+
+    /**
+     * См {@link #verify(ByteBuffer, int, int, long)}
+     *
+     * @return {@code true} - если контрольная сумма совпала или ее нет в этом формате
+     */
+    public boolean checksumMatches(ByteBuffer buffer, int position, int recordSize) {
+        if (checksumSize == 0) {
+            return true;
+        }
+
+        int dataSize = recordSize - checksumSize;
+        return buffer.getInt(position + dataSize) == checksum(buffer, position, dataSize);
+    }
+
+    /**
+     * Считает CRC32C байт буфера [position, position + length), не меняя позицию и лимит буфера
+     */
+    public static int checksum(ByteBuffer buffer, int position, int length) {
+        CRC32C crc = CRC.get();
+        crc.reset();
+        ByteBuffer view = buffer.duplicate();
+        view.limit(position + length).position(position);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return заголовок файла этого формата
+     */
+    public byte[] header() {
+        return ByteBuffer.allocate(headerSize).putInt(MAGIC).putInt(version).array();
+    }
+
+    /**
+     * Определяет формат по заголовку файла. Файл без заголовка (в том числе пустой) считается {@link #LEGACY}:
+     * первые четыре байта старого сегмента - размер ключа, и с magic он совпасть не может.
+     *
+     * @throws IOException если файл не удалось прочитать или версия формата неизвестна
+     */
+    public static SegmentFormat detect(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(CHECKSUMMED.headerSize);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return LEGACY;
+            }
+        }
+
+        if (header.getInt(0) != MAGIC) {
+            return LEGACY;
+        }
+        int version = header.getInt(Integer.BYTES);
+        for (var format : values()) {
+            if (format != LEGACY && format.version == version) {
+                return format;
+            }
+        }
+        throw new IOException(String.format("Unsupported segment format version %d", version));
+    }
+
+    /**
+     * См {@link #detect(FileChannel)}
+     */
+    public static SegmentFormat detect(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return detect(channel);
+        }
+    }
+}
@@ -10,9 +10,13 @@ public interface KvsClient {
 
     String createTable(String tableName) throws DatabaseExecutionException;
 
+    String createTable(String tableName, String engine) throws DatabaseExecutionException;
+
     String get(String tableName, String key) throws DatabaseExecutionException;
 
     String set(String tableName, String key, String value) throws DatabaseExecutionException;
 
     String delete(String tableName, String key) throws DatabaseExecutionException;
+
+    String getTableStats(String tableName) throws DatabaseExecutionException;
 }
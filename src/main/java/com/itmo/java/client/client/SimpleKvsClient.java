@@ -41,8 +41,14 @@ public class SimpleKvsClient implements KvsClient {
     @Override
     public String createTable(String tableName) throws DatabaseExecutionException {
 
+        return createTable(tableName, null);
+    }
+
+    @Override
+    public String createTable(String tableName, String engine) throws DatabaseExecutionException {
+
         try {
-            KvsCommand command = new CreateTableKvsCommand(databaseName, tableName);
+            KvsCommand command = new CreateTableKvsCommand(databaseName, tableName, engine);
 
             return sendCommandToServer(command).asString();
         } catch (ConnectionException e) {
@@ -86,6 +92,18 @@ public class SimpleKvsClient implements KvsClient {
         }
     }
 
+    @Override
+    public String getTableStats(String tableName) throws DatabaseExecutionException {
+
+        try {
+            KvsCommand command = new GetTableStatsKvsCommand(databaseName, tableName);
+
+            return sendCommandToServer(command).asString();
+        } catch (ConnectionException e) {
+            throw new DatabaseExecutionException(e.getMessage(), e);
+        }
+    }
+
     private RespObject sendCommandToServer(KvsCommand command) throws ConnectionException, DatabaseExecutionException {
 
         RespObject result = connectionSupplier.get().send(command.getCommandId(), command.serialize());
@@ -14,12 +14,22 @@ public class CreateTableKvsCommand implements KvsCommand {
     private static final String COMMAND_NAME = "CREATE_TABLE";
     private final String databaseName;
     private final String tableName;
+    private final String engine;
     private final int commandId = KvsCommand.idGen.getAndIncrement();
 
     public CreateTableKvsCommand(String databaseName, String tableName) {
 
+        this(databaseName, tableName, null);
+    }
+
+    /**
+     * @param engine способ хранения таблицы ("HASH" или "LSM"), {@code null} - по умолчанию
+     */
+    public CreateTableKvsCommand(String databaseName, String tableName, String engine) {
+
         this.databaseName = databaseName;
         this.tableName = tableName;
+        this.engine = engine;
     }
 
     /**
@@ -30,10 +40,19 @@ public class CreateTableKvsCommand implements KvsCommand {
     @Override
     public RespArray serialize() {
 
+        if (engine == null) {
+            return new RespArray(new RespCommandId(commandId),
+                    new RespBulkString(COMMAND_NAME.getBytes(StandardCharsets.UTF_8)),
+                    new RespBulkString(databaseName.getBytes(StandardCharsets.UTF_8)),
+                    new RespBulkString(tableName.getBytes(StandardCharsets.UTF_8))
+            );
+        }
+
         return new RespArray(new RespCommandId(commandId),
                 new RespBulkString(COMMAND_NAME.getBytes(StandardCharsets.UTF_8)),
                 new RespBulkString(databaseName.getBytes(StandardCharsets.UTF_8)),
-                new RespBulkString(tableName.getBytes(StandardCharsets.UTF_8))
+                new RespBulkString(tableName.getBytes(StandardCharsets.UTF_8)),
+                new RespBulkString(engine.getBytes(StandardCharsets.UTF_8))
         );
     }
 
@@ -46,6 +46,17 @@ public class RespBulkString implements RespObject {
         return data == null ? null : new String(data);
     }
 
+    /**
+     * Данные как есть
+     *
+     * @return байты строки. Если данных нет - null
+     */
+    @Override
+    public byte[] asBytes() {
+
+        return data;
+    }
+
     @Override
     public void write(OutputStream os) throws IOException {
 
@@ -1,7 +1,10 @@
 package com.itmo.java.protocol.model;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -25,8 +28,27 @@ public interface RespObject {
      */
     String asString();
 
+    /**
+     * @return байты значения без преобразования в строку. Например, для {@link RespBulkString} - ровно те байты,
+     * что пришли по сети. По умолчанию - {@link #asString()} в UTF-8
+     */
+    default byte[] asBytes() {
+        String value = asString();
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
     /**
      * Сериализует данный объект в RESP и записывает байты в переданный OutputStream.
      */
     void write(OutputStream os) throws IOException;
+
+    /**
+     * Сериализует данный объект в RESP и записывает байты в канал (например, в SocketChannel клиента).
+     * По умолчанию - через {@link #write(OutputStream)}
+     */
+    default void write(WritableByteChannel channel) throws IOException {
+        OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel));
+        write(os);
+        os.flush();
+    }
 }
\ No newline at end of file
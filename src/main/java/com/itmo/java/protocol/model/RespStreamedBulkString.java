@@ -0,0 +1,153 @@
+package com.itmo.java.protocol.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Строка, данные которой не лежат в памяти, а передаются в канал при записи - например, прямо из файла
+ * через {@link java.nio.channels.FileChannel#transferTo}. Сериализуется так же, как {@link RespBulkString}.
+ * <p>
+ * Данные передаются один раз: после записи источник закрывается, и второй раз объект не записать.
+ * Если же сначала запросить значение ({@link #asBytes()}, {@link #asString()}), источник читается в память
+ * и закрывается, а дальше объект ведет себя как обычная {@link RespBulkString}.
+ */
+public class RespStreamedBulkString implements RespObject, Closeable {
+
+    /**
+     * Источник данных строки
+     */
+    public interface Content extends Closeable {
+
+        /**
+         * Пишет данные в канал целиком
+         */
+        void transferTo(WritableByteChannel target) throws IOException;
+    }
+
+    private final int length;
+
+    private Content content;
+
+    private byte[] data;
+
+    /**
+     * @param length  размер данных в байтах
+     * @param content источник данных, закрывается после записи
+     */
+    public RespStreamedBulkString(int length, Content content) {
+
+        this.length = length;
+        this.content = content;
+    }
+
+    /**
+     * Ошибка ли это? Ответ - нет
+     *
+     * @return false
+     */
+    @Override
+    public boolean isError() {
+        return false;
+    }
+
+    @Override
+    public String asString() {
+
+        return new String(asBytes());
+    }
+
+    /**
+     * Читает данные в память, если они еще не прочитаны
+     *
+     * @throws UncheckedIOException если данные не удалось прочитать
+     */
+    @Override
+    public byte[] asBytes() {
+
+        if (data == null) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream(length);
+            try (Content source = takeContent()) {
+                source.transferTo(Channels.newChannel(os));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            data = os.toByteArray();
+        }
+        return data;
+    }
+
+    @Override
+    public void write(OutputStream os) throws IOException {
+
+        if (data != null) {
+            new RespBulkString(data).write(os);
+            return;
+        }
+
+        os.write(header());
+        try (Content source = takeContent()) {
+            source.transferTo(Channels.newChannel(os));
+        }
+        os.write(CRLF);
+    }
+
+    /**
+     * Пишет заголовок строки, затем передает данные из источника прямо в канал, минуя память JVM
+     */
+    @Override
+    public void write(WritableByteChannel channel) throws IOException {
+
+        if (data != null) {
+            RespObject.super.write(channel);
+            return;
+        }
+
+        writeFully(channel, ByteBuffer.wrap(header()));
+        try (Content source = takeContent()) {
+            source.transferTo(channel);
+        }
+        writeFully(channel, ByteBuffer.wrap(CRLF));
+    }
+
+    /**
+     * Закрывает источник, если данные так и не были переданы
+     */
+    @Override
+    public void close() throws IOException {
+
+        Content source = content;
+        content = null;
+        if (source != null) {
+            source.close();
+        }
+    }
+
+    private Content takeContent() throws IOException {
+
+        Content source = content;
+        if (source == null) {
+            throw new IOException("Streamed bulk string has already been written");
+        }
+        content = null;
+        return source;
+    }
+
+    private byte[] header() {
+
+        return ((char) RespBulkString.CODE + String.valueOf(length) + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}